@@ -0,0 +1,154 @@
+package org.nentangso.core.service.helper.location;
+
+import java.util.Arrays;
+
+/**
+ * How to restrict a query to the granted locations, planned once from {@link NtsLocationGrants}.
+ * <p>
+ * Consecutive ids are compressed to ranges, the remaining ids go to an IN list. When the bind parameters of both
+ * exceed {@code maxParameters}, the ids should be joined from a temporary table instead.
+ */
+public final class NtsLocationAccessPlan {
+    public static final int DEFAULT_MAX_PARAMETERS = 1000;
+
+    /**
+     * Ranges shorter than this are cheaper as IN list values than as two bound parameters.
+     */
+    private static final int MIN_RANGE_LENGTH = 3;
+
+    public enum Strategy {
+        /**
+         * All locations are granted, no predicate is needed.
+         */
+        ALL,
+        /**
+         * No location is granted, the query must not return any row.
+         */
+        NONE,
+        /**
+         * An IN list of {@link #getIds()}.
+         */
+        IN_LIST,
+        /**
+         * An IN list of {@link #getIds()} or one of the ranges.
+         */
+        RANGES,
+        /**
+         * Too many ids to bind, join {@link #getAllIds()} from a temporary table, or inline the ranges and ids where
+         * the query can not join a table.
+         */
+        TEMPORARY_TABLE
+    }
+
+    private static final NtsLocationAccessPlan ALL = new NtsLocationAccessPlan(Strategy.ALL, new long[0], new long[0], new long[0], new long[0]);
+    private static final NtsLocationAccessPlan NONE = new NtsLocationAccessPlan(Strategy.NONE, new long[0], new long[0], new long[0], new long[0]);
+
+    private final Strategy strategy;
+    private final long[] ids;
+    private final long[] rangeStarts;
+    private final long[] rangeEnds;
+    private final long[] allIds;
+
+    private NtsLocationAccessPlan(Strategy strategy, long[] ids, long[] rangeStarts, long[] rangeEnds, long[] allIds) {
+        this.strategy = strategy;
+        this.ids = ids;
+        this.rangeStarts = rangeStarts;
+        this.rangeEnds = rangeEnds;
+        this.allIds = allIds;
+    }
+
+    public static NtsLocationAccessPlan of(NtsLocationGrants grants) {
+        return of(grants, DEFAULT_MAX_PARAMETERS);
+    }
+
+    public static NtsLocationAccessPlan of(NtsLocationGrants grants, int maxParameters) {
+        if (grants.isGrantedAll()) {
+            return ALL;
+        }
+        long[] granted = grants.toArray();
+        if (granted.length == 0) {
+            return NONE;
+        }
+        long[] ids = new long[granted.length];
+        long[] rangeStarts = new long[granted.length / MIN_RANGE_LENGTH];
+        long[] rangeEnds = new long[rangeStarts.length];
+        int idCount = 0;
+        int rangeCount = 0;
+        int start = 0;
+        while (start < granted.length) {
+            int end = start;
+            while (end + 1 < granted.length && granted[end + 1] == granted[end] + 1) {
+                end++;
+            }
+            if (end - start + 1 >= MIN_RANGE_LENGTH) {
+                rangeStarts[rangeCount] = granted[start];
+                rangeEnds[rangeCount] = granted[end];
+                rangeCount++;
+            } else {
+                for (int i = start; i <= end; i++) {
+                    ids[idCount++] = granted[i];
+                }
+            }
+            start = end + 1;
+        }
+        Strategy strategy;
+        if (idCount + 2L * rangeCount > maxParameters) {
+            strategy = Strategy.TEMPORARY_TABLE;
+        } else {
+            strategy = rangeCount > 0 ? Strategy.RANGES : Strategy.IN_LIST;
+        }
+        return new NtsLocationAccessPlan(
+            strategy,
+            Arrays.copyOf(ids, idCount),
+            Arrays.copyOf(rangeStarts, rangeCount),
+            Arrays.copyOf(rangeEnds, rangeCount),
+            granted
+        );
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * @return the ids to match one by one, not covered by a range
+     */
+    public long[] getIds() {
+        return ids.clone();
+    }
+
+    /**
+     * @return the first id of each range, inclusive
+     */
+    public long[] getRangeStarts() {
+        return rangeStarts.clone();
+    }
+
+    /**
+     * @return the last id of each range, inclusive
+     */
+    public long[] getRangeEnds() {
+        return rangeEnds.clone();
+    }
+
+    /**
+     * @return all granted ids in ascending order, empty when {@link Strategy#ALL}
+     */
+    public long[] getAllIds() {
+        return allIds.clone();
+    }
+
+    public int getRangeCount() {
+        return rangeStarts.length;
+    }
+
+    @Override
+    public String toString() {
+        return "NtsLocationAccessPlan{" +
+            "strategy=" + strategy +
+            ", ids=" + ids.length +
+            ", ranges=" + rangeStarts.length +
+            ", allIds=" + allIds.length +
+            '}';
+    }
+}
@@ -0,0 +1,195 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.service.utils.NtsCompressedBitmap;
+import org.nentangso.core.service.utils.NtsLocationClaimUtils;
+
+import java.util.*;
+import java.util.function.LongPredicate;
+
+/**
+ * Immutable set of the locations granted to a user, decoded once from the token claim and shared by all checks.
+ * <p>
+ * Id {@code 0} means all locations are granted, any other id means that location is granted. As a
+ * {@link LongPredicate} it can be fetched once and reused to filter many ids without boxing them.
+ *
+ * @see NtsLocationClaimUtils
+ */
+public final class NtsLocationGrants implements LongPredicate {
+    public static final NtsLocationGrants EMPTY = new NtsLocationGrants(new BitSet(), null);
+    public static final NtsLocationGrants ALL = new NtsLocationGrants(null, NtsCompressedBitmap.of(NtsLocationClaimUtils.ALL_LOCATIONS));
+
+    private final BitSet bitSet;
+    private final NtsCompressedBitmap bitmap;
+    private final boolean grantedAll;
+    private volatile Set<Long> ids;
+
+    private NtsLocationGrants(BitSet bitSet, NtsCompressedBitmap bitmap) {
+        this.bitSet = bitSet;
+        this.bitmap = bitmap;
+        this.grantedAll = bitmap != null ? bitmap.contains(0L) : bitSet.get(0);
+    }
+
+    public static NtsLocationGrants valueOf(BitSet bitSet) {
+        if (bitSet == null || bitSet.isEmpty()) {
+            return EMPTY;
+        }
+        return new NtsLocationGrants((BitSet) bitSet.clone(), null);
+    }
+
+    public static NtsLocationGrants valueOf(NtsCompressedBitmap bitmap) {
+        if (bitmap == null || bitmap.isEmpty()) {
+            return EMPTY;
+        }
+        return new NtsLocationGrants(null, bitmap);
+    }
+
+    public static NtsLocationGrants of(boolean grantedAll, long... ids) {
+        if (grantedAll) {
+            return ALL;
+        }
+        return valueOf(NtsCompressedBitmap.of(ids));
+    }
+
+    /**
+     * Decode a token claim, either a Base64 encoded bit set or a compressed bitmap.
+     *
+     * @param encoded the claim value
+     * @return the grants, {@link #EMPTY} when the claim is empty
+     */
+    public static NtsLocationGrants decode(String encoded) {
+        if (encoded == null || encoded.isEmpty()) {
+            return EMPTY;
+        }
+        if (NtsLocationClaimUtils.isCompressed(encoded)) {
+            return valueOf(NtsLocationClaimUtils.decodeCompressed(encoded));
+        }
+        BitSet bitSet = BitSet.valueOf(Base64.getDecoder().decode(encoded));
+        return bitSet.isEmpty() ? EMPTY : new NtsLocationGrants(bitSet, null);
+    }
+
+    public boolean isGrantedAll() {
+        return grantedAll;
+    }
+
+    /**
+     * Check if a location is granted.
+     *
+     * @param id the location id
+     * @return true if the location is granted
+     */
+    @Override
+    public boolean test(long id) {
+        if (id <= 0) {
+            return false;
+        }
+        if (grantedAll) {
+            return true;
+        }
+        if (bitmap != null) {
+            return bitmap.contains(id);
+        }
+        return id < bitSet.length() && bitSet.get((int) id);
+    }
+
+    public boolean isGranted(Long id) {
+        return id != null && test(id);
+    }
+
+    /**
+     * Keep the granted ids.
+     *
+     * @param ids the location ids
+     * @return the granted ids in the same order, the input array itself when all are granted
+     */
+    public long[] filter(long[] ids) {
+        long[] result = null;
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (test(ids[i])) {
+                if (result != null) {
+                    result[size] = ids[i];
+                }
+                size++;
+            } else if (result == null) {
+                result = Arrays.copyOf(ids, ids.length);
+            }
+        }
+        return result == null ? ids : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Keep the granted ids, null ids are skipped.
+     *
+     * @param ids the location ids
+     * @return the granted ids in iteration order
+     */
+    public long[] filter(Collection<Long> ids) {
+        long[] result = new long[ids.size()];
+        int size = 0;
+        for (Long id : ids) {
+            if (id != null && test(id)) {
+                result[size++] = id;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    public boolean isGrantedAny(Iterable<Long> ids) {
+        for (Long id : ids) {
+            if (isGranted(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the explicitly granted location ids, without the all locations flag.
+     *
+     * @return the ids in ascending order
+     */
+    public long[] toArray() {
+        if (bitmap != null) {
+            long[] items = bitmap.toArray();
+            return items.length > 0 && items[0] == 0 ? Arrays.copyOfRange(items, 1, items.length) : items;
+        }
+        return bitSet.stream()
+            .filter(i -> i > 0)
+            .mapToLong(Integer::toUnsignedLong)
+            .toArray();
+    }
+
+    /**
+     * Get the explicitly granted location ids, without the all locations flag.
+     *
+     * @return the unmodifiable ids in ascending order
+     */
+    public Set<Long> getIds() {
+        Set<Long> result = ids;
+        if (result == null) {
+            Set<Long> items = new LinkedHashSet<>();
+            if (bitmap != null) {
+                bitmap.forEach(id -> {
+                    if (id > 0) {
+                        items.add(id);
+                    }
+                });
+            } else {
+                for (int i = bitSet.nextSetBit(1); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+                    items.add(Integer.toUnsignedLong(i));
+                }
+            }
+            result = Collections.unmodifiableSet(items);
+            ids = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "NtsLocationGrants{" +
+            "grantedAll=" + grantedAll +
+            ", size=" + getIds().size() +
+            '}';
+    }
+}
@@ -0,0 +1,96 @@
+package org.nentangso.core.service.helper.location;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of decoded {@link NtsLocationGrants} by token id, an entry is dropped when its token expires.
+ */
+public class NtsLocationGrantsCache {
+    public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+    /**
+     * The lifetime of entries whose token has no expiration.
+     */
+    private static final long DEFAULT_TTL_MILLIS = 300_000L;
+
+    private final int maximumSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public NtsLocationGrantsCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public NtsLocationGrantsCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Get the grants of a token, decoding the claim only when the token is not cached yet.
+     *
+     * @param tokenId   the token id, {@code jti} claim, nothing is cached when null
+     * @param encoded   the encoded claim value
+     * @param expiresAt the token expiration, {@code exp} claim
+     * @param decoder   decode the claim value
+     * @return the grants
+     */
+    public NtsLocationGrants get(String tokenId, String encoded, Instant expiresAt, Function<String, NtsLocationGrants> decoder) {
+        if (tokenId == null || maximumSize <= 0) {
+            return decoder.apply(encoded);
+        }
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(tokenId);
+        // the claim is compared too, a token id is only unique per issuer
+        if (entry != null && entry.expiresAt > now && entry.encoded.equals(encoded)) {
+            return entry.grants;
+        }
+        NtsLocationGrants grants = decoder.apply(encoded);
+        long expiresAtMillis = expiresAt != null ? expiresAt.toEpochMilli() : now + DEFAULT_TTL_MILLIS;
+        if (expiresAtMillis <= now) {
+            return grants;
+        }
+        if (entries.size() >= maximumSize) {
+            evict(now);
+        }
+        entries.put(tokenId, new Entry(encoded, grants, expiresAtMillis));
+        return grants;
+    }
+
+    /**
+     * Remove the expired entries, or all of them when the cache is still full.
+     */
+    private void evict(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt <= now) {
+                iterator.remove();
+            }
+        }
+        if (entries.size() >= maximumSize) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final String encoded;
+        private final NtsLocationGrants grants;
+        private final long expiresAt;
+
+        private Entry(String encoded, NtsLocationGrants grants, long expiresAt) {
+            this.encoded = encoded;
+            this.grants = grants;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.service.dto.NtsAddressDTO;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Immutable secondary indexes over a snapshot of locations, built once per snapshot load.
+ * <p>
+ * Country and province codes are matched case-insensitively, custom attributes by exact key and value. All lists are
+ * ordered by id and unmodifiable, so they can be paged with an id cursor.
+ *
+ * @param <T> the location type
+ */
+public final class NtsLocationIndex<T extends NtsLocationDTO> {
+    private final Map<Long, T> source;
+    private final List<T> all;
+    private final List<T> active;
+    private final Map<String, List<T>> byCountryCode;
+    private final Map<String, List<T>> byProvinceCode;
+    private final Map<String, Map<String, List<T>>> byCustomAttribute;
+    private volatile String version;
+    private volatile NtsLocationSpatialIndex<T> spatialIndex;
+
+    private NtsLocationIndex(Map<Long, T> source, String version) {
+        this.source = source;
+        this.version = version;
+        List<T> sorted = new ArrayList<>(source.size());
+        for (T location : source.values()) {
+            if (location != null && location.getId() != null) {
+                sorted.add(location);
+            }
+        }
+        sorted.sort(Comparator.comparing(NtsLocationDTO::getId));
+        List<T> activeItems = new ArrayList<>();
+        Map<String, List<T>> countries = new HashMap<>();
+        Map<String, List<T>> provinces = new HashMap<>();
+        Map<String, Map<String, List<T>>> attributes = new HashMap<>();
+        for (T location : sorted) {
+            if (location.isActive()) {
+                activeItems.add(location);
+            }
+            NtsAddressDTO address = location.getAddress();
+            String countryCode = address != null ? normalizeCode(address.getCountryCode()) : null;
+            if (countryCode != null) {
+                countries.computeIfAbsent(countryCode, k -> new ArrayList<>()).add(location);
+                String provinceCode = normalizeCode(address.getProvinceCode());
+                if (provinceCode != null) {
+                    provinces.computeIfAbsent(provinceKey(countryCode, provinceCode), k -> new ArrayList<>()).add(location);
+                }
+            }
+            List<? extends NtsAttributeDTO> customAttributes = location.getCustomAttributes();
+            if (customAttributes != null) {
+                for (NtsAttributeDTO attribute : customAttributes) {
+                    if (attribute == null || attribute.getKey() == null || attribute.getValue() == null) {
+                        continue;
+                    }
+                    attributes.computeIfAbsent(attribute.getKey(), k -> new HashMap<>())
+                        .computeIfAbsent(attribute.getValue(), k -> new ArrayList<>())
+                        .add(location);
+                }
+            }
+        }
+        this.all = Collections.unmodifiableList(sorted);
+        this.active = Collections.unmodifiableList(activeItems);
+        this.byCountryCode = freeze(countries);
+        this.byProvinceCode = freeze(provinces);
+        Map<String, Map<String, List<T>>> frozenAttributes = new HashMap<>();
+        attributes.forEach((key, values) -> frozenAttributes.put(key, freeze(values)));
+        this.byCustomAttribute = Collections.unmodifiableMap(frozenAttributes);
+    }
+
+    /**
+     * Build the indexes of a snapshot.
+     *
+     * @param locations the snapshot, must not be modified afterwards
+     * @return the indexes
+     */
+    public static <T extends NtsLocationDTO> NtsLocationIndex<T> of(Map<Long, T> locations) {
+        return of(locations, null);
+    }
+
+    /**
+     * Build the indexes of a snapshot whose entity tag is already known.
+     *
+     * @param locations the snapshot, must not be modified afterwards
+     * @param version   the entity tag of the snapshot, null to compute it on first use
+     * @return the indexes
+     * @see NtsLocationVersion#of(Collection)
+     */
+    public static <T extends NtsLocationDTO> NtsLocationIndex<T> of(Map<Long, T> locations, String version) {
+        return new NtsLocationIndex<>(locations != null ? locations : Collections.emptyMap(), version);
+    }
+
+    /**
+     * Check if this index was built from a snapshot with the given entity tag, so it can be reused for another
+     * instance of the same snapshot.
+     *
+     * @param version the entity tag of the snapshot
+     * @return true when the tags are equal
+     */
+    public boolean isIndexOf(String version) {
+        return version != null && version.equals(getVersion());
+    }
+
+    public List<T> findAll() {
+        return all;
+    }
+
+    public Optional<T> findById(Long id) {
+        return Optional.ofNullable(id != null ? source.get(id) : null);
+    }
+
+    public List<T> findActive() {
+        return active;
+    }
+
+    public List<T> findByCountryCode(String countryCode) {
+        String key = normalizeCode(countryCode);
+        return key != null ? byCountryCode.getOrDefault(key, Collections.emptyList()) : Collections.emptyList();
+    }
+
+    public List<T> findByProvinceCode(String countryCode, String provinceCode) {
+        String country = normalizeCode(countryCode);
+        String province = normalizeCode(provinceCode);
+        if (country == null || province == null) {
+            return Collections.emptyList();
+        }
+        return byProvinceCode.getOrDefault(provinceKey(country, province), Collections.emptyList());
+    }
+
+    public List<T> findByCustomAttribute(String key, String value) {
+        Map<String, List<T>> values = byCustomAttribute.get(key);
+        return values != null ? values.getOrDefault(value, Collections.emptyList()) : Collections.emptyList();
+    }
+
+    /**
+     * Stream the locations matching all given filters, using the most selective index.
+     *
+     * @param countryCode  the country code, null for any
+     * @param provinceCode the province code, ignored without country code
+     * @param active       the active flag, null for any
+     * @param sinceId      only the locations with a greater id, null to start from the first one
+     * @return the locations ordered by id
+     */
+    public Stream<T> stream(String countryCode, String provinceCode, Boolean active, Long sinceId) {
+        List<T> candidates;
+        if (normalizeCode(countryCode) != null && normalizeCode(provinceCode) != null) {
+            candidates = findByProvinceCode(countryCode, provinceCode);
+        } else if (normalizeCode(countryCode) != null) {
+            candidates = findByCountryCode(countryCode);
+        } else if (Boolean.TRUE.equals(active)) {
+            candidates = this.active;
+        } else {
+            candidates = all;
+        }
+        Stream<T> result = candidates.subList(indexAfter(candidates, sinceId), candidates.size()).stream();
+        if (active != null && candidates != this.active) {
+            result = result.filter(location -> location.isActive() == active);
+        }
+        return result;
+    }
+
+    private static int indexAfter(List<? extends NtsLocationDTO> sorted, Long sinceId) {
+        if (sinceId == null) {
+            return 0;
+        }
+        int low = 0;
+        int high = sorted.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted.get(mid).getId() <= sinceId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Get the indexed values of a custom attribute.
+     *
+     * @param key the attribute key
+     * @return the distinct values
+     */
+    public Set<String> getCustomAttributeValues(String key) {
+        Map<String, List<T>> values = byCustomAttribute.get(key);
+        return values != null ? values.keySet() : Collections.emptySet();
+    }
+
+    /**
+     * Get the entity tag of the snapshot, computed once.
+     *
+     * @return the quoted entity tag
+     * @see NtsLocationVersion
+     */
+    public String getVersion() {
+        String result = version;
+        if (result == null) {
+            result = NtsLocationVersion.of(source.values());
+            version = result;
+        }
+        return result;
+    }
+
+    /**
+     * Get the spatial index of the snapshot, built on first use and kept while the attribute keys are the same.
+     *
+     * @param latitudeKey  the custom attribute key of the latitude
+     * @param longitudeKey the custom attribute key of the longitude
+     * @return the spatial index
+     */
+    public NtsLocationSpatialIndex<T> getSpatialIndex(String latitudeKey, String longitudeKey) {
+        NtsLocationSpatialIndex<T> result = spatialIndex;
+        if (result == null || !result.isIndexOf(latitudeKey, longitudeKey)) {
+            result = NtsLocationSpatialIndex.of(all, latitudeKey, longitudeKey);
+            spatialIndex = result;
+        }
+        return result;
+    }
+
+    public int size() {
+        return source.size();
+    }
+
+    private static String normalizeCode(String code) {
+        if (code == null || code.isBlank()) {
+            return null;
+        }
+        return code.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static String provinceKey(String countryCode, String provinceCode) {
+        return countryCode + '-' + provinceCode;
+    }
+
+    private static <T> Map<String, List<T>> freeze(Map<String, List<T>> items) {
+        Map<String, List<T>> result = new HashMap<>(items.size() * 4 / 3 + 1);
+        items.forEach((key, values) -> result.put(key, Collections.unmodifiableList(values)));
+        return Collections.unmodifiableMap(result);
+    }
+}
@@ -0,0 +1,327 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Immutable k-d tree over the coordinates of a snapshot of locations, read from two custom attributes.
+ * <p>
+ * Coordinates are stored as points on the unit sphere, the straight line distance between two points grows with the
+ * great-circle distance, so the tree answers nearest and radius queries exactly, across the antimeridian and the poles.
+ * Locations without valid coordinates are not indexed.
+ *
+ * @param <T> the location type
+ */
+public final class NtsLocationSpatialIndex<T extends NtsLocationDTO> {
+    /**
+     * The mean earth radius.
+     */
+    public static final double EARTH_RADIUS_METERS = 6_371_008.8d;
+
+    private final String latitudeKey;
+    private final String longitudeKey;
+    private final List<Point<T>> nodes;
+
+    private NtsLocationSpatialIndex(String latitudeKey, String longitudeKey, List<Point<T>> points) {
+        this.latitudeKey = latitudeKey;
+        this.longitudeKey = longitudeKey;
+        build(points, 0, points.size(), 0);
+        this.nodes = points;
+    }
+
+    /**
+     * Build the tree of a snapshot.
+     *
+     * @param locations    the locations
+     * @param latitudeKey  the custom attribute key of the latitude, in decimal degrees
+     * @param longitudeKey the custom attribute key of the longitude, in decimal degrees
+     * @return the tree
+     */
+    public static <T extends NtsLocationDTO> NtsLocationSpatialIndex<T> of(Collection<T> locations, String latitudeKey, String longitudeKey) {
+        List<Point<T>> points = new ArrayList<>();
+        if (locations != null) {
+            for (T location : locations) {
+                if (location == null) {
+                    continue;
+                }
+                Double latitude = parseCoordinate(location, latitudeKey, 90d);
+                Double longitude = parseCoordinate(location, longitudeKey, 180d);
+                if (latitude != null && longitude != null) {
+                    points.add(new Point<>(location, latitude, longitude));
+                }
+            }
+        }
+        return new NtsLocationSpatialIndex<>(latitudeKey, longitudeKey, points);
+    }
+
+    /**
+     * Check if this tree was built from the given attribute keys.
+     *
+     * @param latitudeKey  the custom attribute key of the latitude
+     * @param longitudeKey the custom attribute key of the longitude
+     * @return true when both keys are the same
+     */
+    public boolean isIndexOf(String latitudeKey, String longitudeKey) {
+        return Objects.equals(this.latitudeKey, latitudeKey) && Objects.equals(this.longitudeKey, longitudeKey);
+    }
+
+    /**
+     * Find the nearest locations matching a filter.
+     *
+     * @param latitude  the latitude in decimal degrees
+     * @param longitude the longitude in decimal degrees
+     * @param limit     the maximum number of locations
+     * @param filter    the locations to consider, null for all
+     * @return the locations ordered by distance
+     */
+    public List<Neighbor<T>> findNearest(double latitude, double longitude, int limit, Predicate<? super T> filter) {
+        validateCoordinates(latitude, longitude);
+        if (limit <= 0 || nodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double[] target = toVector(latitude, longitude);
+        PriorityQueue<Candidate<T>> heap = new PriorityQueue<>(
+            Math.min(limit, nodes.size()) + 1,
+            Comparator.comparingDouble((Candidate<T> candidate) -> candidate.chord2).reversed()
+        );
+        searchNearest(0, nodes.size(), 0, target, limit, filter, heap);
+        List<Candidate<T>> candidates = new ArrayList<>(heap);
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.chord2));
+        return toNeighbors(candidates);
+    }
+
+    /**
+     * Find the locations within a great-circle distance, matching a filter.
+     *
+     * @param latitude  the latitude in decimal degrees
+     * @param longitude the longitude in decimal degrees
+     * @param radius    the distance in meters
+     * @param filter    the locations to consider, null for all
+     * @return the locations ordered by distance
+     */
+    public List<Neighbor<T>> findWithinRadius(double latitude, double longitude, double radius, Predicate<? super T> filter) {
+        validateCoordinates(latitude, longitude);
+        if (!(radius >= 0d) || nodes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        double angle = Math.min(radius / EARTH_RADIUS_METERS, Math.PI);
+        double chord = 2d * Math.sin(angle / 2d);
+        List<Candidate<T>> candidates = new ArrayList<>();
+        searchRadius(0, nodes.size(), 0, toVector(latitude, longitude), chord * chord, filter, candidates);
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.chord2));
+        return toNeighbors(candidates);
+    }
+
+    /**
+     * Compute the great-circle distance between two coordinates.
+     *
+     * @return the distance in meters
+     */
+    public static double distance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double[] a = toVector(latitude1, longitude1);
+        double[] b = toVector(latitude2, longitude2);
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return toMeters(dx * dx + dy * dy + dz * dz);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    private void searchNearest(int lo, int hi, int depth, double[] target, int limit, Predicate<? super T> filter, PriorityQueue<Candidate<T>> heap) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        Point<T> point = nodes.get(mid);
+        if (filter == null || filter.test(point.location)) {
+            double chord2 = point.chord2(target);
+            if (heap.size() < limit) {
+                heap.add(new Candidate<>(point, chord2));
+            } else if (chord2 < heap.peek().chord2) {
+                heap.poll();
+                heap.add(new Candidate<>(point, chord2));
+            }
+        }
+        int axis = depth % 3;
+        double diff = target[axis] - point.get(axis);
+        if (diff < 0d) {
+            searchNearest(lo, mid, depth + 1, target, limit, filter, heap);
+            if (heap.size() < limit || diff * diff < heap.peek().chord2) {
+                searchNearest(mid + 1, hi, depth + 1, target, limit, filter, heap);
+            }
+        } else {
+            searchNearest(mid + 1, hi, depth + 1, target, limit, filter, heap);
+            if (heap.size() < limit || diff * diff < heap.peek().chord2) {
+                searchNearest(lo, mid, depth + 1, target, limit, filter, heap);
+            }
+        }
+    }
+
+    private void searchRadius(int lo, int hi, int depth, double[] target, double maxChord2, Predicate<? super T> filter, List<Candidate<T>> result) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        Point<T> point = nodes.get(mid);
+        double chord2 = point.chord2(target);
+        if (chord2 <= maxChord2 && (filter == null || filter.test(point.location))) {
+            result.add(new Candidate<>(point, chord2));
+        }
+        int axis = depth % 3;
+        double diff = target[axis] - point.get(axis);
+        if (diff < 0d || diff * diff <= maxChord2) {
+            searchRadius(lo, mid, depth + 1, target, maxChord2, filter, result);
+        }
+        if (diff >= 0d || diff * diff <= maxChord2) {
+            searchRadius(mid + 1, hi, depth + 1, target, maxChord2, filter, result);
+        }
+    }
+
+    /**
+     * Arrange the points in place, the median of each range on the axis of its depth is stored in the middle.
+     */
+    private static <T extends NtsLocationDTO> void build(List<Point<T>> points, int lo, int hi, int depth) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int axis = depth % 3;
+        points.subList(lo, hi).sort(Comparator.comparingDouble(point -> point.get(axis)));
+        int mid = (lo + hi) >>> 1;
+        build(points, lo, mid, depth + 1);
+        build(points, mid + 1, hi, depth + 1);
+    }
+
+    private static <T extends NtsLocationDTO> List<Neighbor<T>> toNeighbors(List<Candidate<T>> candidates) {
+        List<Neighbor<T>> result = new ArrayList<>(candidates.size());
+        for (Candidate<T> candidate : candidates) {
+            Point<T> point = candidate.point;
+            result.add(new Neighbor<>(point.location, point.latitude, point.longitude, toMeters(candidate.chord2)));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static double toMeters(double chord2) {
+        double chord = Math.min(Math.sqrt(chord2), 2d);
+        return 2d * Math.asin(chord / 2d) * EARTH_RADIUS_METERS;
+    }
+
+    private static double[] toVector(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude);
+        double lambda = Math.toRadians(longitude);
+        double cosPhi = Math.cos(phi);
+        return new double[]{cosPhi * Math.cos(lambda), cosPhi * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    private static void validateCoordinates(double latitude, double longitude) {
+        if (!(Math.abs(latitude) <= 90d) || !(Math.abs(longitude) <= 180d)) {
+            throw new IllegalArgumentException(String.format("Invalid coordinates %s,%s", latitude, longitude));
+        }
+    }
+
+    private static Double parseCoordinate(NtsLocationDTO location, String key, double bound) {
+        List<? extends NtsAttributeDTO> attributes = location.getCustomAttributes();
+        if (attributes == null || key == null) {
+            return null;
+        }
+        for (NtsAttributeDTO attribute : attributes) {
+            if (attribute == null || !key.equals(attribute.getKey()) || attribute.getValue() == null) {
+                continue;
+            }
+            try {
+                double value = Double.parseDouble(attribute.getValue().trim());
+                return Math.abs(value) <= bound ? value : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A location found by a spatial query.
+     *
+     * @param <T> the location type
+     */
+    public static final class Neighbor<T extends NtsLocationDTO> {
+        private final T location;
+        private final double latitude;
+        private final double longitude;
+        private final double distance;
+
+        private Neighbor(T location, double latitude, double longitude, double distance) {
+            this.location = location;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.distance = distance;
+        }
+
+        public T getLocation() {
+            return location;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+
+        /**
+         * @return the great-circle distance to the queried coordinates, in meters
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        // prettier-ignore
+        @Override
+        public String toString() {
+            return "Neighbor{" +
+                "id=" + location.getId() +
+                ", distance=" + distance +
+                '}';
+        }
+    }
+
+    private static final class Point<T extends NtsLocationDTO> {
+        private final T location;
+        private final double latitude;
+        private final double longitude;
+        private final double[] vector;
+
+        private Point(T location, double latitude, double longitude) {
+            this.location = location;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.vector = toVector(latitude, longitude);
+        }
+
+        private double get(int axis) {
+            return vector[axis];
+        }
+
+        private double chord2(double[] target) {
+            double dx = vector[0] - target[0];
+            double dy = vector[1] - target[1];
+            double dz = vector[2] - target[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+    }
+
+    private static final class Candidate<T extends NtsLocationDTO> {
+        private final Point<T> point;
+        private final double chord2;
+
+        private Candidate(Point<T> point, double chord2) {
+            this.point = point;
+            this.chord2 = chord2;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.service.dto.NtsAddressDTO;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Content based entity tags of locations, the same snapshot gives the same tag on every node.
+ */
+public final class NtsLocationVersion {
+    private static final int TAG_BYTES = 16;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private NtsLocationVersion() {
+    }
+
+    /**
+     * Compute the entity tag of a snapshot, independent of the iteration order.
+     *
+     * @param locations the locations
+     * @return the quoted strong entity tag
+     */
+    public static String of(Collection<? extends NtsLocationDTO> locations) {
+        List<NtsLocationDTO> items = new ArrayList<>(locations.size());
+        for (NtsLocationDTO location : locations) {
+            if (location != null) {
+                items.add(location);
+            }
+        }
+        items.sort(Comparator.comparing(NtsLocationDTO::getId, Comparator.nullsFirst(Comparator.naturalOrder())));
+        MessageDigest digest = newDigest();
+        for (NtsLocationDTO location : items) {
+            update(digest, location);
+        }
+        return toTag(digest.digest());
+    }
+
+    /**
+     * Compute the entity tag of a location.
+     *
+     * @param location the location
+     * @return the quoted strong entity tag
+     */
+    public static String of(NtsLocationDTO location) {
+        MessageDigest digest = newDigest();
+        update(digest, location);
+        return toTag(digest.digest());
+    }
+
+    /**
+     * Check an If-None-Match header against an entity tag, weak comparison as required for GET.
+     *
+     * @param ifNoneMatch the header value, may be null
+     * @param tag         the current entity tag
+     * @return true if the client already has this version
+     */
+    public static boolean matches(String ifNoneMatch, String tag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank() || tag == null) {
+            return false;
+        }
+        String current = stripWeak(tag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if ("*".equals(value) || current.equals(stripWeak(value))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static void update(MessageDigest digest, NtsLocationDTO location) {
+        StringBuilder sb = new StringBuilder(256);
+        append(sb, location.getId());
+        append(sb, location.getName());
+        append(sb, location.isAddressVerified());
+        append(sb, location.isActive());
+        append(sb, location.getCreatedAt());
+        append(sb, location.getUpdatedAt());
+        append(sb, location.getDeactivatedAt());
+        NtsAddressDTO address = location.getAddress();
+        if (address != null) {
+            append(sb, address.getPhone());
+            append(sb, address.getAddress1());
+            append(sb, address.getAddress2());
+            append(sb, address.getCountry());
+            append(sb, address.getCountryCode());
+            append(sb, address.getLocalizedCountryName());
+            append(sb, address.getCity());
+            append(sb, address.getProvince());
+            append(sb, address.getProvinceCode());
+            append(sb, address.getLocalizedProvinceName());
+            append(sb, address.getZip());
+        }
+        List<? extends NtsAttributeDTO> attributes = location.getCustomAttributes();
+        if (attributes != null) {
+            for (NtsAttributeDTO attribute : attributes) {
+                if (attribute != null) {
+                    append(sb, attribute.getKey());
+                    append(sb, attribute.getValue());
+                }
+            }
+        }
+        sb.append('\n');
+        digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void append(StringBuilder sb, Object value) {
+        if (value == null) {
+            sb.append('\u0000');
+        } else {
+            String text = value.toString();
+            sb.append(text.length()).append(':').append(text);
+        }
+        sb.append('|');
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toTag(byte[] hash) {
+        char[] chars = new char[TAG_BYTES * 2 + 2];
+        chars[0] = '"';
+        for (int i = 0; i < TAG_BYTES; i++) {
+            chars[1 + i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            chars[2 + i * 2] = HEX[hash[i] & 0xF];
+        }
+        chars[chars.length - 1] = '"';
+        return new String(chars);
+    }
+}
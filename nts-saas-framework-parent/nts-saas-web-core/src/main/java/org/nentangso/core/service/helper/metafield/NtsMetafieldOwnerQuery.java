@@ -0,0 +1,197 @@
+package org.nentangso.core.service.helper.metafield;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.math.BigDecimal;
+
+/**
+ * Find the owners having a metafield of a namespace and key whose value is equal to a text, starts with a text or is
+ * in a number range, a page at a time ordered by owner id.
+ * <p>
+ * Pages are keyset paginated: the next page starts after the last owner id of the previous one.
+ */
+public final class NtsMetafieldOwnerQuery {
+    public static final int DEFAULT_LIMIT = 250;
+    public static final int MAX_LIMIT = 1000;
+
+    private final String ownerResource;
+    private final String namespace;
+    private final String key;
+    private final String value;
+    private final String valuePrefix;
+    private final BigDecimal minValue;
+    private final BigDecimal maxValue;
+    private final Long afterOwnerId;
+    private final int limit;
+
+    private NtsMetafieldOwnerQuery(Builder builder) {
+        this.ownerResource = builder.ownerResource;
+        this.namespace = builder.namespace;
+        this.key = builder.key;
+        this.value = builder.value;
+        this.valuePrefix = builder.valuePrefix;
+        this.minValue = builder.minValue;
+        this.maxValue = builder.maxValue;
+        this.afterOwnerId = builder.afterOwnerId;
+        this.limit = builder.limit;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public String getOwnerResource() {
+        return ownerResource;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the value to be equal to, or null
+     */
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @return the prefix the value starts with, or null
+     */
+    public String getValuePrefix() {
+        return valuePrefix;
+    }
+
+    /**
+     * @return the inclusive lower bound of the number value, or null
+     */
+    public BigDecimal getMinValue() {
+        return minValue;
+    }
+
+    /**
+     * @return the inclusive upper bound of the number value, or null
+     */
+    public BigDecimal getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @return the last owner id of the previous page, or null for the first page
+     */
+    public Long getAfterOwnerId() {
+        return afterOwnerId;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "NtsMetafieldOwnerQuery{" +
+            "ownerResource='" + ownerResource + '\'' +
+            ", namespace='" + namespace + '\'' +
+            ", key='" + key + '\'' +
+            ", value='" + value + '\'' +
+            ", valuePrefix='" + valuePrefix + '\'' +
+            ", minValue=" + minValue +
+            ", maxValue=" + maxValue +
+            ", afterOwnerId=" + afterOwnerId +
+            ", limit=" + limit +
+            '}';
+    }
+
+    public static final class Builder {
+        private String ownerResource;
+        private String namespace;
+        private String key;
+        private String value;
+        private String valuePrefix;
+        private BigDecimal minValue;
+        private BigDecimal maxValue;
+        private Long afterOwnerId;
+        private int limit = DEFAULT_LIMIT;
+
+        private Builder() {
+        }
+
+        public Builder ownerResource(String ownerResource) {
+            this.ownerResource = ownerResource;
+            return this;
+        }
+
+        public Builder namespace(String namespace) {
+            this.namespace = namespace;
+            return this;
+        }
+
+        public Builder key(String key) {
+            this.key = key;
+            return this;
+        }
+
+        public Builder value(String value) {
+            this.value = value;
+            return this;
+        }
+
+        public Builder valuePrefix(String valuePrefix) {
+            this.valuePrefix = valuePrefix;
+            return this;
+        }
+
+        public Builder minValue(BigDecimal minValue) {
+            this.minValue = minValue;
+            return this;
+        }
+
+        public Builder maxValue(BigDecimal maxValue) {
+            this.maxValue = maxValue;
+            return this;
+        }
+
+        public Builder afterOwnerId(Long afterOwnerId) {
+            this.afterOwnerId = afterOwnerId;
+            return this;
+        }
+
+        public Builder limit(int limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * @return the query
+         * @throws IllegalArgumentException if the owner resource, namespace or key is missing, if not exactly one kind
+         *                                  of value condition is set, or if the limit is out of range
+         */
+        public NtsMetafieldOwnerQuery build() {
+            if (StringUtils.isAnyBlank(ownerResource, namespace, key)) {
+                throw new IllegalArgumentException("Owner resource, namespace and key are required");
+            }
+            int conditions = (value != null ? 1 : 0) + (valuePrefix != null ? 1 : 0) + (minValue != null || maxValue != null ? 1 : 0);
+            if (conditions != 1) {
+                throw new IllegalArgumentException("Exactly one of value, value prefix or value range is required");
+            }
+            if (value != null && value.length() > NtsMetafieldValueIndex.TEXT_MAX_LENGTH) {
+                throw new IllegalArgumentException(String.format("Value longer than %d characters is not indexed", NtsMetafieldValueIndex.TEXT_MAX_LENGTH));
+            }
+            if (valuePrefix != null && (valuePrefix.isEmpty() || valuePrefix.length() > NtsMetafieldValueIndex.TEXT_MAX_LENGTH)) {
+                throw new IllegalArgumentException(String.format("Value prefix must have 1 to %d characters", NtsMetafieldValueIndex.TEXT_MAX_LENGTH));
+            }
+            if (minValue != null && maxValue != null && minValue.compareTo(maxValue) > 0) {
+                throw new IllegalArgumentException(String.format("Min value %s is greater than max value %s", minValue, maxValue));
+            }
+            if (limit < 1 || limit > MAX_LIMIT) {
+                throw new IllegalArgumentException(String.format("Limit must be between 1 and %d, got %d", MAX_LIMIT, limit));
+            }
+            return new NtsMetafieldOwnerQuery(this);
+        }
+    }
+}
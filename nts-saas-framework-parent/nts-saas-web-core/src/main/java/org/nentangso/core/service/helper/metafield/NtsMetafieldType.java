@@ -0,0 +1,171 @@
+package org.nentangso.core.service.helper.metafield;
+
+import java.math.BigDecimal;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The parsing and validation rules of a metafield type, compiled once per type name and cached.
+ * <p>
+ * Types of the {@code list.} family are JSON arrays whose elements follow the rules of the element type. Unknown types
+ * are accepted as text without validation.
+ */
+public final class NtsMetafieldType {
+    public static final String LIST_PREFIX = "list.";
+
+    private static final int MAX_CACHED_TYPES = 256;
+    private static final Map<String, NtsMetafieldType> TYPES = new ConcurrentHashMap<>();
+    private static final Pattern INTEGER_PATTERN = Pattern.compile("[-+]?\\d{1,18}");
+    private static final Pattern COLOR_PATTERN = Pattern.compile("#[0-9A-Fa-f]{6}");
+    private static final Pattern URL_PATTERN = Pattern.compile("(https?|mailto|sms|tel):\\S+");
+    private static final Pattern SINGLE_LINE_PATTERN = Pattern.compile("[^\\r\\n]*");
+
+    public enum Kind {
+        TEXT, INTEGER, DECIMAL, BOOLEAN, DATE, DATE_TIME, JSON
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final Pattern pattern;
+    private final NtsMetafieldType elementType;
+
+    private NtsMetafieldType(String name, Kind kind, Pattern pattern, NtsMetafieldType elementType) {
+        this.name = name;
+        this.kind = kind;
+        this.pattern = pattern;
+        this.elementType = elementType;
+    }
+
+    /**
+     * @param name the type name
+     * @return the cached rules of the type
+     */
+    public static NtsMetafieldType of(String name) {
+        String key = name == null ? "" : name;
+        NtsMetafieldType type = TYPES.get(key);
+        if (type != null) {
+            return type;
+        }
+        // compiled outside of the map, a list type compiles its element type first
+        type = compile(key);
+        if (TYPES.size() >= MAX_CACHED_TYPES) {
+            return type;
+        }
+        NtsMetafieldType previous = TYPES.putIfAbsent(key, type);
+        return previous != null ? previous : type;
+    }
+
+    private static NtsMetafieldType compile(String name) {
+        if (name.startsWith(LIST_PREFIX)) {
+            return new NtsMetafieldType(name, Kind.JSON, null, of(name.substring(LIST_PREFIX.length())));
+        }
+        switch (name) {
+            case "single_line_text_field":
+                return new NtsMetafieldType(name, Kind.TEXT, SINGLE_LINE_PATTERN, null);
+            case "color":
+                return new NtsMetafieldType(name, Kind.TEXT, COLOR_PATTERN, null);
+            case "url":
+                return new NtsMetafieldType(name, Kind.TEXT, URL_PATTERN, null);
+            case "number_integer":
+                return new NtsMetafieldType(name, Kind.INTEGER, INTEGER_PATTERN, null);
+            case "number_decimal":
+                return new NtsMetafieldType(name, Kind.DECIMAL, null, null);
+            case "boolean":
+                return new NtsMetafieldType(name, Kind.BOOLEAN, null, null);
+            case "date":
+                return new NtsMetafieldType(name, Kind.DATE, null, null);
+            case "date_time":
+                return new NtsMetafieldType(name, Kind.DATE_TIME, null, null);
+            case "json":
+            case "json_string":
+            case "dimension":
+            case "money":
+            case "rating":
+            case "volume":
+            case "weight":
+                return new NtsMetafieldType(name, Kind.JSON, null, null);
+            default:
+                return new NtsMetafieldType(name, Kind.TEXT, null, null);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the type of the elements of a list type, or null
+     */
+    public NtsMetafieldType getElementType() {
+        return elementType;
+    }
+
+    /**
+     * Parse a value of this type, a JSON value is left to the caller.
+     *
+     * @param value the raw value, null is allowed for every type
+     * @return the typed value
+     * @throws IllegalArgumentException with the validation message if the value does not match the type
+     */
+    public NtsMetafieldTypedValue parse(String value) {
+        if (value == null) {
+            return NtsMetafieldTypedValue.NONE;
+        }
+        if (pattern != null && !pattern.matcher(value).matches()) {
+            throw invalid();
+        }
+        switch (kind) {
+            case INTEGER:
+                return NtsMetafieldTypedValue.ofNumber(new BigDecimal(value));
+            case DECIMAL:
+                BigDecimal number = NtsMetafieldValueIndex.number(value);
+                if (number == null) {
+                    throw invalid();
+                }
+                return NtsMetafieldTypedValue.ofNumber(number);
+            case BOOLEAN:
+                if (!"true".equals(value) && !"false".equals(value)) {
+                    throw invalid();
+                }
+                return NtsMetafieldTypedValue.ofBoolean(Boolean.valueOf(value));
+            case DATE:
+                try {
+                    return NtsMetafieldTypedValue.ofTimestamp(LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant());
+                } catch (DateTimeParseException e) {
+                    throw invalid();
+                }
+            case DATE_TIME:
+                return NtsMetafieldTypedValue.ofTimestamp(parseDateTime(value));
+            default:
+                return NtsMetafieldTypedValue.NONE;
+        }
+    }
+
+    /**
+     * A date time without offset is in UTC.
+     */
+    private Instant parseDateTime(String value) {
+        try {
+            TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(value, OffsetDateTime::from, LocalDateTime::from);
+            if (parsed instanceof OffsetDateTime) {
+                return ((OffsetDateTime) parsed).toInstant();
+            }
+            return ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            throw invalid();
+        }
+    }
+
+    private IllegalArgumentException invalid() {
+        return new IllegalArgumentException(String.format("is invalid for type %s", name));
+    }
+}
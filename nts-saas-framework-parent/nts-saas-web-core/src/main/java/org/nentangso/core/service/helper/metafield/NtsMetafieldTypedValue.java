@@ -0,0 +1,54 @@
+package org.nentangso.core.service.helper.metafield;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * The value of a metafield parsed once according to its type, at most one of the typed parts is set.
+ */
+public final class NtsMetafieldTypedValue {
+    static final NtsMetafieldTypedValue NONE = new NtsMetafieldTypedValue(null, null, null);
+
+    private final BigDecimal number;
+    private final Instant timestamp;
+    private final Boolean bool;
+
+    private NtsMetafieldTypedValue(BigDecimal number, Instant timestamp, Boolean bool) {
+        this.number = number;
+        this.timestamp = timestamp;
+        this.bool = bool;
+    }
+
+    static NtsMetafieldTypedValue ofNumber(BigDecimal number) {
+        return new NtsMetafieldTypedValue(number, null, null);
+    }
+
+    static NtsMetafieldTypedValue ofTimestamp(Instant timestamp) {
+        return new NtsMetafieldTypedValue(null, timestamp, null);
+    }
+
+    static NtsMetafieldTypedValue ofBoolean(Boolean bool) {
+        return new NtsMetafieldTypedValue(null, null, bool);
+    }
+
+    /**
+     * @return the value of an integer or decimal type, or null
+     */
+    public BigDecimal getNumber() {
+        return number;
+    }
+
+    /**
+     * @return the value of a date or date time type, a date is the start of the day in UTC, or null
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the value of a boolean type, or null
+     */
+    public Boolean getBoolean() {
+        return bool;
+    }
+}
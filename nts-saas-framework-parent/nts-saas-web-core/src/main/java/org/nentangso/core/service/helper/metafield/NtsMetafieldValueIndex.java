@@ -0,0 +1,74 @@
+package org.nentangso.core.service.helper.metafield;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.regex.Pattern;
+
+/**
+ * Normalized copies of a metafield value, stored beside the unbounded value so that owners can be looked up by value
+ * with an index: a bounded text for equality and prefix matches, and a decimal for range matches.
+ */
+public final class NtsMetafieldValueIndex {
+    /**
+     * Values longer than this are not indexed as text.
+     */
+    public static final int TEXT_MAX_LENGTH = 255;
+    /**
+     * Precision and scale of the indexed number column.
+     */
+    public static final int NUMBER_PRECISION = 38;
+    public static final int NUMBER_SCALE = 10;
+    public static final char LIKE_ESCAPE = '\\';
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[-+]?(\\d+(\\.\\d*)?|\\.\\d+)([eE][-+]?\\d{1,4})?");
+
+    private NtsMetafieldValueIndex() {
+    }
+
+    /**
+     * @param value the metafield value
+     * @return the value, or null when it is too long to be indexed
+     */
+    public static String text(String value) {
+        return value != null && value.length() <= TEXT_MAX_LENGTH ? value : null;
+    }
+
+    /**
+     * @param value the metafield value
+     * @return the decimal value rounded to {@link #NUMBER_SCALE} digits, or null when the value is not a number or
+     * does not fit in the number column
+     */
+    public static BigDecimal number(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty() || trimmed.length() > NUMBER_PRECISION * 2 || !NUMBER_PATTERN.matcher(trimmed).matches()) {
+            return null;
+        }
+        BigDecimal number = new BigDecimal(trimmed);
+        if (number.scale() > NUMBER_SCALE) {
+            number = number.setScale(NUMBER_SCALE, RoundingMode.HALF_UP);
+        }
+        if (number.precision() - number.scale() > NUMBER_PRECISION - NUMBER_SCALE) {
+            return null;
+        }
+        return number;
+    }
+
+    /**
+     * @param prefix the text prefix
+     * @return the pattern of a {@code like} condition escaped by {@link #LIKE_ESCAPE}
+     */
+    public static String likePrefix(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 2);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
@@ -0,0 +1,324 @@
+package org.nentangso.core.service.helper.option;
+
+import org.nentangso.core.annotation.OptionProperties;
+import org.nentangso.core.service.utils.NtsTextUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Binds the fields of an {@link OptionProperties} class to option keys and raw string values.
+ * <p>
+ * The option keys, the parser and formatter of each field type and the field accessors are resolved once per class,
+ * see {@link #of(Class)}. Static and synthetic fields are not bound.
+ *
+ * @param <T> the options class
+ */
+public final class NtsOptionBinder<T> {
+    private static final ClassValue<NtsOptionBinder<?>> BINDERS = new ClassValue<>() {
+        @Override
+        protected NtsOptionBinder<?> computeValue(Class<?> type) {
+            return new NtsOptionBinder<>(type);
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+    private final Class<T> type;
+    private final boolean annotated;
+    private final MethodHandle constructor;
+    private final List<FieldBinding> fields;
+    private final Set<String> optionKeys;
+
+    private NtsOptionBinder(Class<T> type) {
+        this.type = type;
+        OptionProperties optionProperties = type.getAnnotation(OptionProperties.class);
+        this.annotated = optionProperties != null;
+        String prefix = optionProperties != null && !optionProperties.prefix().isBlank()
+            ? optionProperties.prefix().trim() + "."
+            : "";
+        this.constructor = findConstructor(type);
+        List<FieldBinding> bindings = new ArrayList<>();
+        Set<String> keys = new LinkedHashSet<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                continue;
+            }
+            FieldBinding binding = new FieldBinding(field, prefix + NtsTextUtils.toSnakeCase(field.getName()));
+            bindings.add(binding);
+            keys.add(binding.optionKey);
+        }
+        this.fields = Collections.unmodifiableList(bindings);
+        this.optionKeys = Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Get the binder of a class, created on first use.
+     *
+     * @param type the options class
+     * @return the shared binder
+     * @throws ClassCastException if a field type is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> NtsOptionBinder<T> of(Class<T> type) {
+        return (NtsOptionBinder<T>) BINDERS.get(type);
+    }
+
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return true if the class is annotated with {@link OptionProperties}
+     */
+    public boolean isAnnotated() {
+        return annotated;
+    }
+
+    /**
+     * @return true if the class has a constructor without parameters
+     */
+    public boolean isInstantiable() {
+        return constructor != null;
+    }
+
+    /**
+     * @return the option keys of all bound fields
+     */
+    public Set<String> getOptionKeys() {
+        return optionKeys;
+    }
+
+    /**
+     * Create an instance with its default values.
+     *
+     * @return the new instance
+     */
+    public T newInstance() {
+        if (constructor == null) {
+            throw new IllegalStateException(String.format("Class %s must has constructor without parameters", type.getName()));
+        }
+        try {
+            return type.cast((Object) constructor.invokeExact());
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(String.format("Class %s can not be created", type.getName()), e);
+        }
+    }
+
+    /**
+     * Create an instance bound to raw option values. Single value fields keep their default when the option is
+     * missing, collection fields are replaced by the non null values.
+     *
+     * @param values the raw values by option key
+     * @return the bound instance
+     */
+    public T read(Map<String, List<String>> values) {
+        T output = newInstance();
+        if (values.isEmpty()) {
+            return output;
+        }
+        for (FieldBinding field : fields) {
+            field.read(output, values.getOrDefault(field.optionKey, Collections.emptyList()));
+        }
+        return output;
+    }
+
+    /**
+     * Create an instance with the values of another, collection fields get their own collection. Final fields keep
+     * their default.
+     *
+     * @param configuration the instance to copy
+     * @return the copy
+     */
+    public T copy(T configuration) {
+        T output = newInstance();
+        for (FieldBinding field : fields) {
+            field.copy(configuration, output);
+        }
+        return output;
+    }
+
+    /**
+     * Convert an instance to raw option values, one call per single value field and per collection item.
+     *
+     * @param configuration the instance
+     * @param consumer      receive the option key and raw value
+     */
+    public void write(T configuration, BiConsumer<String, String> consumer) {
+        for (FieldBinding field : fields) {
+            field.write(configuration, consumer);
+        }
+    }
+
+    private static MethodHandle findConstructor(Class<?> type) {
+        try {
+            Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(CONSTRUCTOR_TYPE);
+        } catch (NoSuchMethodException | IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private enum Kind {
+        SINGLE, LIST, SET
+    }
+
+    private static final class FieldBinding {
+        private final String name;
+        private final String optionKey;
+        private final Kind kind;
+        private final Function<String, Object> parser;
+        private final Function<Object, String> formatter;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private FieldBinding(Field field, String optionKey) {
+            this.name = field.getName();
+            this.optionKey = optionKey;
+            Type genericType = field.getGenericType();
+            Class<?> valueType;
+            if (genericType instanceof ParameterizedType) {
+                ParameterizedType parameterizedType = (ParameterizedType) genericType;
+                Type rawType = parameterizedType.getRawType();
+                Type argument = parameterizedType.getActualTypeArguments()[0];
+                if (rawType == List.class) {
+                    this.kind = Kind.LIST;
+                } else if (rawType == Set.class) {
+                    this.kind = Kind.SET;
+                } else {
+                    throw unsupported(name);
+                }
+                if (!(argument instanceof Class)) {
+                    throw unsupported(name);
+                }
+                valueType = (Class<?>) argument;
+            } else {
+                this.kind = Kind.SINGLE;
+                valueType = field.getType();
+            }
+            this.parser = parser(valueType, name);
+            this.formatter = formatter(valueType);
+            try {
+                field.setAccessible(true);
+                this.getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+                this.setter = Modifier.isFinal(field.getModifiers())
+                    ? null
+                    : MethodHandles.lookup().unreflectSetter(field).asType(SETTER_TYPE);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new ClassCastException("Field " + name + " is not accessible");
+            }
+        }
+
+        private void read(Object target, List<String> rawValues) {
+            Object value;
+            if (kind == Kind.SINGLE) {
+                String rawString = null;
+                for (String rawValue : rawValues) {
+                    if (rawValue != null) {
+                        rawString = rawValue;
+                        break;
+                    }
+                }
+                if (rawString == null) {
+                    return;
+                }
+                value = parser.apply(rawString);
+            } else {
+                Collection<Object> values = kind == Kind.LIST ? new ArrayList<>(rawValues.size()) : new HashSet<>();
+                for (String rawValue : rawValues) {
+                    if (rawValue != null) {
+                        values.add(parser.apply(rawValue));
+                    }
+                }
+                value = values;
+            }
+            set(target, value);
+        }
+
+        private void copy(Object source, Object target) {
+            if (setter == null) {
+                return;
+            }
+            Object value = get(source);
+            if (value != null && kind == Kind.LIST) {
+                value = new ArrayList<>((Collection<?>) value);
+            } else if (value != null && kind == Kind.SET) {
+                value = new HashSet<>((Collection<?>) value);
+            }
+            set(target, value);
+        }
+
+        private void write(Object target, BiConsumer<String, String> consumer) {
+            Object value = get(target);
+            if (kind == Kind.SINGLE) {
+                consumer.accept(optionKey, formatter.apply(value));
+            } else if (value != null) {
+                for (Object item : (Collection<?>) value) {
+                    consumer.accept(optionKey, formatter.apply(item));
+                }
+            }
+        }
+
+        private Object get(Object target) {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot get field " + name, e);
+            }
+        }
+
+        private void set(Object target, Object value) {
+            if (setter == null) {
+                throw new IllegalStateException("Cannot set final field " + name);
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot set field " + name, e);
+            }
+        }
+
+        private static Function<String, Object> parser(Class<?> type, String name) {
+            if (type == String.class) {
+                return rawString -> rawString;
+            } else if (type == Integer.class || type == int.class) {
+                return Integer::valueOf;
+            } else if (type == Long.class || type == long.class) {
+                return Long::valueOf;
+            } else if (type == Float.class || type == float.class) {
+                return Float::valueOf;
+            } else if (type == Double.class || type == double.class) {
+                return Double::valueOf;
+            } else if (type == BigDecimal.class) {
+                return BigDecimal::new;
+            }
+            throw unsupported(name);
+        }
+
+        private static Function<Object, String> formatter(Class<?> type) {
+            if (type.isPrimitive()) {
+                return value -> value == null ? "0" : String.valueOf(value);
+            }
+            return value -> value == null ? null : value.toString();
+        }
+
+        private static ClassCastException unsupported(String name) {
+            return new ClassCastException("Type of " + name + " is not supported");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.nentangso.core.service.helper.option;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Difference between the stored rows of some options and the rows they should have, matched as a multiset of
+ * option key and raw value pairs.
+ * <p>
+ * Each wanted row takes one stored row with the same key and value, the stored rows left over are removed and the
+ * wanted rows without a match are added. Unchanged rows appear in neither list.
+ *
+ * @param <E> the row type
+ */
+public final class NtsOptionDiff<E> {
+    private final List<E> removed;
+    private final List<E> added;
+
+    private NtsOptionDiff(List<E> removed, List<E> added) {
+        this.removed = removed;
+        this.added = added;
+    }
+
+    /**
+     * Compute the difference in linear time.
+     *
+     * @param stored      the stored rows
+     * @param wanted      the rows to end up with
+     * @param keyMapper   get the option key of a row
+     * @param valueMapper get the raw value of a row, may return null
+     * @return the rows to remove and to add
+     */
+    public static <E> NtsOptionDiff<E> of(Collection<? extends E> stored, Collection<? extends E> wanted, Function<? super E, String> keyMapper, Function<? super E, String> valueMapper) {
+        Map<Map.Entry<String, String>, Deque<E>> unmatched = new HashMap<>(stored.size() * 4 / 3 + 1);
+        for (E row : stored) {
+            unmatched.computeIfAbsent(entry(row, keyMapper, valueMapper), k -> new ArrayDeque<>(1)).add(row);
+        }
+        List<E> added = new ArrayList<>();
+        for (E row : wanted) {
+            Deque<E> rows = unmatched.get(entry(row, keyMapper, valueMapper));
+            if (rows == null || rows.poll() == null) {
+                added.add(row);
+            }
+        }
+        List<E> removed = new ArrayList<>();
+        for (Deque<E> rows : unmatched.values()) {
+            removed.addAll(rows);
+        }
+        return new NtsOptionDiff<>(removed, added);
+    }
+
+    private static <E> Map.Entry<String, String> entry(E row, Function<? super E, String> keyMapper, Function<? super E, String> valueMapper) {
+        return new AbstractMap.SimpleImmutableEntry<>(keyMapper.apply(row), valueMapper.apply(row));
+    }
+
+    /**
+     * @return the stored rows without a wanted match
+     */
+    public List<E> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return the wanted rows without a stored match
+     */
+    public List<E> getAdded() {
+        return added;
+    }
+
+    public boolean isEmpty() {
+        return removed.isEmpty() && added.isEmpty();
+    }
+}
@@ -0,0 +1,152 @@
+package org.nentangso.core.service.helper.option;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Live instance of an {@link org.nentangso.core.annotation.OptionProperties} class, swapped as a whole when its
+ * options change.
+ * <p>
+ * The current instance is kept private, readers and listeners get their own copy made by the {@link NtsOptionBinder},
+ * so changing it does not affect anyone else. Listeners are called in order of registration, on the thread applying
+ * the change, and only when a raw option value actually changed.
+ *
+ * @param <T> the options class
+ */
+public final class NtsOptionWatch<T> {
+    private final NtsOptionBinder<T> binder;
+    private final List<Consumer<? super T>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong refreshes = new AtomicLong();
+    private volatile Snapshot<T> snapshot;
+    private long appliedRefresh;
+
+    public NtsOptionWatch(NtsOptionBinder<T> binder, T initial) {
+        this.binder = binder;
+        T value = binder.copy(initial);
+        this.snapshot = new Snapshot<>(value, rows(binder, value));
+    }
+
+    /**
+     * @return a copy of the current instance
+     */
+    public T get() {
+        return binder.copy(snapshot.value);
+    }
+
+    public Class<T> getType() {
+        return binder.getType();
+    }
+
+    /**
+     * @param optionKeys the changed option keys, null when every option may have changed
+     * @return true if one of the keys is bound to this class
+     */
+    public boolean isAffectedBy(Collection<String> optionKeys) {
+        if (optionKeys == null) {
+            return true;
+        }
+        Set<String> keys = binder.getOptionKeys();
+        for (String optionKey : optionKeys) {
+            if (keys.contains(optionKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace the current instance with a copy of the given one and notify the listeners, unless the raw option values
+     * are the same. Every listener is called even if one fails, the first failure is thrown afterwards.
+     *
+     * @param value the new instance, already validated
+     * @return true if the instance was replaced
+     */
+    public synchronized boolean update(T value) {
+        T copy = binder.copy(value);
+        List<Map.Entry<String, String>> rows = rows(binder, copy);
+        if (rows.equals(snapshot.rows)) {
+            return false;
+        }
+        snapshot = new Snapshot<>(copy, rows);
+        RuntimeException failure = null;
+        for (Consumer<? super T> listener : listeners) {
+            try {
+                listener.accept(binder.copy(copy));
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return true;
+    }
+
+    /**
+     * Start a refresh, before reading the new instance to pass to {@link #update(Object, long)}.
+     *
+     * @return the refresh number, greater than the numbers of the refreshes started before
+     */
+    public long startRefresh() {
+        return refreshes.incrementAndGet();
+    }
+
+    /**
+     * Replace the current instance with the one read by a refresh, unless a refresh started later was already applied.
+     * Concurrent refreshes may complete in any order, the instance read by the latest one wins.
+     *
+     * @param value   the new instance, already validated
+     * @param refresh the number returned by {@link #startRefresh()} before reading the instance
+     * @return true if the instance was replaced
+     */
+    public synchronized boolean update(T value, long refresh) {
+        if (refresh < appliedRefresh) {
+            return false;
+        }
+        appliedRefresh = refresh;
+        return update(value);
+    }
+
+    /**
+     * Register a listener of the instances replacing the current one.
+     *
+     * @param listener receive a copy of each new instance
+     * @return the registration, close it to stop listening
+     */
+    public Registration addListener(Consumer<? super T> listener) {
+        Objects.requireNonNull(listener, "listener");
+        listeners.add(listener);
+        return () -> listeners.remove(listener);
+    }
+
+    private static <T> List<Map.Entry<String, String>> rows(NtsOptionBinder<T> binder, T value) {
+        List<Map.Entry<String, String>> rows = new ArrayList<>();
+        binder.write(value, (optionKey, rawValue) -> rows.add(new AbstractMap.SimpleImmutableEntry<>(optionKey, rawValue)));
+        return rows;
+    }
+
+    private static final class Snapshot<T> {
+        private final T value;
+        private final List<Map.Entry<String, String>> rows;
+
+        private Snapshot(T value, List<Map.Entry<String, String>> rows) {
+            this.value = value;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * A listener registration.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,498 @@
+package org.nentangso.core.service.utils;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * Immutable compressed set of non negative ids, in the spirit of roaring bitmaps.
+ * <p>
+ * Ids are split by their high bits into chunks of 65536 values. Each chunk is stored as whichever of a sorted array,
+ * a plain bitmap or a list of runs is the smallest, so a few large ids or long ranges of ids cost a few bytes instead
+ * of a bit per smaller id. Lookups binary search the chunk, then the container.
+ */
+public final class NtsCompressedBitmap {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int BITMAP_WORDS = CHUNK_SIZE / Long.SIZE;
+
+    private static final int TYPE_ARRAY = 0;
+    private static final int TYPE_BITMAP = 1;
+    private static final int TYPE_RUN = 2;
+
+    private static final NtsCompressedBitmap EMPTY = new NtsCompressedBitmap(new long[0], new Container[0]);
+
+    private final long[] keys;
+    private final Container[] containers;
+    private final long cardinality;
+
+    private NtsCompressedBitmap(long[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        long count = 0;
+        for (Container container : containers) {
+            count += container.cardinality();
+        }
+        this.cardinality = count;
+    }
+
+    public static NtsCompressedBitmap empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Build a bitmap of ids.
+     *
+     * @param ids the ids, in any order, duplicates are ignored
+     * @return the bitmap
+     */
+    public static NtsCompressedBitmap of(long... ids) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        if (sorted.length > 0 && sorted[0] < 0) {
+            throw new IllegalArgumentException("Id must not be negative: " + sorted[0]);
+        }
+        int chunks = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || (sorted[i] >>> CHUNK_BITS) != (sorted[i - 1] >>> CHUNK_BITS)) {
+                chunks++;
+            }
+        }
+        long[] keys = new long[chunks];
+        Container[] containers = new Container[chunks];
+        int chunk = 0;
+        int start = 0;
+        while (start < sorted.length) {
+            long key = sorted[start] >>> CHUNK_BITS;
+            int end = start;
+            while (end < sorted.length && (sorted[end] >>> CHUNK_BITS) == key) {
+                end++;
+            }
+            char[] values = new char[end - start];
+            int size = 0;
+            for (int i = start; i < end; i++) {
+                char value = (char) (sorted[i] & CHUNK_MASK);
+                if (size == 0 || values[size - 1] != value) {
+                    values[size++] = value;
+                }
+            }
+            keys[chunk] = key;
+            containers[chunk] = Container.smallest(Arrays.copyOf(values, size));
+            chunk++;
+            start = end;
+        }
+        return new NtsCompressedBitmap(keys, containers);
+    }
+
+    public boolean contains(long id) {
+        if (id < 0) {
+            return false;
+        }
+        int index = Arrays.binarySearch(keys, id >>> CHUNK_BITS);
+        return index >= 0 && containers[index].contains((int) (id & CHUNK_MASK));
+    }
+
+    public long cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * Iterate the ids in ascending order.
+     *
+     * @param action the action for each id
+     */
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            containers[i].forEach(keys[i] << CHUNK_BITS, action);
+        }
+    }
+
+    public long[] toArray() {
+        long[] result = new long[Math.toIntExact(cardinality)];
+        int[] index = {0};
+        forEach(id -> result[index[0]++] = id);
+        return result;
+    }
+
+    public byte[] serialize() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(16 + keys.length * 8);
+        try {
+            DataOutputStream data = new DataOutputStream(output);
+            data.write(FORMAT_VERSION);
+            writeVarLong(data, keys.length);
+            long previousKey = 0;
+            for (int i = 0; i < keys.length; i++) {
+                writeVarLong(data, keys[i] - previousKey);
+                previousKey = keys[i];
+                containers[i].write(data);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    public static NtsCompressedBitmap deserialize(byte[] bytes) {
+        try {
+            Reader data = new Reader(bytes);
+            int version = bytes.length > 0 ? data.readUnsignedByte() : -1;
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported compressed bitmap format version " + version);
+            }
+            int size = Math.toIntExact(data.readVarLong());
+            if (size > bytes.length) {
+                throw new IOException("Malformed compressed bitmap");
+            }
+            long[] keys = new long[size];
+            Container[] containers = new Container[size];
+            long previousKey = 0;
+            for (int i = 0; i < size; i++) {
+                keys[i] = previousKey + data.readVarLong();
+                if (i > 0 && keys[i] <= previousKey) {
+                    throw new IOException("Malformed compressed bitmap");
+                }
+                previousKey = keys[i];
+                containers[i] = Container.read(data);
+            }
+            return new NtsCompressedBitmap(keys, containers);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * Reads the serialized form straight from the array, decoding is on the request path when the claim is not cached.
+     */
+    private static final class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private int readUnsignedByte() throws IOException {
+            if (position >= bytes.length) {
+                throw new EOFException();
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | readUnsignedByte();
+            }
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+    }
+
+    private interface Container {
+        boolean contains(int value);
+
+        int cardinality();
+
+        void forEach(long base, LongConsumer action);
+
+        void write(DataOutput output) throws IOException;
+
+        int serializedSize();
+
+        static Container smallest(char[] values) {
+            Container array = new ArrayContainer(values);
+            Container run = RunContainer.of(values);
+            Container smallest = run.serializedSize() < array.serializedSize() ? run : array;
+            return smallest.serializedSize() > BitmapContainer.SERIALIZED_SIZE ? BitmapContainer.of(values) : smallest;
+        }
+
+        static Container read(Reader input) throws IOException {
+            int type = input.readUnsignedByte();
+            switch (type) {
+                case TYPE_ARRAY:
+                    return ArrayContainer.read(input);
+                case TYPE_BITMAP:
+                    return BitmapContainer.read(input);
+                case TYPE_RUN:
+                    return RunContainer.read(input);
+                default:
+                    throw new IOException("Unknown compressed bitmap container " + type);
+            }
+        }
+    }
+
+    /**
+     * Sorted values, written as deltas.
+     */
+    private static final class ArrayContainer implements Container {
+        private final char[] values;
+
+        private ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        private static ArrayContainer read(Reader input) throws IOException {
+            int size = Math.toIntExact(input.readVarLong());
+            if (size > CHUNK_SIZE) {
+                throw new IOException("Malformed compressed bitmap");
+            }
+            char[] values = new char[size];
+            int previous = -1;
+            for (int i = 0; i < size; i++) {
+                long value = previous + 1 + input.readVarLong();
+                if (value > CHUNK_MASK) {
+                    throw new IOException("Malformed compressed bitmap");
+                }
+                values[i] = (char) value;
+                previous = (int) value;
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        public boolean contains(int value) {
+            return Arrays.binarySearch(values, (char) value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        public void forEach(long base, LongConsumer action) {
+            for (char value : values) {
+                action.accept(base | value);
+            }
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            output.write(TYPE_ARRAY);
+            writeVarLong(output, values.length);
+            int previous = -1;
+            for (char value : values) {
+                writeVarLong(output, value - previous - 1);
+                previous = value;
+            }
+        }
+
+        @Override
+        public int serializedSize() {
+            int size = 1 + varLongSize(values.length);
+            int previous = -1;
+            for (char value : values) {
+                size += varLongSize(value - previous - 1);
+                previous = value;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * One bit per value of the chunk.
+     */
+    private static final class BitmapContainer implements Container {
+        private static final int SERIALIZED_SIZE = 1 + BITMAP_WORDS * Long.BYTES;
+
+        private final long[] words;
+        private final int cardinality;
+
+        private BitmapContainer(long[] words) {
+            this.words = words;
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            this.cardinality = count;
+        }
+
+        private static BitmapContainer of(char[] values) {
+            long[] words = new long[BITMAP_WORDS];
+            for (char value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return new BitmapContainer(words);
+        }
+
+        private static BitmapContainer read(Reader input) throws IOException {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = input.readLong();
+            }
+            return new BitmapContainer(words);
+        }
+
+        @Override
+        public boolean contains(int value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public void forEach(long base, LongConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(base | ((long) i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            output.write(TYPE_BITMAP);
+            for (long word : words) {
+                output.writeLong(word);
+            }
+        }
+
+        @Override
+        public int serializedSize() {
+            return SERIALIZED_SIZE;
+        }
+    }
+
+    /**
+     * Ranges of consecutive values, written as gap and length pairs.
+     */
+    private static final class RunContainer implements Container {
+        private final char[] starts;
+        private final char[] lengths;
+        private final int cardinality;
+
+        private RunContainer(char[] starts, char[] lengths) {
+            this.starts = starts;
+            this.lengths = lengths;
+            int count = 0;
+            for (char length : lengths) {
+                count += length + 1;
+            }
+            this.cardinality = count;
+        }
+
+        private static RunContainer of(char[] values) {
+            char[] starts = new char[values.length];
+            char[] lengths = new char[values.length];
+            int runs = 0;
+            for (int i = 0; i < values.length; i++) {
+                if (runs > 0 && values[i] == starts[runs - 1] + lengths[runs - 1] + 1) {
+                    lengths[runs - 1]++;
+                } else {
+                    starts[runs] = values[i];
+                    lengths[runs] = 0;
+                    runs++;
+                }
+            }
+            return new RunContainer(Arrays.copyOf(starts, runs), Arrays.copyOf(lengths, runs));
+        }
+
+        private static RunContainer read(Reader input) throws IOException {
+            int runs = Math.toIntExact(input.readVarLong());
+            if (runs > CHUNK_SIZE) {
+                throw new IOException("Malformed compressed bitmap");
+            }
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int next = 0;
+            for (int i = 0; i < runs; i++) {
+                long start = next + input.readVarLong();
+                long end = start + input.readVarLong();
+                if (end > CHUNK_MASK) {
+                    throw new IOException("Malformed compressed bitmap");
+                }
+                starts[i] = (char) start;
+                lengths[i] = (char) (end - start);
+                next = (int) end + 2;
+            }
+            return new RunContainer(starts, lengths);
+        }
+
+        @Override
+        public boolean contains(int value) {
+            int index = Arrays.binarySearch(starts, (char) value);
+            if (index >= 0) {
+                return true;
+            }
+            int run = -index - 2;
+            return run >= 0 && value <= starts[run] + lengths[run];
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public void forEach(long base, LongConsumer action) {
+            for (int i = 0; i < starts.length; i++) {
+                for (int value = starts[i]; value <= starts[i] + lengths[i]; value++) {
+                    action.accept(base | value);
+                }
+            }
+        }
+
+        @Override
+        public void write(DataOutput output) throws IOException {
+            output.write(TYPE_RUN);
+            writeVarLong(output, starts.length);
+            int next = 0;
+            for (int i = 0; i < starts.length; i++) {
+                writeVarLong(output, starts[i] - next);
+                writeVarLong(output, lengths[i]);
+                next = starts[i] + lengths[i] + 2;
+            }
+        }
+
+        @Override
+        public int serializedSize() {
+            int size = 1 + varLongSize(starts.length);
+            int next = 0;
+            for (int i = 0; i < starts.length; i++) {
+                size += varLongSize(starts[i] - next) + varLongSize(lengths[i]);
+                next = starts[i] + lengths[i] + 2;
+            }
+            return size;
+        }
+    }
+
+    private static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,331 @@
+package org.nentangso.core.service.utils;
+
+import org.nentangso.core.service.dto.NtsDefaultAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationAddressDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Compact binary encoding of location snapshots.
+ * <p>
+ * Layout: magic {@code "NL"}, format version, entry count, then one record per location. Numbers are written as
+ * variable length integers and repeated strings (country, province, attribute keys...) are written once and then
+ * referenced by index, so a snapshot of locations in the same country costs little more than the distinct values.
+ */
+@SuppressWarnings("unused")
+public class NtsLocationBinaryUtils {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC_1 = 'N';
+    private static final int MAGIC_2 = 'L';
+
+    private static final int FLAG_ID = 1;
+    private static final int FLAG_ADDRESS = 1 << 1;
+    private static final int FLAG_ADDRESS_VERIFIED = 1 << 2;
+    private static final int FLAG_ACTIVE = 1 << 3;
+    private static final int FLAG_DEACTIVATED_AT = 1 << 4;
+    private static final int FLAG_CREATED_AT = 1 << 5;
+    private static final int FLAG_UPDATED_AT = 1 << 6;
+    private static final int FLAG_CUSTOM_ATTRIBUTES = 1 << 7;
+
+    private static final int STRING_NULL = 0;
+    private static final int STRING_LITERAL = 1;
+    private static final int STRING_REFERENCE_OFFSET = 2;
+
+    private NtsLocationBinaryUtils() {
+    }
+
+    public static byte[] encode(Map<Long, NtsDefaultLocationDTO> locations) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(256);
+        try {
+            encode(locations, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    public static void encode(Map<Long, NtsDefaultLocationDTO> locations, OutputStream output) throws IOException {
+        Writer writer = new Writer(output);
+        output.write(MAGIC_1);
+        output.write(MAGIC_2);
+        output.write(FORMAT_VERSION);
+        Map<Long, NtsDefaultLocationDTO> items = Optional.ofNullable(locations).orElseGet(Collections::emptyMap);
+        writer.writeVarLong(items.size());
+        for (Map.Entry<Long, NtsDefaultLocationDTO> entry : items.entrySet()) {
+            writer.writeVarLong(zigZag(entry.getKey()));
+            writer.writeLocation(entry.getValue());
+        }
+    }
+
+    public static byte[] encodeLocation(NtsDefaultLocationDTO location) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(128);
+        try {
+            encodeLocation(location, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Encode a single location, used as value of per location storage like redis hashes.
+     *
+     * @param location the location
+     * @param output   the output
+     * @throws IOException if the output can not be written
+     */
+    public static void encodeLocation(NtsDefaultLocationDTO location, OutputStream output) throws IOException {
+        Writer writer = new Writer(output);
+        output.write(MAGIC_1);
+        output.write(MAGIC_2);
+        output.write(FORMAT_VERSION);
+        writer.writeLocation(location);
+    }
+
+    public static Map<Long, NtsDefaultLocationDTO> decode(byte[] bytes) {
+        try {
+            return decode(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Map<Long, NtsDefaultLocationDTO> decode(InputStream input) throws IOException {
+        Reader reader = new Reader(input);
+        reader.readHeader();
+        int size = Math.toIntExact(reader.readVarLong());
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>(Math.max(16, (int) (size / 0.75f) + 1));
+        for (int i = 0; i < size; i++) {
+            long key = unZigZag(reader.readVarLong());
+            locations.put(key, reader.readLocation());
+        }
+        return locations;
+    }
+
+    public static NtsDefaultLocationDTO decodeLocation(byte[] bytes) {
+        try {
+            return decodeLocation(new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static NtsDefaultLocationDTO decodeLocation(InputStream input) throws IOException {
+        Reader reader = new Reader(input);
+        reader.readHeader();
+        return reader.readLocation();
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private final OutputStream output;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private Writer(OutputStream output) {
+            this.output = output;
+        }
+
+        private void writeLocation(NtsDefaultLocationDTO location) throws IOException {
+            int flags = 0;
+            if (location.getId() != null) flags |= FLAG_ID;
+            if (location.getAddress() != null) flags |= FLAG_ADDRESS;
+            if (location.isAddressVerified()) flags |= FLAG_ADDRESS_VERIFIED;
+            if (location.isActive()) flags |= FLAG_ACTIVE;
+            if (location.getDeactivatedAt() != null) flags |= FLAG_DEACTIVATED_AT;
+            if (location.getCreatedAt() != null) flags |= FLAG_CREATED_AT;
+            if (location.getUpdatedAt() != null) flags |= FLAG_UPDATED_AT;
+            if (location.getCustomAttributes() != null) flags |= FLAG_CUSTOM_ATTRIBUTES;
+            output.write(flags);
+            if (location.getId() != null) {
+                writeVarLong(zigZag(location.getId()));
+            }
+            writeString(location.getName());
+            if (location.getAddress() != null) {
+                writeAddress(location.getAddress());
+            }
+            writeInstant(location.getDeactivatedAt());
+            writeInstant(location.getCreatedAt());
+            writeInstant(location.getUpdatedAt());
+            if (location.getCustomAttributes() != null) {
+                writeVarLong(location.getCustomAttributes().size());
+                for (NtsDefaultAttributeDTO attribute : location.getCustomAttributes()) {
+                    writeString(attribute.getKey());
+                    writeString(attribute.getValue());
+                }
+            }
+        }
+
+        private void writeAddress(NtsDefaultLocationAddressDTO address) throws IOException {
+            writeString(address.getPhone());
+            writeString(address.getAddress1());
+            writeString(address.getAddress2());
+            writeString(address.getCountry());
+            writeString(address.getCountryCode());
+            writeString(address.getLocalizedCountryName());
+            writeString(address.getCity());
+            writeString(address.getProvince());
+            writeString(address.getProvinceCode());
+            writeString(address.getLocalizedProvinceName());
+            writeString(address.getZip());
+        }
+
+        private void writeInstant(Instant value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            writeVarLong(zigZag(value.getEpochSecond()));
+            writeVarLong(value.getNano());
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarLong(STRING_NULL);
+                return;
+            }
+            Integer index = strings.get(value);
+            if (index != null) {
+                writeVarLong(STRING_REFERENCE_OFFSET + (long) index);
+                return;
+            }
+            strings.put(value, strings.size());
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(STRING_LITERAL);
+            writeVarLong(bytes.length);
+            output.write(bytes);
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+    }
+
+    private static final class Reader {
+        private final InputStream input;
+        private final List<String> strings = new ArrayList<>();
+
+        private Reader(InputStream input) {
+            this.input = input;
+        }
+
+        private void readHeader() throws IOException {
+            if (readByte() != MAGIC_1 || readByte() != MAGIC_2) {
+                throw new IOException("Input is not an encoded location snapshot");
+            }
+            int version = readByte();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported location snapshot format version " + version);
+            }
+        }
+
+        private NtsDefaultLocationDTO readLocation() throws IOException {
+            int flags = readByte();
+            NtsDefaultLocationDTO location = new NtsDefaultLocationDTO();
+            if ((flags & FLAG_ID) != 0) {
+                location.setId(unZigZag(readVarLong()));
+            }
+            location.setName(readString());
+            if ((flags & FLAG_ADDRESS) != 0) {
+                location.setAddress(readAddress());
+            }
+            location.setAddressVerified((flags & FLAG_ADDRESS_VERIFIED) != 0);
+            location.setActive((flags & FLAG_ACTIVE) != 0);
+            if ((flags & FLAG_DEACTIVATED_AT) != 0) {
+                location.setDeactivatedAt(readInstant());
+            }
+            if ((flags & FLAG_CREATED_AT) != 0) {
+                location.setCreatedAt(readInstant());
+            }
+            if ((flags & FLAG_UPDATED_AT) != 0) {
+                location.setUpdatedAt(readInstant());
+            }
+            if ((flags & FLAG_CUSTOM_ATTRIBUTES) != 0) {
+                int size = Math.toIntExact(readVarLong());
+                List<NtsDefaultAttributeDTO> attributes = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    NtsDefaultAttributeDTO attribute = new NtsDefaultAttributeDTO();
+                    attribute.setKey(readString());
+                    attribute.setValue(readString());
+                    attributes.add(attribute);
+                }
+                location.setCustomAttributes(attributes);
+            }
+            return location;
+        }
+
+        private NtsDefaultLocationAddressDTO readAddress() throws IOException {
+            NtsDefaultLocationAddressDTO address = new NtsDefaultLocationAddressDTO();
+            address.setPhone(readString());
+            address.setAddress1(readString());
+            address.setAddress2(readString());
+            address.setCountry(readString());
+            address.setCountryCode(readString());
+            address.setLocalizedCountryName(readString());
+            address.setCity(readString());
+            address.setProvince(readString());
+            address.setProvinceCode(readString());
+            address.setLocalizedProvinceName(readString());
+            address.setZip(readString());
+            return address;
+        }
+
+        private Instant readInstant() throws IOException {
+            long epochSecond = unZigZag(readVarLong());
+            long nano = readVarLong();
+            return Instant.ofEpochSecond(epochSecond, nano);
+        }
+
+        private String readString() throws IOException {
+            long tag = readVarLong();
+            if (tag == STRING_NULL) {
+                return null;
+            }
+            if (tag != STRING_LITERAL) {
+                return strings.get(Math.toIntExact(tag - STRING_REFERENCE_OFFSET));
+            }
+            int length = Math.toIntExact(readVarLong());
+            byte[] bytes = input.readNBytes(length);
+            if (bytes.length != length) {
+                throw new EOFException();
+            }
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(value);
+            return value;
+        }
+
+        private int readByte() throws IOException {
+            int value = input.read();
+            if (value < 0) {
+                throw new EOFException();
+            }
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length integer");
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.nentangso.core.service.utils;
+
+import java.util.BitSet;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Encode the granted location claim ({@code nlb} by default) for token issuers.
+ * <p>
+ * Two formats are read by the location deserializers: the Base64 encoded {@link BitSet}, and the Base64 encoded
+ * {@link NtsCompressedBitmap} prefixed by {@link #COMPRESSED_PREFIX}. In both, id {@code 0} means all locations are
+ * granted. The bit set costs one bit per id up to the largest one, prefer the compressed format when ids are large or
+ * sparse.
+ */
+@SuppressWarnings("unused")
+public class NtsLocationClaimUtils {
+    public static final String COMPRESSED_PREFIX = "r:";
+
+    public static final long ALL_LOCATIONS = 0L;
+
+    private NtsLocationClaimUtils() {
+    }
+
+    public static boolean isCompressed(String claim) {
+        return claim != null && claim.startsWith(COMPRESSED_PREFIX);
+    }
+
+    public static String encodeBitSet(boolean grantedAll, Collection<Long> ids) {
+        return encodeBitSet(toArray(grantedAll, ids));
+    }
+
+    public static String encodeBitSet(long... ids) {
+        BitSet bitSet = new BitSet();
+        for (long id : ids) {
+            if (id < 0 || id >= Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Id is out of bit set range: " + id);
+            }
+            bitSet.set((int) id);
+        }
+        return Base64.getEncoder().encodeToString(bitSet.toByteArray());
+    }
+
+    public static String encodeCompressed(boolean grantedAll, Collection<Long> ids) {
+        return encodeCompressed(toArray(grantedAll, ids));
+    }
+
+    public static String encodeCompressed(long... ids) {
+        return COMPRESSED_PREFIX + Base64.getEncoder().encodeToString(NtsCompressedBitmap.of(ids).serialize());
+    }
+
+    /**
+     * Decode a claim in the compressed format.
+     *
+     * @param claim the claim value, with {@link #COMPRESSED_PREFIX}
+     * @return the granted ids
+     */
+    public static NtsCompressedBitmap decodeCompressed(String claim) {
+        if (!isCompressed(claim)) {
+            throw new IllegalArgumentException("Claim is not in compressed format");
+        }
+        return NtsCompressedBitmap.deserialize(Base64.getDecoder().decode(claim.substring(COMPRESSED_PREFIX.length())));
+    }
+
+    private static long[] toArray(boolean grantedAll, Collection<Long> ids) {
+        long[] result = ids.stream()
+            .filter(Objects::nonNull)
+            .mapToLong(Long::longValue)
+            .toArray();
+        if (!grantedAll) {
+            return result;
+        }
+        long[] withAll = new long[result.length + 1];
+        withAll[0] = ALL_LOCATIONS;
+        System.arraycopy(result, 0, withAll, 1, result.length);
+        return withAll;
+    }
+}
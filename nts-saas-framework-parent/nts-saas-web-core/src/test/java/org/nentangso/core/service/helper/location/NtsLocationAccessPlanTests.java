@@ -0,0 +1,53 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Access Plan Unit Tests power by nentangso.org")
+public class NtsLocationAccessPlanTests {
+    @Test
+    @DisplayName("Plan: no predicate when all locations are granted")
+    public void plan_all() {
+        assertEquals(NtsLocationAccessPlan.Strategy.ALL, NtsLocationAccessPlan.of(NtsLocationGrants.ALL).getStrategy());
+        assertEquals(NtsLocationAccessPlan.Strategy.NONE, NtsLocationAccessPlan.of(NtsLocationGrants.EMPTY).getStrategy());
+    }
+
+    @Test
+    @DisplayName("Plan: IN list of scattered ids")
+    public void plan_in_list() {
+        NtsLocationAccessPlan plan = NtsLocationAccessPlan.of(NtsLocationGrants.of(false, 9, 1, 5, 6));
+
+        assertEquals(NtsLocationAccessPlan.Strategy.IN_LIST, plan.getStrategy());
+        assertArrayEquals(new long[]{1, 5, 6, 9}, plan.getIds());
+        assertEquals(0, plan.getRangeCount());
+    }
+
+    @Test
+    @DisplayName("Plan: compress consecutive ids to ranges")
+    public void plan_ranges() {
+        long[] ids = LongStream.concat(LongStream.rangeClosed(10, 500), LongStream.of(2, 700, 1000, 1001, 1002)).toArray();
+        NtsLocationAccessPlan plan = NtsLocationAccessPlan.of(NtsLocationGrants.of(false, ids));
+
+        assertEquals(NtsLocationAccessPlan.Strategy.RANGES, plan.getStrategy());
+        assertArrayEquals(new long[]{2, 700}, plan.getIds());
+        assertArrayEquals(new long[]{10, 1000}, plan.getRangeStarts());
+        assertArrayEquals(new long[]{500, 1002}, plan.getRangeEnds());
+        assertEquals(ids.length, plan.getAllIds().length);
+    }
+
+    @Test
+    @DisplayName("Plan: temporary table when too many parameters")
+    public void plan_temporary_table() {
+        long[] ids = LongStream.rangeClosed(1, 50).map(i -> i * 3).toArray();
+        NtsLocationAccessPlan plan = NtsLocationAccessPlan.of(NtsLocationGrants.of(false, ids), 20);
+
+        assertEquals(NtsLocationAccessPlan.Strategy.TEMPORARY_TABLE, plan.getStrategy());
+        assertArrayEquals(ids, plan.getAllIds());
+        assertArrayEquals(ids, plan.getIds());
+        assertEquals(NtsLocationAccessPlan.Strategy.IN_LIST, NtsLocationAccessPlan.of(NtsLocationGrants.of(false, ids), 50).getStrategy());
+    }
+}
@@ -0,0 +1,75 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.service.utils.NtsLocationClaimUtils;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.BitSet;
+
+/**
+ * Compares the cost of one location check when the claim is decoded on every call, as the bit set deserializer did,
+ * with a lookup in {@link NtsLocationGrantsCache}, for both claim formats of {@link NtsLocationClaimUtils}.
+ * Not a unit test, run it manually from the IDE or with
+ * {@code java -cp target/classes:target/test-classes org.nentangso.core.service.helper.location.NtsLocationGrantsBenchmark}.
+ */
+public class NtsLocationGrantsBenchmark {
+    private static final int[] LOCATIONS = {100, 1_000, 10_000};
+    /**
+     * The distance between two granted ids: dense claims grant every other id, sparse ones are spread up to id 4000000.
+     */
+    private static final int[] STRIDES = {2, 397};
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    private static volatile boolean sink;
+
+    public static void main(String[] args) {
+        System.out.printf("%10s %7s %-18s %12s %12s%n", "locations", "stride", "mode", "claim bytes", "ns/check");
+        for (int stride : STRIDES) {
+            for (int locations : LOCATIONS) {
+                run(locations, stride);
+            }
+        }
+    }
+
+    private static void run(int locations, int stride) {
+        long[] ids = new long[locations];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (long) i * stride + 1;
+        }
+        String claim = NtsLocationClaimUtils.encodeBitSet(ids);
+        String compressedClaim = NtsLocationClaimUtils.encodeCompressed(ids);
+        run(locations, stride, "bitset decode", claim, (encoded, id) -> {
+            BitSet bitSet = BitSet.valueOf(Base64.getDecoder().decode(encoded));
+            return id < bitSet.length() && bitSet.get((int) id);
+        });
+        run(locations, stride, "compressed decode", compressedClaim, (encoded, id) -> NtsLocationGrants.decode(encoded).isGranted(id));
+        Instant expiresAt = Instant.now().plusSeconds(3600);
+        NtsLocationGrantsCache cache = new NtsLocationGrantsCache();
+        run(locations, stride, "bitset cached", claim, (encoded, id) -> cache.get("token", encoded, expiresAt, NtsLocationGrants::decode).isGranted(id));
+        NtsLocationGrantsCache compressedCache = new NtsLocationGrantsCache();
+        run(locations, stride, "compressed cached", compressedClaim, (encoded, id) -> compressedCache.get("token", encoded, expiresAt, NtsLocationGrants::decode).isGranted(id));
+    }
+
+    private static void run(int locations, int stride, String name, String claim, Check check) {
+        long maxId = (long) locations * stride;
+        measure(maxId, claim, check, WARMUP_NANOS);
+        long checks = measure(maxId, claim, check, RUN_NANOS);
+        System.out.printf("%10d %7d %-18s %12d %12.1f%n", locations, stride, name, claim.length(), RUN_NANOS / (double) checks);
+    }
+
+    private static long measure(long maxId, String claim, Check check, long nanos) {
+        long checks = 0;
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 100; i++, checks++) {
+                sink = check.check(claim, checks % maxId);
+            }
+        }
+        return checks;
+    }
+
+    private interface Check {
+        boolean check(String encoded, long id);
+    }
+}
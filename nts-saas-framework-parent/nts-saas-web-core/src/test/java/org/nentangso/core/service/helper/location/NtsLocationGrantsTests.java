@@ -0,0 +1,137 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.service.utils.NtsLocationClaimUtils;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Grants Unit Tests power by nentangso.org")
+public class NtsLocationGrantsTests {
+    @Test
+    @DisplayName("Decode: granted location ids")
+    public void decode() {
+        NtsLocationGrants grants = NtsLocationGrants.decode(encode(3, 5, 64));
+
+        assertFalse(grants.isGrantedAll());
+        assertEquals(List.of(3L, 5L, 64L), List.copyOf(grants.getIds()));
+        assertTrue(grants.isGranted(5L));
+        assertFalse(grants.isGranted(4L));
+        assertFalse(grants.isGranted(65L));
+        assertFalse(grants.isGranted(Integer.MAX_VALUE + 6L));
+        assertFalse(grants.isGranted(null));
+        assertTrue(grants.isGrantedAny(List.of(1L, 64L)));
+        assertThrows(UnsupportedOperationException.class, () -> grants.getIds().add(1L));
+    }
+
+    @Test
+    @DisplayName("Decode: granted all locations")
+    public void decode_granted_all() {
+        NtsLocationGrants grants = NtsLocationGrants.decode(encode(0, 2));
+
+        assertTrue(grants.isGrantedAll());
+        assertTrue(grants.isGranted(1000L));
+        assertFalse(grants.isGranted(0L));
+        assertEquals(List.of(2L), List.copyOf(grants.getIds()));
+    }
+
+    @Test
+    @DisplayName("Decode: compressed claim")
+    public void decode_compressed() {
+        String claim = NtsLocationClaimUtils.encodeCompressed(false, List.of(2_000_000L, 7L));
+        NtsLocationGrants grants = NtsLocationGrants.decode(claim);
+
+        assertTrue(claim.length() < 20);
+        assertFalse(grants.isGrantedAll());
+        assertEquals(List.of(7L, 2_000_000L), List.copyOf(grants.getIds()));
+        assertTrue(grants.isGranted(2_000_000L));
+        assertFalse(grants.isGranted(2_000_001L));
+        assertTrue(NtsLocationGrants.decode(NtsLocationClaimUtils.encodeCompressed(true, List.of())).isGrantedAll());
+        assertEquals(encode(0, 4), NtsLocationClaimUtils.encodeBitSet(true, List.of(4L)));
+    }
+
+    @Test
+    @DisplayName("Decode: empty claim")
+    public void decode_empty() {
+        assertSame(NtsLocationGrants.EMPTY, NtsLocationGrants.decode(""));
+        assertSame(NtsLocationGrants.EMPTY, NtsLocationGrants.decode(null));
+        assertTrue(NtsLocationGrants.EMPTY.getIds().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Filter: keep granted ids in order")
+    public void filter() {
+        long[] ids = {64, 4, 3, 0, -1, 5};
+        NtsLocationGrants grants = NtsLocationGrants.decode(encode(3, 5, 64));
+        NtsLocationGrants compressed = NtsLocationGrants.of(false, 3, 5, 64);
+
+        assertArrayEquals(new long[]{64, 3, 5}, grants.filter(ids));
+        assertArrayEquals(new long[]{64, 3, 5}, compressed.filter(ids));
+        assertArrayEquals(new long[]{5, 3}, grants.filter(Arrays.asList(5L, null, 4L, 3L)));
+        assertArrayEquals(new long[]{3, 5, 64}, grants.toArray());
+        assertArrayEquals(new long[]{3, 5, 64}, compressed.toArray());
+        long[] granted = {3, 5};
+        assertSame(granted, grants.filter(granted));
+        assertArrayEquals(new long[]{64, 4, 3, 5}, NtsLocationGrants.ALL.filter(ids));
+        assertEquals(0, NtsLocationGrants.EMPTY.filter(ids).length);
+        assertEquals(1, LongStream.of(ids).filter(grants.negate()).filter(id -> id > 0).count());
+    }
+
+    @Test
+    @DisplayName("Cache: decode once per token")
+    public void cache_decode_once_per_token() {
+        NtsLocationGrantsCache cache = new NtsLocationGrantsCache(2);
+        AtomicInteger decoded = new AtomicInteger();
+        Instant expiresAt = Instant.now().plusSeconds(60);
+        String claim = encode(1, 2);
+
+        NtsLocationGrants first = cache.get("token-1", claim, expiresAt, counting(decoded));
+        NtsLocationGrants second = cache.get("token-1", claim, expiresAt, counting(decoded));
+
+        assertSame(first, second);
+        assertEquals(1, decoded.get());
+        cache.get("token-1", encode(3), expiresAt, counting(decoded));
+        assertEquals(2, decoded.get());
+        cache.get(null, claim, expiresAt, counting(decoded));
+        assertEquals(3, decoded.get());
+    }
+
+    @Test
+    @DisplayName("Cache: skip expired tokens and stay bounded")
+    public void cache_expired_and_bounded() {
+        NtsLocationGrantsCache cache = new NtsLocationGrantsCache(2);
+        AtomicInteger decoded = new AtomicInteger();
+        String claim = encode(1);
+
+        cache.get("expired", claim, Instant.now().minusSeconds(1), counting(decoded));
+        assertEquals(0, cache.size());
+        for (int i = 0; i < 10; i++) {
+            cache.get("token-" + i, claim, Instant.now().plusSeconds(60), counting(decoded));
+            assertTrue(cache.size() <= 2);
+        }
+    }
+
+    static String encode(int... ids) {
+        BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return Base64.getEncoder().encodeToString(bitSet.toByteArray());
+    }
+
+    private static Function<String, NtsLocationGrants> counting(AtomicInteger counter) {
+        return encoded -> {
+            counter.incrementAndGet();
+            return NtsLocationGrants.decode(encoded);
+        };
+    }
+}
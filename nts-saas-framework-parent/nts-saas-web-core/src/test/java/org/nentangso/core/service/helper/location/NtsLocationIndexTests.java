@@ -0,0 +1,94 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Index Unit Tests power by nentangso.org")
+public class NtsLocationIndexTests {
+    @Test
+    @DisplayName("Index: find by country, province, active and custom attribute")
+    public void index_find() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        locations.put(1L, location(1L, "VN", "HN", true, "north"));
+        locations.put(2L, location(2L, "VN", "SG", false, "south"));
+        locations.put(3L, location(3L, "vn", "hn", true, null));
+        locations.put(4L, location(4L, "US", "HN", true, "north"));
+
+        NtsLocationIndex<NtsDefaultLocationDTO> index = NtsLocationIndex.of(locations);
+
+        assertTrue(index.isIndexOf(NtsLocationVersion.of(locations.values())));
+        assertEquals(4, index.size());
+        assertEquals(List.of(1L, 2L, 3L), ids(index.findByCountryCode("VN")));
+        assertEquals(List.of(1L, 3L), ids(index.findByProvinceCode("VN", "hn")));
+        assertEquals(List.of(4L), ids(index.findByProvinceCode("US", "HN")));
+        assertEquals(List.of(1L, 3L, 4L), ids(index.findActive()));
+        assertEquals(List.of(1L, 4L), ids(index.findByCustomAttribute("region", "north")));
+        assertEquals(Collections.emptyList(), index.findByCustomAttribute("region", "east"));
+        assertEquals(Collections.emptyList(), index.findByCountryCode(null));
+        assertEquals(2, index.getCustomAttributeValues("region").size());
+    }
+
+    @Test
+    @DisplayName("Index: keyed on the snapshot version, not on the instance")
+    public void index_version() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        locations.put(1L, location(1L, "VN", "HN", true, "north"));
+        locations.put(2L, location(2L, "VN", "SG", false, "south"));
+
+        NtsLocationIndex<NtsDefaultLocationDTO> index = NtsLocationIndex.of(new LinkedHashMap<>(locations));
+
+        assertTrue(index.isIndexOf(NtsLocationVersion.of(new LinkedHashMap<>(locations).values())));
+        locations.put(2L, location(2L, "VN", "SG", true, "south"));
+        assertFalse(index.isIndexOf(NtsLocationVersion.of(locations.values())));
+        assertFalse(index.isIndexOf(null));
+        String version = NtsLocationVersion.of(locations.values());
+        assertEquals(version, NtsLocationIndex.of(locations, version).getVersion());
+    }
+
+    @Test
+    @DisplayName("Index: stream by filters after an id cursor")
+    public void index_stream() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        locations.put(9L, location(9L, "VN", "HN", true, null));
+        locations.put(3L, location(3L, "VN", "SG", false, null));
+        locations.put(5L, location(5L, "VN", "HN", false, null));
+        locations.put(1L, location(1L, "US", "CA", true, null));
+
+        NtsLocationIndex<NtsDefaultLocationDTO> index = NtsLocationIndex.of(locations);
+
+        assertEquals(List.of(1L, 3L, 5L, 9L), ids(index.findAll()));
+        assertEquals(List.of(5L, 9L), ids(index.stream("VN", "HN", null, null).collect(Collectors.toList())));
+        assertEquals(List.of(9L), ids(index.stream("VN", "HN", null, 5L).collect(Collectors.toList())));
+        assertEquals(List.of(3L, 5L), ids(index.stream("VN", null, false, null).collect(Collectors.toList())));
+        assertEquals(List.of(9L), ids(index.stream(null, null, true, 1L).collect(Collectors.toList())));
+        assertEquals(List.of(), ids(index.stream(null, null, null, 9L).collect(Collectors.toList())));
+    }
+
+    private static NtsDefaultLocationDTO location(Long id, String countryCode, String provinceCode, boolean active, String region) {
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .countryCode(countryCode)
+            .provinceCode(provinceCode)
+            .active(active)
+            .customAttributes(region == null ? Collections.emptyList() : List.of(NtsAttributeDTO.newBuilder()
+                .key("region")
+                .value(region)
+                .build()))
+            .build();
+    }
+
+    private static List<Long> ids(List<NtsDefaultLocationDTO> locations) {
+        return locations.stream().map(NtsDefaultLocationDTO::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,120 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Spatial Index Unit Tests power by nentangso.org")
+public class NtsLocationSpatialIndexTests {
+    private static final String LATITUDE = "latitude";
+    private static final String LONGITUDE = "longitude";
+
+    @Test
+    @DisplayName("Spatial: nearest and radius queries match a linear scan")
+    public void spatial_matchesLinearScan() {
+        Random random = new Random(42L);
+        List<NtsDefaultLocationDTO> locations = new ArrayList<>();
+        for (long id = 1; id <= 2000; id++) {
+            double latitude = random.nextDouble() * 180d - 90d;
+            double longitude = random.nextDouble() * 360d - 180d;
+            locations.add(location(id, Double.toString(latitude), Double.toString(longitude)));
+        }
+        NtsLocationSpatialIndex<NtsDefaultLocationDTO> index = NtsLocationSpatialIndex.of(locations, LATITUDE, LONGITUDE);
+        Predicate<NtsDefaultLocationDTO> even = location -> location.getId() % 2 == 0;
+
+        for (int i = 0; i < 50; i++) {
+            double latitude = random.nextDouble() * 180d - 90d;
+            double longitude = random.nextDouble() * 360d - 180d;
+
+            assertEquals(scan(locations, latitude, longitude, null).subList(0, 10), ids(index.findNearest(latitude, longitude, 10, null)));
+            assertEquals(scan(locations, latitude, longitude, even).subList(0, 5), ids(index.findNearest(latitude, longitude, 5, even)));
+
+            double radius = 1_000_000d;
+            List<Long> expected = scan(locations, latitude, longitude, null).stream()
+                .filter(id -> distance(locations, id, latitude, longitude) <= radius)
+                .collect(Collectors.toList());
+            assertEquals(expected, ids(index.findWithinRadius(latitude, longitude, radius, null)));
+        }
+    }
+
+    @Test
+    @DisplayName("Spatial: distances across the antimeridian, invalid coordinates are skipped")
+    public void spatial_antimeridian() {
+        List<NtsDefaultLocationDTO> locations = List.of(
+            location(1L, "0", "179.9"),
+            location(2L, "0", "-179.9"),
+            location(3L, "0", "170"),
+            location(4L, "91", "0"),
+            location(5L, "abc", "0"),
+            location(6L, null, "0")
+        );
+        NtsLocationSpatialIndex<NtsDefaultLocationDTO> index = NtsLocationSpatialIndex.of(locations, LATITUDE, LONGITUDE);
+
+        assertEquals(3, index.size());
+        List<NtsLocationSpatialIndex.Neighbor<NtsDefaultLocationDTO>> nearest = index.findNearest(0d, -179.95d, 2, null);
+        assertEquals(List.of(2L, 1L), ids(nearest));
+        assertEquals(5_560d, nearest.get(0).getDistance(), 10d);
+        assertEquals(List.of(2L, 1L), ids(index.findWithinRadius(0d, -179.99d, 20_000d, null)));
+        assertEquals(111_195d, NtsLocationSpatialIndex.distance(0d, 0d, 1d, 0d), 1d);
+        assertTrue(index.findNearest(0d, 0d, 0, null).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.findNearest(100d, 0d, 1, null));
+    }
+
+    @Test
+    @DisplayName("Spatial: built once per snapshot index")
+    public void spatial_cachedOnIndex() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        locations.put(1L, location(1L, "21.0285", "105.8542"));
+        NtsLocationIndex<NtsDefaultLocationDTO> index = NtsLocationIndex.of(locations);
+
+        NtsLocationSpatialIndex<NtsDefaultLocationDTO> spatialIndex = index.getSpatialIndex(LATITUDE, LONGITUDE);
+
+        assertSame(spatialIndex, index.getSpatialIndex(LATITUDE, LONGITUDE));
+        assertNotSame(spatialIndex, index.getSpatialIndex("lat", "lng"));
+        assertEquals(1, spatialIndex.size());
+    }
+
+    private static List<Long> scan(List<NtsDefaultLocationDTO> locations, double latitude, double longitude, Predicate<NtsDefaultLocationDTO> filter) {
+        return locations.stream()
+            .filter(location -> filter == null || filter.test(location))
+            .sorted(Comparator.comparingDouble(location -> distance(location, latitude, longitude)))
+            .map(NtsLocationDTO::getId)
+            .collect(Collectors.toList());
+    }
+
+    private static double distance(List<NtsDefaultLocationDTO> locations, Long id, double latitude, double longitude) {
+        return distance(locations.get((int) (id - 1)), latitude, longitude);
+    }
+
+    private static double distance(NtsDefaultLocationDTO location, double latitude, double longitude) {
+        double lat = Double.parseDouble(location.getCustomAttributes().get(0).getValue());
+        double lng = Double.parseDouble(location.getCustomAttributes().get(1).getValue());
+        return NtsLocationSpatialIndex.distance(lat, lng, latitude, longitude);
+    }
+
+    private static List<Long> ids(List<NtsLocationSpatialIndex.Neighbor<NtsDefaultLocationDTO>> neighbors) {
+        return neighbors.stream()
+            .map(neighbor -> neighbor.getLocation().getId())
+            .collect(Collectors.toList());
+    }
+
+    private static NtsDefaultLocationDTO location(Long id, String latitude, String longitude) {
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .name("Location " + id)
+            .active(true)
+            .customAttributes(List.of(
+                NtsAttributeDTO.newBuilder().key(LATITUDE).value(latitude).build(),
+                NtsAttributeDTO.newBuilder().key(LONGITUDE).value(longitude).build()
+            ))
+            .build();
+    }
+}
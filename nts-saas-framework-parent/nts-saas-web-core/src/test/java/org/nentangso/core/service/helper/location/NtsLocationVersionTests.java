@@ -0,0 +1,51 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Version Unit Tests power by nentangso.org")
+public class NtsLocationVersionTests {
+    @Test
+    @DisplayName("Version: same content gives same tag in any order")
+    public void version_of() {
+        NtsDefaultLocationDTO first = location(1L, "First", "2022-01-01T00:00:00Z");
+        NtsDefaultLocationDTO second = location(2L, "Second", "2022-01-02T00:00:00Z");
+
+        String tag = NtsLocationVersion.of(List.of(first, second));
+
+        assertTrue(tag.startsWith("\"") && tag.endsWith("\""));
+        assertEquals(tag, NtsLocationVersion.of(List.of(second, first)));
+        assertNotEquals(tag, NtsLocationVersion.of(List.of(first, location(2L, "Second", "2022-01-03T00:00:00Z"))));
+        assertNotEquals(tag, NtsLocationVersion.of(List.of(first)));
+        assertEquals(NtsLocationVersion.of(first), NtsLocationVersion.of(location(1L, "First", "2022-01-01T00:00:00Z")));
+    }
+
+    @Test
+    @DisplayName("Version: match If-None-Match header")
+    public void version_matches() {
+        String tag = "\"abc\"";
+
+        assertTrue(NtsLocationVersion.matches("\"abc\"", tag));
+        assertTrue(NtsLocationVersion.matches("W/\"abc\"", tag));
+        assertTrue(NtsLocationVersion.matches("\"xyz\", \"abc\"", tag));
+        assertTrue(NtsLocationVersion.matches("*", tag));
+        assertFalse(NtsLocationVersion.matches("\"xyz\"", tag));
+        assertFalse(NtsLocationVersion.matches(null, tag));
+    }
+
+    private static NtsDefaultLocationDTO location(Long id, String name, String updatedAt) {
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .name(name)
+            .countryCode("VN")
+            .updatedAt(Instant.parse(updatedAt))
+            .build();
+    }
+}
@@ -0,0 +1,43 @@
+package org.nentangso.core.service.helper.metafield;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Metafield Type Unit Tests power by nentangso.org")
+public class NtsMetafieldTypeTests {
+    @Test
+    @DisplayName("Type: parse typed values once per save")
+    public void type_parse() {
+        assertEquals(new BigDecimal("42"), NtsMetafieldType.of("number_integer").parse("42").getNumber());
+        assertEquals(new BigDecimal("-1.25"), NtsMetafieldType.of("number_decimal").parse("-1.25").getNumber());
+        assertEquals(Boolean.TRUE, NtsMetafieldType.of("boolean").parse("true").getBoolean());
+        assertEquals(Instant.parse("2022-02-02T00:00:00Z"), NtsMetafieldType.of("date").parse("2022-02-02").getTimestamp());
+        assertEquals(Instant.parse("2022-02-02T05:30:00Z"), NtsMetafieldType.of("date_time").parse("2022-02-02T12:30:00+07:00").getTimestamp());
+        assertEquals(Instant.parse("2022-02-02T12:30:00Z"), NtsMetafieldType.of("date_time").parse("2022-02-02T12:30:00").getTimestamp());
+        assertNull(NtsMetafieldType.of("single_line_text_field").parse("red").getNumber());
+        assertNull(NtsMetafieldType.of("number_integer").parse(null).getNumber());
+
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("number_integer").parse("1.5"));
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("number_decimal").parse("abc"));
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("boolean").parse("yes"));
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("date").parse("02/02/2022"));
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("color").parse("red"));
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldType.of("single_line_text_field").parse("a\nb"));
+    }
+
+    @Test
+    @DisplayName("Type: compiled once, list types resolve their element type")
+    public void type_cache() {
+        assertSame(NtsMetafieldType.of("number_integer"), NtsMetafieldType.of("number_integer"));
+        NtsMetafieldType list = NtsMetafieldType.of("list.number_integer");
+        assertEquals(NtsMetafieldType.Kind.JSON, list.getKind());
+        assertSame(NtsMetafieldType.of("number_integer"), list.getElementType());
+        assertEquals(NtsMetafieldType.Kind.TEXT, NtsMetafieldType.of("custom_type").getKind());
+        assertEquals(NtsMetafieldType.Kind.JSON, NtsMetafieldType.of("json").getKind());
+    }
+}
@@ -0,0 +1,67 @@
+package org.nentangso.core.service.helper.metafield;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Metafield Value Index Unit Tests power by nentangso.org")
+public class NtsMetafieldValueIndexTests {
+    @Test
+    @DisplayName("Index: bounded text and decimal copies of a value")
+    public void index_value() {
+        assertEquals("red", NtsMetafieldValueIndex.text("red"));
+        assertNull(NtsMetafieldValueIndex.text("x".repeat(NtsMetafieldValueIndex.TEXT_MAX_LENGTH + 1)));
+        assertNull(NtsMetafieldValueIndex.text(null));
+
+        assertEquals(new BigDecimal("12.5"), NtsMetafieldValueIndex.number(" 12.5 "));
+        assertEquals(new BigDecimal("-3"), NtsMetafieldValueIndex.number("-3"));
+        assertEquals(new BigDecimal("1E+3"), NtsMetafieldValueIndex.number("1e3"));
+        assertEquals(new BigDecimal("0.3333333333"), NtsMetafieldValueIndex.number("0.33333333333333"));
+        assertNull(NtsMetafieldValueIndex.number("red"));
+        assertNull(NtsMetafieldValueIndex.number("1e9999"));
+        assertNull(NtsMetafieldValueIndex.number("1" + "0".repeat(30)));
+        assertNull(NtsMetafieldValueIndex.number(""));
+    }
+
+    @Test
+    @DisplayName("Index: escape like wildcards of a prefix")
+    public void index_like_prefix() {
+        assertEquals("red%", NtsMetafieldValueIndex.likePrefix("red"));
+        assertEquals("50\\%\\_off\\\\%", NtsMetafieldValueIndex.likePrefix("50%_off\\"));
+    }
+
+    @Test
+    @DisplayName("Query: exactly one value condition and a bounded limit")
+    public void owner_query() {
+        NtsMetafieldOwnerQuery query = NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("size")
+            .minValue(BigDecimal.ONE)
+            .afterOwnerId(10L)
+            .build();
+        assertEquals(NtsMetafieldOwnerQuery.DEFAULT_LIMIT, query.getLimit());
+        assertEquals(10L, (long) query.getAfterOwnerId());
+
+        NtsMetafieldOwnerQuery.Builder builder = NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color");
+        assertThrows(IllegalArgumentException.class, builder::build);
+        builder.value("red").valuePrefix("r");
+        assertThrows(IllegalArgumentException.class, builder::build);
+        builder.valuePrefix(null).limit(NtsMetafieldOwnerQuery.MAX_LIMIT + 1);
+        assertThrows(IllegalArgumentException.class, builder::build);
+        assertEquals("red", builder.limit(1).build().getValue());
+        assertThrows(IllegalArgumentException.class, () -> NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("size")
+            .minValue(BigDecimal.TEN)
+            .maxValue(BigDecimal.ONE)
+            .build());
+    }
+}
@@ -0,0 +1,194 @@
+package org.nentangso.core.service.helper.option;
+
+import org.nentangso.core.annotation.OptionProperties;
+import org.nentangso.core.service.utils.NtsTextUtils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compares binding a 30 field options class with the per call reflection NtsOptionHelper used to do, with
+ * {@link NtsOptionBinder}, for both reading the rows of an option query and writing them back.
+ * Not a unit test, run it manually from the IDE or with
+ * {@code java -cp target/classes:target/test-classes org.nentangso.core.service.helper.option.NtsOptionBinderBenchmark}.
+ */
+public class NtsOptionBinderBenchmark {
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long RUN_NANOS = 1_000_000_000L;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        List<String[]> rows = new ArrayList<>();
+        NtsOptionBinder.of(Settings.class).write(sample(), (key, value) -> rows.add(new String[]{key, value}));
+        System.out.printf("%-12s %-10s %8s %12s%n", "operation", "mode", "rows", "ns/op");
+        run("read", "reflection", rows.size(), () -> sink = reflectiveRead(Settings.class, rows));
+        run("read", "binder", rows.size(), () -> sink = binderRead(Settings.class, rows));
+        Settings settings = sample();
+        run("write", "reflection", rows.size(), () -> sink = reflectiveWrite(settings));
+        run("write", "binder", rows.size(), () -> {
+            List<String[]> output = new ArrayList<>(rows.size());
+            NtsOptionBinder.of(Settings.class).write(settings, (key, value) -> output.add(new String[]{key, value}));
+            sink = output;
+        });
+    }
+
+    private static void run(String operation, String mode, int rows, Task task) throws Exception {
+        measure(task, WARMUP_NANOS);
+        long operations = measure(task, RUN_NANOS);
+        System.out.printf("%-12s %-10s %8d %12.1f%n", operation, mode, rows, RUN_NANOS / (double) operations);
+    }
+
+    private static long measure(Task task, long nanos) throws Exception {
+        long operations = 0;
+        long deadline = System.nanoTime() + nanos;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 100; i++) {
+                task.run();
+            }
+            operations += 100;
+        }
+        return operations;
+    }
+
+    private static <T> T binderRead(Class<T> clazz, List<String[]> rows) {
+        Map<String, List<String>> values = new HashMap<>();
+        for (String[] row : rows) {
+            values.computeIfAbsent(row[0], k -> new ArrayList<>(1)).add(row[1]);
+        }
+        return NtsOptionBinder.of(clazz).read(values);
+    }
+
+    /**
+     * The former NtsOptionHelper.read, without the repository call.
+     */
+    private static <T> T reflectiveRead(Class<T> clazz, List<String[]> rows) throws Exception {
+        String prefix = clazz.getAnnotation(OptionProperties.class).prefix() + ".";
+        T output = clazz.getDeclaredConstructor().newInstance();
+        Set<String> optionKeys = Arrays.stream(clazz.getDeclaredFields())
+            .map(field -> prefix + NtsTextUtils.toSnakeCase(field.getName()))
+            .collect(Collectors.toSet());
+        sink = optionKeys;
+        for (Field field : clazz.getDeclaredFields()) {
+            String optionKey = prefix + NtsTextUtils.toSnakeCase(field.getName());
+            Type genericType = field.getGenericType();
+            if (genericType instanceof ParameterizedType) {
+                String typeName = ((ParameterizedType) genericType).getActualTypeArguments()[0].getTypeName();
+                List<Object> values = rows.stream()
+                    .filter(row -> optionKey.equals(row[0]))
+                    .map(row -> row[1])
+                    .filter(Objects::nonNull)
+                    .map(rawString -> parseValue(rawString, typeName))
+                    .collect(Collectors.toList());
+                field.setAccessible(true);
+                field.set(output, values);
+            } else {
+                String rawString = rows.stream()
+                    .filter(row -> optionKey.equals(row[0]))
+                    .map(row -> row[1])
+                    .filter(Objects::nonNull)
+                    .findFirst()
+                    .orElse(null);
+                if (rawString == null) continue;
+                field.setAccessible(true);
+                field.set(output, parseValue(rawString, field.getType().getTypeName()));
+            }
+        }
+        return output;
+    }
+
+    /**
+     * The former NtsOptionHelper.write, without the repository calls.
+     */
+    private static List<String[]> reflectiveWrite(Object configuration) throws Exception {
+        Class<?> clazz = configuration.getClass();
+        String prefix = clazz.getAnnotation(OptionProperties.class).prefix() + ".";
+        List<String[]> output = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            String optionKey = prefix + NtsTextUtils.toSnakeCase(field.getName());
+            field.setAccessible(true);
+            Type genericType = field.getGenericType();
+            if (genericType instanceof ParameterizedType) {
+                String typeName = ((ParameterizedType) genericType).getActualTypeArguments()[0].getTypeName();
+                for (Object value : (Collection<?>) field.get(configuration)) {
+                    output.add(new String[]{optionKey, convertValue(value, typeName)});
+                }
+            } else {
+                output.add(new String[]{optionKey, convertValue(field.get(configuration), field.getType().getTypeName())});
+            }
+        }
+        return output;
+    }
+
+    private static Object parseValue(String rawString, String typeName) {
+        if (typeName.equals(String.class.getTypeName())) {
+            return rawString;
+        } else if (typeName.equals(Integer.class.getTypeName()) || typeName.equals("int")) {
+            return Integer.parseInt(rawString);
+        } else if (typeName.equals(Long.class.getTypeName()) || typeName.equals("long")) {
+            return Long.parseLong(rawString);
+        } else if (typeName.equals(Double.class.getTypeName()) || typeName.equals("double")) {
+            return Double.parseDouble(rawString);
+        } else if (typeName.equals(BigDecimal.class.getTypeName())) {
+            return new BigDecimal(rawString);
+        }
+        throw new ClassCastException(typeName);
+    }
+
+    private static String convertValue(Object value, String typeName) {
+        if (typeName.equals("int") || typeName.equals("long") || typeName.equals("double")) {
+            return value == null ? "0" : String.valueOf(value);
+        }
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static Settings sample() {
+        Settings settings = new Settings();
+        settings.storeName = "Main store";
+        settings.allowedCurrencies = List.of("VND", "USD", "EUR");
+        settings.defaultLocationIds = List.of(1L, 2L, 3L, 4L);
+        return settings;
+    }
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    @OptionProperties(prefix = "benchmark")
+    static class Settings {
+        private String storeName;
+        private String storeEmail = "store@example.com";
+        private String storePhone = "0900000000";
+        private String timezone = "Asia/Ho_Chi_Minh";
+        private String currency = "VND";
+        private String weightUnit = "kg";
+        private String orderPrefix = "#";
+        private String orderSuffix = "";
+        private String invoiceFooter = "Thank you";
+        private String receiptHeader = "Receipt";
+        private int maxOrderItems = 100;
+        private int maxCartItems = 50;
+        private int orderExpiryMinutes = 30;
+        private int reservationMinutes = 15;
+        private int lowStockThreshold = 5;
+        private Integer pageSize = 20;
+        private Integer maxPageSize = 250;
+        private long maxOrderAmount = 1_000_000_000L;
+        private long sessionTimeout = 3600L;
+        private Long defaultLocationId = 1L;
+        private double taxRate = 0.1d;
+        private double shippingRate = 0.05d;
+        private Double discountRate = 0.02d;
+        private BigDecimal minOrderAmount = new BigDecimal("10000");
+        private BigDecimal freeShippingAmount = new BigDecimal("500000");
+        private BigDecimal roundingUnit = new BigDecimal("1000");
+        private List<String> allowedCurrencies;
+        private List<Long> defaultLocationIds;
+        private List<String> blockedCountries = List.of("AQ");
+        private List<Integer> reminderHours = List.of(1, 24);
+    }
+}
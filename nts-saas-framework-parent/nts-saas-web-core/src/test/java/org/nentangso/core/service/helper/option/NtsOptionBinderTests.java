@@ -0,0 +1,115 @@
+package org.nentangso.core.service.helper.option;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.annotation.OptionProperties;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Option Binder Unit Tests power by nentangso.org")
+public class NtsOptionBinderTests {
+    @Test
+    @DisplayName("Binder: option keys are computed once per class")
+    public void binder_optionKeys() {
+        NtsOptionBinder<SampleOptions> binder = NtsOptionBinder.of(SampleOptions.class);
+
+        assertSame(binder, NtsOptionBinder.of(SampleOptions.class));
+        assertTrue(binder.isAnnotated());
+        assertTrue(binder.isInstantiable());
+        assertEquals(
+            Set.of("sample.store_name", "sample.max_items", "sample.ratio", "sample.price", "sample.tags", "sample.location_ids"),
+            binder.getOptionKeys()
+        );
+    }
+
+    @Test
+    @DisplayName("Binder: read raw values, keep defaults of missing options")
+    public void binder_read() {
+        NtsOptionBinder<SampleOptions> binder = NtsOptionBinder.of(SampleOptions.class);
+        Map<String, List<String>> values = new HashMap<>();
+        values.put("sample.store_name", List.of("Main"));
+        values.put("sample.price", List.of("12.50"));
+        values.put("sample.tags", Arrays.asList("a", null, "b"));
+        values.put("sample.location_ids", List.of("1", "2", "2"));
+
+        SampleOptions options = binder.read(values);
+
+        assertEquals("Main", options.storeName);
+        assertEquals(10, options.maxItems);
+        assertEquals(new BigDecimal("12.50"), options.price);
+        assertEquals(List.of("a", "b"), options.tags);
+        assertEquals(Set.of(1L, 2L), options.locationIds);
+        assertEquals(List.of("default"), binder.read(Collections.emptyMap()).tags);
+    }
+
+    @Test
+    @DisplayName("Binder: write raw values, one per collection item")
+    public void binder_write() {
+        SampleOptions options = new SampleOptions();
+        options.storeName = null;
+        options.ratio = 0.5d;
+        options.tags = List.of("x", "y");
+        options.locationIds = null;
+        List<String> written = new ArrayList<>();
+
+        NtsOptionBinder.of(SampleOptions.class).write(options, (key, value) -> written.add(key + "=" + value));
+
+        assertEquals(
+            List.of("sample.store_name=null", "sample.max_items=10", "sample.ratio=0.5", "sample.price=null", "sample.tags=x", "sample.tags=y"),
+            written
+        );
+    }
+
+    @Test
+    @DisplayName("Binder: copy values, collections are not shared")
+    public void binder_copy() {
+        NtsOptionBinder<SampleOptions> binder = NtsOptionBinder.of(SampleOptions.class);
+        SampleOptions options = binder.read(Map.of("sample.store_name", List.of("Main"), "sample.location_ids", List.of("1")));
+        options.tags = null;
+
+        SampleOptions copy = binder.copy(options);
+        copy.locationIds.add(2L);
+
+        assertNotSame(options, copy);
+        assertEquals("Main", copy.storeName);
+        assertNull(copy.tags);
+        assertEquals(Set.of(1L), options.locationIds);
+        assertEquals(Set.of(1L, 2L), copy.locationIds);
+    }
+
+    @Test
+    @DisplayName("Binder: unsupported field types are rejected")
+    public void binder_unsupported() {
+        assertThrows(ClassCastException.class, () -> NtsOptionBinder.of(UnsupportedOptions.class));
+        assertFalse(NtsOptionBinder.of(NoDefaultConstructorOptions.class).isInstantiable());
+    }
+
+    @OptionProperties(prefix = "sample")
+    static class SampleOptions {
+        private static final long serialVersionUID = 1L;
+
+        private String storeName = "Default";
+        private int maxItems = 10;
+        private Double ratio;
+        private BigDecimal price;
+        private List<String> tags = List.of("default");
+        private Set<Long> locationIds = new HashSet<>();
+    }
+
+    @OptionProperties(prefix = "unsupported")
+    static class UnsupportedOptions {
+        private Map<String, String> values;
+    }
+
+    @OptionProperties
+    static class NoDefaultConstructorOptions {
+        private final String name;
+
+        NoDefaultConstructorOptions(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.nentangso.core.service.helper.option;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Option Diff Unit Tests power by nentangso.org")
+public class NtsOptionDiffTests {
+    @Test
+    @DisplayName("Diff: unchanged rows are kept, duplicates are matched one to one")
+    public void diff_multiset() {
+        List<String[]> stored = List.of(
+            row("a", "1"), row("a", "1"), row("b", null), row("c", "x"), row("d", "2")
+        );
+        List<String[]> wanted = List.of(
+            row("a", "1"), row("b", null), row("c", "y"), row("d", "2"), row("d", "2"), row("e", null)
+        );
+
+        NtsOptionDiff<String[]> diff = NtsOptionDiff.of(stored, wanted, r -> r[0], r -> r[1]);
+
+        assertEquals(Set.of("a=1", "c=x"), format(diff.getRemoved()));
+        assertEquals(2, diff.getRemoved().size());
+        assertSame(stored.get(1), diff.getRemoved().stream().filter(r -> "a".equals(r[0])).findFirst().orElse(null));
+        assertEquals(List.of("c=y", "d=2", "e=null"), new ArrayList<>(new TreeSet<>(format(diff.getAdded()))));
+        assertEquals(3, diff.getAdded().size());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Diff: same rows in another order produce no statement")
+    public void diff_unchanged() {
+        List<String[]> stored = List.of(row("tags", "x"), row("tags", "y"), row("name", "Main"));
+        List<String[]> wanted = List.of(row("name", "Main"), row("tags", "y"), row("tags", "x"));
+
+        assertTrue(NtsOptionDiff.of(stored, wanted, r -> r[0], r -> r[1]).isEmpty());
+        assertEquals(3, NtsOptionDiff.of(stored, List.<String[]>of(), r -> r[0], r -> r[1]).getRemoved().size());
+    }
+
+    private static String[] row(String key, String value) {
+        return new String[]{key, value};
+    }
+
+    private static Set<String> format(List<String[]> rows) {
+        Set<String> output = new HashSet<>();
+        for (String[] row : rows) {
+            output.add(row[0] + "=" + row[1]);
+        }
+        return output;
+    }
+}
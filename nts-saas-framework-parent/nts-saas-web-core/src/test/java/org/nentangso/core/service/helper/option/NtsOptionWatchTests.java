@@ -0,0 +1,104 @@
+package org.nentangso.core.service.helper.option;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.annotation.OptionProperties;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Option Watch Unit Tests power by nentangso.org")
+public class NtsOptionWatchTests {
+    @Test
+    @DisplayName("Watch: swap and notify only when a raw value changed")
+    public void watch_update() {
+        NtsOptionBinder<WatchedOptions> binder = NtsOptionBinder.of(WatchedOptions.class);
+        WatchedOptions initial = binder.newInstance();
+        NtsOptionWatch<WatchedOptions> watch = new NtsOptionWatch<>(binder, initial);
+        List<WatchedOptions> received = new ArrayList<>();
+        NtsOptionWatch.Registration registration = watch.addListener(received::add);
+
+        assertFalse(watch.update(binder.newInstance()));
+        assertEquals(20, watch.get().pageSize);
+
+        WatchedOptions changed = binder.read(Map.of("watched.page_size", List.of("50")));
+        assertTrue(watch.update(changed));
+        assertEquals(50, watch.get().pageSize);
+        assertEquals(1, received.size());
+        assertEquals(50, received.get(0).pageSize);
+
+        registration.close();
+        assertTrue(watch.update(binder.read(Map.of("watched.tags", List.of("a")))));
+        assertEquals(1, received.size());
+    }
+
+    @Test
+    @DisplayName("Watch: affected by its own keys only, a failing listener does not stop the others")
+    public void watch_keys() {
+        NtsOptionBinder<WatchedOptions> binder = NtsOptionBinder.of(WatchedOptions.class);
+        NtsOptionWatch<WatchedOptions> watch = new NtsOptionWatch<>(binder, binder.newInstance());
+        List<Integer> received = new ArrayList<>();
+        watch.addListener(options -> {
+            throw new IllegalStateException("failed");
+        });
+        watch.addListener(options -> received.add(options.pageSize));
+
+        assertTrue(watch.isAffectedBy(Set.of("other.key", "watched.tags")));
+        assertFalse(watch.isAffectedBy(Set.of("other.key")));
+        assertTrue(watch.isAffectedBy(null));
+        assertThrows(IllegalStateException.class, () -> watch.update(binder.read(Map.of("watched.page_size", List.of("5")))));
+        assertEquals(List.of(5), received);
+        assertEquals(5, watch.get().pageSize);
+    }
+
+    @Test
+    @DisplayName("Watch: a refresh started before the applied one does not revert it")
+    public void watch_refresh_order() {
+        NtsOptionBinder<WatchedOptions> binder = NtsOptionBinder.of(WatchedOptions.class);
+        NtsOptionWatch<WatchedOptions> watch = new NtsOptionWatch<>(binder, binder.newInstance());
+        long earlier = watch.startRefresh();
+        long later = watch.startRefresh();
+        assertTrue(later > earlier);
+
+        assertTrue(watch.update(binder.read(Map.of("watched.page_size", List.of("50"))), later));
+        assertFalse(watch.update(binder.read(Map.of("watched.page_size", List.of("30"))), earlier));
+        assertEquals(50, watch.get().pageSize);
+
+        assertTrue(watch.update(binder.read(Map.of("watched.page_size", List.of("70"))), watch.startRefresh()));
+        assertEquals(70, watch.get().pageSize);
+    }
+
+    @Test
+    @DisplayName("Watch: readers and listeners get their own copy")
+    public void watch_copies() {
+        NtsOptionBinder<WatchedOptions> binder = NtsOptionBinder.of(WatchedOptions.class);
+        WatchedOptions initial = binder.read(Map.of("watched.tags", List.of("a")));
+        NtsOptionWatch<WatchedOptions> watch = new NtsOptionWatch<>(binder, initial);
+        List<WatchedOptions> received = new ArrayList<>();
+        watch.addListener(options -> {
+            options.tags.add("changed by listener");
+            received.add(options);
+        });
+        initial.pageSize = 99;
+
+        WatchedOptions options = watch.get();
+        assertNotSame(options, watch.get());
+        options.pageSize = 1;
+        options.tags.add("b");
+        assertEquals(20, watch.get().pageSize);
+        assertEquals(List.of("a"), watch.get().tags);
+
+        WatchedOptions changed = binder.read(Map.of("watched.tags", List.of("c")));
+        assertTrue(watch.update(changed));
+        changed.tags.add("d");
+        assertEquals(List.of("c", "changed by listener"), received.get(0).tags);
+        assertEquals(List.of("c"), watch.get().tags);
+    }
+
+    @OptionProperties(prefix = "watched")
+    static class WatchedOptions {
+        private int pageSize = 20;
+        private List<String> tags = new ArrayList<>();
+    }
+}
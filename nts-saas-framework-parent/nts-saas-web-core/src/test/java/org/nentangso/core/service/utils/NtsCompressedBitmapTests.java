@@ -0,0 +1,72 @@
+package org.nentangso.core.service.utils;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Compressed Bitmap Unit Tests power by nentangso.org")
+public class NtsCompressedBitmapTests {
+    @Test
+    @DisplayName("Serialize and deserialize: sparse, dense and ranges of ids")
+    public void serializeAndDeserialize() {
+        Random random = new Random(42);
+        TreeSet<Long> expected = new TreeSet<>();
+        for (int i = 0; i < 2_000; i++) {
+            expected.add((long) random.nextInt(10_000_000));
+        }
+        for (long id = 70_000; id < 72_000; id++) {
+            expected.add(id);
+        }
+        for (int i = 0; i < 30_000; i++) {
+            expected.add(200_000L + random.nextInt(65_536));
+        }
+        expected.add(0L);
+        expected.add(Long.MAX_VALUE);
+        long[] ids = expected.stream().mapToLong(Long::longValue).toArray();
+
+        NtsCompressedBitmap bitmap = NtsCompressedBitmap.deserialize(NtsCompressedBitmap.of(ids).serialize());
+
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(ids, bitmap.toArray());
+        for (long id : ids) {
+            assertTrue(bitmap.contains(id));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            long id = random.nextInt(12_000_000);
+            assertEquals(expected.contains(id), bitmap.contains(id));
+        }
+        assertFalse(bitmap.contains(-1L));
+    }
+
+    @Test
+    @DisplayName("Of: ignore order and duplicates")
+    public void of_unsorted_with_duplicates() {
+        NtsCompressedBitmap bitmap = NtsCompressedBitmap.of(5, 3, 5, 1_000_000, 3);
+
+        assertArrayEquals(new long[]{3, 5, 1_000_000}, bitmap.toArray());
+        assertThrows(IllegalArgumentException.class, () -> NtsCompressedBitmap.of(1, -2));
+    }
+
+    @Test
+    @DisplayName("Serialize: few bytes for large ids and ranges")
+    public void serialize_compact() {
+        assertTrue(NtsCompressedBitmap.of(2_000_000L).serialize().length < 10);
+        assertTrue(NtsCompressedBitmap.of(LongStream.range(1, 50_000).toArray()).serialize().length < 10);
+        assertTrue(NtsCompressedBitmap.empty().isEmpty());
+        assertEquals(0, NtsCompressedBitmap.deserialize(NtsCompressedBitmap.empty().serialize()).cardinality());
+    }
+
+    @Test
+    @DisplayName("Deserialize: throws on unknown format")
+    public void deserialize_throws_on_unknown_format() {
+        assertThrows(UncheckedIOException.class, () -> NtsCompressedBitmap.deserialize(new byte[]{9, 0}));
+        assertThrows(UncheckedIOException.class, () -> NtsCompressedBitmap.deserialize(new byte[]{1, 1, 0, 7}));
+        assertThrows(UncheckedIOException.class, () -> NtsCompressedBitmap.deserialize(new byte[0]));
+    }
+}
@@ -0,0 +1,79 @@
+package org.nentangso.core.service.utils;
+
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+
+import java.io.*;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares {@link NtsLocationBinaryUtils} with JDK serialization, the format written by redisson SerializationCodec.
+ * Not a unit test, run it manually from the IDE or with
+ * {@code java -cp target/classes:target/test-classes org.nentangso.core.service.utils.NtsLocationBinaryUtilsBenchmark}.
+ */
+public class NtsLocationBinaryUtilsBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 50_000};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%8s %-8s %12s %12s %12s%n", "size", "codec", "bytes", "encode(ms)", "decode(ms)");
+        for (int size : SIZES) {
+            Map<Long, NtsDefaultLocationDTO> locations = newLocations(size);
+            run(size, "jdk", locations, NtsLocationBinaryUtilsBenchmark::jdkEncode, NtsLocationBinaryUtilsBenchmark::jdkDecode);
+            run(size, "binary", locations, NtsLocationBinaryUtils::encode, NtsLocationBinaryUtils::decode);
+        }
+    }
+
+    private static void run(int size, String name, Map<Long, NtsDefaultLocationDTO> locations, Encoder encoder, Decoder decoder) throws Exception {
+        byte[] bytes = encoder.encode(locations);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            decoder.decode(encoder.encode(locations));
+        }
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            bytes = encoder.encode(locations);
+            encodeNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            decoder.decode(bytes);
+            decodeNanos += System.nanoTime() - start;
+        }
+        System.out.printf("%8d %-8s %12d %12.2f %12.2f%n", size, name, bytes.length,
+            encodeNanos / 1e6 / ROUNDS, decodeNanos / 1e6 / ROUNDS);
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> newLocations(int size) {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        Instant updatedAt = Instant.parse("2023-01-02T03:04:05Z");
+        for (long id = 1; id <= size; id++) {
+            locations.put(id, NtsLocationBinaryUtilsTests.newLocation(id, "Province " + (id % 63), updatedAt.plusSeconds(id)));
+        }
+        return locations;
+    }
+
+    private static byte[] jdkEncode(Map<Long, NtsDefaultLocationDTO> locations) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ObjectOutputStream stream = new ObjectOutputStream(output)) {
+            stream.writeObject(locations);
+        }
+        return output.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, NtsDefaultLocationDTO> jdkDecode(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream stream = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (Map<Long, NtsDefaultLocationDTO>) stream.readObject();
+        }
+    }
+
+    private interface Encoder {
+        byte[] encode(Map<Long, NtsDefaultLocationDTO> locations) throws Exception;
+    }
+
+    private interface Decoder {
+        Map<Long, NtsDefaultLocationDTO> decode(byte[] bytes) throws Exception;
+    }
+}
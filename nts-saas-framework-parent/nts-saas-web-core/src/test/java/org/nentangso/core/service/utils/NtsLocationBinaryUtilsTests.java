@@ -0,0 +1,100 @@
+package org.nentangso.core.service.utils;
+
+import org.junit.jupiter.api.*;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Location Binary Utils Unit Tests power by nentangso.org")
+public class NtsLocationBinaryUtilsTests {
+    @Test
+    @DisplayName("Encode and decode: keep all location fields")
+    public void encodeAndDecode() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        locations.put(1L, newLocation(1L, "Ha Noi", Instant.parse("2023-01-02T03:04:05.123456789Z")));
+        locations.put(2L, newLocation(2L, "Hồ Chí Minh", null));
+        NtsDefaultLocationDTO empty = new NtsDefaultLocationDTO();
+        locations.put(3L, empty);
+
+        Map<Long, NtsDefaultLocationDTO> result = NtsLocationBinaryUtils.decode(NtsLocationBinaryUtils.encode(locations));
+
+        assertEquals(List.of(1L, 2L, 3L), List.copyOf(result.keySet()));
+        for (Long id : locations.keySet()) {
+            NtsDefaultLocationDTO expected = locations.get(id);
+            NtsDefaultLocationDTO actual = result.get(id);
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(String.valueOf(expected.getAddress()), String.valueOf(actual.getAddress()));
+            assertEquals(attributesOf(expected), attributesOf(actual));
+        }
+        assertNull(result.get(3L).getAddress());
+        assertNull(result.get(3L).getCustomAttributes());
+    }
+
+    @Test
+    @DisplayName("Encode and decode: empty snapshot")
+    public void encodeAndDecode_empty() {
+        assertTrue(NtsLocationBinaryUtils.decode(NtsLocationBinaryUtils.encode(Collections.emptyMap())).isEmpty());
+        assertTrue(NtsLocationBinaryUtils.decode(NtsLocationBinaryUtils.encode(null)).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Encode and decode: single location")
+    public void encodeAndDecodeLocation() {
+        NtsDefaultLocationDTO expected = newLocation(7L, "Da Nang", Instant.parse("2023-01-02T03:04:05Z"));
+
+        NtsDefaultLocationDTO actual = NtsLocationBinaryUtils.decodeLocation(NtsLocationBinaryUtils.encodeLocation(expected));
+
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(attributesOf(expected), attributesOf(actual));
+    }
+
+    @Test
+    @DisplayName("Decode: throws on unknown format")
+    public void decode_throws_on_unknown_format() {
+        assertThrows(UncheckedIOException.class, () -> NtsLocationBinaryUtils.decode(new byte[]{'N', 'L', 99, 0}));
+        assertThrows(UncheckedIOException.class, () -> NtsLocationBinaryUtils.decode(new byte[]{1, 2, 3}));
+    }
+
+    static NtsDefaultLocationDTO newLocation(long id, String province, Instant updatedAt) {
+        NtsDefaultAttributeDTO attribute = NtsAttributeDTO.newBuilder()
+            .key("latitude")
+            .value(String.valueOf(id % 90))
+            .build();
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .name("Location " + id)
+            .phone("+84 900 000 " + id)
+            .address1(id + " Tran Hung Dao")
+            .country("Vietnam")
+            .countryCode("VN")
+            .city(province)
+            .province(province)
+            .provinceCode("VN-" + (id % 63))
+            .zip("100000")
+            .addressVerified(id % 2 == 0)
+            .active(true)
+            .createdAt(Instant.parse("2022-06-01T00:00:00Z"))
+            .updatedAt(updatedAt)
+            .customAttributes(List.of(attribute))
+            .build();
+    }
+
+    private static String attributesOf(NtsDefaultLocationDTO location) {
+        if (location.getCustomAttributes() == null) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        location.getCustomAttributes().forEach(a -> builder.append(a.getKey()).append('=').append(a.getValue()).append(';'));
+        return builder.toString();
+    }
+}
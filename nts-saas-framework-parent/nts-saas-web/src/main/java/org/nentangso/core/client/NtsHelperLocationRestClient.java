@@ -3,8 +3,10 @@ package org.nentangso.core.client;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
 import org.nentangso.core.service.helper.location.NtsRestLocationProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 
 import java.util.List;
 
@@ -18,6 +20,16 @@ import java.util.List;
     url = "${nts.helper.location.rest.api-base-url:http://localhost:8080}"
 )
 public interface NtsHelperLocationRestClient {
+    default ResponseEntity<List<NtsDefaultLocationDTO>> findAll() {
+        return findAll(null);
+    }
+
+    /**
+     * Get all locations, unless they match the entity tag.
+     *
+     * @param ifNoneMatch the entity tag of the cached locations, null to always get them
+     * @return the locations, or a {@code 304 Not Modified} error when they did not change
+     */
     @GetMapping(path = "${nts.helper.location.rest.get-locations.uri:/api/locations}")
-    ResponseEntity<List<NtsDefaultLocationDTO>> findAll();
+    ResponseEntity<List<NtsDefaultLocationDTO>> findAll(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
 }
@@ -27,6 +27,10 @@ public class NtsKeycloakLocationProperties implements Serializable {
 
     private final List<String> customAttributeKeys = new ArrayList<>();
 
+    private Long fullSyncInterval = 3600L;
+
+    private int syncParallelism = 4;
+
     public String getClientRegistrationId() {
         return clientRegistrationId;
     }
@@ -54,4 +58,20 @@ public class NtsKeycloakLocationProperties implements Serializable {
     public List<String> getCustomAttributeKeys() {
         return customAttributeKeys;
     }
+
+    public Long getFullSyncInterval() {
+        return fullSyncInterval;
+    }
+
+    public void setFullSyncInterval(Long fullSyncInterval) {
+        this.fullSyncInterval = fullSyncInterval;
+    }
+
+    public int getSyncParallelism() {
+        return syncParallelism;
+    }
+
+    public void setSyncParallelism(int syncParallelism) {
+        this.syncParallelism = syncParallelism;
+    }
 }
@@ -2,6 +2,9 @@ package org.nentangso.core.domain;
 
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Where;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldType;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldTypedValue;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldValueIndex;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 
 import javax.persistence.*;
@@ -9,6 +12,8 @@ import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.Instant;
 
 /**
  * Metafields represent custom metadata attached to a resource. Metafields can be sorted into namespaces and are
@@ -20,7 +25,12 @@ import java.io.Serializable;
     havingValue = "true"
 )
 @Entity
-@Table(name = "nts_metafields")
+@Table(name = "nts_metafields", indexes = {
+    @Index(name = "idx_nts_metafields_owner", columnList = "owner_resource, owner_id, deleted"),
+    @Index(name = "idx_nts_metafields_value_text", columnList = "owner_resource, namespace, nts_key, nts_value_text, owner_id"),
+    @Index(name = "idx_nts_metafields_value_number", columnList = "owner_resource, namespace, nts_key, nts_value_number, owner_id"),
+    @Index(name = "idx_nts_metafields_value_timestamp", columnList = "owner_resource, namespace, nts_key, nts_value_timestamp, owner_id")
+})
 @Where(clause = "deleted = false")
 @org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 public class NtsMetafieldEntity extends AbstractAuditingEntity implements Serializable {
@@ -80,6 +90,30 @@ public class NtsMetafieldEntity extends AbstractAuditingEntity implements Serial
     @Column(name = "nts_value", length = 65535)
     private String value;
 
+    /**
+     * The value when it is short enough to be indexed, see {@link NtsMetafieldValueIndex#text(String)}.
+     */
+    @Column(name = "nts_value_text", length = NtsMetafieldValueIndex.TEXT_MAX_LENGTH)
+    private String valueText;
+
+    /**
+     * The value of an integer or decimal type, see {@link NtsMetafieldType}.
+     */
+    @Column(name = "nts_value_number", precision = NtsMetafieldValueIndex.NUMBER_PRECISION, scale = NtsMetafieldValueIndex.NUMBER_SCALE)
+    private BigDecimal valueNumber;
+
+    /**
+     * The value of a date or date time type.
+     */
+    @Column(name = "nts_value_timestamp")
+    private Instant valueTimestamp;
+
+    /**
+     * The value of a boolean type.
+     */
+    @Column(name = "nts_value_boolean")
+    private Boolean valueBoolean;
+
     /**
      * The metafield's information type.
      * <p>
@@ -167,6 +201,7 @@ public class NtsMetafieldEntity extends AbstractAuditingEntity implements Serial
 
     public void setValue(String value) {
         this.value = value;
+        this.valueText = NtsMetafieldValueIndex.text(value);
     }
 
     public NtsMetafieldEntity value(String value) {
@@ -174,6 +209,35 @@ public class NtsMetafieldEntity extends AbstractAuditingEntity implements Serial
         return this;
     }
 
+    public String getValueText() {
+        return valueText;
+    }
+
+    public BigDecimal getValueNumber() {
+        return valueNumber;
+    }
+
+    public Instant getValueTimestamp() {
+        return valueTimestamp;
+    }
+
+    public Boolean getValueBoolean() {
+        return valueBoolean;
+    }
+
+    /**
+     * Set the typed columns from the value parsed according to the type.
+     *
+     * @param typedValue the parsed value
+     * @return this metafield
+     */
+    public NtsMetafieldEntity typedValue(NtsMetafieldTypedValue typedValue) {
+        this.valueNumber = typedValue.getNumber();
+        this.valueTimestamp = typedValue.getTimestamp();
+        this.valueBoolean = typedValue.getBoolean();
+        return this;
+    }
+
     public String getType() {
         return type;
     }
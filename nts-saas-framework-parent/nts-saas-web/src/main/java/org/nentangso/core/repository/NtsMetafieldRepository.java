@@ -4,10 +4,13 @@ import org.nentangso.core.domain.NtsMetafieldEntity;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @ConditionalOnProperty(
     prefix = "nts.helper.metafield",
@@ -15,7 +18,7 @@ import java.util.List;
     havingValue = "true"
 )
 @Repository
-public interface NtsMetafieldRepository extends CrudRepository<NtsMetafieldEntity, Long> {
+public interface NtsMetafieldRepository extends CrudRepository<NtsMetafieldEntity, Long>, NtsMetafieldRepositoryCustom {
     @Override
     @Modifying
     @Query("update NtsMetafieldEntity e set e.deleted = true where e.id = ?1")
@@ -44,4 +47,55 @@ public interface NtsMetafieldRepository extends CrudRepository<NtsMetafieldEntit
     List<NtsMetafieldEntity> findAllByOwnerResourceAndOwnerId(String ownerResource, Long ownerId);
 
     long countByOwnerResourceAndOwnerId(String ownerResource, Long ownerId);
+
+    /**
+     * The owner resource is matched ignoring case, the id narrows the query to one row.
+     */
+    @Query("select e from NtsMetafieldEntity e where lower(e.ownerResource) = lower(?1) and e.ownerId = ?2 and e.id = ?3")
+    Optional<NtsMetafieldEntity> findOneByOwner(String ownerResource, Long ownerId, Long id);
+
+    /**
+     * Update the fields of a metafield if it belongs to its owner, the audit fields are taken from the given metafield.
+     * The owner resource is matched ignoring case, like {@link #findOneByOwner}.
+     *
+     * @param metafield the metafield with its id, owner and new fields
+     * @return the number of updated metafields, 0 or 1
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update NtsMetafieldEntity e set e.namespace = :#{#metafield.namespace}, e.key = :#{#metafield.key}," +
+        " e.value = :#{#metafield.value}, e.valueText = :#{#metafield.valueText}, e.valueNumber = :#{#metafield.valueNumber}," +
+        " e.valueTimestamp = :#{#metafield.valueTimestamp}, e.valueBoolean = :#{#metafield.valueBoolean}, e.type = :#{#metafield.type}," +
+        " e.description = :#{#metafield.description}, e.updatedBy = :#{#metafield.updatedBy}, e.updatedAt = :#{#metafield.updatedAt}" +
+        " where e.id = :#{#metafield.id} and lower(e.ownerResource) = lower(:#{#metafield.ownerResource}) and e.ownerId = :#{#metafield.ownerId} and e.deleted = false")
+    int updateByOwner(@Param("metafield") NtsMetafieldEntity metafield);
+
+    /**
+     * @return the number of deleted metafields, 0 or 1
+     */
+    @Modifying
+    @Query("update NtsMetafieldEntity e set e.deleted = true where lower(e.ownerResource) = lower(?1) and e.ownerId = ?2 and e.id = ?3 and e.deleted = false")
+    int softDeleteByOwner(String ownerResource, Long ownerId, Long id);
+
+    /**
+     * @param namespace the namespace to match, or null for all
+     * @param key       the key to match, or null for all
+     */
+    @Query("select e from NtsMetafieldEntity e where e.ownerResource = ?1 and e.ownerId in ?2" +
+        " and (?3 is null or e.namespace = ?3) and (?4 is null or e.key = ?4)")
+    List<NtsMetafieldEntity> findAllByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key);
+
+    /**
+     * @param namespace the namespace to match, or null for all
+     * @param key       the key to match, or null for all
+     * @return the counts of owners having metafields
+     */
+    @Query("select e.ownerId as ownerId, count(e) as total from NtsMetafieldEntity e where e.ownerResource = ?1 and e.ownerId in ?2" +
+        " and (?3 is null or e.namespace = ?3) and (?4 is null or e.key = ?4) group by e.ownerId")
+    List<OwnerCount> countByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key);
+
+    interface OwnerCount {
+        Long getOwnerId();
+
+        long getTotal();
+    }
 }
@@ -0,0 +1,33 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+
+import java.util.List;
+
+/**
+ * Statements of {@link NtsMetafieldRepository} that Spring Data JPA can not batch or derive.
+ */
+public interface NtsMetafieldRepositoryCustom {
+    /**
+     * Insert metafields with batched JDBC statements, the identity column prevents Hibernate from batching them.
+     * The audit fields of the metafields are filled, their ids are left null.
+     *
+     * @param metafields the new metafields
+     */
+    void insertAll(List<NtsMetafieldEntity> metafields);
+
+    /**
+     * Flush the changes of the managed metafields with batched JDBC statements, whatever {@code hibernate.jdbc.batch_size}
+     * the application sets.
+     */
+    void flushInBatches();
+
+    /**
+     * Find a page of owner ids by metafield value with the value indexes, the query depends on the filters set.
+     *
+     * @param query the owner query
+     * @return the distinct owner ids in ascending order
+     */
+    List<Long> findOwnerIds(NtsMetafieldOwnerQuery query);
+}
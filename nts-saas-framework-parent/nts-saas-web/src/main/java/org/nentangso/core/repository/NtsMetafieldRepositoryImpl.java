@@ -0,0 +1,134 @@
+package org.nentangso.core.repository;
+
+import org.hibernate.Session;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.domain.NtsMetafieldEntity_;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldValueIndex;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+public class NtsMetafieldRepositoryImpl implements NtsMetafieldRepositoryCustom {
+    private static final String INSERT_SQL = "insert into nts_metafields (owner_resource, owner_id, namespace, nts_key, nts_value, nts_value_text, nts_value_number, nts_value_timestamp, nts_value_boolean, nts_type, description, deleted, created_by, created_at, updated_by, updated_at) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<AuditorAware<String>> auditorAware;
+    private final EntityManager entityManager;
+
+    public NtsMetafieldRepositoryImpl(
+        JdbcTemplate jdbcTemplate,
+        ObjectProvider<AuditorAware<String>> auditorAware,
+        EntityManager entityManager
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.auditorAware = auditorAware;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public void insertAll(List<NtsMetafieldEntity> metafields) {
+        if (metafields.isEmpty()) {
+            return;
+        }
+        String auditor = Optional.ofNullable(auditorAware.getIfUnique())
+            .flatMap(AuditorAware::getCurrentAuditor)
+            .orElse(NtsConstants.SYSTEM);
+        Instant now = Instant.now();
+        for (NtsMetafieldEntity metafield : metafields) {
+            metafield.setDeleted(false);
+            metafield.setCreatedBy(auditor);
+            metafield.setCreatedAt(now);
+            metafield.setUpdatedBy(auditor);
+            metafield.setUpdatedAt(now);
+        }
+        Timestamp timestamp = Timestamp.from(now);
+        jdbcTemplate.batchUpdate(INSERT_SQL, metafields, BATCH_SIZE, (ps, metafield) -> {
+            ps.setString(1, metafield.getOwnerResource());
+            ps.setLong(2, metafield.getOwnerId());
+            ps.setString(3, metafield.getNamespace());
+            ps.setString(4, metafield.getKey());
+            ps.setString(5, metafield.getValue());
+            ps.setString(6, metafield.getValueText());
+            ps.setBigDecimal(7, metafield.getValueNumber());
+            ps.setTimestamp(8, metafield.getValueTimestamp() == null ? null : Timestamp.from(metafield.getValueTimestamp()));
+            ps.setObject(9, metafield.getValueBoolean(), Types.BOOLEAN);
+            ps.setString(10, metafield.getType());
+            ps.setString(11, metafield.getDescription());
+            ps.setBoolean(12, false);
+            ps.setString(13, auditor);
+            ps.setTimestamp(14, timestamp);
+            ps.setString(15, auditor);
+            ps.setTimestamp(16, timestamp);
+        });
+    }
+
+    @Override
+    public void flushInBatches() {
+        Session session = entityManager.unwrap(Session.class);
+        Integer jdbcBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(BATCH_SIZE);
+        try {
+            session.flush();
+        } finally {
+            session.setJdbcBatchSize(jdbcBatchSize);
+        }
+    }
+
+    /**
+     * Built with the criteria API, so the limit is applied by {@link TypedQuery#setMaxResults} in the SQL dialect of the
+     * database.
+     */
+    @Override
+    public List<Long> findOwnerIds(NtsMetafieldOwnerQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> criteria = cb.createQuery(Long.class);
+        Root<NtsMetafieldEntity> root = criteria.from(NtsMetafieldEntity.class);
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(root.get(NtsMetafieldEntity_.ownerResource), query.getOwnerResource()));
+        predicates.add(cb.equal(root.get(NtsMetafieldEntity_.namespace), query.getNamespace()));
+        predicates.add(cb.equal(root.get(NtsMetafieldEntity_.key), query.getKey()));
+        predicates.add(cb.isFalse(root.get(NtsMetafieldEntity_.deleted)));
+        if (query.getValue() != null) {
+            predicates.add(cb.equal(root.get(NtsMetafieldEntity_.valueText), query.getValue()));
+        }
+        if (query.getValuePrefix() != null) {
+            predicates.add(cb.like(
+                root.get(NtsMetafieldEntity_.valueText),
+                NtsMetafieldValueIndex.likePrefix(query.getValuePrefix()),
+                NtsMetafieldValueIndex.LIKE_ESCAPE
+            ));
+        }
+        if (query.getMinValue() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(root.get(NtsMetafieldEntity_.valueNumber), query.getMinValue()));
+        }
+        if (query.getMaxValue() != null) {
+            predicates.add(cb.lessThanOrEqualTo(root.get(NtsMetafieldEntity_.valueNumber), query.getMaxValue()));
+        }
+        if (query.getAfterOwnerId() != null) {
+            predicates.add(cb.greaterThan(root.get(NtsMetafieldEntity_.ownerId), query.getAfterOwnerId()));
+        }
+        criteria.select(root.get(NtsMetafieldEntity_.ownerId))
+            .distinct(true)
+            .where(predicates.toArray(new Predicate[0]))
+            .orderBy(cb.asc(root.get(NtsMetafieldEntity_.ownerId)));
+        return entityManager.createQuery(criteria)
+            .setMaxResults(query.getLimit())
+            .getResultList();
+    }
+}
@@ -17,7 +17,7 @@ import java.util.Optional;
     havingValue = "true"
 )
 @Repository
-public interface NtsOptionRepository extends CrudRepository<NtsOptionEntity, Long> {
+public interface NtsOptionRepository extends CrudRepository<NtsOptionEntity, Long>, NtsOptionRepositoryCustom {
     @Override
     @Modifying
     @Query("update NtsOptionEntity e set e.deleted = true where e.id = ?1")
@@ -0,0 +1,18 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsOptionEntity;
+
+import java.util.List;
+
+/**
+ * Statements of {@link NtsOptionRepository} that Spring Data JPA can not batch.
+ */
+public interface NtsOptionRepositoryCustom {
+    /**
+     * Insert options with batched JDBC statements, the identity column prevents Hibernate from batching them.
+     * The audit fields of the options are filled, their ids are left null.
+     *
+     * @param options the new options
+     */
+    void insertAll(List<NtsOptionEntity> options);
+}
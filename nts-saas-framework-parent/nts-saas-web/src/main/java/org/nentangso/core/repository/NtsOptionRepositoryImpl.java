@@ -0,0 +1,53 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsOptionEntity;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public class NtsOptionRepositoryImpl implements NtsOptionRepositoryCustom {
+    private static final String INSERT_SQL = "insert into nts_options (option_key, option_value, deleted, created_by, created_at, updated_by, updated_at) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectProvider<AuditorAware<String>> auditorAware;
+
+    public NtsOptionRepositoryImpl(JdbcTemplate jdbcTemplate, ObjectProvider<AuditorAware<String>> auditorAware) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.auditorAware = auditorAware;
+    }
+
+    @Override
+    public void insertAll(List<NtsOptionEntity> options) {
+        if (options.isEmpty()) {
+            return;
+        }
+        String auditor = Optional.ofNullable(auditorAware.getIfUnique())
+            .flatMap(AuditorAware::getCurrentAuditor)
+            .orElse(NtsConstants.SYSTEM);
+        Instant now = Instant.now();
+        for (NtsOptionEntity option : options) {
+            option.setDeleted(false);
+            option.setCreatedBy(auditor);
+            option.setCreatedAt(now);
+            option.setUpdatedBy(auditor);
+            option.setUpdatedAt(now);
+        }
+        Timestamp timestamp = Timestamp.from(now);
+        jdbcTemplate.batchUpdate(INSERT_SQL, options, BATCH_SIZE, (ps, option) -> {
+            ps.setString(1, option.getOptionKey());
+            ps.setString(2, option.getOptionValue());
+            ps.setBoolean(3, false);
+            ps.setString(4, auditor);
+            ps.setTimestamp(5, timestamp);
+            ps.setString(6, auditor);
+            ps.setTimestamp(7, timestamp);
+        });
+    }
+}
@@ -196,6 +196,25 @@ public final class NtsSecurityUtils implements InitializingBean {
         return extractClaim(authentication, claim);
     }
 
+    /**
+     * Get all claims of current user
+     *
+     * @return Optional of claims
+     */
+    public static Optional<Map<String, Object>> getCurrentUserClaims() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return extractClaims(authentication);
+    }
+
+    private static Optional<Map<String, Object>> extractClaims(Authentication authentication) {
+        if (authentication instanceof JwtAuthenticationToken) {
+            return Optional.of(((JwtAuthenticationToken) authentication).getToken().getClaims());
+        } else if (authentication != null && authentication.getPrincipal() instanceof DefaultOidcUser) {
+            return Optional.of(((DefaultOidcUser) authentication.getPrincipal()).getAttributes());
+        }
+        return Optional.empty();
+    }
+
     private static Optional<Object> extractClaim(Authentication authentication, String claim) {
         if (authentication == null) {
             return Optional.empty();
@@ -1,5 +1,10 @@
 package org.nentangso.core.service.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldType;
 import org.nentangso.core.service.utils.NtsValidationUtils;
 
 import javax.validation.constraints.Min;
@@ -7,10 +12,13 @@ import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.function.Supplier;
 
 public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable {
+    private static final ObjectMapper JSON_READER = new ObjectMapper();
+
     /**
      * The unique ID of the metafield.
      */
@@ -71,6 +79,30 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
     @Size(max = 255)
     private final String description;
 
+    /**
+     * The value of an integer or decimal type, parsed when the metafield was saved.
+     */
+    @JsonIgnore
+    private final BigDecimal valueNumber;
+
+    /**
+     * The value of a date or date time type, parsed when the metafield was saved.
+     */
+    @JsonIgnore
+    private final Instant valueTimestamp;
+
+    /**
+     * The value of a boolean type, parsed when the metafield was saved.
+     */
+    @JsonIgnore
+    private final Boolean valueBoolean;
+
+    /**
+     * The value of a JSON type, parsed on first use.
+     */
+    @JsonIgnore
+    private transient volatile JsonNode valueJson;
+
     public NtsMetafieldDTO(Long id, String ownerResource, Long ownerId, String namespace, String key, String value, String type, String description) {
         this.id = id;
         this.ownerResource = ownerResource;
@@ -80,6 +112,9 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
         this.value = value;
         this.type = type;
         this.description = description;
+        this.valueNumber = null;
+        this.valueTimestamp = null;
+        this.valueBoolean = null;
 
         validateObject(null);
     }
@@ -93,6 +128,9 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
         this.value = builder.value;
         this.type = builder.type;
         this.description = builder.description;
+        this.valueNumber = builder.valueNumber;
+        this.valueTimestamp = builder.valueTimestamp;
+        this.valueBoolean = builder.valueBoolean;
         this.setCreatedBy(builder.createdBy);
         this.setCreatedAt(builder.createdAt);
         this.setUpdatedBy(builder.updatedBy);
@@ -143,6 +181,39 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
         return description;
     }
 
+    @JsonIgnore
+    public BigDecimal getValueNumber() {
+        return valueNumber;
+    }
+
+    @JsonIgnore
+    public Instant getValueTimestamp() {
+        return valueTimestamp;
+    }
+
+    @JsonIgnore
+    public Boolean getValueBoolean() {
+        return valueBoolean;
+    }
+
+    /**
+     * @return the value of a JSON type, parsed once per instance, or null when the type is not JSON or the value is not
+     * valid JSON
+     */
+    @JsonIgnore
+    public JsonNode getValueJson() {
+        JsonNode result = valueJson;
+        if (result == null && value != null && NtsMetafieldType.of(type).getKind() == NtsMetafieldType.Kind.JSON) {
+            try {
+                result = JSON_READER.readTree(value);
+            } catch (JsonProcessingException e) {
+                return null;
+            }
+            valueJson = result;
+        }
+        return result;
+    }
+
     // prettier-ignore
     @Override
     public String toString() {
@@ -171,6 +242,9 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
         private String value;
         private String type;
         private String description;
+        private BigDecimal valueNumber;
+        private Instant valueTimestamp;
+        private Boolean valueBoolean;
         private String createdBy;
         private Instant createdAt;
         private String updatedBy;
@@ -189,6 +263,9 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
             this.value = dto.getValue();
             this.type = dto.getType();
             this.description = dto.getDescription();
+            this.valueNumber = dto.getValueNumber();
+            this.valueTimestamp = dto.getValueTimestamp();
+            this.valueBoolean = dto.getValueBoolean();
             this.createdBy = dto.getCreatedBy();
             this.createdAt = dto.getCreatedAt();
             this.updatedBy = dto.getUpdatedBy();
@@ -270,6 +347,21 @@ public class NtsMetafieldDTO extends AbstractAuditingDTO implements Serializable
             return this;
         }
 
+        public Builder valueNumber(BigDecimal valueNumber) {
+            this.valueNumber = valueNumber;
+            return this;
+        }
+
+        public Builder valueTimestamp(Instant valueTimestamp) {
+            this.valueTimestamp = valueTimestamp;
+            return this;
+        }
+
+        public Builder valueBoolean(Boolean valueBoolean) {
+            this.valueBoolean = valueBoolean;
+            return this;
+        }
+
         public Builder createdBy(String createdBy) {
             this.createdBy = createdBy;
             return this;
@@ -1,19 +1,102 @@
 package org.nentangso.core.service.helper;
 
 import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.nentangso.core.service.helper.location.NtsLocationGrants;
+import org.nentangso.core.service.helper.location.NtsLocationIndex;
+import org.nentangso.core.service.helper.location.NtsLocationSpatialIndex;
 
 import javax.validation.constraints.Min;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Locations and the locations granted to current user.
+ * <p>
+ * The methods added after the first ones have default implementations over {@link #findAll()} and
+ * {@link #getGrantedLocationIds()}, so existing implementations keep working; they should override them to use their
+ * own cache.
+ */
 public interface NtsLocationHelper {
+    /**
+     * The coordinate attribute keys of the default spatial queries, the defaults of {@code nts.helper.location.spatial}.
+     */
+    String DEFAULT_LATITUDE_KEY = "latitude";
+    String DEFAULT_LONGITUDE_KEY = "longitude";
+
     List<? extends NtsLocationDTO> findAll();
 
     Set<Long> findAlIds();
 
     Optional<? extends NtsLocationDTO> findById(Long id);
 
+    default Map<Long, ? extends NtsLocationDTO> findByIds(Collection<Long> ids) {
+        NtsLocationIndex<? extends NtsLocationDTO> index = getIndex();
+        Map<Long, NtsLocationDTO> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            index.findById(id).ifPresent(location -> result.put(id, location));
+        }
+        return result;
+    }
+
+    /**
+     * Get the indexes and the entity tag of current snapshot. The default implementation builds them on every call.
+     *
+     * @return the indexes, shared until the snapshot is reloaded
+     */
+    default NtsLocationIndex<? extends NtsLocationDTO> getIndex() {
+        Map<Long, NtsLocationDTO> locations = new LinkedHashMap<>();
+        for (NtsLocationDTO location : findAll()) {
+            if (location != null && location.getId() != null) {
+                locations.put(location.getId(), location);
+            }
+        }
+        return NtsLocationIndex.of(locations);
+    }
+
+    default List<? extends NtsLocationDTO> findActive() {
+        return getIndex().findActive();
+    }
+
+    default List<? extends NtsLocationDTO> findByCountryCode(String countryCode) {
+        return getIndex().findByCountryCode(countryCode);
+    }
+
+    default List<? extends NtsLocationDTO> findByProvinceCode(String countryCode, String provinceCode) {
+        return getIndex().findByProvinceCode(countryCode, provinceCode);
+    }
+
+    default List<? extends NtsLocationDTO> findByCustomAttribute(String key, String value) {
+        return getIndex().findByCustomAttribute(key, value);
+    }
+
+    /**
+     * Find the nearest active locations granted to the current user, by the coordinates in
+     * {@code nts.helper.location.spatial.latitude-key} and {@code nts.helper.location.spatial.longitude-key}.
+     *
+     * @param latitude  the latitude in decimal degrees
+     * @param longitude the longitude in decimal degrees
+     * @param limit     the maximum number of locations
+     * @return the locations with their distances, nearest first
+     */
+    default List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>> findNearest(double latitude, double longitude, int limit) {
+        NtsLocationGrants grants = getGrantedLocations();
+        return getIndex().getSpatialIndex(DEFAULT_LATITUDE_KEY, DEFAULT_LONGITUDE_KEY)
+            .findNearest(latitude, longitude, limit, location -> location.isActive() && grants.test(location.getId()));
+    }
+
+    /**
+     * Find the active locations granted to the current user within a distance.
+     *
+     * @param latitude  the latitude in decimal degrees
+     * @param longitude the longitude in decimal degrees
+     * @param radius    the distance in meters
+     * @return the locations with their distances, nearest first
+     */
+    default List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>> findWithinRadius(double latitude, double longitude, double radius) {
+        NtsLocationGrants grants = getGrantedLocations();
+        return getIndex().getSpatialIndex(DEFAULT_LATITUDE_KEY, DEFAULT_LONGITUDE_KEY)
+            .findWithinRadius(latitude, longitude, radius, location -> location.isActive() && grants.test(location.getId()));
+    }
+
     Set<Long> getGrantedLocationIds();
 
     boolean isGrantedAllLocations();
@@ -23,4 +106,24 @@ public interface NtsLocationHelper {
     boolean isGrantedAnyLocations(Long... ids);
 
     boolean isGrantedLocation(@Min(1L) Long id);
+
+    /**
+     * Get the locations granted to current user, fetch it once to check many ids.
+     *
+     * @return the grants
+     */
+    default NtsLocationGrants getGrantedLocations() {
+        if (isGrantedAllLocations()) {
+            return NtsLocationGrants.ALL;
+        }
+        return NtsLocationGrants.of(false, getGrantedLocationIds().stream().mapToLong(Long::longValue).toArray());
+    }
+
+    default long[] filterGrantedLocationIds(long[] ids) {
+        return getGrantedLocations().filter(ids);
+    }
+
+    default long[] filterGrantedLocationIds(Collection<Long> ids) {
+        return getGrantedLocations().filter(ids);
+    }
 }
@@ -1,21 +1,32 @@
 package org.nentangso.core.service.helper;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.config.NtsConstants;
 import org.nentangso.core.domain.NtsMetafieldEntity;
 import org.nentangso.core.repository.NtsMetafieldRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
 import org.nentangso.core.service.dto.NtsMetafieldDTO;
 import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldType;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldTypedValue;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldValueIndex;
 import org.nentangso.core.service.mapper.NtsMetafieldMapper;
+import org.nentangso.core.service.utils.NtsCollectionUtils;
+import org.nentangso.core.service.utils.NtsValidationUtils;
+import org.nentangso.core.web.rest.errors.NtsErrorConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.time.Instant;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @ConditionalOnProperty(
@@ -26,13 +37,16 @@ import java.util.stream.Collectors;
 @Service
 public class NtsMetafieldHelper {
     private static final Logger log = LoggerFactory.getLogger(NtsMetafieldHelper.class);
+    private static final int OWNER_CHUNK_SIZE = 500;
 
     private final NtsMetafieldRepository metafieldRepository;
     private final NtsMetafieldMapper metafieldMapper;
+    private final ObjectMapper objectMapper;
 
-    public NtsMetafieldHelper(NtsMetafieldRepository metafieldRepository, NtsMetafieldMapper metafieldMapper) {
+    public NtsMetafieldHelper(NtsMetafieldRepository metafieldRepository, NtsMetafieldMapper metafieldMapper, ObjectMapper objectMapper) {
         this.metafieldRepository = metafieldRepository;
         this.metafieldMapper = metafieldMapper;
+        this.objectMapper = objectMapper;
     }
 
     @Transactional
@@ -41,6 +55,12 @@ public class NtsMetafieldHelper {
         if (metafieldDTO == null) {
             throw new IllegalArgumentException("metafieldDTO");
         }
+        NtsMetafieldTypedValue typedValue;
+        try {
+            typedValue = parseValue(metafieldDTO.getType(), metafieldDTO.getValue());
+        } catch (IllegalArgumentException e) {
+            throw new NtsValidationException("value", e.getMessage());
+        }
         NtsMetafieldEntity metafieldEntity = new NtsMetafieldEntity()
             .ownerResource(metafieldDTO.getOwnerResource())
             .ownerId(metafieldDTO.getOwnerId());
@@ -51,22 +71,212 @@ public class NtsMetafieldHelper {
         metafieldEntity.namespace(metafieldDTO.getNamespace())
             .key(metafieldDTO.getKey())
             .value(metafieldDTO.getValue())
+            .typedValue(typedValue)
             .type(metafieldDTO.getType())
             .description(metafieldDTO.getDescription());
         metafieldEntity = metafieldRepository.save(metafieldEntity);
         return metafieldMapper.toDto(metafieldEntity);
     }
 
+    /**
+     * Create or update many metafields in one transaction, an existing metafield is matched by owner, namespace and
+     * key. Updates are flushed by Hibernate and inserts are batched with JDBC statements.
+     *
+     * @param ownerResource the type of the owners
+     * @param metafields    the metafields to set, their ids are ignored
+     * @return the saved metafields, in the given order
+     * @throws NtsValidationException with the errors of each invalid metafield, prefixed by {@code metafields[index].}
+     */
+    @Transactional
+    public List<NtsMetafieldDTO> setMetafields(String ownerResource, List<NtsMetafieldDTO> metafields) {
+        if (StringUtils.isBlank(ownerResource)) {
+            throw new IllegalArgumentException("ownerResource");
+        }
+        if (metafields == null || metafields.isEmpty()) {
+            return Collections.emptyList();
+        }
+        log.debug("Request to set {} metafields of {}", metafields.size(), ownerResource);
+        List<NtsMetafieldTypedValue> typedValues = validateSetMetafields(ownerResource, metafields);
+        List<Long> ownerIds = metafields.stream()
+            .map(NtsMetafieldDTO::getOwnerId)
+            .distinct()
+            .collect(Collectors.toList());
+        Map<List<Object>, NtsMetafieldEntity> existing = findAllByNaturalKey(ownerResource, ownerIds);
+        List<NtsMetafieldEntity> added = new ArrayList<>();
+        for (int index = 0; index < metafields.size(); index++) {
+            NtsMetafieldDTO metafieldDTO = metafields.get(index);
+            NtsMetafieldEntity metafieldEntity = existing.get(naturalKey(metafieldDTO.getOwnerId(), metafieldDTO.getNamespace(), metafieldDTO.getKey()));
+            if (metafieldEntity == null) {
+                metafieldEntity = new NtsMetafieldEntity()
+                    .ownerResource(ownerResource)
+                    .ownerId(metafieldDTO.getOwnerId())
+                    .namespace(metafieldDTO.getNamespace())
+                    .key(metafieldDTO.getKey());
+                added.add(metafieldEntity);
+            }
+            metafieldEntity.value(metafieldDTO.getValue())
+                .typedValue(typedValues.get(index))
+                .type(metafieldDTO.getType())
+                .description(metafieldDTO.getDescription());
+        }
+        metafieldRepository.flushInBatches();
+        metafieldRepository.insertAll(added);
+        // read the inserted ids
+        Map<List<Object>, NtsMetafieldEntity> saved = added.isEmpty() ? existing : findAllByNaturalKey(ownerResource, ownerIds);
+        return metafields.stream()
+            .map(m -> saved.get(naturalKey(m.getOwnerId(), m.getNamespace(), m.getKey())))
+            .map(metafieldMapper::toDto)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the value of each metafield parsed according to its type
+     */
+    private List<NtsMetafieldTypedValue> validateSetMetafields(String ownerResource, List<NtsMetafieldDTO> metafields) {
+        Map<String, List<String>> errors = new LinkedHashMap<>();
+        Map<List<Object>, Integer> indexes = new HashMap<>();
+        List<NtsMetafieldTypedValue> typedValues = new ArrayList<>(metafields.size());
+        for (int index = 0; index < metafields.size(); index++) {
+            NtsMetafieldDTO metafieldDTO = metafields.get(index);
+            String prefix = String.format("metafields[%d].", index);
+            if (metafieldDTO == null) {
+                errors.put(prefix + NtsErrorConstants.KEY_BASE, Collections.singletonList("must not be null"));
+                typedValues.add(null);
+                continue;
+            }
+            errors.putAll(NtsValidationUtils.validateObjectAndGetErrors(metafieldDTO, prefix));
+            try {
+                typedValues.add(parseValue(metafieldDTO.getType(), metafieldDTO.getValue()));
+            } catch (IllegalArgumentException e) {
+                typedValues.add(null);
+                errors.computeIfAbsent(prefix + "value", k -> new ArrayList<>()).add(e.getMessage());
+            }
+            if (!StringUtils.equals(ownerResource, metafieldDTO.getOwnerResource())) {
+                errors.computeIfAbsent(prefix + "ownerResource", k -> new ArrayList<>())
+                    .add(String.format("must be %s", ownerResource));
+            }
+            Integer duplicated = indexes.putIfAbsent(naturalKey(metafieldDTO.getOwnerId(), metafieldDTO.getNamespace(), metafieldDTO.getKey()), index);
+            if (duplicated != null) {
+                errors.computeIfAbsent(prefix + "key", k -> new ArrayList<>())
+                    .add(String.format("is already set by metafields[%d]", duplicated));
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new NtsValidationException(errors);
+        }
+        return typedValues;
+    }
+
+    /**
+     * Parse a value once according to its type, a JSON value is only checked.
+     *
+     * @throws IllegalArgumentException with the validation message if the value does not match the type
+     */
+    private NtsMetafieldTypedValue parseValue(String type, String value) {
+        NtsMetafieldType metafieldType = NtsMetafieldType.of(type);
+        NtsMetafieldTypedValue typedValue = metafieldType.parse(value);
+        if (value != null && metafieldType.getKind() == NtsMetafieldType.Kind.JSON) {
+            checkJson(metafieldType, value);
+        }
+        return typedValue;
+    }
+
+    private void checkJson(NtsMetafieldType metafieldType, String value) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("is invalid JSON for type %s", metafieldType.getName()));
+        }
+        NtsMetafieldType elementType = metafieldType.getElementType();
+        if (elementType == null) {
+            return;
+        }
+        if (!node.isArray()) {
+            throw new IllegalArgumentException(String.format("must be a JSON array for type %s", metafieldType.getName()));
+        }
+        if (elementType.getKind() == NtsMetafieldType.Kind.JSON) {
+            return;
+        }
+        for (JsonNode element : node) {
+            elementType.parse(element.isValueNode() ? element.asText() : element.toString());
+        }
+    }
+
+    /**
+     * @return the metafields of the owners by owner id, namespace and key, the oldest one of duplicated keys
+     */
+    private Map<List<Object>, NtsMetafieldEntity> findAllByNaturalKey(String ownerResource, List<Long> ownerIds) {
+        Map<List<Object>, NtsMetafieldEntity> result = new HashMap<>();
+        NtsCollectionUtils.chunks(ownerIds, OWNER_CHUNK_SIZE)
+            .flatMap(chunk -> metafieldRepository.findAllByOwners(ownerResource, chunk, null, null).stream())
+            .sorted(Comparator.comparing(NtsMetafieldEntity::getId))
+            .forEach(m -> result.putIfAbsent(naturalKey(m.getOwnerId(), m.getNamespace(), m.getKey()), m));
+        return result;
+    }
+
+    private static List<Object> naturalKey(Long ownerId, String namespace, String key) {
+        return Arrays.asList(ownerId, namespace, key);
+    }
+
     public Optional<NtsMetafieldDTO> findOne(String ownerResource, Long ownerId, Long id) {
         if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || id == null || id <= 0) {
             return Optional.empty();
         }
-        return metafieldRepository.findById(id)
-            .filter(m -> StringUtils.equalsIgnoreCase(m.getOwnerResource(), ownerResource))
-            .filter(m -> Objects.equals(m.getOwnerId(), ownerId))
+        return metafieldRepository.findOneByOwner(ownerResource, ownerId, id)
             .map(metafieldMapper::toDto);
     }
 
+    /**
+     * Update a metafield of an owner with one statement, without loading it.
+     *
+     * @param ownerResource the type of the owner
+     * @param ownerId       the owner id
+     * @param metafieldDTO  the metafield with its id and all of its new fields
+     * @return the metafield as updated
+     * @throws NtsNotFoundException if the owner has no such metafield
+     */
+    @Transactional
+    public NtsMetafieldDTO update(String ownerResource, Long ownerId, NtsMetafieldDTO metafieldDTO) {
+        log.debug("Request to update metafield: {}", metafieldDTO);
+        if (metafieldDTO == null || metafieldDTO.getId() == null) {
+            throw new IllegalArgumentException("metafieldDTO");
+        }
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || metafieldDTO.getId() <= 0) {
+            throw new NtsNotFoundException();
+        }
+        NtsMetafieldTypedValue typedValue;
+        try {
+            typedValue = parseValue(metafieldDTO.getType(), metafieldDTO.getValue());
+        } catch (IllegalArgumentException e) {
+            throw new NtsValidationException("value", e.getMessage());
+        }
+        NtsMetafieldEntity metafieldEntity = new NtsMetafieldEntity()
+            .ownerResource(ownerResource)
+            .ownerId(ownerId)
+            .namespace(metafieldDTO.getNamespace())
+            .key(metafieldDTO.getKey())
+            .value(metafieldDTO.getValue())
+            .typedValue(typedValue)
+            .type(metafieldDTO.getType())
+            .description(metafieldDTO.getDescription());
+        metafieldEntity.setId(metafieldDTO.getId());
+        metafieldEntity.setUpdatedBy(NtsSecurityUtils.getCurrentUserLogin().orElse(NtsConstants.SYSTEM));
+        metafieldEntity.setUpdatedAt(Instant.now());
+        if (metafieldRepository.updateByOwner(metafieldEntity) == 0) {
+            throw new NtsNotFoundException();
+        }
+        return NtsMetafieldDTO.newBuilder(metafieldDTO)
+            .ownerResource(ownerResource)
+            .ownerId(ownerId)
+            .valueNumber(typedValue.getNumber())
+            .valueTimestamp(typedValue.getTimestamp())
+            .valueBoolean(typedValue.getBoolean())
+            .updatedBy(metafieldEntity.getUpdatedBy())
+            .updatedAt(metafieldEntity.getUpdatedAt())
+            .build();
+    }
+
     public List<NtsMetafieldDTO> findAllByOwner(String ownerResource, Long ownerId) {
         if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0) {
             return Collections.emptyList();
@@ -84,13 +294,85 @@ public class NtsMetafieldHelper {
         return metafieldRepository.countByOwnerResourceAndOwnerId(ownerResource, ownerId);
     }
 
+    public Map<Long, List<NtsMetafieldDTO>> findAllByOwners(String ownerResource, Collection<Long> ownerIds) {
+        return findAllByOwners(ownerResource, ownerIds, null, null);
+    }
+
+    /**
+     * Find the metafields of many owners with one query per chunk of owners.
+     *
+     * @param ownerResource the type of the owners
+     * @param ownerIds      the owner ids
+     * @param namespace     the namespace to match, or null for all
+     * @param key           the key to match, or null for all
+     * @return the metafields of each valid owner id, in the given order, empty when it has none
+     */
+    public Map<Long, List<NtsMetafieldDTO>> findAllByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        List<Long> validOwnerIds = validOwnerIds(ownerIds);
+        if (StringUtils.isBlank(ownerResource) || validOwnerIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, List<NtsMetafieldDTO>> result = new LinkedHashMap<>();
+        validOwnerIds.forEach(ownerId -> result.put(ownerId, new ArrayList<>()));
+        NtsCollectionUtils.chunks(validOwnerIds, OWNER_CHUNK_SIZE)
+            .flatMap(chunk -> metafieldRepository.findAllByOwners(ownerResource, chunk, namespace, key).stream())
+            .forEach(m -> result.get(m.getOwnerId()).add(metafieldMapper.toDto(m)));
+        return result;
+    }
+
+    public Map<Long, Long> countByOwners(String ownerResource, Collection<Long> ownerIds) {
+        return countByOwners(ownerResource, ownerIds, null, null);
+    }
+
+    /**
+     * Count the metafields of many owners with one query per chunk of owners.
+     *
+     * @param ownerResource the type of the owners
+     * @param ownerIds      the owner ids
+     * @param namespace     the namespace to match, or null for all
+     * @param key           the key to match, or null for all
+     * @return the count of each valid owner id, in the given order, zero when it has none
+     */
+    public Map<Long, Long> countByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        List<Long> validOwnerIds = validOwnerIds(ownerIds);
+        if (StringUtils.isBlank(ownerResource) || validOwnerIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, Long> result = new LinkedHashMap<>();
+        validOwnerIds.forEach(ownerId -> result.put(ownerId, 0L));
+        NtsCollectionUtils.chunks(validOwnerIds, OWNER_CHUNK_SIZE)
+            .flatMap(chunk -> metafieldRepository.countByOwners(ownerResource, chunk, namespace, key).stream())
+            .forEach(c -> result.put(c.getOwnerId(), c.getTotal()));
+        return result;
+    }
+
+    /**
+     * Find the owners having a metafield value equal to a text, starting with a text or in a number range. Only values
+     * up to {@value NtsMetafieldValueIndex#TEXT_MAX_LENGTH} characters are matched as text.
+     *
+     * @param query the owner query, pass the last owner id of a page as {@code afterOwnerId} to get the next one
+     * @return at most {@code limit} distinct owner ids in ascending order
+     */
+    public List<Long> findOwnerIds(NtsMetafieldOwnerQuery query) {
+        log.debug("Request to find metafield owners: {}", query);
+        return metafieldRepository.findOwnerIds(query);
+    }
+
     @Transactional
     public void delete(String ownerResource, Long ownerId, Long id) {
         if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || id == null || id <= 0) return;
-        NtsMetafieldEntity metafieldEntity = metafieldRepository.findById(id)
-            .filter(m -> StringUtils.equalsIgnoreCase(m.getOwnerResource(), ownerResource))
-            .filter(m -> Objects.equals(m.getOwnerId(), ownerId))
-            .orElseThrow(NtsNotFoundException::new);
-        metafieldRepository.delete(metafieldEntity);
+        if (metafieldRepository.softDeleteByOwner(ownerResource, ownerId, id) == 0) {
+            throw new NtsNotFoundException();
+        }
+    }
+
+    private static List<Long> validOwnerIds(Collection<Long> ownerIds) {
+        if (ownerIds == null) {
+            return Collections.emptyList();
+        }
+        return ownerIds.stream()
+            .filter(ownerId -> ownerId != null && ownerId > 0)
+            .distinct()
+            .collect(Collectors.toList());
     }
 }
@@ -1,26 +1,31 @@
 package org.nentangso.core.service.helper;
 
 import org.apache.commons.lang3.StringUtils;
-import org.nentangso.core.annotation.OptionProperties;
+import org.nentangso.core.config.NtsProperties;
 import org.nentangso.core.domain.NtsOptionEntity;
 import org.nentangso.core.repository.NtsOptionRepository;
 import org.nentangso.core.service.errors.NtsValidationException;
-import org.nentangso.core.service.utils.NtsTextUtils;
+import org.nentangso.core.service.helper.option.NtsOptionBinder;
+import org.nentangso.core.service.helper.option.NtsOptionCacheable;
+import org.nentangso.core.service.helper.option.NtsOptionDiff;
+import org.nentangso.core.service.helper.option.NtsOptionWatch;
+import org.nentangso.core.service.utils.NtsCollectionUtils;
 import org.nentangso.core.service.utils.NtsValidationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @ConditionalOnProperty(
     prefix = "nts.helper.option",
@@ -30,19 +35,45 @@ import java.util.stream.Stream;
 @Service
 public class NtsOptionHelper {
     private static final Logger log = LoggerFactory.getLogger(NtsOptionHelper.class);
+    private static final int DELETE_CHUNK_SIZE = 500;
 
+    private final NtsProperties ntsProperties;
     private final NtsOptionRepository optionRepository;
+    private final NtsOptionCacheable optionCacheable;
+    private final TransactionTemplate refreshTemplate;
+    private final Map<Class<?>, NtsOptionWatch<?>> watches = new ConcurrentHashMap<>();
 
-    public NtsOptionHelper(NtsOptionRepository optionRepository) {
+    public NtsOptionHelper(NtsProperties ntsProperties, NtsOptionRepository optionRepository, NtsOptionCacheable optionCacheable, PlatformTransactionManager transactionManager) {
+        this.ntsProperties = ntsProperties;
         this.optionRepository = optionRepository;
+        this.optionCacheable = optionCacheable;
+        // invalidations arrive after the writing transaction completed, refresh in a transaction of its own
+        this.refreshTemplate = new TransactionTemplate(transactionManager);
+        this.refreshTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.refreshTemplate.setReadOnly(true);
+        optionCacheable.addInvalidationListener(this::refreshWatches);
+    }
+
+    /**
+     * Load all options into the cache when {@code nts.helper.option.cache.preload} is set.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        if (!ntsProperties.getHelper().getOption().getCache().isPreload()) {
+            return;
+        }
+        optionCacheable.preload(() -> groupValues(optionRepository.findAll()));
     }
 
     public Optional<String> readRawString(String optionKey) {
         if (StringUtils.isBlank(optionKey)) {
             return Optional.empty();
         }
-        return optionRepository.findOneByOptionKey(optionKey)
-            .map(NtsOptionEntity::getOptionValue);
+        return readValues(Collections.singleton(optionKey))
+            .getOrDefault(optionKey, Collections.emptyList())
+            .stream()
+            .filter(Objects::nonNull)
+            .findFirst();
     }
 
     @Transactional
@@ -54,6 +85,25 @@ public class NtsOptionHelper {
             .orElseGet(() -> new NtsOptionEntity(optionKey, optionValue));
         option.setOptionValue(optionValue);
         optionRepository.save(option);
+        optionCacheable.evict(Collections.singleton(optionKey));
+    }
+
+    /**
+     * Read the raw values of options, through the option cache when it is enabled.
+     *
+     * @param optionKeys the option keys
+     * @return the values by option key, an empty list for a missing option
+     */
+    private Map<String, List<String>> readValues(Collection<String> optionKeys) {
+        return optionCacheable.getAll(optionKeys, keys -> groupValues(optionRepository.findByOptionKeyIn(keys)));
+    }
+
+    private static Map<String, List<String>> groupValues(Iterable<NtsOptionEntity> options) {
+        Map<String, List<String>> values = new HashMap<>();
+        for (NtsOptionEntity option : options) {
+            values.computeIfAbsent(option.getOptionKey(), k -> new ArrayList<>(1)).add(option.getOptionValue());
+        }
+        return values;
     }
 
     public Optional<Boolean> readBoolean(String optionKey) {
@@ -138,204 +188,88 @@ public class NtsOptionHelper {
             log.warn("Class cannot be null");
             return Optional.empty();
         }
-        String prefix = getPrefix(clazz);
-        T output;
-        try {
-            output = clazz.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+        NtsOptionBinder<T> binder = NtsOptionBinder.of(clazz);
+        if (!binder.isAnnotated()) {
+            log.warn("Class must has annotation OptionProperties");
+        }
+        if (!binder.isInstantiable()) {
             log.warn("Class must has constructor without parameters");
             return Optional.empty();
         }
-        Set<String> optionKeys = Stream.of(clazz.getDeclaredFields())
-            .map(field -> generateOptionKey(field, prefix))
-            .collect(Collectors.toSet());
-        List<NtsOptionEntity> options = optionRepository.findByOptionKeyIn(optionKeys);
-        if (options.isEmpty()) {
-            NtsValidationUtils.validateObject(output);
-            return Optional.of(output);
-        }
-        for (Field field : clazz.getDeclaredFields()) {
-            try {
-                setValues(output, field, options, prefix);
-            } catch (IllegalAccessException e) {
-                log.warn("Cannot set field " + field.getName());
-                return Optional.empty();
-            }
-        }
+        Map<String, List<String>> values = readValues(binder.getOptionKeys());
+        values.values().removeIf(List::isEmpty);
+        T output = binder.read(values);
         NtsValidationUtils.validateObject(output);
         return Optional.of(output);
     }
 
-    private String getPrefix(Class<?> clazz) {
-        OptionProperties optionProperties = clazz.getAnnotation(OptionProperties.class);
-        if (optionProperties == null) {
-            log.warn("Class must has annotation OptionProperties");
-            return "";
-        }
-        String prefix = Optional.of(optionProperties.prefix())
-            .filter(StringUtils::isNotBlank)
-            .map(m -> StringUtils.trim(m) + ".")
-            .orElse("");
-        return prefix;
-    }
-
-    private <T> void setValues(T output, Field field, List<NtsOptionEntity> options, String prefix) throws IllegalAccessException {
-        String optionKey = generateOptionKey(field, prefix);
-        Type genericType = field.getGenericType();
-        if (genericType instanceof ParameterizedType) {
-            ParameterizedType parameterizedType = (ParameterizedType) genericType;
-            String typeName = parameterizedType.getRawType().getTypeName();
-            String childrenTypeName = parameterizedType.getActualTypeArguments()[0].getTypeName();
-            List<Object> values = options.stream()
-                .filter(f -> StringUtils.equals(f.getOptionKey(), optionKey))
-                .map(NtsOptionEntity::getOptionValue)
-                .filter(Objects::nonNull)
-                .map(rawString -> parseValue(field, rawString, childrenTypeName))
-                .collect(Collectors.toList());
-            Object fieldValues;
-            if (StringUtils.equals(typeName, List.class.getTypeName())) {
-                fieldValues = values;
-            } else if (StringUtils.equals(typeName, Set.class.getTypeName())) {
-                fieldValues = new HashSet<>(values);
-            } else {
-                throw new ClassCastException("Type of " + field.getName() + " is not supported");
-            }
-            field.setAccessible(true);
-            field.set(output, fieldValues);
-        } else {
-            String rawString = options.stream()
-                .filter(f -> StringUtils.equals(f.getOptionKey(), optionKey))
-                .map(NtsOptionEntity::getOptionValue)
-                .filter(Objects::nonNull)
-                .findFirst()
-                .orElse(null);
-            if (rawString == null) return;
-            Object value = parseValue(field, rawString, field.getType().getTypeName());
-            field.setAccessible(true);
-            field.set(output, value);
-        }
-    }
-
-    private Object parseValue(Field field, String rawString, String typeName) {
-        Object value;
-        if (StringUtils.equals(typeName, String.class.getTypeName())) {
-            value = rawString;
-        } else if (StringUtils.equalsAny(typeName, Integer.class.getTypeName(), "int")) {
-            value = Integer.parseInt(rawString);
-        } else if (StringUtils.equalsAny(typeName, Long.class.getTypeName(), "long")) {
-            value = Long.parseLong(rawString);
-        } else if (StringUtils.equalsAny(typeName, Float.class.getTypeName(), "float")) {
-            value = Float.parseFloat(rawString);
-        } else if (StringUtils.equalsAny(typeName, Double.class.getTypeName(), "double")) {
-            value = Double.parseDouble(rawString);
-        } else if (StringUtils.equals(typeName, BigDecimal.class.getTypeName())) {
-            value = new BigDecimal(rawString);
-        } else {
-            throw new ClassCastException("Type of " + field.getName() + " is not supported");
+    /**
+     * Watch an options class: the returned instance is replaced, and its listeners called, when one of its options is
+     * changed by this node, or by another node when {@code nts.helper.option.cache.redis-enabled} is set.
+     *
+     * @param clazz the options class
+     * @return the live options, shared by all callers, each of them gets its own copy of the instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> NtsOptionWatch<T> watch(Class<T> clazz) {
+        NtsOptionWatch<T> watch = (NtsOptionWatch<T>) watches.get(clazz);
+        if (watch != null) {
+            return watch;
         }
-        return value;
+        // read outside of the map lock, a concurrent caller may read too but only the first watch is kept
+        T initial = read(clazz)
+            .orElseThrow(() -> new IllegalArgumentException(String.format("Class %s can not be watched", clazz)));
+        watch = new NtsOptionWatch<>(NtsOptionBinder.of(clazz), initial);
+        NtsOptionWatch<T> existing = (NtsOptionWatch<T>) watches.putIfAbsent(clazz, watch);
+        return existing != null ? existing : watch;
     }
 
-    private String generateOptionKey(Field field, String prefix) {
-        String optionKey = StringUtils.join(prefix, NtsTextUtils.toSnakeCase(field.getName()));
-        Type genericType = field.getGenericType();
-        if (genericType instanceof ParameterizedType) {
-            if (isSupportedGenericType((ParameterizedType) genericType)) {
-                return optionKey;
-            }
-        } else {
-            if (isSupportedTypeName(field.getType().getTypeName())) {
-                return optionKey;
+    private void refreshWatches(Set<String> optionKeys) {
+        for (NtsOptionWatch<?> watch : watches.values()) {
+            if (watch.isAffectedBy(optionKeys)) {
+                refreshWatch(watch);
             }
         }
-        throw new ClassCastException("Type of " + field.getName() + " is not supported");
     }
 
-    private boolean isSupportedGenericType(ParameterizedType parameterizedType) {
-        String typeName = parameterizedType.getRawType().getTypeName();
-        if (StringUtils.equalsAny(typeName, List.class.getTypeName(), Set.class.getTypeName())) {
-            String childrenTypeName = parameterizedType.getActualTypeArguments()[0].getTypeName();
-            return isSupportedTypeName(childrenTypeName);
+    private <T> void refreshWatch(NtsOptionWatch<T> watch) {
+        long refresh = watch.startRefresh();
+        try {
+            refreshTemplate.execute(status -> read(watch.getType()))
+                .ifPresent(value -> watch.update(value, refresh));
+        } catch (RuntimeException e) {
+            log.warn("Cannot refresh options {}", watch.getType().getName(), e);
         }
-        return false;
-    }
-
-    private boolean isSupportedTypeName(String typeName) {
-        return StringUtils.equalsAny(
-            typeName,
-            String.class.getTypeName(),
-            Integer.class.getTypeName(), "int",
-            Long.class.getTypeName(), "long",
-            Float.class.getTypeName(), "float",
-            Double.class.getTypeName(), "double",
-            BigDecimal.class.getTypeName()
-        );
     }
 
     @Transactional
+    @SuppressWarnings("unchecked")
     public <T> void write(T configuration) {
         if (configuration == null) {
             log.warn("Configuration cannot be null");
             return;
         }
         NtsValidationUtils.validateObject(configuration);
-        Class<?> clazz = configuration.getClass();
-        String prefix = getPrefix(clazz);
-        List<NtsOptionEntity> options = new ArrayList<>();
-        Set<String> optionKeys = new HashSet<>();
-        for (Field field : clazz.getDeclaredFields()) {
-            String optionKey = generateOptionKey(field, prefix);
-            optionKeys.add(optionKey);
-            try {
-                field.setAccessible(true);
-                Type genericType = field.getGenericType();
-                if (genericType instanceof ParameterizedType) {
-                    ParameterizedType parameterizedType = (ParameterizedType) genericType;
-                    Collection<?> values = (Collection<?>) field.get(configuration);
-                    String childrenTypeName = parameterizedType.getActualTypeArguments()[0].getTypeName();
-                    values.forEach(value -> options.add(new NtsOptionEntity(optionKey, convertValue(value, childrenTypeName))));
-                } else {
-                    Object value = field.get(configuration);
-                    String rawValue = convertValue(value, field.getType().getTypeName());
-                    options.add(new NtsOptionEntity(optionKey, rawValue));
-                }
-            } catch (IllegalAccessException e) {
-                throw new ClassCastException("Type of " + field.getName() + " is not supported");
-            }
+        NtsOptionBinder<T> binder = NtsOptionBinder.of((Class<T>) configuration.getClass());
+        if (!binder.isAnnotated()) {
+            log.warn("Class must has annotation OptionProperties");
         }
-        save(optionKeys, options);
+        List<NtsOptionEntity> options = new ArrayList<>();
+        binder.write(configuration, (optionKey, rawValue) -> options.add(new NtsOptionEntity(optionKey, rawValue)));
+        save(binder.getOptionKeys(), options);
+        optionCacheable.evict(binder.getOptionKeys());
     }
 
     private void save(Set<String> optionKeys, List<NtsOptionEntity> options) {
         List<NtsOptionEntity> existOptions = optionRepository.findByOptionKeyIn(optionKeys);
-        List<NtsOptionEntity> addingOptions = new ArrayList<>();
-        for (NtsOptionEntity option : options) {
-            NtsOptionEntity existOption = existOptions.stream()
-                .filter(f -> StringUtils.equals(f.getOptionKey(), option.getOptionKey()) && StringUtils.equals(f.getOptionValue(), option.getOptionValue()))
-                .findFirst()
-                .orElse(null);
-            if (existOption != null) {
-                existOptions.remove(existOption);
-            } else {
-                addingOptions.add(option);
-            }
-        }
-        optionRepository.deleteAll(existOptions);
-        optionRepository.saveAll(addingOptions);
-        optionRepository.flush();
-    }
-
-    private String convertValue(Object value, String typeName) {
-        String rawString;
-        if (StringUtils.equals(typeName, String.class.getTypeName())) {
-            rawString = value == null ? null : (String) value;
-        } else if (StringUtils.equalsAny(typeName, Integer.class.getTypeName(), Long.class.getTypeName(), Float.class.getTypeName(), Double.class.getTypeName(), BigDecimal.class.getTypeName())) {
-            rawString = value == null ? null : String.valueOf(value);
-        } else if (StringUtils.equalsAny(typeName, "int", "long", "float", "double")) {
-            rawString = value == null ? "0" : String.valueOf(value);
-        } else {
-            throw new ClassCastException("Type " + typeName + " is not supported");
+        NtsOptionDiff<NtsOptionEntity> diff = NtsOptionDiff.of(existOptions, options, NtsOptionEntity::getOptionKey, NtsOptionEntity::getOptionValue);
+        if (diff.isEmpty()) {
+            return;
         }
-        return rawString;
+        List<Long> removedIds = diff.getRemoved().stream()
+            .map(NtsOptionEntity::getId)
+            .collect(Collectors.toList());
+        NtsCollectionUtils.chunks(removedIds, DELETE_CHUNK_SIZE).forEach(optionRepository::deleteAllById);
+        optionRepository.insertAll(diff.getAdded());
     }
 }
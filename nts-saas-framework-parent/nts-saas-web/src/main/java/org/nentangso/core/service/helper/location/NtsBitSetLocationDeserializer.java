@@ -4,70 +4,75 @@ import org.nentangso.core.security.NtsSecurityUtils;
 import org.nentangso.core.service.dto.NtsLocationDTO;
 
 import javax.validation.constraints.Min;
+import java.time.Instant;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class NtsBitSetLocationDeserializer implements NtsLocationDeserializer {
     public static final String DESERIALIZER_NAME = "org.nentangso.core.service.helper.location.NtsBitSetLocationDeserializer";
 
+    private static final String CLAIM_TOKEN_ID = "jti";
+    private static final String CLAIM_EXPIRES_AT = "exp";
+
     private final NtsLocationProvider<? extends NtsLocationDTO> locationProvider;
     private final String bitSetClaim;
+    private final NtsLocationGrantsCache grantsCache;
 
     public NtsBitSetLocationDeserializer(NtsLocationProvider<? extends NtsLocationDTO> locationProvider, String bitSetClaim) {
+        this(locationProvider, bitSetClaim, NtsLocationGrantsCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public NtsBitSetLocationDeserializer(NtsLocationProvider<? extends NtsLocationDTO> locationProvider, String bitSetClaim, int cacheSize) {
         this.locationProvider = locationProvider;
         this.bitSetClaim = bitSetClaim;
+        this.grantsCache = new NtsLocationGrantsCache(cacheSize);
     }
 
     @Override
     public Set<Long> getGrantedLocationIds() {
-        BitSet bitSet = getCurrentUserLocationBitSet();
-        if (isGrantedAllLocations(bitSet)) {
+        NtsLocationGrants grants = getGrantedLocations();
+        if (grants.isGrantedAll()) {
             return locationProvider.findAllIds();
         }
-        if (bitSet.length() <= 1) {
-            return Collections.emptySet();
-        }
-        final Set<Long> locationIds = new LinkedHashSet<>();
-        for (int i = 1; i < bitSet.length(); i++) {
-            if (!bitSet.get(i)) {
-                continue;
-            }
-            locationIds.add(Integer.toUnsignedLong(i));
-        }
-        return locationIds;
+        return grants.getIds();
     }
 
-    private BitSet getCurrentUserLocationBitSet() {
-        return NtsSecurityUtils.getCurrentUserClaim(bitSetClaim)
-            .map(this::parseBitSet)
-            .orElseGet(BitSet::new);
+    /**
+     * Get the grants of current user, decoded once per token.
+     *
+     * @return the grants, {@link NtsLocationGrants#EMPTY} when the claim is missing
+     */
+    @Override
+    public NtsLocationGrants getGrantedLocations() {
+        return NtsSecurityUtils.getCurrentUserClaims()
+            .map(this::getGrants)
+            .orElse(NtsLocationGrants.EMPTY);
     }
 
-    private BitSet parseBitSet(Object input) {
-        if (input instanceof String) {
-            byte[] bytes = Base64.getDecoder().decode((String) input);
-            return BitSet.valueOf(bytes);
+    private NtsLocationGrants getGrants(Map<String, Object> claims) {
+        Object input = claims.get(bitSetClaim);
+        if (!(input instanceof String)) {
+            return NtsLocationGrants.EMPTY;
         }
-        return new BitSet();
+        Object tokenId = claims.get(CLAIM_TOKEN_ID);
+        Object expiresAt = claims.get(CLAIM_EXPIRES_AT);
+        return grantsCache.get(
+            tokenId != null ? tokenId.toString() : null,
+            (String) input,
+            expiresAt instanceof Instant ? (Instant) expiresAt : null,
+            NtsLocationGrants::decode
+        );
     }
 
     @Override
     public boolean isGrantedAllLocations() {
-        BitSet bitSet = getCurrentUserLocationBitSet();
-        return isGrantedAllLocations(bitSet);
-    }
-
-    private boolean isGrantedAllLocations(BitSet bitSet) {
-        return bitSet.length() > 0 && bitSet.get(0);
+        return getGrantedLocations().isGrantedAll();
     }
 
     @Override
     public boolean isGrantedAnyLocations(Iterable<Long> ids) {
-        BitSet bitSet = getCurrentUserLocationBitSet();
-        return StreamSupport.stream(ids.spliterator(), false)
-            .anyMatch(id -> isGrantedLocation(bitSet, id));
+        return getGrantedLocations().isGrantedAny(ids);
     }
 
     @Override
@@ -78,15 +83,6 @@ public class NtsBitSetLocationDeserializer implements NtsLocationDeserializer {
 
     @Override
     public boolean isGrantedLocation(@Min(1L) Long id) {
-        BitSet bitSet = getCurrentUserLocationBitSet();
-        return isGrantedLocation(bitSet, id);
-    }
-
-    private boolean isGrantedLocation(BitSet bitSet, Long id) {
-        if (id == null || id <= 0) {
-            return false;
-        }
-        return isGrantedAllLocations(bitSet)
-            || (id.intValue() < bitSet.length() && bitSet.get(id.intValue()));
+        return getGrantedLocations().isGranted(id);
     }
 }
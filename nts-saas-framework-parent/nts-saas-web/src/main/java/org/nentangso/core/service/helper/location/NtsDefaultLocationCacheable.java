@@ -1,35 +1,331 @@
 package org.nentangso.core.service.helper.location;
 
 import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.LocationProperties.CacheProperties;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
-import org.redisson.api.RBucket;
-import org.redisson.api.RedissonClient;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.redisson.api.*;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.protocol.Encoder;
+import org.redisson.codec.CompositeCodec;
 import org.redisson.codec.SerializationCodec;
 import org.redisson.jcache.configuration.RedissonConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.cache.configuration.Configuration;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class NtsDefaultLocationCacheable {
+    private static final Logger log = LoggerFactory.getLogger(NtsDefaultLocationCacheable.class);
+    /**
+     * Bump the snapshot generation and put one location into a populated hash, a hash that has expired is left for the
+     * next load.
+     */
+    private static final String PATCH_HASH_SCRIPT =
+        "redis.call('incr', KEYS[3]) " +
+            "if redis.call('exists', KEYS[2]) == 0 then return 0 end " +
+            "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('sadd', KEYS[2], ARGV[1]) " +
+            "return 1";
+
     private final NtsProperties ntsProperties;
     private final RedissonClient redissonClient;
 
+    /**
+     * The in-process snapshot in front of the redis bucket, replaced as a whole on every load or invalidation.
+     */
+    private final AtomicReference<LocationSnapshot> nearCache = new AtomicReference<>();
+    /**
+     * The load in progress on this node, concurrent misses wait for it instead of calling the upstream again.
+     */
+    private final AtomicReference<CompletableFuture<Map<Long, NtsDefaultLocationDTO>>> inflight = new AtomicReference<>();
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Codec codec;
+    private final Codec hashCodec;
+
     public NtsDefaultLocationCacheable(NtsProperties ntsProperties, Configuration<Object, Object> jcacheConfiguration) {
         this.ntsProperties = ntsProperties;
         this.redissonClient = ((RedissonConfiguration<?, ?>) jcacheConfiguration).getRedisson();
+        this.codec = createCodec();
+        this.hashCodec = new CompositeCodec(LongCodec.INSTANCE, codec, codec);
+        subscribeInvalidation();
+    }
+
+    private Codec createCodec() {
+        String codecName = ntsProperties.getHelper().getLocation().getCache().getCodec();
+        try {
+            Class<?> clazz = codecName != null ? Class.forName(codecName) : SerializationCodec.class;
+            return (Codec) clazz.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(String.format(
+                "Configuration property nts.helper.location.cache.codec class %s can not be loaded.",
+                codecName
+            ), e);
+        }
+    }
+
+    private void subscribeInvalidation() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || !isNearCacheEnabled()) {
+            return;
+        }
+        getInvalidationTopic().addListener(String.class, (channel, publisherId) -> {
+            if (instanceId.equals(publisherId)) {
+                return;
+            }
+            log.debug("Invalidate location near cache, publisher={}", publisherId);
+            nearCache.set(null);
+        });
     }
 
+    /**
+     * Get all cached locations.
+     *
+     * @return the cached locations, null or empty when the cache is not populated
+     */
     public Map<Long, NtsDefaultLocationDTO> getCacheLocations() {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return null;
         }
-        final String cacheKey = generateCacheKey();
-        RBucket<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        return bucket.get();
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && !snapshot.isExpired()) {
+            return snapshot.getLocations();
+        }
+        Map<Long, NtsDefaultLocationDTO> items = isHashStorage()
+            ? getHash().readAllMap()
+            : getBucket().get();
+        if (items == null || items.isEmpty()) {
+            return items;
+        }
+        return storeNearCache(items);
+    }
+
+    /**
+     * Get cached locations by ids, without reading the other locations when the storage is {@link CacheProperties.Storage#HASH}.
+     *
+     * @param ids the location ids
+     * @return the found locations, null when the cache is not populated
+     */
+    public Map<Long, NtsDefaultLocationDTO> getCacheLocations(Collection<Long> ids) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return null;
+        }
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && !snapshot.isExpired()) {
+            return subMap(snapshot.getLocations(), ids);
+        }
+        if (!isHashStorage()) {
+            Map<Long, NtsDefaultLocationDTO> items = getCacheLocations();
+            return items == null || items.isEmpty() ? null : subMap(items, ids);
+        }
+        Set<Long> keys = ids.stream()
+            .filter(Objects::nonNull)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<Long, NtsDefaultLocationDTO> items = keys.isEmpty() ? Collections.emptyMap() : getHash().getAll(keys);
+        if (items.isEmpty() && !getIdSet().isExists()) {
+            return null;
+        }
+        return items;
+    }
+
+    /**
+     * Get cached location ids.
+     *
+     * @return the ids, null when the cache is not populated
+     */
+    public Set<Long> getCacheLocationIds() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return null;
+        }
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && !snapshot.isExpired()) {
+            return snapshot.getLocations().keySet();
+        }
+        if (!isHashStorage()) {
+            Map<Long, NtsDefaultLocationDTO> items = getCacheLocations();
+            return items == null || items.isEmpty() ? null : items.keySet();
+        }
+        Set<Long> ids = getIdSet().readAll();
+        return ids == null || ids.isEmpty() ? null : Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * Get all cached locations, or load them once on a cache miss.
+     * <p>
+     * Concurrent misses on this node share a single call of the loader. When
+     * {@code nts.helper.location.cache.lock.enabled} is set, the loading node also holds a redis lock, so the other
+     * nodes wait for it and read the cache instead of calling the upstream too.
+     *
+     * @param loader load the locations from the upstream
+     * @return the cached or loaded locations
+     */
+    public Map<Long, NtsDefaultLocationDTO> getOrLoadCacheLocations(Supplier<Map<Long, NtsDefaultLocationDTO>> loader) {
+        Map<Long, NtsDefaultLocationDTO> cache = getCacheLocations();
+        if (cache != null && !cache.isEmpty()) {
+            return cache;
+        }
+        CompletableFuture<Map<Long, NtsDefaultLocationDTO>> future = new CompletableFuture<>();
+        CompletableFuture<Map<Long, NtsDefaultLocationDTO>> current = inflight.compareAndExchange(null, future);
+        if (current != null) {
+            return join(current);
+        }
+        try {
+            future.complete(loadWithLock(loader));
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.compareAndSet(future, null);
+        }
+        return future.join();
     }
 
-    private Long getExpiration() {
+    private Map<Long, NtsDefaultLocationDTO> loadWithLock(Supplier<Map<Long, NtsDefaultLocationDTO>> loader) {
+        Map<Long, NtsDefaultLocationDTO> cache = getCacheLocations();
+        if (cache != null && !cache.isEmpty()) {
+            return cache;
+        }
+        CacheProperties.LockProperties lockProperties = ntsProperties.getHelper().getLocation().getCache().getLock();
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || !lockProperties.isEnabled()) {
+            return loadAndStore(loader);
+        }
+        RLock lock = redissonClient.getLock(generateLockKey());
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(lockProperties.getWaitTime(), lockProperties.getLeaseTime(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (locked) {
+                cache = getCacheLocations();
+                if (cache != null && !cache.isEmpty()) {
+                    return cache;
+                }
+            } else {
+                log.warn("Could not acquire location load lock in {}s, load without it", lockProperties.getWaitTime());
+            }
+            return loadAndStore(loader);
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * A location written through while the loader runs may be missing from the loaded snapshot, so the snapshot is
+     * dropped again when the generation changed during the load and the next read loads it from the upstream.
+     */
+    private Map<Long, NtsDefaultLocationDTO> loadAndStore(Supplier<Map<Long, NtsDefaultLocationDTO>> loader) {
+        long generation = getSnapshotGeneration();
+        Map<Long, NtsDefaultLocationDTO> items = loader.get();
+        if (items == null || items.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        setCacheLocations(items);
+        if (getSnapshotGeneration() != generation) {
+            log.debug("Locations were written while loading, drop the loaded snapshot");
+            clearCacheLocations();
+        }
+        return items;
+    }
+
+    private long getSnapshotGeneration() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return 0L;
+        }
+        return getGeneration().get();
+    }
+
+    /**
+     * Load the locations and replace the cache, whether it is populated or not.
+     *
+     * @param loader load the locations from the upstream
+     * @return the loaded locations, empty when the loader returned nothing and the cache was kept
+     */
+    public Map<Long, NtsDefaultLocationDTO> reloadCacheLocations(Supplier<Map<Long, NtsDefaultLocationDTO>> loader) {
+        return loadAndStore(loader);
+    }
+
+    /**
+     * Extend the expiration of the cached locations, so they are still served while they can not be reloaded.
+     *
+     * @return true if the cache is populated
+     */
+    public boolean extendCacheLocations() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return false;
+        }
+        if (!isHashStorage()) {
+            return getBucket().expire(Duration.ofSeconds(getExpiration()));
+        }
+        boolean extended = getHash().expire(Duration.ofSeconds(getExpiration()));
+        getIdSet().expire(Duration.ofSeconds(getExpiration()));
+        return extended;
+    }
+
+    /**
+     * Claim the background reload of the current interval, so the nodes do not all reload the shared snapshot.
+     * <p>
+     * The claim is a redis lock taken without waiting and leased for the interval, it is never released and the next
+     * interval is claimed after the lease expires.
+     *
+     * @param interval the refresh interval in seconds
+     * @return true if this node should reload, always true when the cache or the lock is disabled
+     */
+    public boolean tryClaimReload(long interval) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()
+            || !ntsProperties.getHelper().getLocation().getCache().getLock().isEnabled()) {
+            return true;
+        }
+        try {
+            return redissonClient.getLock(generateReloadLockKey()).tryLock(0, interval, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> join(CompletableFuture<Map<Long, NtsDefaultLocationDTO>> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> subMap(Map<Long, NtsDefaultLocationDTO> items, Collection<Long> ids) {
+        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            NtsDefaultLocationDTO item = id != null ? items.get(id) : null;
+            if (item != null) {
+                result.put(id, item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the expiration in seconds of the cached locations
+     */
+    public Long getExpiration() {
         return ntsProperties.getHelper().getLocation().getCache().getExpiration();
     }
 
@@ -37,21 +333,259 @@ public class NtsDefaultLocationCacheable {
         return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_by_id";
     }
 
+    private String generateHashKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "location_hash";
+    }
+
+    private String generateIdSetKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "location_ids";
+    }
+
+    private String generateGenerationKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_generation";
+    }
+
+    private String generateLockKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_lock";
+    }
+
+    private String generateReloadLockKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_reload_lock";
+    }
+
+    private String generateTopicName() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_invalidation";
+    }
+
+    private RBucket<Map<Long, NtsDefaultLocationDTO>> getBucket() {
+        return redissonClient.getBucket(generateCacheKey(), codec);
+    }
+
+    private RMap<Long, NtsDefaultLocationDTO> getHash() {
+        return redissonClient.getMap(generateHashKey(), hashCodec);
+    }
+
+    private RSet<Long> getIdSet() {
+        return redissonClient.getSet(generateIdSetKey(), LongCodec.INSTANCE);
+    }
+
+    private RAtomicLong getGeneration() {
+        return redissonClient.getAtomicLong(generateGenerationKey());
+    }
+
+    private RTopic getInvalidationTopic() {
+        return redissonClient.getTopic(generateTopicName());
+    }
+
+    private boolean isHashStorage() {
+        return ntsProperties.getHelper().getLocation().getCache().getStorage() == CacheProperties.Storage.HASH;
+    }
+
+    private boolean isNearCacheEnabled() {
+        return ntsProperties.getHelper().getLocation().getCache().getNearCache().isEnabled();
+    }
+
+    private Map<Long, NtsDefaultLocationDTO> storeNearCache(Map<Long, NtsDefaultLocationDTO> items) {
+        Map<Long, NtsDefaultLocationDTO> locations = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+        if (isNearCacheEnabled()) {
+            long expiration = Math.min(
+                getExpiration(),
+                ntsProperties.getHelper().getLocation().getCache().getNearCache().getExpiration()
+            );
+            nearCache.set(new LocationSnapshot(locations, System.nanoTime() + TimeUnit.SECONDS.toNanos(expiration)));
+        }
+        return locations;
+    }
+
+    /**
+     * Get the entity tag of cached locations, see {@link NtsLocationVersion}.
+     * <p>
+     * The tag of the near cache snapshot is computed once and reused until the snapshot is replaced, other locations,
+     * like the ones read from redis when the near cache is disabled, are hashed on every call.
+     *
+     * @param locations the locations returned by this cacheable
+     * @return the quoted entity tag
+     */
+    public String getCacheVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && snapshot.getLocations() == locations) {
+            return snapshot.getVersion();
+        }
+        return NtsLocationVersion.of(locations.values());
+    }
+
+    private void publishInvalidation() {
+        if (!isNearCacheEnabled()) {
+            return;
+        }
+        getInvalidationTopic().publish(instanceId);
+    }
+
     public void setCacheLocations(Map<Long, NtsDefaultLocationDTO> items) {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return;
         }
-        final String cacheKey = generateCacheKey();
-        RBucket<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        bucket.set(items, getExpiration(), TimeUnit.SECONDS);
+        if (isHashStorage()) {
+            replaceHash(items);
+        } else {
+            getBucket().set(items, getExpiration(), TimeUnit.SECONDS);
+        }
+        storeNearCache(items);
+        publishInvalidation();
+    }
+
+    /**
+     * Write a created or updated location through to the cache, without reloading the other locations.
+     * <p>
+     * This node patches its near cache in place, the other nodes drop theirs and read the patched snapshot from redis.
+     * Nothing is written when the cache is not populated, the next load reads the location from the upstream. The
+     * snapshot generation is bumped in both cases, so a load that started before this write does not keep its result.
+     *
+     * @param location the written location
+     * @return true if the cache was patched
+     */
+    public boolean putCacheLocation(NtsDefaultLocationDTO location) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || location == null || location.getId() == null) {
+            return false;
+        }
+        boolean patched = isHashStorage() ? patchHash(location) : patchBucket(location);
+        if (!patched) {
+            log.debug("Location cache is not populated, skip patch of location {}", location.getId());
+            return false;
+        }
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && !snapshot.isExpired()) {
+            Map<Long, NtsDefaultLocationDTO> items = new LinkedHashMap<>(snapshot.getLocations());
+            items.put(location.getId(), location);
+            storeNearCache(items);
+        }
+        publishInvalidation();
+        return true;
+    }
+
+    private boolean patchHash(NtsDefaultLocationDTO location) {
+        Boolean patched = redissonClient.getScript(ByteArrayCodec.INSTANCE).eval(
+            RScript.Mode.READ_WRITE,
+            PATCH_HASH_SCRIPT,
+            RScript.ReturnType.BOOLEAN,
+            List.of(generateHashKey(), generateIdSetKey(), generateGenerationKey()),
+            location.getId().toString().getBytes(StandardCharsets.UTF_8),
+            encode(hashCodec.getMapValueEncoder(), location)
+        );
+        return Boolean.TRUE.equals(patched);
+    }
+
+    /**
+     * The bucket is read, patched and written back under the load lock when it is enabled, so concurrent writers do not
+     * lose updates. The lock is mostly held by a load, which drops its result after this write, so the bucket is
+     * patched without the lock when it can not be acquired.
+     */
+    private boolean patchBucket(NtsDefaultLocationDTO location) {
+        getGeneration().incrementAndGet();
+        CacheProperties.LockProperties lockProperties = ntsProperties.getHelper().getLocation().getCache().getLock();
+        if (!lockProperties.isEnabled()) {
+            return writeBucketPatch(location);
+        }
+        RLock lock = redissonClient.getLock(generateLockKey());
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(lockProperties.getWaitTime(), lockProperties.getLeaseTime(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            log.warn("Could not acquire location load lock in {}s, patch the cache without it", lockProperties.getWaitTime());
+            return writeBucketPatch(location);
+        }
+        try {
+            return writeBucketPatch(location);
+        } finally {
+            if (lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private boolean writeBucketPatch(NtsDefaultLocationDTO location) {
+        Map<Long, NtsDefaultLocationDTO> items = getBucket().get();
+        if (items == null || items.isEmpty()) {
+            return false;
+        }
+        items = new LinkedHashMap<>(items);
+        items.put(location.getId(), location);
+        return getBucket().setIfExists(items, getExpiration(), TimeUnit.SECONDS);
+    }
+
+    private static byte[] encode(Encoder encoder, Object value) {
+        ByteBuf buf = null;
+        try {
+            buf = encoder.encode(value);
+            return ByteBufUtil.getBytes(buf);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Location %s can not be encoded.", value), e);
+        } finally {
+            if (buf != null) {
+                buf.release();
+            }
+        }
+    }
+
+    /**
+     * Replace the hash and the id set in one MULTI/EXEC, readers never see a partially written snapshot.
+     */
+    private void replaceHash(Map<Long, NtsDefaultLocationDTO> items) {
+        RBatch batch = redissonClient.createBatch(BatchOptions.defaults()
+            .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        RMapAsync<Long, NtsDefaultLocationDTO> hash = batch.getMap(generateHashKey(), hashCodec);
+        RSetAsync<Long> idSet = batch.getSet(generateIdSetKey(), LongCodec.INSTANCE);
+        hash.deleteAsync();
+        idSet.deleteAsync();
+        if (!items.isEmpty()) {
+            hash.putAllAsync(items);
+            idSet.addAllAsync(items.keySet());
+            hash.expireAsync(Duration.ofSeconds(getExpiration()));
+            idSet.expireAsync(Duration.ofSeconds(getExpiration()));
+        }
+        batch.execute();
     }
 
     public boolean clearCacheLocations() {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return true;
         }
-        final String cacheKey = generateCacheKey();
-        RBucket<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        return bucket.delete();
+        nearCache.set(null);
+        boolean deleted = isHashStorage()
+            ? redissonClient.getKeys().delete(generateHashKey(), generateIdSetKey()) > 0
+            : getBucket().delete();
+        publishInvalidation();
+        return deleted;
+    }
+
+    private static final class LocationSnapshot {
+        private final Map<Long, NtsDefaultLocationDTO> locations;
+        private final long expiresAt;
+        private volatile String version;
+
+        private LocationSnapshot(Map<Long, NtsDefaultLocationDTO> locations, long expiresAt) {
+            this.locations = locations;
+            this.expiresAt = expiresAt;
+        }
+
+        private Map<Long, NtsDefaultLocationDTO> getLocations() {
+            return locations;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private String getVersion() {
+            String result = version;
+            if (result == null) {
+                result = NtsLocationVersion.of(locations.values());
+                version = result;
+            }
+            return result;
+        }
     }
 }
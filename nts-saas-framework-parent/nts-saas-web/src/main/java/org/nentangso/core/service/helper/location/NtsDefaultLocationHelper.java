@@ -4,28 +4,37 @@ import org.nentangso.core.service.dto.NtsLocationDTO;
 import org.nentangso.core.service.helper.NtsLocationHelper;
 
 import javax.validation.constraints.Min;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class NtsDefaultLocationHelper implements NtsLocationHelper {
     private final NtsLocationProvider<? extends NtsLocationDTO> locationProvider;
     private final NtsLocationDeserializer locationDeserializer;
+    private final String latitudeKey;
+    private final String longitudeKey;
+    private final AtomicReference<NtsLocationIndex<? extends NtsLocationDTO>> index = new AtomicReference<>();
 
     public NtsDefaultLocationHelper(
         NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
         NtsLocationDeserializer locationDeserializer
+    ) {
+        this(locationProvider, locationDeserializer, DEFAULT_LATITUDE_KEY, DEFAULT_LONGITUDE_KEY);
+    }
+
+    public NtsDefaultLocationHelper(
+        NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
+        NtsLocationDeserializer locationDeserializer,
+        String latitudeKey,
+        String longitudeKey
     ) {
         this.locationProvider = locationProvider;
         this.locationDeserializer = locationDeserializer;
+        this.latitudeKey = latitudeKey;
+        this.longitudeKey = longitudeKey;
     }
 
     public List<? extends NtsLocationDTO> findAll() {
-        return locationProvider.findAll()
-            .values()
-            .stream()
-            .collect(Collectors.toUnmodifiableList());
+        return getIndex().findAll();
     }
 
     public Set<Long> findAlIds() {
@@ -36,6 +45,55 @@ public class NtsDefaultLocationHelper implements NtsLocationHelper {
         return locationProvider.findById(id);
     }
 
+    public Map<Long, ? extends NtsLocationDTO> findByIds(Collection<Long> ids) {
+        return locationProvider.findByIds(ids);
+    }
+
+    public List<? extends NtsLocationDTO> findActive() {
+        return getIndex().findActive();
+    }
+
+    public List<? extends NtsLocationDTO> findByCountryCode(String countryCode) {
+        return getIndex().findByCountryCode(countryCode);
+    }
+
+    public List<? extends NtsLocationDTO> findByProvinceCode(String countryCode, String provinceCode) {
+        return getIndex().findByProvinceCode(countryCode, provinceCode);
+    }
+
+    public List<? extends NtsLocationDTO> findByCustomAttribute(String key, String value) {
+        return getIndex().findByCustomAttribute(key, value);
+    }
+
+    public List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>> findNearest(double latitude, double longitude, int limit) {
+        NtsLocationGrants grants = getGrantedLocations();
+        return getIndex().getSpatialIndex(latitudeKey, longitudeKey)
+            .findNearest(latitude, longitude, limit, location -> location.isActive() && grants.test(location.getId()));
+    }
+
+    public List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>> findWithinRadius(double latitude, double longitude, double radius) {
+        NtsLocationGrants grants = getGrantedLocations();
+        return getIndex().getSpatialIndex(latitudeKey, longitudeKey)
+            .findWithinRadius(latitude, longitude, radius, location -> location.isActive() && grants.test(location.getId()));
+    }
+
+    /**
+     * Get the indexes of current snapshot, rebuilt only when the {@link NtsLocationVersion} of the snapshot changes.
+     * The version is taken from {@link NtsLocationProvider#getVersion}, so the cached providers do not hash the
+     * snapshot on every lookup.
+     */
+    public NtsLocationIndex<? extends NtsLocationDTO> getIndex() {
+        Map<Long, ? extends NtsLocationDTO> locations = locationProvider.findAll();
+        String version = locationProvider.getVersion(locations);
+        NtsLocationIndex<? extends NtsLocationDTO> current = index.get();
+        if (current != null && current.isIndexOf(version)) {
+            return current;
+        }
+        NtsLocationIndex<? extends NtsLocationDTO> created = NtsLocationIndex.of(locations, version);
+        index.set(created);
+        return created;
+    }
+
     public Set<Long> getGrantedLocationIds() {
         return locationDeserializer.getGrantedLocationIds();
     }
@@ -55,4 +113,16 @@ public class NtsDefaultLocationHelper implements NtsLocationHelper {
     public boolean isGrantedLocation(@Min(1L) Long id) {
         return locationDeserializer.isGrantedLocation(id);
     }
+
+    public NtsLocationGrants getGrantedLocations() {
+        return locationDeserializer.getGrantedLocations();
+    }
+
+    public long[] filterGrantedLocationIds(long[] ids) {
+        return locationDeserializer.filterGrantedLocationIds(ids);
+    }
+
+    public long[] filterGrantedLocationIds(Collection<Long> ids) {
+        return locationDeserializer.filterGrantedLocationIds(ids);
+    }
 }
@@ -14,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefaultLocationDTO> {
@@ -40,12 +41,22 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
     private final NtsKeycloakLocationProperties keycloakLocationProperties;
     private final NtsDefaultLocationCacheable locationCacheable;
     private final NtsKeycloakClient keycloakClient;
+    private final NtsKeycloakLocationSynchronizer synchronizer;
+    private final long fullSyncInterval;
+    private volatile long lastFullSyncAt;
 
     public NtsKeycloakLocationProvider(NtsKeycloakLocationProperties keycloakLocationProperties, NtsDefaultLocationCacheable locationCacheable, NtsKeycloakClient keycloakClient) {
         this.keycloakLocationProperties = keycloakLocationProperties;
         this.keycloakClient = keycloakClient;
         this.locationCacheable = locationCacheable;
         validateKeycloakProperties();
+        this.fullSyncInterval = capFullSyncInterval(keycloakLocationProperties.getFullSyncInterval(), locationCacheable.getExpiration());
+        this.synchronizer = new NtsKeycloakLocationSynchronizer(
+            keycloakClient,
+            keycloakLocationProperties.getInternalClientId(),
+            keycloakLocationProperties.getSyncParallelism(),
+            this::toLocation
+        );
     }
 
     private void validateKeycloakProperties() {
@@ -59,10 +70,67 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
 
     @Override
     public Map<Long, NtsDefaultLocationDTO> findAll() {
-        Map<Long, NtsDefaultLocationDTO> cacheLocations = locationCacheable.getCacheLocations();
-        if (cacheLocations != null && !cacheLocations.isEmpty()) {
-            return cacheLocations;
+        return locationCacheable.getOrLoadCacheLocations(this::loadLocations);
+    }
+
+    @Override
+    public String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return locationCacheable.getCacheVersion(locations);
+    }
+
+    /**
+     * Patch the cached snapshot from the brief role list, or reload all roles when the snapshot is missing or the
+     * full sync interval has elapsed. When keycloak fails, the cached snapshot is kept and its expiration is extended.
+     */
+    @Override
+    public Map<Long, NtsDefaultLocationDTO> reload() {
+        Map<Long, NtsDefaultLocationDTO> snapshot = locationCacheable.getCacheLocations();
+        Map<Long, NtsDefaultLocationDTO> locations = snapshot == null || snapshot.isEmpty() || isFullSyncDue()
+            ? locationCacheable.reloadCacheLocations(this::loadLocations)
+            : locationCacheable.reloadCacheLocations(() -> synchronizer.sync(snapshot));
+        if (locations.isEmpty()) {
+            log.warn("Could not reload keycloak locations, keep the cached ones");
+            locationCacheable.extendCacheLocations();
         }
+        return locations;
+    }
+
+    /**
+     * Attribute changes are only picked up by a full sync, do not serve them longer than a cached snapshot lives.
+     */
+    private static long capFullSyncInterval(long fullSyncInterval, Long cacheExpiration) {
+        if (cacheExpiration != null && cacheExpiration > 0 && fullSyncInterval > cacheExpiration) {
+            log.warn("Keycloak location full sync interval {}s exceeds cache expiration {}s, use the cache expiration",
+                fullSyncInterval, cacheExpiration);
+            return cacheExpiration;
+        }
+        return fullSyncInterval;
+    }
+
+    private boolean isFullSyncDue() {
+        return lastFullSyncAt == 0L
+            || System.nanoTime() - lastFullSyncAt >= TimeUnit.SECONDS.toNanos(fullSyncInterval);
+    }
+
+    /**
+     * @return the delay in seconds between two full reloads, at most the cache expiration
+     */
+    public long getFullSyncInterval() {
+        return fullSyncInterval;
+    }
+
+    public NtsKeycloakLocationSynchronizer getSynchronizer() {
+        return synchronizer;
+    }
+
+    /**
+     * Release the threads of the synchronizer.
+     */
+    public void close() {
+        synchronizer.close();
+    }
+
+    private Map<Long, NtsDefaultLocationDTO> loadLocations() {
         String clientId = keycloakLocationProperties.getInternalClientId();
         ResponseEntity<List<KeycloakClientRole>> response = keycloakClient.findClientRoles(clientId, false);
         if (!response.getStatusCode().is2xxSuccessful() || !response.hasBody()) {
@@ -72,7 +140,7 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
         Map<Long, NtsDefaultLocationDTO> locations = toLocations(response.getBody())
             .stream()
             .collect(Collectors.toMap(NtsDefaultLocationDTO::getId, v -> v));
-        locationCacheable.setCacheLocations(locations);
+        lastFullSyncAt = System.nanoTime();
         return locations;
     }
 
@@ -84,7 +152,7 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
             .collect(Collectors.toList());
     }
 
-    private NtsDefaultLocationDTO toLocation(KeycloakClientRole clientRole) {
+    NtsDefaultLocationDTO toLocation(KeycloakClientRole clientRole) {
         log.trace("toLocationDTO clientRole={}", clientRole);
         Map<String, List<String>> attributes = clientRole.getAttributes();
         return NtsLocationDTO.newDefaultBuilder()
@@ -156,14 +224,27 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
 
     @Override
     public Set<Long> findAllIds() {
+        Set<Long> cacheIds = locationCacheable.getCacheLocationIds();
+        if (cacheIds != null) {
+            return cacheIds;
+        }
         return findAll()
             .keySet();
     }
 
     @Override
     public Optional<NtsDefaultLocationDTO> findById(final Long id) {
-        NtsDefaultLocationDTO value = findAll()
+        NtsDefaultLocationDTO value = findByIds(Collections.singleton(id))
             .getOrDefault(id, null);
         return Optional.ofNullable(value);
     }
+
+    @Override
+    public Map<Long, NtsDefaultLocationDTO> findByIds(Collection<Long> ids) {
+        Map<Long, NtsDefaultLocationDTO> cacheLocations = locationCacheable.getCacheLocations(ids);
+        if (cacheLocations != null) {
+            return cacheLocations;
+        }
+        return NtsLocationProvider.super.findByIds(ids);
+    }
 }
@@ -0,0 +1,167 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.client.NtsKeycloakClient;
+import org.nentangso.core.client.vm.KeycloakClientRole;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Patch a location snapshot from the brief client role list, fetching only the roles that are new or renamed.
+ * <p>
+ * Keycloak brief representations carry no attributes, so attribute changes are not visible here; the provider
+ * reloads all roles every {@code nts.helper.location.keycloak.full-sync-interval} to pick them up. Roles are fetched
+ * on a pool of at most {@code parallelism} threads, owned by the synchronizer and released by {@link #close()}.
+ */
+public class NtsKeycloakLocationSynchronizer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(NtsKeycloakLocationSynchronizer.class);
+
+    private final NtsKeycloakClient keycloakClient;
+    private final String internalClientId;
+    private final int parallelism;
+    private final Function<KeycloakClientRole, NtsDefaultLocationDTO> mapper;
+    private final AtomicLong upstreamCallCount = new AtomicLong();
+    private final ThreadPoolExecutor executor;
+
+    public NtsKeycloakLocationSynchronizer(
+        NtsKeycloakClient keycloakClient,
+        String internalClientId,
+        int parallelism,
+        Function<KeycloakClientRole, NtsDefaultLocationDTO> mapper
+    ) {
+        this.keycloakClient = keycloakClient;
+        this.internalClientId = internalClientId;
+        this.parallelism = Math.max(1, parallelism);
+        this.mapper = mapper;
+        this.executor = new ThreadPoolExecutor(
+            this.parallelism,
+            this.parallelism,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new SyncThreadFactory()
+        );
+        // syncs are rare, do not keep idle threads between them
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Compute the next snapshot.
+     *
+     * @param snapshot the cached locations
+     * @return the next snapshot, empty when the upstream failed
+     */
+    public Map<Long, NtsDefaultLocationDTO> sync(Map<Long, NtsDefaultLocationDTO> snapshot) {
+        upstreamCallCount.incrementAndGet();
+        ResponseEntity<List<KeycloakClientRole>> response = keycloakClient.findClientRoles(internalClientId, true);
+        if (!response.getStatusCode().is2xxSuccessful() || !response.hasBody()) {
+            log.error("Get keycloak brief client roles of client {} error, response={}", internalClientId, response);
+            return Collections.emptyMap();
+        }
+        List<KeycloakClientRole> roles = Optional.ofNullable(response.getBody()).orElseGet(Collections::emptyList);
+        List<String> changedNames = new ArrayList<>();
+        for (KeycloakClientRole role : roles) {
+            NtsDefaultLocationDTO cached = snapshot.get(Long.parseUnsignedLong(role.getName()));
+            if (cached == null || !Objects.equals(cached.getName(), role.getDescription())) {
+                changedNames.add(role.getName());
+            }
+        }
+        Map<Long, NtsDefaultLocationDTO> fetched = fetch(changedNames);
+        if (fetched == null) {
+            return Collections.emptyMap();
+        }
+        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+        for (KeycloakClientRole role : roles) {
+            Long id = Long.parseUnsignedLong(role.getName());
+            NtsDefaultLocationDTO location = fetched.get(id);
+            result.put(id, location != null ? location : snapshot.get(id));
+        }
+        if (log.isDebugEnabled()) {
+            long removed = snapshot.keySet().stream().filter(id -> !result.containsKey(id)).count();
+            log.debug("Sync keycloak locations of client {}, fetched={}, removed={}", internalClientId, fetched.size(), removed);
+        }
+        return result;
+    }
+
+    /**
+     * Fetch the full representations of client roles, at most {@link #parallelism} requests at a time.
+     *
+     * @return the locations by id, null when any request failed
+     */
+    private Map<Long, NtsDefaultLocationDTO> fetch(List<String> roleNames) {
+        if (roleNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Future<KeycloakClientRole>> futures = new ArrayList<>();
+        try {
+            for (String roleName : roleNames) {
+                futures.add(executor.submit(() -> fetchRole(roleName)));
+            }
+            Map<Long, NtsDefaultLocationDTO> result = new HashMap<>();
+            for (Future<KeycloakClientRole> future : futures) {
+                KeycloakClientRole role = future.get();
+                if (role == null) {
+                    return null;
+                }
+                NtsDefaultLocationDTO location = mapper.apply(role);
+                result.put(location.getId(), location);
+            }
+            return result;
+        } catch (ExecutionException e) {
+            log.error("Get keycloak client roles of client {} error", internalClientId, e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (RejectedExecutionException e) {
+            log.error("Get keycloak client roles of client {} error, synchronizer is closed", internalClientId);
+            return null;
+        } finally {
+            // stop the remaining requests of a failed sync
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private KeycloakClientRole fetchRole(String roleName) {
+        upstreamCallCount.incrementAndGet();
+        ResponseEntity<KeycloakClientRole> response = keycloakClient.findClientRole(internalClientId, roleName);
+        if (!response.getStatusCode().is2xxSuccessful() || !response.hasBody()) {
+            log.error("Get keycloak client role {} of client {} error, response={}", roleName, internalClientId, response);
+            return null;
+        }
+        return response.getBody();
+    }
+
+    /**
+     * @return the upstream requests made since startup
+     */
+    public long getUpstreamCallCount() {
+        return upstreamCallCount.get();
+    }
+
+    /**
+     * Stop the fetch threads, a sync afterwards fails.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static final class SyncThreadFactory implements ThreadFactory {
+        private static final AtomicInteger sequence = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "nts-location-sync-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.nentangso.core.service.helper.location;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.utils.NtsLocationBinaryUtils;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Redis codec of the location snapshot, using the schema versioned format of {@link NtsLocationBinaryUtils}.
+ * Values are whole location maps, hash values are single locations.
+ */
+public class NtsLocationBinaryCodec extends BaseCodec {
+    public static final String CODEC_NAME = "org.nentangso.core.service.helper.location.NtsLocationBinaryCodec";
+
+    @SuppressWarnings("unchecked")
+    private final Encoder encoder = in -> {
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+        try (ByteBufOutputStream os = new ByteBufOutputStream(out)) {
+            NtsLocationBinaryUtils.encode((Map<Long, NtsDefaultLocationDTO>) in, os);
+            return os.buffer();
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    };
+
+    private final Decoder<Object> decoder = (buf, state) -> {
+        try (ByteBufInputStream is = new ByteBufInputStream(buf)) {
+            return NtsLocationBinaryUtils.decode(is);
+        }
+    };
+
+    private final Encoder mapValueEncoder = in -> {
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+        try (ByteBufOutputStream os = new ByteBufOutputStream(out)) {
+            NtsLocationBinaryUtils.encodeLocation((NtsDefaultLocationDTO) in, os);
+            return os.buffer();
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            throw e;
+        }
+    };
+
+    private final Decoder<Object> mapValueDecoder = (buf, state) -> {
+        try (ByteBufInputStream is = new ByteBufInputStream(buf)) {
+            return NtsLocationBinaryUtils.decodeLocation(is);
+        }
+    };
+
+    @Override
+    public Decoder<Object> getMapValueDecoder() {
+        return mapValueDecoder;
+    }
+
+    @Override
+    public Encoder getMapValueEncoder() {
+        return mapValueEncoder;
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+}
@@ -1,6 +1,7 @@
 package org.nentangso.core.service.helper.location;
 
 import javax.validation.constraints.Min;
+import java.util.Collection;
 import java.util.Set;
 
 public interface NtsLocationDeserializer {
@@ -13,4 +14,24 @@ public interface NtsLocationDeserializer {
     boolean isGrantedAnyLocations(Long... ids);
 
     boolean isGrantedLocation(@Min(1L) Long id);
+
+    /**
+     * Get the locations granted to current user, fetch it once to check many ids.
+     *
+     * @return the grants
+     */
+    default NtsLocationGrants getGrantedLocations() {
+        if (isGrantedAllLocations()) {
+            return NtsLocationGrants.ALL;
+        }
+        return NtsLocationGrants.of(false, getGrantedLocationIds().stream().mapToLong(Long::longValue).toArray());
+    }
+
+    default long[] filterGrantedLocationIds(long[] ids) {
+        return getGrantedLocations().filter(ids);
+    }
+
+    default long[] filterGrantedLocationIds(Collection<Long> ids) {
+        return getGrantedLocations().filter(ids);
+    }
 }
@@ -2,9 +2,7 @@ package org.nentangso.core.service.helper.location;
 
 import org.nentangso.core.service.dto.NtsLocationDTO;
 
-import java.util.Map;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 public interface NtsLocationProvider<T extends NtsLocationDTO> {
     Map<Long, T> findAll();
@@ -12,4 +10,38 @@ public interface NtsLocationProvider<T extends NtsLocationDTO> {
     Set<Long> findAllIds();
 
     Optional<T> findById(Long id);
+
+    /**
+     * Reload all locations from the upstream and replace the cached ones, used by {@link NtsLocationRefresher}.
+     *
+     * @return the reloaded locations, empty when the upstream returned nothing
+     */
+    default Map<Long, T> reload() {
+        return findAll();
+    }
+
+    /**
+     * Get the entity tag of locations returned by {@link #findAll()}, see {@link NtsLocationVersion}.
+     * <p>
+     * Providers backed by {@link NtsDefaultLocationCacheable} return the tag of the cached snapshot, computed once per
+     * snapshot.
+     *
+     * @param locations the locations returned by {@link #findAll()}
+     * @return the quoted entity tag
+     */
+    default String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return NtsLocationVersion.of(locations.values());
+    }
+
+    default Map<Long, T> findByIds(Collection<Long> ids) {
+        Map<Long, T> locations = findAll();
+        Map<Long, T> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            T location = id != null ? locations.get(id) : null;
+            if (location != null) {
+                result.put(id, location);
+            }
+        }
+        return result;
+    }
 }
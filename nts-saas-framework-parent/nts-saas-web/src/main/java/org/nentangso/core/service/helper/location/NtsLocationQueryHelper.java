@@ -0,0 +1,200 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.config.NtsProperties;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Restrict JPA queries to the locations granted to current user, so the filtering happens in the database.
+ * <p>
+ * JPA criteria can not join an unmapped temporary table, so the predicate of a
+ * {@link NtsLocationAccessPlan.Strategy#TEMPORARY_TABLE} plan inlines the ranges and ids as numeric literals, in IN
+ * lists of at most {@code nts.helper.location.query.max-parameters} ids. Hibernate renders numeric literals inline with its default
+ * {@code hibernate.criteria.literal_handling_mode}, so the statement binds none of them. The SQL condition of native
+ * queries joins them from a temporary table instead, created by {@code nts.helper.location.query.temporary-table-ddl}.
+ */
+public class NtsLocationQueryHelper {
+    private static final String PARAMETER_PREFIX = "nts_location_";
+
+    private final NtsLocationDeserializer locationDeserializer;
+    private final int maxParameters;
+    private final String temporaryTable;
+    private final String temporaryTableDdl;
+
+    public NtsLocationQueryHelper(NtsProperties ntsProperties, NtsLocationDeserializer locationDeserializer) {
+        this.locationDeserializer = locationDeserializer;
+        NtsProperties.HelperProperties.LocationProperties.QueryProperties query = ntsProperties.getHelper().getLocation().getQuery();
+        this.maxParameters = Math.max(1, query.getMaxParameters());
+        this.temporaryTable = query.getTemporaryTable();
+        this.temporaryTableDdl = query.getTemporaryTableDdl();
+    }
+
+    public NtsLocationAccessPlan getAccessPlan() {
+        return NtsLocationAccessPlan.of(locationDeserializer.getGrantedLocations(), maxParameters);
+    }
+
+    /**
+     * Create a specification matching the granted locations of current user.
+     *
+     * @param attribute the location id attribute of the entity
+     * @return the specification, without any restriction when all locations are granted
+     */
+    public <T> Specification<T> grantedLocations(String attribute) {
+        NtsLocationAccessPlan plan = getAccessPlan();
+        return (root, query, cb) -> toPredicate(plan, root.get(attribute), cb);
+    }
+
+    /**
+     * Create the predicate of an access plan.
+     *
+     * @param plan       the access plan
+     * @param locationId the location id expression
+     * @param cb         the criteria builder
+     * @return the predicate, null when all locations are granted
+     */
+    public Predicate toPredicate(NtsLocationAccessPlan plan, Expression<Long> locationId, CriteriaBuilder cb) {
+        switch (plan.getStrategy()) {
+            case ALL:
+                return null;
+            case NONE:
+                return cb.disjunction();
+            case IN_LIST:
+                return in(locationId, plan.getIds(), cb);
+            case TEMPORARY_TABLE:
+                return inLiterals(locationId, plan.getRangeStarts(), plan.getRangeEnds(), plan.getIds(), cb);
+            default:
+                List<Predicate> predicates = new ArrayList<>();
+                long[] starts = plan.getRangeStarts();
+                long[] ends = plan.getRangeEnds();
+                for (int i = 0; i < starts.length; i++) {
+                    predicates.add(cb.between(locationId, starts[i], ends[i]));
+                }
+                if (plan.getIds().length > 0) {
+                    predicates.add(in(locationId, plan.getIds(), cb));
+                }
+                return cb.or(predicates.toArray(new Predicate[0]));
+        }
+    }
+
+    /**
+     * The plan keeps the ids and ranges of the other strategies within {@code maxParameters}, one IN list is enough.
+     */
+    private Predicate in(Expression<Long> locationId, long[] ids, CriteriaBuilder cb) {
+        CriteriaBuilder.In<Long> in = cb.in(locationId);
+        Arrays.stream(ids).forEach(in::value);
+        return in;
+    }
+
+    /**
+     * Inline the ranges and ids of a large grant, one IN list per {@code maxParameters} ids, some databases limit the
+     * list size.
+     */
+    private Predicate inLiterals(Expression<Long> locationId, long[] starts, long[] ends, long[] ids, CriteriaBuilder cb) {
+        List<Predicate> predicates = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            predicates.add(cb.between(locationId, cb.literal(starts[i]), cb.literal(ends[i])));
+        }
+        for (int from = 0; from < ids.length; from += maxParameters) {
+            CriteriaBuilder.In<Long> in = cb.in(locationId);
+            Arrays.stream(ids, from, Math.min(ids.length, from + maxParameters)).forEach(id -> in.value(cb.literal(id)));
+            predicates.add(in);
+        }
+        return predicates.size() == 1 ? predicates.get(0) : cb.or(predicates.toArray(new Predicate[0]));
+    }
+
+    /**
+     * Create a SQL condition matching the granted locations of current user, its bindings are named parameters.
+     * <p>
+     * Large grants are written to the temporary table first, the statement must run in the same transaction, so it
+     * reads the rows of this connection only.
+     *
+     * @param column       the location id column, not escaped
+     * @param jdbcTemplate the JDBC template of the statement
+     * @return the condition, {@code 1 = 1} when all locations are granted
+     * @throws IllegalStateException if the grants need the temporary table outside of a transaction
+     */
+    public SqlCondition grantedLocationsSql(String column, JdbcTemplate jdbcTemplate) {
+        return toSqlCondition(getAccessPlan(), column, jdbcTemplate);
+    }
+
+    public SqlCondition toSqlCondition(NtsLocationAccessPlan plan, String column, JdbcTemplate jdbcTemplate) {
+        switch (plan.getStrategy()) {
+            case ALL:
+                return new SqlCondition("1 = 1", Collections.emptyMap());
+            case NONE:
+                return new SqlCondition("1 = 0", Collections.emptyMap());
+            case TEMPORARY_TABLE:
+                fillTemporaryTable(plan.getAllIds(), jdbcTemplate);
+                return new SqlCondition(
+                    String.format("%s IN (SELECT location_id FROM %s)", column, temporaryTable),
+                    Collections.emptyMap()
+                );
+            default:
+                List<String> conditions = new ArrayList<>();
+                Map<String, Object> bindings = new LinkedHashMap<>();
+                long[] starts = plan.getRangeStarts();
+                long[] ends = plan.getRangeEnds();
+                for (int i = 0; i < starts.length; i++) {
+                    conditions.add(String.format("%s BETWEEN :%sfrom_%d AND :%sto_%d", column, PARAMETER_PREFIX, i, PARAMETER_PREFIX, i));
+                    bindings.put(PARAMETER_PREFIX + "from_" + i, starts[i]);
+                    bindings.put(PARAMETER_PREFIX + "to_" + i, ends[i]);
+                }
+                long[] ids = plan.getIds();
+                if (ids.length > 0) {
+                    conditions.add(String.format("%s IN (:%sids)", column, PARAMETER_PREFIX));
+                    bindings.put(PARAMETER_PREFIX + "ids", Arrays.stream(ids).boxed().collect(Collectors.toList()));
+                }
+                return new SqlCondition("(" + String.join(" OR ", conditions) + ")", bindings);
+        }
+    }
+
+    private void fillTemporaryTable(long[] ids, JdbcTemplate jdbcTemplate) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException(String.format(
+                "%d granted locations exceed nts.helper.location.query.max-parameters=%d, the temporary table %s must be filled and queried in one transaction",
+                ids.length,
+                maxParameters,
+                temporaryTable
+            ));
+        }
+        if (StringUtils.hasText(temporaryTableDdl)) {
+            jdbcTemplate.execute(String.format(temporaryTableDdl, temporaryTable));
+        }
+        jdbcTemplate.update(String.format("DELETE FROM %s", temporaryTable));
+        jdbcTemplate.batchUpdate(
+            String.format("INSERT INTO %s (location_id) VALUES (?)", temporaryTable),
+            Arrays.stream(ids).boxed().collect(Collectors.toList()),
+            maxParameters,
+            (ps, id) -> ps.setLong(1, id)
+        );
+    }
+
+    public static class SqlCondition {
+        private final String sql;
+        private final Map<String, Object> bindings;
+
+        public SqlCondition(String sql, Map<String, Object> bindings) {
+            this.sql = sql;
+            this.bindings = Collections.unmodifiableMap(bindings);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the named parameters of the condition, for a {@code NamedParameterJdbcTemplate}
+         */
+        public Map<String, Object> getBindings() {
+            return bindings;
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package org.nentangso.core.service.helper.location;
 
+import feign.FeignException;
 import org.nentangso.core.client.NtsHelperLocationRestClient;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import java.util.*;
@@ -24,18 +27,52 @@ public class NtsRestLocationProvider implements NtsLocationProvider<NtsDefaultLo
 
     @Override
     public Map<Long, NtsDefaultLocationDTO> findAll() {
-        Map<Long, NtsDefaultLocationDTO> cacheLocations = locationCacheable.getCacheLocations();
-        if (cacheLocations != null && !cacheLocations.isEmpty()) {
-            return cacheLocations;
+        return locationCacheable.getOrLoadCacheLocations(this::loadLocations);
+    }
+
+    @Override
+    public String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return locationCacheable.getCacheVersion(locations);
+    }
+
+    /**
+     * Reload the locations, sending the entity tag of the cached ones so an unchanged upstream only answers
+     * {@code 304 Not Modified}.
+     */
+    @Override
+    public Map<Long, NtsDefaultLocationDTO> reload() {
+        Map<Long, NtsDefaultLocationDTO> snapshot = locationCacheable.getCacheLocations();
+        if (snapshot == null || snapshot.isEmpty()) {
+            return locationCacheable.reloadCacheLocations(this::loadLocations);
+        }
+        ResponseEntity<List<NtsDefaultLocationDTO>> response;
+        try {
+            response = restClient.findAll(locationCacheable.getCacheVersion(snapshot));
+        } catch (FeignException e) {
+            if (e.status() != HttpStatus.NOT_MODIFIED.value()) {
+                throw e;
+            }
+            response = ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
         }
-        ResponseEntity<List<NtsDefaultLocationDTO>> response = restClient.findAll();
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+            log.debug("Locations not modified, keep {} cached locations", snapshot.size());
+            locationCacheable.extendCacheLocations();
+            return snapshot;
+        }
+        ResponseEntity<List<NtsDefaultLocationDTO>> modified = response;
+        return locationCacheable.reloadCacheLocations(() -> toLocations(modified));
+    }
+
+    private Map<Long, NtsDefaultLocationDTO> loadLocations() {
+        return toLocations(restClient.findAll());
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> toLocations(ResponseEntity<List<NtsDefaultLocationDTO>> response) {
         if (!response.getStatusCode().is2xxSuccessful() || !response.hasBody()) {
             log.error("Get locations error, response={}", response);
             return Collections.emptyMap();
         }
-        Map<Long, NtsDefaultLocationDTO> locations = toLocations(response.getBody());
-        locationCacheable.setCacheLocations(locations);
-        return locations;
+        return toLocations(response.getBody());
     }
 
     private static Map<Long, NtsDefaultLocationDTO> toLocations(List<NtsDefaultLocationDTO> items) {
@@ -48,14 +85,27 @@ public class NtsRestLocationProvider implements NtsLocationProvider<NtsDefaultLo
 
     @Override
     public Set<Long> findAllIds() {
+        Set<Long> cacheIds = locationCacheable.getCacheLocationIds();
+        if (cacheIds != null) {
+            return cacheIds;
+        }
         return findAll()
             .keySet();
     }
 
     @Override
     public Optional<NtsDefaultLocationDTO> findById(Long id) {
-        NtsDefaultLocationDTO value = findAll()
+        NtsDefaultLocationDTO value = findByIds(Collections.singleton(id))
             .getOrDefault(id, null);
         return Optional.ofNullable(value);
     }
+
+    @Override
+    public Map<Long, NtsDefaultLocationDTO> findByIds(Collection<Long> ids) {
+        Map<Long, NtsDefaultLocationDTO> cacheLocations = locationCacheable.getCacheLocations(ids);
+        if (cacheLocations != null) {
+            return cacheLocations;
+        }
+        return NtsLocationProvider.super.findByIds(ids);
+    }
 }
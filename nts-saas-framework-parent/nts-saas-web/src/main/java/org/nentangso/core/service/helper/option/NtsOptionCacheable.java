@@ -0,0 +1,351 @@
+package org.nentangso.core.service.helper.option;
+
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.OptionProperties.CacheProperties;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.CompositeCodec;
+import org.redisson.codec.SerializationCodec;
+import org.redisson.jcache.configuration.RedissonConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.cache.configuration.Configuration;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of option values by option key, an empty list caches a missing option.
+ * <p>
+ * Entries are kept in this JVM, and in a redis map shared by all nodes when
+ * {@code nts.helper.option.cache.redis-enabled} is set, each shared entry expiring on its own. Evictions are applied again
+ * after the current transaction completes, then published on a redis topic so the other nodes drop their entries too.
+ * Invalidation listeners are told about the committed changes of this node, and of the other nodes when redis is enabled.
+ * <p>
+ * A committed eviction leaves a marker in the shared map, and a loaded value only replaces the marker or the absent entry
+ * seen before loading, so a reader that loaded before the commit cannot put its stale value back. The local entries are
+ * guarded the same way by a generation that every eviction bumps.
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.option",
+    name = "enabled",
+    havingValue = "true"
+)
+@Component
+public class NtsOptionCacheable {
+    private static final Logger log = LoggerFactory.getLogger(NtsOptionCacheable.class);
+
+    private final NtsProperties ntsProperties;
+    private final RedissonClient redissonClient;
+    private final Map<String, CachedOption> localCache = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final List<Consumer<Set<String>>> invalidationListeners = new CopyOnWriteArrayList<>();
+    private final String instanceId = UUID.randomUUID().toString();
+    private final Codec codec = new CompositeCodec(StringCodec.INSTANCE, new SerializationCodec(), new SerializationCodec());
+
+    public NtsOptionCacheable(NtsProperties ntsProperties, ObjectProvider<Configuration<Object, Object>> jcacheConfiguration) {
+        this.ntsProperties = ntsProperties;
+        this.redissonClient = getCacheProperties().isEnabled() && getCacheProperties().isRedisEnabled()
+            ? ((RedissonConfiguration<?, ?>) jcacheConfiguration.getObject()).getRedisson()
+            : null;
+        subscribeInvalidation();
+    }
+
+    private void subscribeInvalidation() {
+        if (redissonClient == null) {
+            return;
+        }
+        getInvalidationTopic().addListener(InvalidationMessage.class, (channel, message) -> {
+            if (instanceId.equals(message.getPublisherId())) {
+                return;
+            }
+            log.debug("Invalidate options {}, publisher={}", message.getOptionKeys(), message.getPublisherId());
+            generation.incrementAndGet();
+            if (message.getOptionKeys() == null) {
+                localCache.clear();
+            } else {
+                message.getOptionKeys().forEach(localCache::remove);
+            }
+            notifyInvalidation(message.getOptionKeys());
+        });
+    }
+
+    /**
+     * Register a listener of committed option changes.
+     *
+     * @param listener receive the changed option keys, null when all options may have changed
+     */
+    public void addInvalidationListener(Consumer<Set<String>> listener) {
+        invalidationListeners.add(listener);
+    }
+
+    private void notifyInvalidation(Set<String> optionKeys) {
+        for (Consumer<Set<String>> listener : invalidationListeners) {
+            try {
+                listener.accept(optionKeys);
+            } catch (RuntimeException e) {
+                log.warn("Cannot notify invalidation of options {}", optionKeys, e);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return getCacheProperties().isEnabled();
+    }
+
+    /**
+     * Get the values of options, loading the missing ones at once.
+     *
+     * @param optionKeys the option keys
+     * @param loader     load the values of the given keys, the keys without values may be omitted
+     * @return the values by option key, an empty list for a missing option
+     */
+    public Map<String, List<String>> getAll(Collection<String> optionKeys, Function<Set<String>, Map<String, List<String>>> loader) {
+        Set<String> keys = new LinkedHashSet<>(optionKeys);
+        if (!isEnabled()) {
+            return complete(keys, loader.apply(keys));
+        }
+        long fillGeneration = generation.get();
+        Map<String, List<String>> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+        Set<String> misses = new LinkedHashSet<>();
+        long now = System.nanoTime();
+        for (String key : keys) {
+            CachedOption cached = localCache.get(key);
+            if (cached != null && !cached.isExpired(now)) {
+                result.put(key, cached.getValues());
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        Map<String, EvictionMarker> markers = Collections.emptyMap();
+        if (redissonClient != null) {
+            markers = new HashMap<>();
+            for (Map.Entry<String, Object> entry : getHash().getAll(misses).entrySet()) {
+                if (entry.getValue() instanceof EvictionMarker) {
+                    markers.put(entry.getKey(), (EvictionMarker) entry.getValue());
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                List<String> values = (List<String>) entry.getValue();
+                List<String> items = values != null ? Collections.unmodifiableList(values) : Collections.emptyList();
+                storeLocal(entry.getKey(), items, fillGeneration);
+                result.put(entry.getKey(), items);
+                misses.remove(entry.getKey());
+            }
+            if (misses.isEmpty()) {
+                return result;
+            }
+        }
+        Map<String, List<String>> loaded = complete(misses, loader.apply(misses));
+        put(loaded, markers, fillGeneration);
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * Fill the cache with all options.
+     *
+     * @param loader load all option values
+     */
+    public void preload(Supplier<Map<String, List<String>>> loader) {
+        if (!isEnabled()) {
+            return;
+        }
+        long fillGeneration = generation.get();
+        Map<String, List<String>> loaded = loader.get();
+        Map<String, List<String>> items = new HashMap<>(loaded.size() * 4 / 3 + 1);
+        loaded.forEach((key, values) -> items.put(key, Collections.unmodifiableList(new ArrayList<>(values))));
+        put(items, Collections.emptyMap(), fillGeneration);
+        log.debug("Preload {} options", items.size());
+    }
+
+    /**
+     * Evict options from this node now, then from all nodes once the current transaction completes, and notify the
+     * invalidation listeners. Evicting after a rollback too drops the values read inside the transaction.
+     *
+     * @param optionKeys the option keys
+     */
+    public void evict(Collection<String> optionKeys) {
+        if (optionKeys.isEmpty()) {
+            return;
+        }
+        Set<String> keys = new HashSet<>(optionKeys);
+        generation.incrementAndGet();
+        keys.forEach(localCache::remove);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictCommitted(keys);
+                }
+            });
+        } else {
+            evictCommitted(keys);
+        }
+    }
+
+    private void evictCommitted(Set<String> keys) {
+        generation.incrementAndGet();
+        keys.forEach(localCache::remove);
+        if (redissonClient != null) {
+            RMapCache<String, Object> hash = getHash();
+            EvictionMarker marker = new EvictionMarker(UUID.randomUUID().toString());
+            keys.forEach(key -> hash.fastPut(key, marker, getCacheProperties().getExpiration(), TimeUnit.SECONDS));
+            getInvalidationTopic().publish(new InvalidationMessage(instanceId, keys));
+        }
+        notifyInvalidation(keys);
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        localCache.clear();
+        if (redissonClient != null) {
+            getHash().delete();
+            getInvalidationTopic().publish(new InvalidationMessage(instanceId, null));
+        }
+        notifyInvalidation(null);
+    }
+
+    /**
+     * Fill the cache with loaded values. A shared entry is only written over the eviction marker seen before loading, or
+     * when it is still absent, a value filled over a marker expires with the marker.
+     */
+    private void put(Map<String, List<String>> items, Map<String, EvictionMarker> markers, long fillGeneration) {
+        if (items.isEmpty()) {
+            return;
+        }
+        items.forEach((key, values) -> storeLocal(key, values, fillGeneration));
+        if (redissonClient == null) {
+            return;
+        }
+        RMapCache<String, Object> hash = getHash();
+        long expiration = getCacheProperties().getExpiration();
+        items.forEach((key, values) -> {
+            EvictionMarker marker = markers.get(key);
+            boolean stored = marker != null
+                ? hash.replace(key, marker, new ArrayList<>(values))
+                : hash.fastPutIfAbsent(key, new ArrayList<>(values), expiration, TimeUnit.SECONDS);
+            if (!stored) {
+                log.debug("Skip filling option {}, it changed while loading", key);
+            }
+        });
+    }
+
+    private void storeLocal(String key, List<String> values, long fillGeneration) {
+        long expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(getCacheProperties().getExpiration());
+        CachedOption cached = new CachedOption(values, expiresAt);
+        localCache.put(key, cached);
+        if (generation.get() != fillGeneration) {
+            localCache.remove(key, cached);
+        }
+    }
+
+    private static Map<String, List<String>> complete(Set<String> keys, Map<String, List<String>> loaded) {
+        Map<String, List<String>> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (String key : keys) {
+            List<String> values = loaded != null ? loaded.get(key) : null;
+            result.put(key, values != null ? Collections.unmodifiableList(new ArrayList<>(values)) : Collections.emptyList());
+        }
+        return result;
+    }
+
+    private CacheProperties getCacheProperties() {
+        return ntsProperties.getHelper().getOption().getCache();
+    }
+
+    private RMapCache<String, Object> getHash() {
+        return redissonClient.getMapCache(getCacheProperties().getKeyPrefix() + "option_entries", codec);
+    }
+
+    private RTopic getInvalidationTopic() {
+        return redissonClient.getTopic(getCacheProperties().getKeyPrefix() + "options_invalidation", new SerializationCodec());
+    }
+
+    private static final class CachedOption {
+        private final List<String> values;
+        private final long expiresAt;
+
+        private CachedOption(List<String> values, long expiresAt) {
+            this.values = values;
+            this.expiresAt = expiresAt;
+        }
+
+        private List<String> getValues() {
+            return values;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    /**
+     * Marks a shared entry evicted by a committed change, each eviction has its own id.
+     */
+    private static final class EvictionMarker implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+
+        private EvictionMarker(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof EvictionMarker)) {
+                return false;
+            }
+            return id.equals(((EvictionMarker) o).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    /**
+     * The options evicted by a node, all options when the keys are null.
+     */
+    public static final class InvalidationMessage implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String publisherId;
+        private final Set<String> optionKeys;
+
+        public InvalidationMessage(String publisherId, Set<String> optionKeys) {
+            this.publisherId = publisherId;
+            this.optionKeys = optionKeys != null ? new HashSet<>(optionKeys) : null;
+        }
+
+        public String getPublisherId() {
+            return publisherId;
+        }
+
+        public Set<String> getOptionKeys() {
+            return optionKeys;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import org.nentangso.core.service.errors.NtsValidationException;
 import javax.validation.ConstraintViolation;
 import javax.validation.Validation;
 import javax.validation.Validator;
-import javax.validation.ValidatorFactory;
 import java.util.*;
 
 public class NtsValidationUtils {
@@ -26,9 +25,7 @@ public class NtsValidationUtils {
 
     public static <T> Map<String, List<String>> validateObjectAndGetErrors(T entity, String prefix) {
         Map<String, List<String>> errors = new HashMap<>();
-        ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
-        Validator validator = factory.getValidator();
-        Set<ConstraintViolation<T>> constraintViolations = validator.validate(entity);
+        Set<ConstraintViolation<T>> constraintViolations = ValidatorHolder.VALIDATOR.validate(entity);
         if (!constraintViolations.isEmpty()) {
             for (ConstraintViolation<T> constraintViolation : constraintViolations) {
                 String field = StringUtils.join(prefix, constraintViolation.getPropertyPath().toString());
@@ -39,4 +36,11 @@ public class NtsValidationUtils {
         }
         return errors;
     }
+
+    /**
+     * The validator is thread safe, it is built once on first use.
+     */
+    private static class ValidatorHolder {
+        private static final Validator VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+    }
 }
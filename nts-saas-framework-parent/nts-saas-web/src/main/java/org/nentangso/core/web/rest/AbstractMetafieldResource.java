@@ -4,11 +4,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.nentangso.core.domain.NtsMetafieldEntity;
 import org.nentangso.core.service.dto.NtsMetafieldDTO;
 import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
 import org.nentangso.core.service.helper.NtsJsonHelper;
 import org.nentangso.core.service.helper.NtsMetafieldHelper;
 import org.nentangso.core.service.mapper.NtsMetafieldMapper;
 import org.nentangso.core.web.rest.utils.NtsRequestUtils;
 import org.nentangso.core.web.rest.vm.MetafieldInput;
+import org.nentangso.core.web.rest.vm.MetafieldsSetInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -19,8 +21,8 @@ import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * REST controller for managing {@link NtsMetafieldEntity}.
@@ -46,6 +48,14 @@ public abstract class AbstractMetafieldResource {
 
     protected abstract boolean existsByOwnerId(long ownerId);
 
+    /**
+     * Filter the existing owners with one query, {@link #setMetafields} checks all its owners at once with it.
+     *
+     * @param ownerIds the owner ids
+     * @return the ids of the existing owners
+     */
+    protected abstract Set<Long> findExistingOwnerIds(Collection<Long> ownerIds);
+
     protected abstract URI buildCreatedUri(long ownerId, long metafieldId) throws URISyntaxException;
 
     /**
@@ -78,14 +88,12 @@ public abstract class AbstractMetafieldResource {
      * @param request   the http servlet request.
      * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the updated metafield,
      * or with status {@code 400 (Bad Request)} if the customerDTO is not valid,
+     * or with status {@code 404 (Not Found)} if the owner has no such metafield,
      * or with status {@code 500 (Internal Server Error)} if the metafield couldn't be updated.
      * @throws IOException if the Location URI syntax is incorrect.
      */
     protected ResponseEntity<NtsMetafieldDTO> updateMetafield(long ownerId, long id, MetafieldInput metafield, HttpServletRequest request) throws IOException {
         log.debug("REST request to update metafield : {}", metafield);
-        if (!existsByOwnerId(ownerId)) {
-            throw new NtsNotFoundException();
-        }
         NtsMetafieldDTO.Builder builder = metafieldHelper.findOne(getOwnerResource(), ownerId, id)
             .map(NtsMetafieldDTO::newBuilder)
             .orElseThrow(NtsNotFoundException::new);
@@ -101,13 +109,54 @@ public abstract class AbstractMetafieldResource {
             .descriptionIf(jsonHelper.existField(node, "description"), metafield::getDescription)
             .build();
 
-        NtsMetafieldDTO result = metafieldHelper.save(metafieldDTO);
+        NtsMetafieldDTO result = metafieldHelper.update(getOwnerResource(), ownerId, metafieldDTO);
         return ResponseEntity
             .ok()
             .headers(HeaderUtil.createEntityUpdateAlert(getApplicationName(), true, ENTITY_NAME, String.valueOf(id)))
             .body(result);
     }
 
+    /**
+     * {@code POST /metafields/set} : Create or update metafields of many owners in one transaction, an existing
+     * metafield is matched by owner, namespace and key.
+     *
+     * @param metafields the metafields to set.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the saved metafields in the given order,
+     * or with status {@code 422 (Unprocessable Entity)} and the errors of each invalid metafield, nothing is saved then.
+     */
+    protected ResponseEntity<List<NtsMetafieldDTO>> setMetafields(List<MetafieldsSetInput> metafields) {
+        log.debug("REST request to set metafields : {}", metafields == null ? 0 : metafields.size());
+        List<MetafieldsSetInput> inputs = Optional.ofNullable(metafields).orElseGet(Collections::emptyList);
+        Set<Long> ownerIds = inputs.stream()
+            .filter(Objects::nonNull)
+            .map(MetafieldsSetInput::getOwnerId)
+            .filter(ownerId -> ownerId != null && ownerId > 0)
+            .collect(Collectors.toSet());
+        Set<Long> existingOwnerIds = ownerIds.isEmpty() ? Collections.emptySet() : findExistingOwnerIds(ownerIds);
+        Map<String, List<String>> errors = new LinkedHashMap<>();
+        List<NtsMetafieldDTO> metafieldDTOs = new ArrayList<>(inputs.size());
+        for (int index = 0; index < inputs.size(); index++) {
+            MetafieldsSetInput input = inputs.get(index);
+            if (input == null) {
+                metafieldDTOs.add(null);
+                continue;
+            }
+            if (ownerIds.contains(input.getOwnerId()) && !existingOwnerIds.contains(input.getOwnerId())) {
+                errors.put(String.format("metafields[%d].ownerId", index), Collections.singletonList("not found"));
+            }
+            metafieldDTOs.add(metafieldMapper.create(input)
+                .ownerResource(getOwnerResource())
+                .ownerId(input.getOwnerId())
+                .skipValidation(true)
+                .build());
+        }
+        if (!errors.isEmpty()) {
+            throw new NtsValidationException(errors);
+        }
+        List<NtsMetafieldDTO> result = metafieldHelper.setMetafields(getOwnerResource(), metafieldDTOs);
+        return ResponseEntity.ok(result);
+    }
+
     /**
      * {@code GET /metafields} : get all metafields
      *
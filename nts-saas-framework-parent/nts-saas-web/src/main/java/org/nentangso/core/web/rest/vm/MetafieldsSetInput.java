@@ -0,0 +1,37 @@
+package org.nentangso.core.web.rest.vm;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A metafield to create or update, matched to the existing one by owner, namespace and key.
+ */
+public class MetafieldsSetInput extends MetafieldInput {
+    /**
+     * The unique ID of the resource that the metafield is attached to.
+     */
+    @NotNull
+    @Min(1L)
+    private Long ownerId;
+
+    public Long getOwnerId() {
+        return ownerId;
+    }
+
+    public void setOwnerId(Long ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "MetafieldsSetInput{" +
+            "ownerId=" + ownerId +
+            ", namespace='" + getNamespace() + '\'' +
+            ", key='" + getKey() + '\'' +
+            ", value='" + getValue() + '\'' +
+            ", type='" + getType() + '\'' +
+            ", description='" + getDescription() + '\'' +
+            '}';
+    }
+}
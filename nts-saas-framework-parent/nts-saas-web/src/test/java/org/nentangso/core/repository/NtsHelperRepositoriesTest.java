@@ -0,0 +1,324 @@
+package org.nentangso.core.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.AbstractAuditingEntity;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.service.dto.NtsMetafieldDTO;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.nentangso.core.service.helper.NtsMetafieldHelper;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.mapper.NtsMetafieldMapperImpl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests of the JPA helpers and their soft delete repositories against an embedded H2 database.
+ */
+class NtsHelperRepositoriesTest {
+    private static final List<String> MANAGED_CLASS_NAMES = List.of(
+        AbstractAuditingEntity.class.getName(),
+        NtsMetafieldEntity.class.getName()
+    );
+
+    private EmbeddedDatabase dataSource;
+    private LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+    private EntityManager entityManager;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        dataSource = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .build();
+        entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(dataSource);
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setPackagesToScan(NtsMetafieldEntity.class.getPackageName());
+        entityManagerFactoryBean.setPersistenceUnitPostProcessors(unit ->
+            unit.getManagedClassNames().removeIf(name -> !MANAGED_CLASS_NAMES.contains(name)));
+        entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+            "hibernate.hbm2ddl.auto", "create-drop",
+            "hibernate.generate_statistics", "true",
+            "javax.persistence.validation.mode", "none"
+        ));
+        entityManagerFactoryBean.afterPropertiesSet();
+        EntityManagerFactory entityManagerFactory = entityManagerFactoryBean.getObject();
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        transactionManager.setDataSource(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterEach
+    public void destroy() {
+        entityManagerFactoryBean.destroy();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void metafieldHelperInsertsAllColumns() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper(() -> Optional.of("importer"));
+        NtsMetafieldDTO.Builder builder = NtsMetafieldDTO.newBuilder()
+            .ownerResource("product")
+            .namespace("custom");
+        List<NtsMetafieldDTO> metafields = List.of(
+            builder.ownerId(1L).key("color").value("red").type("single_line_text_field").description("The color").build(),
+            builder.ownerId(1L).key("weight").value("1.5").type("number_decimal").description(null).build(),
+            builder.ownerId(2L).key("released_at").value("2022-02-02T12:30:00+07:00").type("date_time").build(),
+            builder.ownerId(2L).key("featured").value("true").type("boolean").build()
+        );
+
+        List<NtsMetafieldDTO> saved = inTransaction(() -> metafieldHelper.setMetafields("product", metafields));
+
+        assertThat(saved).extracting(NtsMetafieldDTO::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(saved).extracting(NtsMetafieldDTO::getKey).containsExactly("color", "weight", "released_at", "featured");
+        assertThat(saved.get(0).getDescription()).isEqualTo("The color");
+        assertThat(saved.get(1).getValueNumber()).isEqualByComparingTo("1.5");
+        assertThat(saved.get(2).getValueTimestamp()).isEqualTo(Instant.parse("2022-02-02T05:30:00Z"));
+        assertThat(saved.get(3).getValueBoolean()).isTrue();
+        assertThat(saved).allSatisfy(metafield -> {
+            assertThat(metafield.getOwnerResource()).isEqualTo("product");
+            assertThat(metafield.getNamespace()).isEqualTo("custom");
+            assertThat(metafield.getCreatedBy()).isEqualTo("importer");
+            assertThat(metafield.getCreatedAt()).isNotNull();
+            assertThat(metafield.getUpdatedBy()).isEqualTo("importer");
+            assertThat(metafield.getUpdatedAt()).isNotNull();
+        });
+        assertThat(jdbcTemplate.queryForObject(
+            "select nts_value_text from nts_metafields where id = ?", String.class, saved.get(0).getId())).isEqualTo("red");
+        assertThat(countRows(false)).isEqualTo(4L);
+
+        List<NtsMetafieldDTO> changed = List.of(
+            builder.ownerId(1L).key("color").value("blue").type("single_line_text_field").description("The color").build(),
+            builder.ownerId(3L).key("color").value("green").type("single_line_text_field").build()
+        );
+        List<NtsMetafieldDTO> resaved = inTransaction(() -> metafieldHelper.setMetafields("product", changed));
+
+        assertThat(resaved.get(0).getId()).isEqualTo(saved.get(0).getId());
+        assertThat(resaved.get(0).getValue()).isEqualTo("blue");
+        assertThat(resaved.get(1).getId()).isNotNull().isNotIn(saved.stream().map(NtsMetafieldDTO::getId).collect(Collectors.toList()));
+        assertThat(countRows(false)).isEqualTo(5L);
+
+        List<NtsMetafieldDTO> invalid = List.of(
+            builder.ownerId(4L).key("weight").value("heavy").type("number_decimal").build(),
+            builder.ownerId(4L).key("sizes").value("[38, \"L\"]").type("list.number_integer").build()
+        );
+        assertThatThrownBy(() -> inTransaction(() -> metafieldHelper.setMetafields("product", invalid)))
+            .isInstanceOf(NtsValidationException.class);
+        assertThat(countRows(false)).isEqualTo(5L);
+    }
+
+    @Test
+    void metafieldHelperBatchesUpdates() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper(Optional::empty);
+        NtsMetafieldDTO.Builder builder = NtsMetafieldDTO.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color")
+            .type("single_line_text_field");
+        inTransaction(() -> metafieldHelper.setMetafields("product", LongStream.rangeClosed(1, 30)
+            .mapToObj(ownerId -> builder.ownerId(ownerId).value("red").build())
+            .collect(Collectors.toList())));
+        Statistics statistics = entityManagerFactoryBean.getObject().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<NtsMetafieldDTO> saved = inTransaction(() -> metafieldHelper.setMetafields("product", LongStream.rangeClosed(1, 30)
+            .mapToObj(ownerId -> builder.ownerId(ownerId).value("blue").build())
+            .collect(Collectors.toList())));
+
+        assertThat(saved).extracting(NtsMetafieldDTO::getValue).containsOnly("blue");
+        assertThat(statistics.getEntityUpdateCount()).isEqualTo(30L);
+        // one query of the current metafields, one batched update
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2L);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from nts_metafields where nts_value_text = 'blue'", Long.class)).isEqualTo(30L);
+    }
+
+    @Test
+    void metafieldHelperScopesToOwner() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper(Optional::empty);
+        NtsMetafieldDTO metafield = inTransaction(() -> metafieldHelper.setMetafields("product", List.of(NtsMetafieldDTO.newBuilder()
+            .ownerResource("product")
+            .ownerId(1L)
+            .namespace("global")
+            .key("color")
+            .value("red")
+            .type("single_line_text_field")
+            .build()))).get(0);
+
+        assertThat(metafield.getCreatedBy()).isEqualTo(NtsConstants.SYSTEM);
+        assertThat(metafieldHelper.findAllByOwner("product", 1L)).hasSize(1);
+        assertThat(metafieldHelper.count("product", 1L)).isEqualTo(1L);
+        assertThat(metafieldHelper.findOne("product", 2L, metafield.getId())).isEmpty();
+        assertThat(metafieldHelper.findOne("Product", 1L, metafield.getId())).isPresent();
+
+        NtsMetafieldDTO changed = NtsMetafieldDTO.newBuilder(metafield).value("blue").build();
+        assertThatThrownBy(() -> inTransaction(() -> metafieldHelper.update("product", 2L, changed))).isInstanceOf(NtsNotFoundException.class);
+        assertThat(inTransaction(() -> metafieldHelper.update("PRODUCT", 1L, changed)).getValue()).isEqualTo("blue");
+        NtsMetafieldDTO updated = metafieldHelper.findOne("product", 1L, metafield.getId()).orElseThrow();
+        assertThat(updated.getValue()).isEqualTo("blue");
+        assertThat(updated.getCreatedBy()).isEqualTo(NtsConstants.SYSTEM);
+        assertThat(jdbcTemplate.queryForObject(
+            "select nts_value_text from nts_metafields where id = ?", String.class, metafield.getId())).isEqualTo("blue");
+
+        NtsMetafieldDTO weight = NtsMetafieldDTO.newBuilder(metafield).key("weight").value("2.5").type("number_decimal").build();
+        assertThat(inTransaction(() -> metafieldHelper.update("product", 1L, weight)).getValueNumber()).isEqualByComparingTo("2.5");
+        assertThat(metafieldHelper.findOne("product", 1L, metafield.getId()).orElseThrow().getValueNumber()).isEqualByComparingTo("2.5");
+        assertThatThrownBy(() -> inTransaction(() -> {
+            metafieldHelper.delete("product", 2L, metafield.getId());
+            return null;
+        })).isInstanceOf(NtsNotFoundException.class);
+
+        inTransaction(() -> {
+            metafieldHelper.delete("Product", 1L, metafield.getId());
+            return null;
+        });
+
+        assertThat(metafieldHelper.count("product", 1L)).isZero();
+        assertThat(countRows(true)).isEqualTo(1L);
+        assertThatThrownBy(() -> inTransaction(() -> metafieldHelper.update("product", 1L, changed))).isInstanceOf(NtsNotFoundException.class);
+    }
+
+    @Test
+    void metafieldHelperFetchesManyOwners() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper(Optional::empty);
+        List<NtsMetafieldDTO> metafields = new ArrayList<>();
+        for (long ownerId = 1; ownerId <= 3; ownerId++) {
+            for (String key : List.of("color", "size")) {
+                metafields.add(NtsMetafieldDTO.newBuilder()
+                    .ownerResource("product")
+                    .ownerId(ownerId)
+                    .namespace("global")
+                    .key(key)
+                    .value(key + ownerId)
+                    .type("single_line_text_field")
+                    .build());
+            }
+        }
+        inTransaction(() -> metafieldHelper.setMetafields("product", metafields));
+        List<Long> ownerIds = LongStream.rangeClosed(1, 1200).boxed().collect(Collectors.toList());
+
+        Map<Long, List<NtsMetafieldDTO>> all = metafieldHelper.findAllByOwners("product", ownerIds);
+        assertThat(all).hasSize(1200);
+        assertThat(all.get(2L)).extracting(NtsMetafieldDTO::getValue).containsExactlyInAnyOrder("color2", "size2");
+        assertThat(all.get(1200L)).isEmpty();
+
+        Map<Long, List<NtsMetafieldDTO>> colors = metafieldHelper.findAllByOwners("product", List.of(3L, 1L), "global", "color");
+        assertThat(colors.keySet()).containsExactly(3L, 1L);
+        assertThat(colors.get(3L)).extracting(NtsMetafieldDTO::getValue).containsExactly("color3");
+        assertThat(metafieldHelper.findAllByOwners("product", List.of(1L), "other", null).get(1L)).isEmpty();
+
+        assertThat(metafieldHelper.countByOwners("product", ownerIds))
+            .hasSize(1200)
+            .containsEntry(1L, 2L)
+            .containsEntry(1200L, 0L);
+        assertThat(metafieldHelper.countByOwners("product", List.of(1L, 4L), null, "size"))
+            .containsExactly(Map.entry(1L, 1L), Map.entry(4L, 0L));
+        assertThat(metafieldHelper.countByOwners("variant", List.of(1L))).containsExactly(Map.entry(1L, 0L));
+    }
+
+    @Test
+    void metafieldHelperFindsOwnersByValue() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper(Optional::empty);
+        List<NtsMetafieldDTO> metafields = new ArrayList<>();
+        for (long ownerId = 1; ownerId <= 30; ownerId++) {
+            metafields.add(NtsMetafieldDTO.newBuilder()
+                .ownerResource("product")
+                .ownerId(ownerId)
+                .namespace("custom")
+                .key("color")
+                .value(ownerId % 3 == 0 ? "red_" + ownerId : "blue")
+                .type("single_line_text_field")
+                .build());
+            metafields.add(NtsMetafieldDTO.newBuilder()
+                .ownerResource("product")
+                .ownerId(ownerId)
+                .namespace("custom")
+                .key("weight")
+                .value(String.valueOf(ownerId * 1.5))
+                .type("number_decimal")
+                .build());
+        }
+        inTransaction(() -> metafieldHelper.setMetafields("product", metafields));
+        NtsMetafieldOwnerQuery.Builder reds = NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color")
+            .valuePrefix("red_")
+            .limit(4);
+
+        assertThat(metafieldHelper.findOwnerIds(reds.build())).containsExactly(3L, 6L, 9L, 12L);
+        assertThat(metafieldHelper.findOwnerIds(reds.afterOwnerId(12L).build())).containsExactly(15L, 18L, 21L, 24L);
+        assertThat(metafieldHelper.findOwnerIds(reds.valuePrefix("red%").afterOwnerId(null).build())).isEmpty();
+
+        assertThat(metafieldHelper.findOwnerIds(NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color")
+            .value("red_30")
+            .build())).containsExactly(30L);
+        assertThat(metafieldHelper.findOwnerIds(NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("weight")
+            .minValue(new BigDecimal("6"))
+            .maxValue(new BigDecimal("9"))
+            .build())).containsExactly(4L, 5L, 6L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private NtsMetafieldHelper newMetafieldHelper(AuditorAware<String> auditor) {
+        ObjectProvider<AuditorAware<String>> auditorAware = mock(ObjectProvider.class);
+        when(auditorAware.getIfUnique()).thenReturn(auditor);
+        NtsMetafieldRepository metafieldRepository = new JpaRepositoryFactory(entityManager).getRepository(
+            NtsMetafieldRepository.class,
+            RepositoryFragments.just(new NtsMetafieldRepositoryImpl(jdbcTemplate, auditorAware, entityManager))
+        );
+        return new NtsMetafieldHelper(metafieldRepository, new NtsMetafieldMapperImpl(), new ObjectMapper());
+    }
+
+    /**
+     * The helpers are not proxied here, so their transactions are started by the test.
+     */
+    private <T> T inTransaction(Supplier<T> action) {
+        return transactionTemplate.execute(status -> action.get());
+    }
+
+    private long countRows(boolean deleted) {
+        return jdbcTemplate.queryForObject("select count(*) from nts_metafields where deleted = ?", Long.class, deleted);
+    }
+}
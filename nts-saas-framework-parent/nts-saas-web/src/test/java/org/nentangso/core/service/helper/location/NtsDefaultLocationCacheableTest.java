@@ -0,0 +1,476 @@
+package org.nentangso.core.service.helper.location;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.LocationProperties.CacheProperties;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.redisson.api.*;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.SerializationCodec;
+import org.redisson.jcache.configuration.RedissonConfiguration;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsDefaultLocationCacheable}, against a stub redisson client shared by the nodes.
+ */
+class NtsDefaultLocationCacheableTest {
+    private final NtsProperties ntsProperties = new NtsProperties();
+    private final StubRedisson redis = new StubRedisson();
+
+    @Test
+    void testNearCacheServesReadsUntilAnotherNodeWrites() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        other.setCacheLocations(locations(1L, 2L));
+
+        assertThat(node.getCacheLocations()).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations()).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations(List.of(2L, 9L))).containsOnlyKeys(2L);
+        assertThat(node.getCacheLocationIds()).containsExactly(1L, 2L);
+        assertThat(redis.reads).hasValue(1);
+
+        other.setCacheLocations(locations(1L, 2L, 3L));
+
+        assertThat(node.getCacheLocations()).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(2);
+        assertThat(other.getCacheLocations()).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(2);
+    }
+
+    @Test
+    void testCacheVersionIsComputedOncePerSnapshot() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L, 2L));
+        Map<Long, NtsDefaultLocationDTO> snapshot = node.getCacheLocations();
+
+        String version = node.getCacheVersion(snapshot);
+
+        assertThat(version).isEqualTo(NtsLocationVersion.of(locations(1L, 2L).values()));
+        assertThat(node.getCacheVersion(node.getCacheLocations())).isSameAs(version);
+
+        node.putCacheLocation(location(2L, "Renamed 2"));
+
+        assertThat(node.getCacheLocations()).isNotSameAs(snapshot);
+        assertThat(node.getCacheVersion(node.getCacheLocations())).isNotEqualTo(version);
+        assertThat(node.getCacheVersion(locations(1L, 2L))).isEqualTo(version);
+    }
+
+    @Test
+    void testNearCacheDisabledReadsRedisEveryTime() {
+        getCacheProperties().getNearCache().setEnabled(false);
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L, 2L));
+
+        node.getCacheLocations();
+        node.getCacheLocations();
+
+        assertThat(redis.reads).hasValue(2);
+        assertThat(redis.listeners).isEmpty();
+        verify(redis.client, never()).getTopic(anyString());
+    }
+
+    @Test
+    void testClearCacheLocationsInvalidatesOtherNodes() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L));
+        assertThat(other.getCacheLocations()).containsOnlyKeys(1L);
+
+        assertThat(node.clearCacheLocations()).isTrue();
+
+        assertThat(redis.bucket.get()).isNull();
+        assertThat(other.getCacheLocations()).isNull();
+    }
+
+    @Test
+    void testHashStorageReadsByIdsAndIdSet() {
+        getCacheProperties().setStorage(CacheProperties.Storage.HASH);
+        getCacheProperties().getNearCache().setEnabled(false);
+        NtsDefaultLocationCacheable node = newCacheable();
+        assertThat(node.getCacheLocations(List.of(1L))).isNull();
+        assertThat(node.getCacheLocationIds()).isNull();
+
+        node.setCacheLocations(locations(1L, 2L, 3L));
+
+        assertThat(redis.hash).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.ids).containsExactly(1L, 2L, 3L);
+        assertThat(node.getCacheLocations(Arrays.asList(2L, 9L, null))).containsOnlyKeys(2L);
+        assertThat(node.getCacheLocations(List.of(9L))).isEmpty();
+        assertThat(node.getCacheLocationIds()).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(0);
+
+        node.setCacheLocations(locations(4L));
+
+        assertThat(redis.ids).containsExactly(4L);
+        assertThat(node.getCacheLocations()).containsOnlyKeys(4L);
+        assertThat(node.extendCacheLocations()).isTrue();
+        assertThat(node.clearCacheLocations()).isTrue();
+        assertThat(node.getCacheLocations(List.of(4L))).isNull();
+        assertThat(node.extendCacheLocations()).isFalse();
+    }
+
+    @Test
+    void testGetOrLoadCoalescesConcurrentMisses() throws Exception {
+        NtsDefaultLocationCacheable node = newCacheable();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Map<Long, NtsDefaultLocationDTO>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> node.getOrLoadCacheLocations(() -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    await(release);
+                    return locations(1L, 2L);
+                })));
+            }
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            release.countDown();
+            for (Future<Map<Long, NtsDefaultLocationDTO>> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).containsOnlyKeys(1L, 2L);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+    }
+
+    @Test
+    void testGetOrLoadFailureIsNotCached() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThatThrownBy(() -> node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("upstream is down");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("upstream is down");
+        assertThat(node.getOrLoadCacheLocations(Collections::emptyMap)).isEmpty();
+        assertThat(redis.bucket.get()).isNull();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return locations(1L);
+        });
+
+        assertThat(loaded).containsOnlyKeys(1L);
+        assertThat(node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return locations(2L);
+        })).containsOnlyKeys(1L);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testGetOrLoadUnderLockReadsCacheLoadedMeanwhile() throws InterruptedException {
+        getCacheProperties().getLock().setEnabled(true);
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        doAnswer(invocation -> {
+            other.setCacheLocations(locations(1L));
+            return true;
+        }).when(redis.lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class));
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return locations(2L);
+        });
+
+        assertThat(loaded).containsOnlyKeys(1L);
+        assertThat(loads).hasValue(0);
+        verify(redis.lock).unlock();
+    }
+
+    @Test
+    void testTryClaimReload() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        assertThat(node.tryClaimReload(60L)).isTrue();
+        verify(redis.client, never()).getLock(anyString());
+
+        getCacheProperties().getLock().setEnabled(true);
+        redis.reloadLockAvailable = false;
+        assertThat(node.tryClaimReload(60L)).isFalse();
+        redis.reloadLockAvailable = true;
+        assertThat(node.tryClaimReload(60L)).isTrue();
+    }
+
+    @Test
+    void testPutCacheLocationWritesThroughBucketAndInvalidatesOtherNodes() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L));
+        assertThat(other.getCacheLocations()).containsOnlyKeys(1L, 2L);
+
+        assertThat(node.putCacheLocation(location(2L, "Renamed 2"))).isTrue();
+
+        assertThat(redis.bucket.get().get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(node.getCacheLocations().get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(other.getCacheLocations().get(2L).getName()).isEqualTo("Renamed 2");
+        verify(redis.client, never()).getLock(anyString());
+    }
+
+    @Test
+    void testPutCacheLocationWritesThroughHash() {
+        getCacheProperties().setStorage(CacheProperties.Storage.HASH);
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L));
+
+        assertThat(node.putCacheLocation(location(3L, "Location 3"))).isTrue();
+
+        assertThat(redis.ids).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(other.getCacheLocations(List.of(3L))).containsOnlyKeys(3L);
+        assertThat(node.getCacheLocationIds()).containsExactlyInAnyOrder(1L, 2L, 3L);
+    }
+
+    @Test
+    void testPutCacheLocationSkipsEmptyCache() {
+        NtsDefaultLocationCacheable node = newCacheable();
+
+        assertThat(node.putCacheLocation(location(1L, "Location 1"))).isFalse();
+
+        assertThat(redis.bucket.get()).isNull();
+        assertThat(redis.generation.get()).isEqualTo(1L);
+    }
+
+    @Test
+    void testReloadDropsSnapshotWrittenDuringLoad() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L));
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<Long, NtsDefaultLocationDTO> reloaded = node.reloadCacheLocations(() -> {
+            loads.incrementAndGet();
+            Map<Long, NtsDefaultLocationDTO> fetched = locations(1L, 2L);
+            other.putCacheLocation(location(2L, "Renamed 2"));
+            return fetched;
+        });
+
+        assertThat(reloaded).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations()).isNull();
+        assertThat(other.getCacheLocations()).isNull();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            Map<Long, NtsDefaultLocationDTO> fetched = locations(1L, 2L);
+            fetched.put(2L, location(2L, "Renamed 2"));
+            return fetched;
+        });
+
+        assertThat(loads).hasValue(2);
+        assertThat(loaded.get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(other.getCacheLocations().get(2L).getName()).isEqualTo("Renamed 2");
+    }
+
+    @Test
+    void testPatchBucketUnderLock() throws InterruptedException {
+        getCacheProperties().getLock().setEnabled(true);
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L));
+
+        assertThat(node.putCacheLocation(location(2L, "Location 2"))).isTrue();
+
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+        verify(redis.lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class));
+        verify(redis.lock).unlock();
+    }
+
+    @Test
+    void testPatchBucketWithoutLockOnTimeout() {
+        getCacheProperties().getLock().setEnabled(true);
+        redis.lockAvailable = false;
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L));
+
+        assertThat(node.putCacheLocation(location(2L, "Location 2"))).isTrue();
+
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+        verify(redis.lock, never()).unlock();
+    }
+
+    private CacheProperties getCacheProperties() {
+        return ntsProperties.getHelper().getLocation().getCache();
+    }
+
+    @SuppressWarnings("unchecked")
+    private NtsDefaultLocationCacheable newCacheable() {
+        RedissonConfiguration<Object, Object> configuration = mock(RedissonConfiguration.class);
+        when(configuration.getRedisson()).thenReturn(redis.client);
+        return new NtsDefaultLocationCacheable(ntsProperties, configuration);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> locations(Long... ids) {
+        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            result.put(id, location(id, "Location " + id));
+        }
+        return result;
+    }
+
+    private static NtsDefaultLocationDTO location(Long id, String name) {
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .name(name)
+            .build();
+    }
+
+    /**
+     * The redis objects used by the cacheable, backed by in-memory state shared by every node.
+     */
+    @SuppressWarnings("unchecked")
+    static class StubRedisson {
+        final RedissonClient client = mock(RedissonClient.class);
+        final AtomicReference<Map<Long, NtsDefaultLocationDTO>> bucket = new AtomicReference<>();
+        final Map<Long, NtsDefaultLocationDTO> hash = new LinkedHashMap<>();
+        final Set<Long> ids = new LinkedHashSet<>();
+        final AtomicLong generation = new AtomicLong();
+        final AtomicInteger reads = new AtomicInteger();
+        final List<MessageListener<Object>> listeners = new CopyOnWriteArrayList<>();
+        final RLock lock = mock(RLock.class);
+        final RLock reloadLock = mock(RLock.class);
+        volatile boolean lockAvailable = true;
+        volatile boolean reloadLockAvailable = true;
+
+        StubRedisson() {
+            RBucket<Map<Long, NtsDefaultLocationDTO>> redisBucket = mock(RBucket.class);
+            doAnswer(invocation -> {
+                reads.incrementAndGet();
+                return bucket.get();
+            }).when(redisBucket).get();
+            doAnswer(invocation -> {
+                bucket.set(invocation.getArgument(0));
+                return null;
+            }).when(redisBucket).set(any(), anyLong(), any(TimeUnit.class));
+            doAnswer(invocation -> bucket.get() != null && bucket.getAndSet(invocation.getArgument(0)) != null)
+                .when(redisBucket).setIfExists(any(), anyLong(), any(TimeUnit.class));
+            doAnswer(invocation -> bucket.getAndSet(null) != null).when(redisBucket).delete();
+            doAnswer(invocation -> bucket.get() != null).when(redisBucket).expire(any(Duration.class));
+            doReturn(redisBucket).when(client).getBucket(anyString(), any(Codec.class));
+
+            RMap<Long, NtsDefaultLocationDTO> redisHash = mock(RMap.class);
+            doAnswer(invocation -> {
+                reads.incrementAndGet();
+                return new LinkedHashMap<>(hash);
+            }).when(redisHash).readAllMap();
+            doAnswer(invocation -> {
+                Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+                for (Long id : (Set<Long>) invocation.getArgument(0)) {
+                    if (hash.containsKey(id)) {
+                        result.put(id, hash.get(id));
+                    }
+                }
+                return result;
+            }).when(redisHash).getAll(anySet());
+            doAnswer(invocation -> !hash.isEmpty()).when(redisHash).expire(any(Duration.class));
+            doReturn(redisHash).when(client).getMap(anyString(), any(Codec.class));
+
+            RSet<Long> redisIds = mock(RSet.class);
+            doAnswer(invocation -> new LinkedHashSet<>(ids)).when(redisIds).readAll();
+            doAnswer(invocation -> !ids.isEmpty()).when(redisIds).isExists();
+            doReturn(redisIds).when(client).getSet(anyString(), any(Codec.class));
+
+            RBatch batch = mock(RBatch.class);
+            RMapAsync<Long, NtsDefaultLocationDTO> batchHash = mock(RMapAsync.class);
+            doAnswer(invocation -> {
+                hash.clear();
+                return null;
+            }).when(batchHash).deleteAsync();
+            doAnswer(invocation -> {
+                hash.putAll(invocation.getArgument(0));
+                return null;
+            }).when(batchHash).putAllAsync(anyMap());
+            RSetAsync<Long> batchIds = mock(RSetAsync.class);
+            doAnswer(invocation -> {
+                ids.clear();
+                return null;
+            }).when(batchIds).deleteAsync();
+            doAnswer(invocation -> {
+                ids.addAll(invocation.getArgument(0));
+                return null;
+            }).when(batchIds).addAllAsync(anyCollection());
+            doReturn(batchHash).when(batch).getMap(anyString(), any(Codec.class));
+            doReturn(batchIds).when(batch).getSet(anyString(), any(Codec.class));
+            doReturn(batch).when(client).createBatch(any(BatchOptions.class));
+
+            RKeys keys = mock(RKeys.class);
+            doAnswer(invocation -> {
+                long deleted = (hash.isEmpty() ? 0 : 1) + (ids.isEmpty() ? 0 : 1);
+                hash.clear();
+                ids.clear();
+                return deleted;
+            }).when(keys).delete(anyString(), anyString());
+            doReturn(keys).when(client).getKeys();
+
+            RScript script = mock(RScript.class);
+            SerializationCodec codec = new SerializationCodec();
+            doAnswer(invocation -> {
+                generation.incrementAndGet();
+                if (ids.isEmpty()) {
+                    return false;
+                }
+                byte[] value = invocation.getArgument(5);
+                NtsDefaultLocationDTO location = (NtsDefaultLocationDTO) codec.getValueDecoder().decode(Unpooled.wrappedBuffer(value), null);
+                hash.put(location.getId(), location);
+                ids.add(location.getId());
+                return true;
+            }).when(script).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any(), any());
+            doReturn(script).when(client).getScript(any(Codec.class));
+
+            RAtomicLong redisGeneration = mock(RAtomicLong.class);
+            doAnswer(invocation -> generation.get()).when(redisGeneration).get();
+            doAnswer(invocation -> generation.incrementAndGet()).when(redisGeneration).incrementAndGet();
+            doReturn(redisGeneration).when(client).getAtomicLong(anyString());
+
+            RTopic topic = mock(RTopic.class);
+            doAnswer(invocation -> {
+                listeners.add(invocation.getArgument(1));
+                return listeners.size();
+            }).when(topic).addListener(eq(String.class), any(MessageListener.class));
+            doAnswer(invocation -> {
+                listeners.forEach(listener -> listener.onMessage("locations_invalidation", invocation.getArgument(0)));
+                return (long) listeners.size();
+            }).when(topic).publish(any());
+            doReturn(topic).when(client).getTopic(anyString());
+
+            try {
+                doAnswer(invocation -> lockAvailable).when(lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class));
+                doAnswer(invocation -> reloadLockAvailable).when(reloadLock).tryLock(anyLong(), anyLong(), any(TimeUnit.class));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            doAnswer(invocation -> lockAvailable).when(lock).isHeldByCurrentThread();
+            doReturn(lock).when(client).getLock(endsWith("locations_lock"));
+            doReturn(reloadLock).when(client).getLock(endsWith("locations_reload_lock"));
+        }
+    }
+}
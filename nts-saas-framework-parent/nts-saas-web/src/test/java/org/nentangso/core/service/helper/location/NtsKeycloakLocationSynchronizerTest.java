@@ -0,0 +1,211 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.client.NtsKeycloakClient;
+import org.nentangso.core.client.vm.KeycloakClientRole;
+import org.nentangso.core.config.NtsKeycloakLocationProperties;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.springframework.http.ResponseEntity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsKeycloakLocationSynchronizer}, against a stub keycloak client.
+ */
+class NtsKeycloakLocationSynchronizerTest {
+    private static final String CLIENT_ID = "internal-client-id";
+
+    private final StubKeycloakClient keycloak = new StubKeycloakClient();
+    private final NtsKeycloakLocationSynchronizer synchronizer = new NtsKeycloakLocationSynchronizer(
+        keycloak,
+        CLIENT_ID,
+        4,
+        role -> NtsLocationDTO.newDefaultBuilder()
+            .id(Long.parseUnsignedLong(role.getName()))
+            .name(role.getDescription())
+            .build()
+    );
+
+    @AfterEach
+    void close() {
+        synchronizer.close();
+    }
+
+    @Test
+    void testSyncUnchangedMakesOneCall() {
+        for (long id = 1; id <= 1000; id++) {
+            keycloak.put(id, "Location " + id);
+        }
+        Map<Long, NtsDefaultLocationDTO> snapshot = synchronizer.sync(Collections.emptyMap());
+        assertThat(snapshot).hasSize(1000);
+        assertThat(keycloak.getCalls()).isEqualTo(1001);
+
+        keycloak.resetCalls();
+        Map<Long, NtsDefaultLocationDTO> next = synchronizer.sync(snapshot);
+
+        assertThat(keycloak.getCalls()).isEqualTo(1);
+        assertThat(next).isEqualTo(snapshot);
+        assertThat(next.get(10L)).isSameAs(snapshot.get(10L));
+    }
+
+    @Test
+    void testSyncFetchesNewAndRenamedRoles() {
+        for (long id = 1; id <= 100; id++) {
+            keycloak.put(id, "Location " + id);
+        }
+        Map<Long, NtsDefaultLocationDTO> snapshot = synchronizer.sync(Collections.emptyMap());
+        keycloak.put(101L, "Location 101");
+        keycloak.put(5L, "Renamed 5");
+        keycloak.remove(7L);
+        keycloak.resetCalls();
+
+        Map<Long, NtsDefaultLocationDTO> next = synchronizer.sync(snapshot);
+
+        assertThat(keycloak.getCalls()).isEqualTo(3);
+        assertThat(next).hasSize(100).containsKey(101L).doesNotContainKey(7L);
+        assertThat(next.get(5L).getName()).isEqualTo("Renamed 5");
+    }
+
+    @Test
+    void testSyncFailureReturnsEmpty() {
+        keycloak.put(1L, "Location 1");
+        keycloak.failRole("1");
+
+        assertThat(synchronizer.sync(Collections.emptyMap())).isEmpty();
+    }
+
+    @Test
+    void testSyncAfterCloseReturnsEmpty() {
+        keycloak.put(1L, "Location 1");
+        synchronizer.close();
+
+        assertThat(synchronizer.sync(Collections.emptyMap())).isEmpty();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReloadFailureExtendsCachedSnapshot() {
+        for (long id = 1; id <= 10; id++) {
+            keycloak.put(id, "Location " + id);
+        }
+        NtsKeycloakLocationProperties properties = new NtsKeycloakLocationProperties();
+        properties.setAdminBaseUrl("http://keycloak");
+        properties.setInternalClientId(CLIENT_ID);
+        NtsDefaultLocationCacheable locationCacheable = mock(NtsDefaultLocationCacheable.class);
+        when(locationCacheable.reloadCacheLocations(any()))
+            .thenAnswer(invocation -> ((Supplier<Map<Long, NtsDefaultLocationDTO>>) invocation.getArgument(0)).get());
+        NtsKeycloakLocationProvider provider = new NtsKeycloakLocationProvider(properties, locationCacheable, keycloak);
+        try {
+            Map<Long, NtsDefaultLocationDTO> snapshot = provider.reload();
+            assertThat(snapshot).hasSize(10);
+            verify(locationCacheable, never()).extendCacheLocations();
+
+            when(locationCacheable.getCacheLocations()).thenReturn(snapshot);
+            keycloak.put(3L, "Renamed 3");
+            keycloak.failRole("3");
+
+            assertThat(provider.reload()).isEmpty();
+            verify(locationCacheable).extendCacheLocations();
+        } finally {
+            provider.close();
+        }
+    }
+
+    @Test
+    void testFullSyncIntervalIsCappedAtCacheExpiration() {
+        NtsKeycloakLocationProperties properties = new NtsKeycloakLocationProperties();
+        properties.setAdminBaseUrl("http://keycloak");
+        properties.setInternalClientId(CLIENT_ID);
+        properties.setFullSyncInterval(21600L);
+        NtsDefaultLocationCacheable locationCacheable = mock(NtsDefaultLocationCacheable.class);
+        when(locationCacheable.getExpiration()).thenReturn(3600L);
+
+        NtsKeycloakLocationProvider provider = new NtsKeycloakLocationProvider(properties, locationCacheable, keycloak);
+        try {
+            assertThat(provider.getFullSyncInterval()).isEqualTo(3600L);
+        } finally {
+            provider.close();
+        }
+    }
+
+    private static class StubKeycloakClient implements NtsKeycloakClient {
+        private final Map<String, KeycloakClientRole> roles = Collections.synchronizedMap(new LinkedHashMap<>());
+        private final Set<String> failedRoles = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger calls = new AtomicInteger();
+
+        void put(Long id, String description) {
+            KeycloakClientRole role = new KeycloakClientRole();
+            role.setId(UUID.randomUUID().toString());
+            role.setName(id.toString());
+            role.setDescription(description);
+            role.setAttributes(Map.of(NtsKeycloakLocationProvider.ATTRIBUTE_ACTIVE, List.of("true")));
+            roles.put(role.getName(), role);
+        }
+
+        void remove(Long id) {
+            roles.remove(id.toString());
+        }
+
+        void failRole(String roleName) {
+            failedRoles.add(roleName);
+        }
+
+        int getCalls() {
+            return calls.get();
+        }
+
+        void resetCalls() {
+            calls.set(0);
+        }
+
+        @Override
+        public ResponseEntity<List<KeycloakClientRole>> findClientRoles(String internalClientId, Boolean briefRepresentation) {
+            calls.incrementAndGet();
+            List<KeycloakClientRole> items;
+            synchronized (roles) {
+                items = roles.values().stream()
+                    .map(role -> Boolean.TRUE.equals(briefRepresentation) ? brief(role) : role)
+                    .collect(Collectors.toList());
+            }
+            return ResponseEntity.ok(items);
+        }
+
+        @Override
+        public ResponseEntity<KeycloakClientRole> findClientRole(String internalClientId, String roleName) {
+            calls.incrementAndGet();
+            KeycloakClientRole role = roles.get(roleName);
+            if (role == null || failedRoles.contains(roleName)) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(role);
+        }
+
+        @Override
+        public ResponseEntity<Void> createClientRole(String internalClientId, KeycloakClientRole keycloakClientRole) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseEntity<Void> updateClientRole(String internalClientId, String roleName, KeycloakClientRole keycloakClientRole) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static KeycloakClientRole brief(KeycloakClientRole role) {
+            KeycloakClientRole result = new KeycloakClientRole();
+            result.setId(role.getId());
+            result.setName(role.getName());
+            result.setDescription(role.getDescription());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.nentangso.core.service.helper.location;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.domain.AbstractAuditingEntity;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link NtsLocationQueryHelper}, against an embedded H2 database.
+ */
+class NtsLocationQueryHelperTest {
+    private static final int MAX_PARAMETERS = 20;
+    private static final List<String> MANAGED_CLASS_NAMES = List.of(
+        AbstractAuditingEntity.class.getName(),
+        NtsMetafieldEntity.class.getName()
+    );
+    private static final List<String> STATEMENTS = new ArrayList<>();
+
+    private final NtsProperties ntsProperties = new NtsProperties();
+    private final NtsLocationDeserializer locationDeserializer = mock(NtsLocationDeserializer.class);
+    private EmbeddedDatabase dataSource;
+    private LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private NtsLocationQueryHelper queryHelper;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        jdbcTemplate.execute("create table nts_items (id bigint primary key, location_id bigint not null)");
+        LongStream.rangeClosed(1, 300).forEach(id -> jdbcTemplate.update("insert into nts_items values (?, ?)", id, id));
+        entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(dataSource);
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setPackagesToScan(NtsMetafieldEntity.class.getPackageName());
+        entityManagerFactoryBean.setPersistenceUnitPostProcessors(unit ->
+            unit.getManagedClassNames().removeIf(name -> !MANAGED_CLASS_NAMES.contains(name)));
+        entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+            "hibernate.hbm2ddl.auto", "create-drop",
+            "hibernate.session_factory.statement_inspector", (StatementInspector) sql -> {
+                STATEMENTS.add(sql);
+                return sql;
+            },
+            "javax.persistence.validation.mode", "none"
+        ));
+        entityManagerFactoryBean.afterPropertiesSet();
+        LongStream.rangeClosed(1, 300).forEach(id -> jdbcTemplate.update(
+            "insert into nts_metafields (id, owner_resource, owner_id, nts_type, deleted, created_by) values (?, 'product', ?, 'number_integer', false, 'test')",
+            id, id));
+        STATEMENTS.clear();
+        ntsProperties.getHelper().getLocation().getQuery().setMaxParameters(MAX_PARAMETERS);
+        queryHelper = new NtsLocationQueryHelper(ntsProperties, locationDeserializer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        entityManagerFactoryBean.destroy();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void testSpecificationInlinesTemporaryTablePlan() {
+        grant(LongStream.concat(LongStream.rangeClosed(1, 30), LongStream.rangeClosed(11, 60).map(i -> i * 3)).toArray());
+
+        assertThat(queryHelper.getAccessPlan().getStrategy()).isEqualTo(NtsLocationAccessPlan.Strategy.TEMPORARY_TABLE);
+        Long count = count(queryHelper.grantedLocations("ownerId"));
+
+        assertThat(count).isEqualTo(80L);
+        assertThat(STATEMENTS).hasSize(1);
+        assertThat(STATEMENTS.get(0)).doesNotContain("?").contains(" between ", " in ", " or ");
+    }
+
+    @Test
+    void testSpecificationBindsRangesAndIds() {
+        grant(LongStream.concat(LongStream.rangeClosed(10, 100), LongStream.of(2, 200, 250)).toArray());
+
+        assertThat(queryHelper.getAccessPlan().getStrategy()).isEqualTo(NtsLocationAccessPlan.Strategy.RANGES);
+        assertThat(count(queryHelper.grantedLocations("ownerId"))).isEqualTo(94L);
+    }
+
+    @Test
+    void testSqlConditionJoinsTemporaryTable() {
+        grant(LongStream.rangeClosed(1, 50).map(i -> i * 3).toArray());
+
+        Long count = transactionTemplate.execute(status -> {
+            NtsLocationQueryHelper.SqlCondition condition = queryHelper.grantedLocationsSql("location_id", jdbcTemplate);
+            assertThat(condition.getSql()).isEqualTo("location_id IN (SELECT location_id FROM nts_tmp_granted_locations)");
+            assertThat(condition.getBindings()).isEmpty();
+            return jdbcTemplate.queryForObject("select count(*) from nts_items where " + condition.getSql(), Long.class);
+        });
+
+        assertThat(count).isEqualTo(50L);
+    }
+
+    @Test
+    void testSqlConditionRequiresTransactionForTemporaryTable() {
+        grant(LongStream.rangeClosed(1, 50).map(i -> i * 3).toArray());
+
+        assertThatThrownBy(() -> queryHelper.grantedLocationsSql("location_id", jdbcTemplate))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("50 granted locations")
+            .hasMessageContaining("one transaction");
+    }
+
+    @Test
+    void testSqlConditionBindsRangesAndIds() {
+        grant(LongStream.concat(LongStream.rangeClosed(10, 100), LongStream.of(2, 200, 250)).toArray());
+
+        NtsLocationQueryHelper.SqlCondition condition = queryHelper.grantedLocationsSql("location_id", jdbcTemplate);
+
+        assertThat(condition.getBindings()).hasSize(3);
+        assertThat(new NamedParameterJdbcTemplate(jdbcTemplate).queryForObject(
+            "select count(*) from nts_items where " + condition.getSql(), condition.getBindings(), Long.class)).isEqualTo(94L);
+    }
+
+    private Long count(Specification<NtsMetafieldEntity> specification) {
+        EntityManager entityManager = entityManagerFactoryBean.getObject().createEntityManager();
+        try {
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<Long> query = cb.createQuery(Long.class);
+            Root<NtsMetafieldEntity> root = query.from(NtsMetafieldEntity.class);
+            query.select(cb.count(root)).where(specification.toPredicate(root, query, cb));
+            return entityManager.createQuery(query).getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private void grant(long... ids) {
+        when(locationDeserializer.getGrantedLocations()).thenReturn(NtsLocationGrants.of(false, ids));
+    }
+}
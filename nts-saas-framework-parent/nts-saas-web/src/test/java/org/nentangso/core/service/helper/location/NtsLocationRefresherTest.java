@@ -0,0 +1,90 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsLocationRefresher}, against a stub provider and cacheable.
+ */
+class NtsLocationRefresherTest {
+    private final NtsProperties ntsProperties = new NtsProperties();
+    @SuppressWarnings("unchecked")
+    private final NtsLocationProvider<NtsDefaultLocationDTO> locationProvider = mock(NtsLocationProvider.class);
+    private final NtsDefaultLocationCacheable locationCacheable = mock(NtsDefaultLocationCacheable.class);
+    private final NtsLocationRefresher refresher = new NtsLocationRefresher(ntsProperties, locationProvider, locationCacheable);
+
+    @BeforeEach
+    void setUp() {
+        when(locationCacheable.tryClaimReload(anyLong())).thenReturn(true);
+        when(locationCacheable.extendCacheLocations()).thenReturn(true);
+    }
+
+    @Test
+    void testRefreshCountsReloads() {
+        when(locationProvider.reload()).thenReturn(locations());
+
+        assertThat(refresher.refresh()).isTrue();
+        assertThat(refresher.refresh()).isTrue();
+
+        assertThat(refresher.getRefreshCount()).isEqualTo(2);
+        assertThat(refresher.getFailureCount()).isZero();
+        assertThat(refresher.getConsecutiveFailureCount()).isZero();
+        assertThat(refresher.getLastRefreshedAt()).isNotNull();
+        assertThat(refresher.getLastRefreshAge()).isNotNull();
+        verify(locationProvider, times(2)).reload();
+        verify(locationCacheable, never()).extendCacheLocations();
+    }
+
+    @Test
+    void testRefreshFailureKeepsCachedLocations() {
+        when(locationProvider.reload())
+            .thenThrow(new IllegalStateException("upstream is down"))
+            .thenReturn(Collections.emptyMap())
+            .thenReturn(locations());
+
+        assertThat(refresher.refresh()).isFalse();
+        assertThat(refresher.refresh()).isFalse();
+
+        assertThat(refresher.getFailureCount()).isEqualTo(2);
+        assertThat(refresher.getConsecutiveFailureCount()).isEqualTo(2);
+        assertThat(refresher.getLastRefreshedAt()).isNull();
+        assertThat(refresher.getLastRefreshAge()).isNull();
+        verify(locationCacheable, times(2)).extendCacheLocations();
+
+        assertThat(refresher.refresh()).isTrue();
+
+        assertThat(refresher.getRefreshCount()).isEqualTo(1);
+        assertThat(refresher.getFailureCount()).isEqualTo(2);
+        assertThat(refresher.getConsecutiveFailureCount()).isZero();
+    }
+
+    @Test
+    void testRefreshSkipsIntervalClaimedByAnotherNode() {
+        when(locationCacheable.tryClaimReload(anyLong())).thenReturn(false);
+
+        assertThat(refresher.refresh()).isFalse();
+
+        assertThat(refresher.getSkipCount()).isEqualTo(1);
+        assertThat(refresher.getRefreshCount()).isZero();
+        assertThat(refresher.getFailureCount()).isZero();
+        verify(locationCacheable).tryClaimReload(ntsProperties.getHelper().getLocation().getRefresh().getInterval());
+        verify(locationProvider, never()).reload();
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> locations() {
+        return Collections.singletonMap(1L, NtsLocationDTO.newDefaultBuilder()
+            .id(1L)
+            .name("Location 1")
+            .build());
+    }
+}
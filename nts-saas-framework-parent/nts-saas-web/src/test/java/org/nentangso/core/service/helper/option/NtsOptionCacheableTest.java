@@ -0,0 +1,195 @@
+package org.nentangso.core.service.helper.option;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.redisson.api.RMapCache;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.jcache.configuration.RedissonConfiguration;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.cache.configuration.Configuration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsOptionCacheable}, against a stub redisson client.
+ */
+class NtsOptionCacheableTest {
+    private static final String OPTION_KEY = "store.name";
+
+    private final NtsProperties ntsProperties = new NtsProperties();
+    private final AtomicReference<String> storedValue = new AtomicReference<>("committed");
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<Set<String>, Map<String, List<String>>> loader = keys -> {
+        loads.incrementAndGet();
+        return Collections.singletonMap(OPTION_KEY, List.of(storedValue.get()));
+    };
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testEvictAfterRollbackDropsUncommittedValue() {
+        NtsOptionCacheable cacheable = newCacheable(true, null);
+        List<Set<String>> invalidations = new ArrayList<>();
+        cacheable.addInvalidationListener(invalidations::add);
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("committed"));
+
+        TransactionSynchronizationManager.initSynchronization();
+        storedValue.set("uncommitted");
+        cacheable.evict(Set.of(OPTION_KEY));
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("uncommitted"));
+        assertThat(invalidations).isEmpty();
+
+        storedValue.set("committed");
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("committed"));
+        assertThat(loads).hasValue(3);
+        assertThat(invalidations).containsExactly(Set.of(OPTION_KEY));
+    }
+
+    @Test
+    void testEvictAfterRollbackDropsSharedValue() {
+        Map<Object, Object> shared = new ConcurrentHashMap<>();
+        RTopic topic = mock(RTopic.class);
+        NtsOptionCacheable cacheable = newCacheable(true, stubRedisson(shared, topic));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cacheable.evict(Set.of(OPTION_KEY));
+        cacheable.getAll(Set.of(OPTION_KEY), loader);
+        assertThat(shared).containsEntry(OPTION_KEY, List.of("committed"));
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertThat(shared.get(OPTION_KEY)).isNotInstanceOf(List.class);
+        verify(topic).publish(any(NtsOptionCacheable.InvalidationMessage.class));
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("committed"));
+        assertThat(shared).containsEntry(OPTION_KEY, List.of("committed"));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testStaleLoadDoesNotRefillAfterCommittedEvict() {
+        Map<Object, Object> shared = new ConcurrentHashMap<>();
+        NtsOptionCacheable cacheable = newCacheable(true, stubRedisson(shared, mock(RTopic.class)));
+        Function<Set<String>, Map<String, List<String>>> staleLoader = keys -> {
+            Map<String, List<String>> stale = loader.apply(keys);
+            storedValue.set("changed");
+            cacheable.evict(Set.of(OPTION_KEY));
+            return stale;
+        };
+
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), staleLoader)).containsEntry(OPTION_KEY, List.of("committed"));
+        assertThat(shared.get(OPTION_KEY)).isNotInstanceOf(List.class);
+
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("changed"));
+        assertThat(shared).containsEntry(OPTION_KEY, List.of("changed"));
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("changed"));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testStaleLoadDoesNotRefillLocalCache() {
+        NtsOptionCacheable cacheable = newCacheable(true, null);
+        Function<Set<String>, Map<String, List<String>>> staleLoader = keys -> {
+            Map<String, List<String>> stale = loader.apply(keys);
+            storedValue.set("changed");
+            cacheable.evict(Set.of(OPTION_KEY));
+            return stale;
+        };
+
+        cacheable.getAll(Set.of(OPTION_KEY), staleLoader);
+
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY), loader)).containsEntry(OPTION_KEY, List.of("changed"));
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testDisabledCacheLoadsEveryTimeAndNotifies() {
+        NtsOptionCacheable cacheable = newCacheable(false, null);
+        List<Set<String>> invalidations = new ArrayList<>();
+        cacheable.addInvalidationListener(invalidations::add);
+
+        assertThat(cacheable.getAll(Set.of(OPTION_KEY, "store.missing"), loader))
+            .containsEntry(OPTION_KEY, List.of("committed"))
+            .containsEntry("store.missing", Collections.emptyList());
+        cacheable.getAll(Set.of(OPTION_KEY), loader);
+        assertThat(loads).hasValue(2);
+
+        TransactionSynchronizationManager.initSynchronization();
+        cacheable.evict(Set.of(OPTION_KEY));
+        assertThat(invalidations).isEmpty();
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(invalidations).containsExactly(Set.of(OPTION_KEY));
+
+        cacheable.evict(Set.of("store.other"));
+        assertThat(invalidations).containsExactly(Set.of(OPTION_KEY), Set.of("store.other"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private NtsOptionCacheable newCacheable(boolean enabled, RedissonClient redissonClient) {
+        NtsProperties.HelperProperties.OptionProperties.CacheProperties cacheProperties = ntsProperties.getHelper().getOption().getCache();
+        cacheProperties.setEnabled(enabled);
+        cacheProperties.setRedisEnabled(redissonClient != null);
+        ObjectProvider<Configuration<Object, Object>> jcacheConfiguration = mock(ObjectProvider.class);
+        if (redissonClient != null) {
+            RedissonConfiguration<Object, Object> redissonConfiguration = mock(RedissonConfiguration.class);
+            when(redissonConfiguration.getRedisson()).thenReturn(redissonClient);
+            when(jcacheConfiguration.getObject()).thenReturn(redissonConfiguration);
+        }
+        return new NtsOptionCacheable(ntsProperties, jcacheConfiguration);
+    }
+
+    /**
+     * A redisson client whose shared map is backed by the given map, ignoring the entry expiration.
+     */
+    @SuppressWarnings("unchecked")
+    private static RedissonClient stubRedisson(Map<Object, Object> shared, RTopic topic) {
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        RMapCache<Object, Object> hash = mock(RMapCache.class);
+        when(hash.getAll(any())).thenAnswer(invocation -> {
+            Map<Object, Object> result = new HashMap<>();
+            ((Set<Object>) invocation.getArgument(0)).forEach(key -> {
+                if (shared.containsKey(key)) {
+                    result.put(key, shared.get(key));
+                }
+            });
+            return result;
+        });
+        when(hash.fastPut(any(), any(), anyLong(), any(TimeUnit.class)))
+            .thenAnswer(invocation -> shared.put(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(hash.fastPutIfAbsent(any(), any(), anyLong(), any(TimeUnit.class)))
+            .thenAnswer(invocation -> shared.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)) == null);
+        when(hash.replace(any(), any(), any()))
+            .thenAnswer(invocation -> shared.replace(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        when(redissonClient.getMapCache(anyString(), any(Codec.class))).thenReturn(hash);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+        return redissonClient;
+    }
+
+    private static void completeTransaction(int status) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,238 @@
+package org.nentangso.core.service.helper.option;
+
+import ch.qos.logback.classic.Level;
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.annotation.OptionProperties;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.domain.AbstractAuditingEntity;
+import org.nentangso.core.domain.NtsOptionEntity;
+import org.nentangso.core.repository.NtsOptionRepository;
+import org.nentangso.core.repository.NtsOptionRepositoryImpl;
+import org.nentangso.core.service.helper.NtsOptionHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares option writes of the nested matching NtsOptionHelper.save used to do with {@link NtsOptionHelper#write},
+ * against an embedded H2 database, for writes where half of the collection items changed. The statements are counted
+ * by the data source, a JDBC batch counts as one statement. Not a unit test, run it manually from the IDE.
+ */
+public class NtsOptionWriteBenchmark {
+    private static final int WARMUP_WRITES = 50;
+    private static final int RUN_WRITES = 100;
+    private static final List<String> MANAGED_CLASS_NAMES = List.of(
+        AbstractAuditingEntity.class.getName(),
+        NtsOptionEntity.class.getName()
+    );
+
+    private final AtomicInteger statements = new AtomicInteger();
+    private final EmbeddedDatabase database;
+    private final LocalContainerEntityManagerFactoryBean entityManagerFactoryBean;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final NtsOptionRepository optionRepository;
+    private final NtsOptionHelper optionHelper;
+
+    @SuppressWarnings("unchecked")
+    private NtsOptionWriteBenchmark() {
+        database = new EmbeddedDatabaseBuilder()
+            .generateUniqueName(true)
+            .setType(EmbeddedDatabaseType.H2)
+            .build();
+        DataSource dataSource = new CountingDataSource(database, statements);
+        entityManagerFactoryBean = new LocalContainerEntityManagerFactoryBean();
+        entityManagerFactoryBean.setDataSource(dataSource);
+        entityManagerFactoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        entityManagerFactoryBean.setPackagesToScan(NtsOptionEntity.class.getPackageName());
+        entityManagerFactoryBean.setPersistenceUnitPostProcessors(unit ->
+            unit.getManagedClassNames().removeIf(name -> !MANAGED_CLASS_NAMES.contains(name)));
+        entityManagerFactoryBean.setJpaPropertyMap(Map.of(
+            "hibernate.hbm2ddl.auto", "create-drop",
+            "javax.persistence.validation.mode", "none"
+        ));
+        entityManagerFactoryBean.afterPropertiesSet();
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactoryBean.getObject());
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        optionRepository = new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactoryBean.getObject()))
+            .getRepository(NtsOptionRepository.class, RepositoryComposition.RepositoryFragments.just(
+                new NtsOptionRepositoryImpl(jdbcTemplate, mock(ObjectProvider.class))));
+        NtsProperties ntsProperties = new NtsProperties();
+        ntsProperties.getHelper().getOption().getCache().setEnabled(false);
+        optionHelper = new NtsOptionHelper(ntsProperties, optionRepository, new NtsOptionCacheable(ntsProperties, mock(ObjectProvider.class)), transactionManager);
+    }
+
+    public static void main(String[] args) {
+        // the default logback configuration logs every statement at debug level
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+        NtsOptionWriteBenchmark benchmark = new NtsOptionWriteBenchmark();
+        try {
+            System.out.printf("%8s %-8s %14s %10s%n", "rows", "mode", "statements/op", "ms/op");
+            for (int rows : new int[]{10, 100, 1_000}) {
+                benchmark.run(rows, "nested", benchmark::nestedWrite);
+                benchmark.run(rows, "diff", benchmark.optionHelper::write);
+            }
+        } finally {
+            benchmark.entityManagerFactoryBean.destroy();
+            benchmark.database.shutdown();
+        }
+    }
+
+    private void run(int rows, String mode, Consumer<Catalog> write) {
+        List<Catalog> catalogs = List.of(catalog(rows, 0), catalog(rows, rows / 2));
+        jdbcTemplate.update("delete from nts_options");
+        transactionTemplate.executeWithoutResult(status -> optionHelper.write(catalogs.get(0)));
+        for (int i = 0; i < WARMUP_WRITES; i++) {
+            Catalog catalog = catalogs.get((i + 1) % 2);
+            purgeDeleted();
+            transactionTemplate.executeWithoutResult(status -> write.accept(catalog));
+        }
+        long statementCount = 0;
+        long nanos = 0;
+        for (int i = 0; i < RUN_WRITES; i++) {
+            Catalog catalog = catalogs.get((i + 1) % 2);
+            purgeDeleted();
+            statements.set(0);
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> write.accept(catalog));
+            nanos += System.nanoTime() - start;
+            statementCount += statements.get();
+        }
+        System.out.printf("%8d %-8s %14.1f %10.2f%n", rows, mode, statementCount / (double) RUN_WRITES, nanos / 1_000_000.0 / RUN_WRITES);
+    }
+
+    /**
+     * Drop the rows soft deleted by the previous writes, they would slow down the next ones.
+     */
+    private void purgeDeleted() {
+        jdbcTemplate.update("delete from nts_options where deleted = true");
+    }
+
+    /**
+     * The former NtsOptionHelper.save, filling the audit fields the auditing listener fills in the application.
+     */
+    private void nestedWrite(Catalog catalog) {
+        NtsOptionBinder<Catalog> binder = NtsOptionBinder.of(Catalog.class);
+        List<NtsOptionEntity> options = new ArrayList<>();
+        binder.write(catalog, (optionKey, rawValue) -> {
+            NtsOptionEntity option = new NtsOptionEntity(optionKey, rawValue);
+            option.setCreatedBy(NtsConstants.SYSTEM);
+            options.add(option);
+        });
+        List<NtsOptionEntity> existOptions = optionRepository.findByOptionKeyIn(binder.getOptionKeys());
+        List<NtsOptionEntity> addingOptions = new ArrayList<>();
+        for (NtsOptionEntity option : options) {
+            NtsOptionEntity existOption = existOptions.stream()
+                .filter(f -> StringUtils.equals(f.getOptionKey(), option.getOptionKey()) && StringUtils.equals(f.getOptionValue(), option.getOptionValue()))
+                .findFirst()
+                .orElse(null);
+            if (existOption != null) {
+                existOptions.remove(existOption);
+            } else {
+                addingOptions.add(option);
+            }
+        }
+        optionRepository.deleteAll(existOptions);
+        optionRepository.saveAll(addingOptions);
+        optionRepository.flush();
+    }
+
+    private static Catalog catalog(int rows, int changed) {
+        Catalog catalog = new Catalog();
+        catalog.setStoreName("Main store");
+        List<String> tags = new ArrayList<>(rows);
+        for (int i = 1; i < rows; i++) {
+            tags.add(i < changed ? "new-" + i : "item-" + i);
+        }
+        catalog.setTags(tags);
+        return catalog;
+    }
+
+    @OptionProperties(prefix = "benchmark")
+    public static class Catalog {
+        private String storeName;
+        private List<String> tags;
+
+        public String getStoreName() {
+            return storeName;
+        }
+
+        public void setStoreName(String storeName) {
+            this.storeName = storeName;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+    }
+
+    /**
+     * Counts the statements sent to the database, each execute call being one round trip.
+     */
+    private static class CountingDataSource extends DelegatingDataSource {
+        private final AtomicInteger statements;
+
+        CountingDataSource(DataSource targetDataSource, AtomicInteger statements) {
+            super(targetDataSource);
+            this.statements = statements;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return proxy(Connection.class, super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return proxy(Connection.class, super.getConnection(username, password));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T proxy(Class<T> type, T target) {
+            return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (target instanceof Statement && method.getName().startsWith("execute")) {
+                    statements.incrementAndGet();
+                }
+                try {
+                    Object result = method.invoke(target, args);
+                    if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                        return proxy((Class<Statement>) method.getReturnType(), (Statement) result);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+    }
+}
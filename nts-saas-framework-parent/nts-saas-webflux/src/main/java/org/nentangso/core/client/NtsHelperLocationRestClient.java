@@ -3,7 +3,13 @@ package org.nentangso.core.client;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
 import org.nentangso.core.service.helper.location.NtsRestLocationProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import reactivefeign.client.ReactiveHttpResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
@@ -18,6 +24,37 @@ import java.util.List;
     url = "${nts.helper.location.rest.api-base-url:http://localhost:8080}"
 )
 public interface NtsHelperLocationRestClient {
+    default Mono<List<NtsDefaultLocationDTO>> findAll() {
+        return findAll(null);
+    }
+
+    /**
+     * Get all locations, unless they match the entity tag.
+     *
+     * @param ifNoneMatch the entity tag of the cached locations, null to always get them
+     * @return the locations, or a {@code 304 Not Modified} error when they did not change
+     */
     @GetMapping(path = "${nts.helper.location.rest.get-locations.uri:/api/locations}")
-    Mono<List<NtsDefaultLocationDTO>> findAll();
+    Mono<List<NtsDefaultLocationDTO>> findAll(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch);
+
+    /**
+     * Stream a page of locations ordered by id, decoded one by one.
+     * <p>
+     * The response carries the entity tag of the whole snapshot, send it as {@code ifMatch} with the next pages so they
+     * are read from the same version.
+     *
+     * @param sinceId     only the locations with a greater id, null to start from the first one
+     * @param limit       the page size, null for all
+     * @param ifNoneMatch the entity tag of the cached locations, null to always get them
+     * @param ifMatch     the entity tag of the first page, null for the first page
+     * @return the response of the page, or a {@code 304 Not Modified} error when the locations did not change, or a
+     * {@code 412 Precondition Failed} error when they changed since the first page
+     */
+    @GetMapping(path = "${nts.helper.location.rest.get-locations.uri:/api/locations}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    Mono<ReactiveHttpResponse<Flux<NtsDefaultLocationDTO>>> streamAll(
+        @RequestParam(value = "sinceId", required = false) Long sinceId,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    );
 }
@@ -36,11 +36,13 @@ public class NtsLocationHelperAutoConfiguration {
     )
     public NtsRestLocationProvider ntsRestLocationProvider(
         NtsDefaultLocationCacheable locationCacheable,
-        NtsHelperLocationRestClient restClient
+        NtsHelperLocationRestClient restClient,
+        @Value("${nts.helper.location.rest.stream-page-size:0}") int streamPageSize
     ) {
         return new NtsRestLocationProvider(
             locationCacheable,
-            restClient
+            restClient,
+            streamPageSize
         );
     }
 
@@ -62,6 +64,27 @@ public class NtsLocationHelperAutoConfiguration {
         );
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(
+        prefix = "nts.helper.location",
+        name = "provider",
+        havingValue = NtsKeycloakLocationProvider.PROVIDER_NAME
+    )
+    public NtsKeycloakLocationWriter ntsKeycloakLocationWriter(
+        NtsKeycloakLocationProperties keycloakLocationProperties,
+        NtsKeycloakLocationProvider locationProvider,
+        NtsDefaultLocationCacheable locationCacheable,
+        NtsKeycloakClient keycloakClient
+    ) {
+        return new NtsKeycloakLocationWriter(
+            keycloakLocationProperties,
+            locationProvider,
+            locationCacheable,
+            keycloakClient
+        );
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public NtsLocationProvider<? extends NtsLocationDTO> ntsLocationProvider(NtsProperties ntsProperties, ApplicationContext applicationContext) {
@@ -77,6 +100,25 @@ public class NtsLocationHelperAutoConfiguration {
         }
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(
+        prefix = "nts.helper.location.refresh",
+        name = "enabled",
+        havingValue = "true"
+    )
+    public NtsLocationRefresher ntsLocationRefresher(
+        NtsProperties ntsProperties,
+        NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
+        NtsDefaultLocationCacheable locationCacheable
+    ) {
+        return new NtsLocationRefresher(
+            ntsProperties,
+            locationProvider,
+            locationCacheable
+        );
+    }
+
     @Bean
     @ConditionalOnProperty(
         prefix = "nts.helper.location",
@@ -85,11 +127,13 @@ public class NtsLocationHelperAutoConfiguration {
     )
     public NtsBitSetLocationDeserializer ntsBitSetLocationDeserializer(
         NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
-        @Value("${nts.helper.location.bitset.claim:nlb}") String bitSetClaim
+        @Value("${nts.helper.location.bitset.claim:nlb}") String bitSetClaim,
+        @Value("${nts.helper.location.bitset.cache-size:10000}") int bitSetCacheSize
     ) {
         return new NtsBitSetLocationDeserializer(
             locationProvider,
-            bitSetClaim
+            bitSetClaim,
+            bitSetCacheSize
         );
     }
 
@@ -108,12 +152,27 @@ public class NtsLocationHelperAutoConfiguration {
         }
     }
 
+    @Bean
+    @ConditionalOnMissingBean
+    public NtsLocationQueryHelper ntsLocationQueryHelper(
+        NtsProperties ntsProperties,
+        NtsLocationDeserializer locationDeserializer
+    ) {
+        return new NtsLocationQueryHelper(ntsProperties, locationDeserializer);
+    }
+
     @Bean
     @ConditionalOnMissingBean
     public NtsLocationHelper ntsLocationHelper(
+        NtsProperties ntsProperties,
         NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
         NtsLocationDeserializer locationDeserializer
     ) {
-        return new NtsDefaultLocationHelper(locationProvider, locationDeserializer);
+        return new NtsDefaultLocationHelper(
+            locationProvider,
+            locationDeserializer,
+            ntsProperties.getHelper().getLocation().getSpatial().getLatitudeKey(),
+            ntsProperties.getHelper().getLocation().getSpatial().getLongitudeKey()
+        );
     }
 }
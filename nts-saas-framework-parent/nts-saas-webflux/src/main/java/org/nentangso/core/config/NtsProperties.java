@@ -62,11 +62,82 @@ public class NtsProperties {
 
     public static class HelperProperties {
         private final LocationProperties location = new LocationProperties();
+        private final OptionProperties option = new OptionProperties();
 
         public LocationProperties getLocation() {
             return location;
         }
 
+        public OptionProperties getOption() {
+            return option;
+        }
+
+        public static class OptionProperties {
+            private boolean enabled = false;
+
+            private final CacheProperties cache = new CacheProperties();
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public CacheProperties getCache() {
+                return cache;
+            }
+
+            public static class CacheProperties {
+                private boolean enabled = false;
+                private boolean redisEnabled = false;
+                private String keyPrefix = "nts:helper:option:";
+                private Long expiration = 3600L;
+                private boolean preload = false;
+
+                public boolean isEnabled() {
+                    return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                    this.enabled = enabled;
+                }
+
+                public boolean isRedisEnabled() {
+                    return redisEnabled;
+                }
+
+                public void setRedisEnabled(boolean redisEnabled) {
+                    this.redisEnabled = redisEnabled;
+                }
+
+                public String getKeyPrefix() {
+                    return keyPrefix;
+                }
+
+                public void setKeyPrefix(String keyPrefix) {
+                    this.keyPrefix = keyPrefix;
+                }
+
+                public Long getExpiration() {
+                    return expiration;
+                }
+
+                public void setExpiration(Long expiration) {
+                    this.expiration = expiration;
+                }
+
+                public boolean isPreload() {
+                    return preload;
+                }
+
+                public void setPreload(boolean preload) {
+                    this.preload = preload;
+                }
+            }
+        }
+
         public static class LocationProperties {
             private boolean enabled = false;
 
@@ -76,6 +147,12 @@ public class NtsProperties {
 
             private final CacheProperties cache = new CacheProperties();
 
+            private final RefreshProperties refresh = new RefreshProperties();
+
+            private final QueryProperties query = new QueryProperties();
+
+            private final SpatialProperties spatial = new SpatialProperties();
+
             public boolean isEnabled() {
                 return enabled;
             }
@@ -104,10 +181,107 @@ public class NtsProperties {
                 return cache;
             }
 
+            public RefreshProperties getRefresh() {
+                return refresh;
+            }
+
+            public QueryProperties getQuery() {
+                return query;
+            }
+
+            public SpatialProperties getSpatial() {
+                return spatial;
+            }
+
+            public static class QueryProperties {
+                private int maxParameters = 1000;
+                private String temporaryTable = "nts_tmp_granted_locations";
+                private String temporaryTableDdl = "CREATE TEMPORARY TABLE IF NOT EXISTS %s (location_id BIGINT NOT NULL PRIMARY KEY)";
+
+                public int getMaxParameters() {
+                    return maxParameters;
+                }
+
+                public void setMaxParameters(int maxParameters) {
+                    this.maxParameters = maxParameters;
+                }
+
+                public String getTemporaryTable() {
+                    return temporaryTable;
+                }
+
+                public void setTemporaryTable(String temporaryTable) {
+                    this.temporaryTable = temporaryTable;
+                }
+
+                public String getTemporaryTableDdl() {
+                    return temporaryTableDdl;
+                }
+
+                public void setTemporaryTableDdl(String temporaryTableDdl) {
+                    this.temporaryTableDdl = temporaryTableDdl;
+                }
+            }
+
+            public static class SpatialProperties {
+                private String latitudeKey = "latitude";
+                private String longitudeKey = "longitude";
+
+                public String getLatitudeKey() {
+                    return latitudeKey;
+                }
+
+                public void setLatitudeKey(String latitudeKey) {
+                    this.latitudeKey = latitudeKey;
+                }
+
+                public String getLongitudeKey() {
+                    return longitudeKey;
+                }
+
+                public void setLongitudeKey(String longitudeKey) {
+                    this.longitudeKey = longitudeKey;
+                }
+            }
+
+            public static class RefreshProperties {
+                private boolean enabled = false;
+                private Long initialDelay = 0L;
+                private Long interval = 1800L;
+
+                public boolean isEnabled() {
+                    return enabled;
+                }
+
+                public void setEnabled(boolean enabled) {
+                    this.enabled = enabled;
+                }
+
+                public Long getInitialDelay() {
+                    return initialDelay;
+                }
+
+                public void setInitialDelay(Long initialDelay) {
+                    this.initialDelay = initialDelay;
+                }
+
+                public Long getInterval() {
+                    return interval;
+                }
+
+                public void setInterval(Long interval) {
+                    this.interval = interval;
+                }
+            }
+
             public static class CacheProperties {
                 private boolean enabled = true;
                 private String keyPrefix = "nts:helper:location:";
                 private Long expiration = 3600L;
+                private String codec;
+                private Storage storage = Storage.BUCKET;
+                private final NearCacheProperties nearCache = new NearCacheProperties();
+                private final LockProperties lock = new LockProperties();
 
                 public boolean isEnabled() {
                     return enabled;
@@ -132,6 +306,92 @@ public class NtsProperties {
                 public void setExpiration(Long expiration) {
                     this.expiration = expiration;
                 }
+
+                public String getCodec() {
+                    return codec;
+                }
+
+                public void setCodec(String codec) {
+                    this.codec = codec;
+                }
+
+                public Storage getStorage() {
+                    return storage;
+                }
+
+                public void setStorage(Storage storage) {
+                    this.storage = storage;
+                }
+
+                public NearCacheProperties getNearCache() {
+                    return nearCache;
+                }
+
+                public LockProperties getLock() {
+                    return lock;
+                }
+
+                public enum Storage {
+                    /**
+                     * All locations in one redis string.
+                     */
+                    BUCKET,
+                    /**
+                     * One redis hash field per location, plus a set of ids.
+                     */
+                    HASH
+                }
+
+                public static class NearCacheProperties {
+                    private boolean enabled = true;
+                    private Long expiration = 300L;
+
+                    public boolean isEnabled() {
+                        return enabled;
+                    }
+
+                    public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                    }
+
+                    public Long getExpiration() {
+                        return expiration;
+                    }
+
+                    public void setExpiration(Long expiration) {
+                        this.expiration = expiration;
+                    }
+                }
+
+                public static class LockProperties {
+                    private boolean enabled = false;
+                    private Long waitTime = 30L;
+                    private Long leaseTime = 60L;
+
+                    public boolean isEnabled() {
+                        return enabled;
+                    }
+
+                    public void setEnabled(boolean enabled) {
+                        this.enabled = enabled;
+                    }
+
+                    public Long getWaitTime() {
+                        return waitTime;
+                    }
+
+                    public void setWaitTime(Long waitTime) {
+                        this.waitTime = waitTime;
+                    }
+
+                    public Long getLeaseTime() {
+                        return leaseTime;
+                    }
+
+                    public void setLeaseTime(Long leaseTime) {
+                        this.leaseTime = leaseTime;
+                    }
+                }
             }
         }
     }
@@ -0,0 +1,197 @@
+package org.nentangso.core.domain;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Outbox events
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.outbox-event",
+    name = "enabled",
+    havingValue = "true"
+)
+@Table("nts_outbox_events")
+public class NtsOutboxEventEntity implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Id
+     */
+    @Id
+    @Column("id")
+    private Long id;
+
+    /**
+     * Aggregate type
+     */
+    @NotNull
+    @Size(max = 255)
+    @Column("aggregate_type")
+    private String aggregateType;
+
+    /**
+     * Aggregate id
+     */
+    @NotNull
+    @Size(max = 36)
+    @Column("aggregate_id")
+    private String aggregateId;
+
+    /**
+     * Event type
+     */
+    @NotNull
+    @Size(max = 255)
+    @Column("event_type")
+    private String eventType;
+
+    /**
+     * Payload
+     */
+    @NotNull
+    @Size(max = 65535)
+    @Column("payload")
+    private String payload;
+
+    /**
+     * Aggregate version
+     */
+    @Column("aggregate_version")
+    private int aggregateVersion = 0;
+
+    /**
+     * Aggregate business version
+     */
+    @Column("business_version")
+    private int businessVersion = 1;
+
+    /**
+     * Actor
+     */
+    @NotNull
+    @Size(max = 255)
+    @Column("actor")
+    private String actor;
+
+    /**
+     * Created date
+     */
+    @NotNull
+    @CreatedDate
+    @Column("created_at")
+    private Instant createdAt = Instant.now();
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getAggregateType() {
+        return aggregateType;
+    }
+
+    public void setAggregateType(String aggregateType) {
+        this.aggregateType = aggregateType;
+    }
+
+    public String getAggregateId() {
+        return aggregateId;
+    }
+
+    public void setAggregateId(String aggregateId) {
+        this.aggregateId = aggregateId;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public int getAggregateVersion() {
+        return aggregateVersion;
+    }
+
+    public void setAggregateVersion(int aggregateVersion) {
+        this.aggregateVersion = aggregateVersion;
+    }
+
+    public int getBusinessVersion() {
+        return businessVersion;
+    }
+
+    public void setBusinessVersion(int businessVersion) {
+        this.businessVersion = businessVersion;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public void setActor(String actor) {
+        this.actor = actor;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdDate) {
+        this.createdAt = createdDate;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof NtsOutboxEventEntity)) {
+            return false;
+        }
+        return id != null && id.equals(((NtsOutboxEventEntity) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31;
+    }
+
+    // prettier-ignore
+    @Override
+    public String toString() {
+        return "OutboxEventEntity{" +
+            "id=" + id +
+            ", aggregateType='" + aggregateType + '\'' +
+            ", aggregateId='" + aggregateId + '\'' +
+            ", eventType='" + eventType + '\'' +
+            ", payload='" + payload + '\'' +
+            ", aggregateVersion=" + aggregateVersion +
+            ", businessVersion=" + businessVersion +
+            ", actor='" + actor + '\'' +
+            ", createdDate=" + createdAt +
+            '}';
+    }
+
+}
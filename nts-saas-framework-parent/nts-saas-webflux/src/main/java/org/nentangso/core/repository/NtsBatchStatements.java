@@ -0,0 +1,71 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.service.utils.NtsCollectionUtils;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Multi row inserts, one statement and round trip per {@link #BATCH_SIZE} rows.
+ * <p>
+ * The rows are written as one multi row {@code values} list with named parameters, instead of
+ * {@link io.r2dbc.spi.Statement#add()} bindings that some drivers, like r2dbc-h2, only accept when bound by name.
+ */
+final class NtsBatchStatements {
+    static final int BATCH_SIZE = 100;
+
+    private NtsBatchStatements() {
+    }
+
+    /**
+     * Insert rows in the current transaction, if any.
+     *
+     * @param db      the database client
+     * @param table   the table name
+     * @param columns the column names
+     * @param types   the column value types, to bind null values
+     * @param rows    the column values of each row
+     * @return the number of inserted rows
+     */
+    static Mono<Long> insert(DatabaseClient db, String table, List<String> columns, List<Class<?>> types, List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return Mono.just(0L);
+        }
+        List<List<Object[]>> batches = NtsCollectionUtils.chunks(rows, BATCH_SIZE).collect(Collectors.toList());
+        return Flux.fromIterable(batches)
+            .concatMap(batch -> insertBatch(db, table, columns, types, batch))
+            .reduce(0L, Long::sum);
+    }
+
+    private static Mono<Long> insertBatch(DatabaseClient db, String table, List<String> columns, List<Class<?>> types, List<Object[]> batch) {
+        List<String> values = new ArrayList<>(batch.size());
+        for (int row = 0; row < batch.size(); row++) {
+            List<String> parameters = new ArrayList<>(columns.size());
+            for (int column = 0; column < columns.size(); column++) {
+                parameters.add(":" + parameterName(row, column));
+            }
+            values.add("(" + String.join(", ", parameters) + ")");
+        }
+        String sql = String.format("insert into %s (%s) values %s", table, String.join(", ", columns), String.join(", ", values));
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql);
+        for (int row = 0; row < batch.size(); row++) {
+            Object[] value = batch.get(row);
+            for (int column = 0; column < value.length; column++) {
+                spec = value[column] == null
+                    ? spec.bindNull(parameterName(row, column), types.get(column))
+                    : spec.bind(parameterName(row, column), value[column]);
+            }
+        }
+        return spec.fetch()
+            .rowsUpdated()
+            .map(Number::longValue);
+    }
+
+    private static String parameterName(int row, int column) {
+        return "r" + row + "_c" + column;
+    }
+}
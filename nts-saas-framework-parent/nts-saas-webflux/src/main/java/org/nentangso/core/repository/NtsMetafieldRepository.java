@@ -0,0 +1,267 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldValueIndex;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.convert.R2dbcConverter;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Update;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spring Data R2DBC repository for the {@link NtsMetafieldEntity} entity, deletes are soft deletes.
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.metafield",
+    name = "enabled",
+    havingValue = "true"
+)
+@Repository
+public interface NtsMetafieldRepository extends R2dbcRepository<NtsMetafieldEntity, Long>, NtsMetafieldRepositoryInternal {
+    @Override
+    @Query("select * from nts_metafields e where e.id = :id and e.deleted = false")
+    Mono<NtsMetafieldEntity> findById(Long id);
+
+    @Query("select * from nts_metafields e where e.id in (:ids) and e.deleted = false")
+    Flux<NtsMetafieldEntity> findAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Query("select * from nts_metafields e where e.deleted = false")
+    Flux<NtsMetafieldEntity> findAll();
+
+    @Override
+    @Query("select count(*) from nts_metafields e where e.deleted = false")
+    Mono<Long> count();
+
+    @Override
+    default Mono<NtsMetafieldEntity> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    default Mono<Boolean> existsById(Long id) {
+        return findById(id).hasElement();
+    }
+
+    @Override
+    default Flux<NtsMetafieldEntity> findAllById(Iterable<Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Flux.empty() : findAllByIdIn(items);
+    }
+
+    @Override
+    @Modifying
+    @Query("update nts_metafields set deleted = true where id = :id")
+    Mono<Void> deleteById(Long id);
+
+    @Modifying
+    @Query("update nts_metafields set deleted = true where id in (:ids)")
+    Mono<Integer> softDeleteAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Modifying
+    @Query("update nts_metafields set deleted = true")
+    Mono<Void> deleteAll();
+
+    @Override
+    default Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    default Mono<Void> delete(NtsMetafieldEntity entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    default Mono<Void> deleteAllById(Iterable<? extends Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Iterable<? extends NtsMetafieldEntity> entities) {
+        List<Long> items = StreamSupport.stream(entities.spliterator(), false).map(NtsMetafieldEntity::getId).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Publisher<? extends NtsMetafieldEntity> entityStream) {
+        return Flux.from(entityStream)
+            .map(NtsMetafieldEntity::getId)
+            .collectList()
+            .flatMap(items -> items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then());
+    }
+
+    @Query("select * from nts_metafields e where e.owner_resource = :ownerResource and e.owner_id = :ownerId and e.deleted = false")
+    Flux<NtsMetafieldEntity> findAllByOwnerResourceAndOwnerId(String ownerResource, Long ownerId);
+
+    @Query("select count(*) from nts_metafields e where e.owner_resource = :ownerResource and e.owner_id = :ownerId and e.deleted = false")
+    Mono<Long> countByOwnerResourceAndOwnerId(String ownerResource, Long ownerId);
+
+    /**
+     * The owner resource is matched ignoring case, the id narrows the query to one row.
+     */
+    @Query("select * from nts_metafields e where lower(e.owner_resource) = lower(:ownerResource) and e.owner_id = :ownerId and e.id = :id and e.deleted = false")
+    Mono<NtsMetafieldEntity> findOneByOwner(String ownerResource, Long ownerId, Long id);
+
+    /**
+     * @return the number of deleted metafields, 0 or 1
+     */
+    @Modifying
+    @Query("update nts_metafields set deleted = true where lower(owner_resource) = lower(:ownerResource) and owner_id = :ownerId and id = :id and deleted = false")
+    Mono<Integer> softDeleteByOwner(String ownerResource, Long ownerId, Long id);
+}
+
+interface NtsMetafieldRepositoryInternal {
+    /**
+     * @param namespace the namespace to match, or null for all
+     * @param key       the key to match, or null for all
+     */
+    Flux<NtsMetafieldEntity> findAllByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key);
+
+    /**
+     * @param namespace the namespace to match, or null for all
+     * @param key       the key to match, or null for all
+     * @return the counts of owners having metafields
+     */
+    Mono<Map<Long, Long>> countByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key);
+
+    /**
+     * Find a page of owner ids by metafield value with the value indexes, the query depends on the filters set.
+     *
+     * @param query the owner query
+     * @return the distinct owner ids in ascending order
+     */
+    Flux<Long> findOwnerIds(NtsMetafieldOwnerQuery query);
+
+    /**
+     * Update the fields of a metafield if it belongs to its owner, the audit fields are taken from the given metafield.
+     * The owner resource is matched ignoring case, like {@link NtsMetafieldRepository#findOneByOwner}.
+     *
+     * @param metafield the metafield with its id, owner and new fields
+     * @return the number of updated metafields, 0 or 1
+     */
+    Mono<Integer> updateByOwner(NtsMetafieldEntity metafield);
+}
+
+class NtsMetafieldRepositoryInternalImpl implements NtsMetafieldRepositoryInternal {
+    private final DatabaseClient db;
+    private final R2dbcEntityTemplate r2dbcEntityTemplate;
+    private final R2dbcConverter r2dbcConverter;
+
+    public NtsMetafieldRepositoryInternalImpl(DatabaseClient db, R2dbcEntityTemplate r2dbcEntityTemplate, R2dbcConverter r2dbcConverter) {
+        this.db = db;
+        this.r2dbcEntityTemplate = r2dbcEntityTemplate;
+        this.r2dbcConverter = r2dbcConverter;
+    }
+
+    @Override
+    public Flux<NtsMetafieldEntity> findAllByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        return byOwners("select e.* from nts_metafields e", "", ownerResource, ownerIds, namespace, key)
+            .map((row, metadata) -> r2dbcConverter.read(NtsMetafieldEntity.class, row, metadata))
+            .all();
+    }
+
+    @Override
+    public Mono<Map<Long, Long>> countByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        return byOwners("select e.owner_id, count(*) as total from nts_metafields e", " group by e.owner_id", ownerResource, ownerIds, namespace, key)
+            .map(row -> Map.entry(row.get("owner_id", Long.class), row.get("total", Long.class)))
+            .all()
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue, HashMap::new);
+    }
+
+    @Override
+    public Flux<Long> findOwnerIds(NtsMetafieldOwnerQuery query) {
+        StringBuilder sql = new StringBuilder("select distinct e.owner_id from nts_metafields e")
+            .append(" where e.owner_resource = :ownerResource and e.namespace = :namespace and e.nts_key = :key and e.deleted = false");
+        Map<String, Object> bindings = new HashMap<>();
+        if (query.getValue() != null) {
+            sql.append(" and e.nts_value_text = :value");
+            bindings.put("value", query.getValue());
+        }
+        if (query.getValuePrefix() != null) {
+            sql.append(" and e.nts_value_text like :valuePrefix escape '").append(NtsMetafieldValueIndex.LIKE_ESCAPE).append("'");
+            bindings.put("valuePrefix", NtsMetafieldValueIndex.likePrefix(query.getValuePrefix()));
+        }
+        if (query.getMinValue() != null) {
+            sql.append(" and e.nts_value_number >= :minValue");
+            bindings.put("minValue", query.getMinValue());
+        }
+        if (query.getMaxValue() != null) {
+            sql.append(" and e.nts_value_number <= :maxValue");
+            bindings.put("maxValue", query.getMaxValue());
+        }
+        if (query.getAfterOwnerId() != null) {
+            sql.append(" and e.owner_id > :afterOwnerId");
+            bindings.put("afterOwnerId", query.getAfterOwnerId());
+        }
+        sql.append(" order by e.owner_id limit :limit");
+        bindings.put("limit", query.getLimit());
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql.toString())
+            .bind("ownerResource", query.getOwnerResource())
+            .bind("namespace", query.getNamespace())
+            .bind("key", query.getKey());
+        for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+            spec = spec.bind(binding.getKey(), binding.getValue());
+        }
+        return spec.map(row -> row.get("owner_id", Long.class)).all();
+    }
+
+    @Override
+    public Mono<Integer> updateByOwner(NtsMetafieldEntity metafield) {
+        return r2dbcEntityTemplate.update(NtsMetafieldEntity.class)
+            .matching(org.springframework.data.relational.core.query.Query.query(Criteria.where("id").is(metafield.getId())
+                .and("ownerResource").is(metafield.getOwnerResource()).ignoreCase(true)
+                .and("ownerId").is(metafield.getOwnerId())
+                .and("deleted").isFalse()))
+            .apply(Update.update("namespace", metafield.getNamespace())
+                .set("key", metafield.getKey())
+                .set("value", metafield.getValue())
+                .set("valueText", metafield.getValueText())
+                .set("valueNumber", metafield.getValueNumber())
+                .set("valueTimestamp", metafield.getValueTimestamp())
+                .set("valueBoolean", metafield.getValueBoolean())
+                .set("type", metafield.getType())
+                .set("description", metafield.getDescription())
+                .set("updatedBy", metafield.getUpdatedBy())
+                .set("updatedAt", metafield.getUpdatedAt()));
+    }
+
+    private DatabaseClient.GenericExecuteSpec byOwners(String select, String suffix, String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        StringBuilder sql = new StringBuilder(select)
+            .append(" where e.owner_resource = :ownerResource and e.owner_id in (:ownerIds) and e.deleted = false");
+        if (namespace != null) {
+            sql.append(" and e.namespace = :namespace");
+        }
+        if (key != null) {
+            sql.append(" and e.nts_key = :key");
+        }
+        DatabaseClient.GenericExecuteSpec spec = db.sql(sql.append(suffix).toString())
+            .bind("ownerResource", ownerResource)
+            .bind("ownerIds", ownerIds);
+        if (namespace != null) {
+            spec = spec.bind("namespace", namespace);
+        }
+        if (key != null) {
+            spec = spec.bind("key", key);
+        }
+        return spec;
+    }
+}
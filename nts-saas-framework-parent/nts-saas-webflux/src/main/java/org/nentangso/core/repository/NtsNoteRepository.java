@@ -0,0 +1,102 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsNoteEntity;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spring Data R2DBC repository for the {@link NtsNoteEntity} entity, deletes are soft deletes.
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.note",
+    name = "enabled",
+    havingValue = "true"
+)
+@Repository
+public interface NtsNoteRepository extends R2dbcRepository<NtsNoteEntity, Long> {
+    @Override
+    @Query("select * from nts_notes e where e.id = :id and e.deleted = false")
+    Mono<NtsNoteEntity> findById(Long id);
+
+    @Query("select * from nts_notes e where e.id in (:ids) and e.deleted = false")
+    Flux<NtsNoteEntity> findAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Query("select * from nts_notes e where e.deleted = false")
+    Flux<NtsNoteEntity> findAll();
+
+    @Override
+    @Query("select count(*) from nts_notes e where e.deleted = false")
+    Mono<Long> count();
+
+    @Override
+    default Mono<NtsNoteEntity> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    default Mono<Boolean> existsById(Long id) {
+        return findById(id).hasElement();
+    }
+
+    @Override
+    default Flux<NtsNoteEntity> findAllById(Iterable<Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Flux.empty() : findAllByIdIn(items);
+    }
+
+    @Override
+    @Modifying
+    @Query("update nts_notes set deleted = true where id = :id")
+    Mono<Void> deleteById(Long id);
+
+    @Modifying
+    @Query("update nts_notes set deleted = true where id in (:ids)")
+    Mono<Integer> softDeleteAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Modifying
+    @Query("update nts_notes set deleted = true")
+    Mono<Void> deleteAll();
+
+    @Override
+    default Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    default Mono<Void> delete(NtsNoteEntity entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    default Mono<Void> deleteAllById(Iterable<? extends Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Iterable<? extends NtsNoteEntity> entities) {
+        List<Long> items = StreamSupport.stream(entities.spliterator(), false).map(NtsNoteEntity::getId).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Publisher<? extends NtsNoteEntity> entityStream) {
+        return Flux.from(entityStream)
+            .map(NtsNoteEntity::getId)
+            .collectList()
+            .flatMap(items -> items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then());
+    }
+}
@@ -0,0 +1,144 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsOptionEntity;
+import org.reactivestreams.Publisher;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Spring Data R2DBC repository for the {@link NtsOptionEntity} entity, deletes are soft deletes.
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.option",
+    name = "enabled",
+    havingValue = "true"
+)
+@Repository
+public interface NtsOptionRepository extends R2dbcRepository<NtsOptionEntity, Long>, NtsOptionRepositoryInternal {
+    @Override
+    @Query("select * from nts_options e where e.id = :id and e.deleted = false")
+    Mono<NtsOptionEntity> findById(Long id);
+
+    @Query("select * from nts_options e where e.id in (:ids) and e.deleted = false")
+    Flux<NtsOptionEntity> findAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Query("select * from nts_options e where e.deleted = false")
+    Flux<NtsOptionEntity> findAll();
+
+    @Override
+    @Query("select count(*) from nts_options e where e.deleted = false")
+    Mono<Long> count();
+
+    @Override
+    default Mono<NtsOptionEntity> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    default Mono<Boolean> existsById(Long id) {
+        return findById(id).hasElement();
+    }
+
+    @Override
+    default Flux<NtsOptionEntity> findAllById(Iterable<Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Flux.empty() : findAllByIdIn(items);
+    }
+
+    @Override
+    @Modifying
+    @Query("update nts_options set deleted = true where id = :id")
+    Mono<Void> deleteById(Long id);
+
+    @Modifying
+    @Query("update nts_options set deleted = true where id in (:ids)")
+    Mono<Integer> softDeleteAllByIdIn(Collection<Long> ids);
+
+    @Override
+    @Modifying
+    @Query("update nts_options set deleted = true")
+    Mono<Void> deleteAll();
+
+    @Override
+    default Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    default Mono<Void> delete(NtsOptionEntity entity) {
+        return deleteById(entity.getId());
+    }
+
+    @Override
+    default Mono<Void> deleteAllById(Iterable<? extends Long> ids) {
+        List<Long> items = StreamSupport.stream(ids.spliterator(), false).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Iterable<? extends NtsOptionEntity> entities) {
+        List<Long> items = StreamSupport.stream(entities.spliterator(), false).map(NtsOptionEntity::getId).collect(Collectors.toList());
+        return items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then();
+    }
+
+    @Override
+    default Mono<Void> deleteAll(Publisher<? extends NtsOptionEntity> entityStream) {
+        return Flux.from(entityStream)
+            .map(NtsOptionEntity::getId)
+            .collectList()
+            .flatMap(items -> items.isEmpty() ? Mono.empty() : softDeleteAllByIdIn(items).then());
+    }
+
+    @Query("select * from nts_options e where e.option_key in (:optionKeys) and e.deleted = false")
+    Flux<NtsOptionEntity> findByOptionKeyIn(Collection<String> optionKeys);
+}
+
+interface NtsOptionRepositoryInternal {
+    /**
+     * Insert options with batched statements, their audit fields must be filled and their ids are left null.
+     *
+     * @param options the new options
+     * @return the number of inserted options
+     */
+    Mono<Long> insertAll(List<NtsOptionEntity> options);
+}
+
+class NtsOptionRepositoryInternalImpl implements NtsOptionRepositoryInternal {
+    private static final List<String> COLUMNS = List.of("option_key", "option_value", "deleted", "created_by", "created_at", "updated_by", "updated_at");
+    private static final List<Class<?>> TYPES = List.of(String.class, String.class, Boolean.class, String.class, Instant.class, String.class, Instant.class);
+
+    private final DatabaseClient db;
+
+    public NtsOptionRepositoryInternalImpl(DatabaseClient db) {
+        this.db = db;
+    }
+
+    @Override
+    public Mono<Long> insertAll(List<NtsOptionEntity> options) {
+        List<Object[]> rows = options.stream()
+            .map(option -> new Object[]{
+                option.getOptionKey(),
+                option.getOptionValue(),
+                option.isDeleted(),
+                option.getCreatedBy(),
+                option.getCreatedAt(),
+                option.getUpdatedBy(),
+                option.getUpdatedAt()
+            })
+            .collect(Collectors.toList());
+        return NtsBatchStatements.insert(db, "nts_options", COLUMNS, TYPES, rows);
+    }
+}
@@ -0,0 +1,62 @@
+package org.nentangso.core.repository;
+
+import org.nentangso.core.domain.NtsOutboxEventEntity;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Spring Data R2DBC repository for the {@link NtsOutboxEventEntity} entity.
+ */
+@ConditionalOnProperty(
+    prefix = "nts.helper.outbox-event",
+    name = "enabled",
+    havingValue = "true"
+)
+@Repository
+public interface NtsOutboxEventRepository extends R2dbcRepository<NtsOutboxEventEntity, Long>, NtsOutboxEventRepositoryInternal {
+}
+
+interface NtsOutboxEventRepositoryInternal {
+    /**
+     * Insert outbox events with batched statements, their ids are left null.
+     *
+     * @param outboxEvents the new outbox events
+     * @return the number of inserted outbox events
+     */
+    Mono<Long> insertAll(List<NtsOutboxEventEntity> outboxEvents);
+}
+
+class NtsOutboxEventRepositoryInternalImpl implements NtsOutboxEventRepositoryInternal {
+    private static final List<String> COLUMNS = List.of("aggregate_type", "aggregate_id", "event_type", "payload", "aggregate_version", "business_version", "actor", "created_at");
+    private static final List<Class<?>> TYPES = List.of(String.class, String.class, String.class, String.class, Integer.class, Integer.class, String.class, Instant.class);
+
+    private final DatabaseClient db;
+
+    public NtsOutboxEventRepositoryInternalImpl(DatabaseClient db) {
+        this.db = db;
+    }
+
+    @Override
+    public Mono<Long> insertAll(List<NtsOutboxEventEntity> outboxEvents) {
+        List<Object[]> rows = outboxEvents.stream()
+            .map(outboxEvent -> new Object[]{
+                outboxEvent.getAggregateType(),
+                outboxEvent.getAggregateId(),
+                outboxEvent.getEventType(),
+                outboxEvent.getPayload(),
+                outboxEvent.getAggregateVersion(),
+                outboxEvent.getBusinessVersion(),
+                outboxEvent.getActor(),
+                outboxEvent.getCreatedAt()
+            })
+            .collect(Collectors.toList());
+        return NtsBatchStatements.insert(db, "nts_outbox_events", COLUMNS, TYPES, rows);
+    }
+}
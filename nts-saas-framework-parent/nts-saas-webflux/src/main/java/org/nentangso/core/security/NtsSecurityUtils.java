@@ -196,6 +196,27 @@ public final class NtsSecurityUtils implements InitializingBean {
             .flatMap(authentication -> Mono.justOrEmpty(extractClaim(authentication, claim)));
     }
 
+    /**
+     * Get all claims of current user
+     *
+     * @return Mono of claims
+     */
+    public static Mono<Map<String, Object>> getCurrentUserClaims() {
+        return ReactiveSecurityContextHolder
+            .getContext()
+            .map(SecurityContext::getAuthentication)
+            .flatMap(authentication -> Mono.justOrEmpty(extractClaims(authentication)));
+    }
+
+    private static Optional<Map<String, Object>> extractClaims(Authentication authentication) {
+        if (authentication instanceof JwtAuthenticationToken) {
+            return Optional.of(((JwtAuthenticationToken) authentication).getToken().getClaims());
+        } else if (authentication != null && authentication.getPrincipal() instanceof DefaultOidcUser) {
+            return Optional.of(((DefaultOidcUser) authentication.getPrincipal()).getAttributes());
+        }
+        return Optional.empty();
+    }
+
     private static Optional<Object> extractClaim(Authentication authentication, String claim) {
         if (authentication == null) {
             return Optional.empty();
@@ -0,0 +1,291 @@
+package org.nentangso.core.service.helper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.repository.NtsMetafieldRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
+import org.nentangso.core.service.dto.NtsMetafieldDTO;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldType;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldTypedValue;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldValueIndex;
+import org.nentangso.core.service.mapper.NtsMetafieldMapper;
+import org.nentangso.core.service.utils.NtsCollectionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@ConditionalOnProperty(
+    prefix = "nts.helper.metafield",
+    name = "enabled",
+    havingValue = "true"
+)
+@Service
+public class NtsMetafieldHelper {
+    private static final Logger log = LoggerFactory.getLogger(NtsMetafieldHelper.class);
+    private static final int OWNER_CHUNK_SIZE = 500;
+
+    private final NtsMetafieldRepository metafieldRepository;
+    private final NtsMetafieldMapper metafieldMapper;
+    private final ObjectMapper objectMapper;
+
+    public NtsMetafieldHelper(NtsMetafieldRepository metafieldRepository, NtsMetafieldMapper metafieldMapper, ObjectMapper objectMapper) {
+        this.metafieldRepository = metafieldRepository;
+        this.metafieldMapper = metafieldMapper;
+        this.objectMapper = objectMapper;
+    }
+
+    @Transactional
+    public Mono<NtsMetafieldDTO> save(NtsMetafieldDTO metafieldDTO) {
+        log.debug("Request to save metafield: {}", metafieldDTO);
+        if (metafieldDTO == null) {
+            return Mono.error(new IllegalArgumentException("metafieldDTO"));
+        }
+        NtsMetafieldTypedValue typedValue;
+        try {
+            typedValue = parseValue(metafieldDTO.getType(), metafieldDTO.getValue());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new NtsValidationException("value", e.getMessage()));
+        }
+        Mono<NtsMetafieldEntity> metafieldEntity = metafieldDTO.getId() != null
+            ? metafieldRepository.findById(metafieldDTO.getId()).switchIfEmpty(Mono.error(NtsNotFoundException::new))
+            : Mono.fromSupplier(() -> new NtsMetafieldEntity()
+                .ownerResource(metafieldDTO.getOwnerResource())
+                .ownerId(metafieldDTO.getOwnerId()));
+        return Mono.zip(metafieldEntity, currentAuditor())
+            .flatMap(tuple -> {
+                NtsMetafieldEntity entity = tuple.getT1();
+                String login = tuple.getT2();
+                entity.namespace(metafieldDTO.getNamespace())
+                    .key(metafieldDTO.getKey())
+                    .value(metafieldDTO.getValue())
+                    .typedValue(typedValue)
+                    .type(metafieldDTO.getType())
+                    .description(metafieldDTO.getDescription());
+                if (entity.getCreatedBy() == null) {
+                    entity.setCreatedBy(login);
+                }
+                entity.setUpdatedBy(login);
+                entity.setUpdatedAt(Instant.now());
+                return metafieldRepository.save(entity);
+            })
+            .map(metafieldMapper::toDto);
+    }
+
+    public Mono<NtsMetafieldDTO> findOne(String ownerResource, Long ownerId, Long id) {
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || id == null || id <= 0) {
+            return Mono.empty();
+        }
+        return metafieldRepository.findOneByOwner(ownerResource, ownerId, id)
+            .map(metafieldMapper::toDto);
+    }
+
+    /**
+     * Update a metafield of an owner with one statement, without loading it.
+     *
+     * @param ownerResource the type of the owner
+     * @param ownerId       the owner id
+     * @param metafieldDTO  the metafield with its id and all of its new fields
+     * @return the metafield as updated, or {@link NtsNotFoundException} if the owner has no such metafield
+     */
+    @Transactional
+    public Mono<NtsMetafieldDTO> update(String ownerResource, Long ownerId, NtsMetafieldDTO metafieldDTO) {
+        log.debug("Request to update metafield: {}", metafieldDTO);
+        if (metafieldDTO == null || metafieldDTO.getId() == null) {
+            return Mono.error(new IllegalArgumentException("metafieldDTO"));
+        }
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || metafieldDTO.getId() <= 0) {
+            return Mono.error(NtsNotFoundException::new);
+        }
+        NtsMetafieldTypedValue typedValue;
+        try {
+            typedValue = parseValue(metafieldDTO.getType(), metafieldDTO.getValue());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new NtsValidationException("value", e.getMessage()));
+        }
+        return currentAuditor()
+            .flatMap(login -> {
+                NtsMetafieldEntity metafieldEntity = new NtsMetafieldEntity()
+                    .ownerResource(ownerResource)
+                    .ownerId(ownerId)
+                    .namespace(metafieldDTO.getNamespace())
+                    .key(metafieldDTO.getKey())
+                    .value(metafieldDTO.getValue())
+                    .typedValue(typedValue)
+                    .type(metafieldDTO.getType())
+                    .description(metafieldDTO.getDescription());
+                metafieldEntity.setId(metafieldDTO.getId());
+                metafieldEntity.setUpdatedBy(login);
+                metafieldEntity.setUpdatedAt(Instant.now());
+                return metafieldRepository.updateByOwner(metafieldEntity)
+                    .filter(updated -> updated > 0)
+                    .switchIfEmpty(Mono.error(NtsNotFoundException::new))
+                    .map(updated -> NtsMetafieldDTO.newBuilder(metafieldDTO)
+                        .ownerResource(ownerResource)
+                        .ownerId(ownerId)
+                        .valueNumber(typedValue.getNumber())
+                        .valueTimestamp(typedValue.getTimestamp())
+                        .valueBoolean(typedValue.getBoolean())
+                        .updatedBy(metafieldEntity.getUpdatedBy())
+                        .updatedAt(metafieldEntity.getUpdatedAt())
+                        .build());
+            });
+    }
+
+    public Flux<NtsMetafieldDTO> findAllByOwner(String ownerResource, Long ownerId) {
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0) {
+            return Flux.empty();
+        }
+        return metafieldRepository.findAllByOwnerResourceAndOwnerId(ownerResource, ownerId)
+            .map(metafieldMapper::toDto);
+    }
+
+    public Mono<Long> count(String ownerResource, Long ownerId) {
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0) {
+            return Mono.just(0L);
+        }
+        return metafieldRepository.countByOwnerResourceAndOwnerId(ownerResource, ownerId);
+    }
+
+    public Mono<Map<Long, List<NtsMetafieldDTO>>> findAllByOwners(String ownerResource, Collection<Long> ownerIds) {
+        return findAllByOwners(ownerResource, ownerIds, null, null);
+    }
+
+    /**
+     * Find the metafields of many owners with one query per chunk of owners.
+     *
+     * @param ownerResource the type of the owners
+     * @param ownerIds      the owner ids
+     * @param namespace     the namespace to match, or null for all
+     * @param key           the key to match, or null for all
+     * @return the metafields of each valid owner id, in the given order, empty when it has none
+     */
+    public Mono<Map<Long, List<NtsMetafieldDTO>>> findAllByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        List<Long> validOwnerIds = validOwnerIds(ownerIds);
+        if (StringUtils.isBlank(ownerResource) || validOwnerIds.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return Flux.fromStream(NtsCollectionUtils.chunks(validOwnerIds, OWNER_CHUNK_SIZE))
+            .concatMap(chunk -> metafieldRepository.findAllByOwners(ownerResource, chunk, namespace, key))
+            .collect(() -> {
+                Map<Long, List<NtsMetafieldDTO>> result = new LinkedHashMap<>();
+                validOwnerIds.forEach(ownerId -> result.put(ownerId, new ArrayList<>()));
+                return result;
+            }, (result, m) -> result.get(m.getOwnerId()).add(metafieldMapper.toDto(m)));
+    }
+
+    public Mono<Map<Long, Long>> countByOwners(String ownerResource, Collection<Long> ownerIds) {
+        return countByOwners(ownerResource, ownerIds, null, null);
+    }
+
+    /**
+     * Count the metafields of many owners with one query per chunk of owners.
+     *
+     * @param ownerResource the type of the owners
+     * @param ownerIds      the owner ids
+     * @param namespace     the namespace to match, or null for all
+     * @param key           the key to match, or null for all
+     * @return the count of each valid owner id, in the given order, zero when it has none
+     */
+    public Mono<Map<Long, Long>> countByOwners(String ownerResource, Collection<Long> ownerIds, String namespace, String key) {
+        List<Long> validOwnerIds = validOwnerIds(ownerIds);
+        if (StringUtils.isBlank(ownerResource) || validOwnerIds.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return Flux.fromStream(NtsCollectionUtils.chunks(validOwnerIds, OWNER_CHUNK_SIZE))
+            .concatMap(chunk -> metafieldRepository.countByOwners(ownerResource, chunk, namespace, key))
+            .collect(() -> {
+                Map<Long, Long> result = new LinkedHashMap<>();
+                validOwnerIds.forEach(ownerId -> result.put(ownerId, 0L));
+                return result;
+            }, Map::putAll);
+    }
+
+    /**
+     * Find the owners having a metafield value equal to a text, starting with a text or in a number range. Only values
+     * up to {@value NtsMetafieldValueIndex#TEXT_MAX_LENGTH} characters are matched as text.
+     *
+     * @param query the owner query, pass the last owner id of a page as {@code afterOwnerId} to get the next one
+     * @return at most {@code limit} distinct owner ids in ascending order
+     */
+    public Flux<Long> findOwnerIds(NtsMetafieldOwnerQuery query) {
+        log.debug("Request to find metafield owners: {}", query);
+        return metafieldRepository.findOwnerIds(query);
+    }
+
+    @Transactional
+    public Mono<Void> delete(String ownerResource, Long ownerId, Long id) {
+        if (StringUtils.isBlank(ownerResource) || ownerId == null || ownerId <= 0 || id == null || id <= 0) {
+            return Mono.empty();
+        }
+        return metafieldRepository.softDeleteByOwner(ownerResource, ownerId, id)
+            .filter(deleted -> deleted > 0)
+            .switchIfEmpty(Mono.error(NtsNotFoundException::new))
+            .then();
+    }
+
+    /**
+     * Parse a value once according to its type, a JSON value is only checked.
+     *
+     * @throws IllegalArgumentException with the validation message if the value does not match the type
+     */
+    private NtsMetafieldTypedValue parseValue(String type, String value) {
+        NtsMetafieldType metafieldType = NtsMetafieldType.of(type);
+        NtsMetafieldTypedValue typedValue = metafieldType.parse(value);
+        if (value != null && metafieldType.getKind() == NtsMetafieldType.Kind.JSON) {
+            checkJson(metafieldType, value);
+        }
+        return typedValue;
+    }
+
+    private void checkJson(NtsMetafieldType metafieldType, String value) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(String.format("is invalid JSON for type %s", metafieldType.getName()));
+        }
+        NtsMetafieldType elementType = metafieldType.getElementType();
+        if (elementType == null) {
+            return;
+        }
+        if (!node.isArray()) {
+            throw new IllegalArgumentException(String.format("must be a JSON array for type %s", metafieldType.getName()));
+        }
+        if (elementType.getKind() == NtsMetafieldType.Kind.JSON) {
+            return;
+        }
+        for (JsonNode element : node) {
+            elementType.parse(element.isValueNode() ? element.asText() : element.toString());
+        }
+    }
+
+    private static List<Long> validOwnerIds(Collection<Long> ownerIds) {
+        if (ownerIds == null) {
+            return Collections.emptyList();
+        }
+        return ownerIds.stream()
+            .filter(ownerId -> ownerId != null && ownerId > 0)
+            .distinct()
+            .collect(Collectors.toList());
+    }
+
+    private Mono<String> currentAuditor() {
+        return NtsSecurityUtils.getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(NtsConstants.SYSTEM));
+    }
+}
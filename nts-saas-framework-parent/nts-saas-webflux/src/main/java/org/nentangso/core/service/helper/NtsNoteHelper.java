@@ -0,0 +1,99 @@
+package org.nentangso.core.service.helper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsNoteEntity;
+import org.nentangso.core.repository.NtsNoteRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+@ConditionalOnProperty(
+    prefix = "nts.helper.note",
+    name = "enabled",
+    havingValue = "true"
+)
+@Service
+public class NtsNoteHelper {
+    private final NtsNoteRepository noteRepository;
+
+    public NtsNoteHelper(NtsNoteRepository noteRepository) {
+        this.noteRepository = noteRepository;
+    }
+
+    public Mono<String> findNoteById(@NotNull @Min(1) Long id) {
+        if (id == null || id <= 0) {
+            return Mono.empty();
+        }
+        return noteRepository.findById(id).map(NtsNoteEntity::getNote);
+    }
+
+    public Mono<Map<Long, String>> findAllNoteById(Collection<@NotNull @Min(1) Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return noteRepository.findAllById(ids)
+            .collectMap(NtsNoteEntity::getId, NtsNoteEntity::getNote);
+    }
+
+    @Transactional
+    public Mono<NtsNoteEntity> save(String note, Long id) {
+        if (StringUtils.isEmpty(note)) {
+            if (Objects.nonNull(id)) {
+                return noteRepository.deleteById(id).then(Mono.empty());
+            }
+            return Mono.empty();
+        }
+        if (Objects.isNull(id)) {
+            return saveNote(note, new NtsNoteEntity());
+        }
+        return noteRepository.findById(id)
+            .switchIfEmpty(Mono.error(NtsNotFoundException::new))
+            .flatMap(noteEntity -> StringUtils.equals(noteEntity.getNote(), note)
+                ? Mono.just(noteEntity)
+                : saveNote(note, noteEntity));
+    }
+
+    @Transactional
+    public Mono<NtsNoteEntity> save(String note, NtsNoteEntity noteEntity) {
+        if (StringUtils.isEmpty(note)) {
+            if (Objects.nonNull(noteEntity) && Objects.nonNull(noteEntity.getId())) {
+                return noteRepository.deleteById(noteEntity.getId()).then(Mono.empty());
+            }
+            return Mono.empty();
+        }
+        if (Objects.isNull(noteEntity) || Objects.isNull(noteEntity.getId())) {
+            noteEntity = new NtsNoteEntity();
+        }
+        if (StringUtils.equals(noteEntity.getNote(), note)) {
+            return Mono.just(noteEntity);
+        }
+        return saveNote(note, noteEntity);
+    }
+
+    private Mono<NtsNoteEntity> saveNote(String note, NtsNoteEntity noteEntity) {
+        return NtsSecurityUtils.getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(NtsConstants.SYSTEM))
+            .flatMap(login -> {
+                if (noteEntity.getCreatedBy() == null) {
+                    noteEntity.setCreatedBy(login);
+                }
+                noteEntity.setUpdatedBy(login);
+                noteEntity.setUpdatedAt(Instant.now());
+                noteEntity.setNote(note);
+                return noteRepository.save(noteEntity);
+            });
+    }
+}
@@ -0,0 +1,304 @@
+package org.nentangso.core.service.helper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsOptionEntity;
+import org.nentangso.core.repository.NtsOptionRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.nentangso.core.service.helper.option.NtsOptionBinder;
+import org.nentangso.core.service.helper.option.NtsOptionDiff;
+import org.nentangso.core.service.helper.option.NtsOptionWatch;
+import org.nentangso.core.service.helper.option.NtsOptionWatchFlux;
+import org.nentangso.core.service.utils.NtsCollectionUtils;
+import org.nentangso.core.service.utils.NtsValidationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@ConditionalOnProperty(
+    prefix = "nts.helper.option",
+    name = "enabled",
+    havingValue = "true"
+)
+@Service
+public class NtsOptionHelper {
+    private static final Logger log = LoggerFactory.getLogger(NtsOptionHelper.class);
+    private static final int DELETE_CHUNK_SIZE = 500;
+
+    private final NtsOptionRepository optionRepository;
+    private final Map<Class<?>, NtsOptionWatch<?>> watches = new ConcurrentHashMap<>();
+
+    public NtsOptionHelper(NtsOptionRepository optionRepository) {
+        this.optionRepository = optionRepository;
+    }
+
+    public Mono<String> readRawString(String optionKey) {
+        if (StringUtils.isBlank(optionKey)) {
+            return Mono.empty();
+        }
+        return optionRepository.findByOptionKeyIn(Collections.singleton(optionKey))
+            .filter(option -> option.getOptionValue() != null)
+            .map(NtsOptionEntity::getOptionValue)
+            .next();
+    }
+
+    @Transactional
+    public Mono<Void> writeRawString(String optionKey, String optionValue) {
+        if (StringUtils.isBlank(optionKey)) {
+            return Mono.error(new NtsValidationException("option_key", "Option key is invalid"));
+        }
+        return Mono.zip(
+                optionRepository.findByOptionKeyIn(Collections.singleton(optionKey))
+                    .next()
+                    .defaultIfEmpty(new NtsOptionEntity(optionKey, optionValue)),
+                currentAuditor()
+            )
+            .flatMap(tuple -> {
+                NtsOptionEntity option = tuple.getT1();
+                Instant now = Instant.now();
+                if (option.getId() == null) {
+                    option.setCreatedBy(tuple.getT2());
+                    option.setCreatedAt(now);
+                }
+                option.setUpdatedBy(tuple.getT2());
+                option.setUpdatedAt(now);
+                option.setOptionValue(optionValue);
+                return optionRepository.save(option);
+            })
+            .then(Mono.defer(() -> refreshWatchesAfterCompletion(Collections.singleton(optionKey))));
+    }
+
+    public Mono<Boolean> readBoolean(String optionKey) {
+        return readRawString(optionKey)
+            .map(Boolean::parseBoolean);
+    }
+
+    @Transactional
+    public Mono<Void> writeBoolean(String optionKey, Boolean value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<Long> readLong(String optionKey) {
+        return readRawString(optionKey)
+            .map(Long::parseLong);
+    }
+
+    @Transactional
+    public Mono<Void> writeLong(String optionKey, Long value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<Integer> readInteger(String optionKey) {
+        return readRawString(optionKey)
+            .map(Integer::parseInt);
+    }
+
+    @Transactional
+    public Mono<Void> writeInteger(String optionKey, Integer value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<Float> readFloat(String optionKey) {
+        return readRawString(optionKey)
+            .map(Float::parseFloat);
+    }
+
+    @Transactional
+    public Mono<Void> writeFloat(String optionKey, Float value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<Double> readDouble(String optionKey) {
+        return readRawString(optionKey)
+            .map(Double::parseDouble);
+    }
+
+    @Transactional
+    public Mono<Void> writeDouble(String optionKey, Double value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<UUID> readUUID(String optionKey) {
+        return readRawString(optionKey)
+            .map(UUID::fromString);
+    }
+
+    @Transactional
+    public Mono<Void> writeUUID(String optionKey, UUID value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public Mono<BigDecimal> readBigDecimal(String optionKey) {
+        return readRawString(optionKey)
+            .map(BigDecimal::new);
+    }
+
+    @Transactional
+    public Mono<Void> writeBigDecimal(String optionKey, BigDecimal value) {
+        String rawString = value == null ? null : String.valueOf(value);
+        return writeRawString(optionKey, rawString);
+    }
+
+    public <T> Mono<T> read(Class<T> clazz) {
+        if (clazz == null) {
+            log.warn("Class cannot be null");
+            return Mono.empty();
+        }
+        NtsOptionBinder<T> binder = NtsOptionBinder.of(clazz);
+        if (!binder.isAnnotated()) {
+            log.warn("Class must has annotation OptionProperties");
+        }
+        if (!binder.isInstantiable()) {
+            log.warn("Class must has constructor without parameters");
+            return Mono.empty();
+        }
+        return optionRepository.findByOptionKeyIn(binder.getOptionKeys())
+            .collectList()
+            .map(options -> {
+                Map<String, List<String>> values = new HashMap<>();
+                for (NtsOptionEntity option : options) {
+                    values.computeIfAbsent(option.getOptionKey(), k -> new ArrayList<>(1)).add(option.getOptionValue());
+                }
+                T output = binder.read(values);
+                NtsValidationUtils.validateObject(output);
+                return output;
+            });
+    }
+
+    @Transactional
+    @SuppressWarnings("unchecked")
+    public <T> Mono<Void> write(T configuration) {
+        if (configuration == null) {
+            log.warn("Configuration cannot be null");
+            return Mono.empty();
+        }
+        NtsValidationUtils.validateObject(configuration);
+        NtsOptionBinder<T> binder = NtsOptionBinder.of((Class<T>) configuration.getClass());
+        if (!binder.isAnnotated()) {
+            log.warn("Class must has annotation OptionProperties");
+        }
+        List<NtsOptionEntity> options = new ArrayList<>();
+        binder.write(configuration, (optionKey, rawValue) -> options.add(new NtsOptionEntity(optionKey, rawValue)));
+        return save(binder.getOptionKeys(), options)
+            .then(Mono.defer(() -> refreshWatchesAfterCompletion(binder.getOptionKeys())));
+    }
+
+    /**
+     * Watch an options class: the returned instance is replaced, and its listeners called, when one of its options is
+     * changed through this helper on this node.
+     *
+     * @param clazz the options class
+     * @return the live options, shared by all callers, each of them gets its own copy of the instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<NtsOptionWatch<T>> watch(Class<T> clazz) {
+        NtsOptionWatch<T> watch = (NtsOptionWatch<T>) watches.get(clazz);
+        if (watch != null) {
+            return Mono.just(watch);
+        }
+        return read(clazz)
+            .switchIfEmpty(Mono.error(() -> new IllegalArgumentException(String.format("Class %s can not be watched", clazz))))
+            .map(initial -> (NtsOptionWatch<T>) watches.computeIfAbsent(clazz, key -> new NtsOptionWatch<>(NtsOptionBinder.of(clazz), initial)));
+    }
+
+    /**
+     * @param clazz the options class
+     * @return the current options, then each change of them
+     * @see #watch(Class)
+     */
+    public <T> Flux<T> watchValues(Class<T> clazz) {
+        return watch(clazz).flatMapMany(NtsOptionWatchFlux::from);
+    }
+
+    private Mono<Void> save(Set<String> optionKeys, List<NtsOptionEntity> options) {
+        return Mono.zip(optionRepository.findByOptionKeyIn(optionKeys).collectList(), currentAuditor())
+            .flatMap(tuple -> {
+                NtsOptionDiff<NtsOptionEntity> diff = NtsOptionDiff.of(tuple.getT1(), options, NtsOptionEntity::getOptionKey, NtsOptionEntity::getOptionValue);
+                if (diff.isEmpty()) {
+                    return Mono.empty();
+                }
+                List<Long> removedIds = diff.getRemoved().stream()
+                    .map(NtsOptionEntity::getId)
+                    .collect(Collectors.toList());
+                Instant now = Instant.now();
+                for (NtsOptionEntity option : diff.getAdded()) {
+                    option.setCreatedBy(tuple.getT2());
+                    option.setCreatedAt(now);
+                    option.setUpdatedBy(tuple.getT2());
+                    option.setUpdatedAt(now);
+                }
+                return Flux.fromStream(NtsCollectionUtils.chunks(removedIds, DELETE_CHUNK_SIZE))
+                    .concatMap(optionRepository::softDeleteAllByIdIn)
+                    .then(optionRepository.insertAll(diff.getAdded()))
+                    .then();
+            });
+    }
+
+    /**
+     * Refresh the affected watches once the current transaction completes, or now without transaction.
+     */
+    private Mono<Void> refreshWatchesAfterCompletion(Set<String> optionKeys) {
+        if (watches.isEmpty()) {
+            return Mono.empty();
+        }
+        return TransactionSynchronizationManager.forCurrentTransaction()
+            .flatMap(synchronizationManager -> {
+                if (!synchronizationManager.isSynchronizationActive()) {
+                    return refreshWatches(optionKeys);
+                }
+                synchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public Mono<Void> afterCompletion(int status) {
+                        return refreshWatches(optionKeys);
+                    }
+                });
+                return Mono.<Void>empty();
+            })
+            .onErrorResume(NoTransactionException.class, e -> refreshWatches(optionKeys));
+    }
+
+    private Mono<Void> refreshWatches(Set<String> optionKeys) {
+        return Flux.fromIterable(watches.values())
+            .filter(watch -> watch.isAffectedBy(optionKeys))
+            .concatMap(this::refreshWatch)
+            .then();
+    }
+
+    private <T> Mono<Void> refreshWatch(NtsOptionWatch<T> watch) {
+        return Mono.defer(() -> {
+                long refresh = watch.startRefresh();
+                return read(watch.getType())
+                    .doOnNext(value -> watch.update(value, refresh));
+            })
+            .onErrorResume(e -> {
+                log.warn("Cannot refresh options {}", watch.getType().getName(), e);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    private Mono<String> currentAuditor() {
+        return NtsSecurityUtils.getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(NtsConstants.SYSTEM));
+    }
+}
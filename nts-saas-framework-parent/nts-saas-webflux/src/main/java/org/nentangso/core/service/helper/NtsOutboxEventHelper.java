@@ -0,0 +1,86 @@
+package org.nentangso.core.service.helper;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsOutboxEventEntity;
+import org.nentangso.core.repository.NtsOutboxEventRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@ConditionalOnProperty(
+    prefix = "nts.helper.outbox-event",
+    name = "enabled",
+    havingValue = "true"
+)
+@Service
+public class NtsOutboxEventHelper {
+    private final NtsOutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+
+    public NtsOutboxEventHelper(NtsOutboxEventRepository outboxEventRepository, ObjectMapper objectMapper) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Queue one event per payload with batched inserts.
+     */
+    @Transactional
+    public Mono<Void> batchQueue(String aggregateType, String eventType, List<?> payloads) {
+        if (payloads == null || payloads.isEmpty()) return Mono.empty();
+        return currentActor()
+            .flatMap(actor -> Mono.fromCallable(() -> {
+                List<NtsOutboxEventEntity> outboxEvents = new ArrayList<>(payloads.size());
+                for (Object payload : payloads) {
+                    outboxEvents.add(toOutboxEvent(aggregateType, UUID.randomUUID().toString(), eventType, payload, actor, NtsConstants.DEFAULT_VERSION, NtsConstants.DEFAULT_BUSINESS_VERSION));
+                }
+                return outboxEvents;
+            }))
+            .flatMap(outboxEventRepository::insertAll)
+            .then();
+    }
+
+    @Transactional
+    public Mono<Void> queue(String aggregateType, String eventType, Object payload) {
+        return queue(aggregateType, UUID.randomUUID().toString(), eventType, payload, NtsConstants.DEFAULT_VERSION);
+    }
+
+    @Transactional
+    public Mono<Void> queue(String aggregateType, String aggregateId, String eventType, Object payload, int aggregateVersion) {
+        return currentActor()
+            .flatMap(actor -> queue(aggregateType, aggregateId, eventType, payload, actor, aggregateVersion, NtsConstants.DEFAULT_BUSINESS_VERSION));
+    }
+
+    @Transactional
+    public Mono<Void> queue(String aggregateType, String aggregateId, String eventType, Object payload, String actor, int aggregateVersion, int businessVersion) {
+        return Mono.fromCallable(() -> toOutboxEvent(aggregateType, aggregateId, eventType, payload, actor, aggregateVersion, businessVersion))
+            .flatMap(outboxEventRepository::save)
+            .then();
+    }
+
+    private NtsOutboxEventEntity toOutboxEvent(String aggregateType, String aggregateId, String eventType, Object payload, String actor, int aggregateVersion, int businessVersion) throws IOException {
+        NtsOutboxEventEntity outboxEvent = new NtsOutboxEventEntity();
+        String payloadJson = payload instanceof String ? (String) payload : objectMapper.writeValueAsString(payload);
+        outboxEvent.setAggregateType(aggregateType);
+        outboxEvent.setAggregateId(aggregateId);
+        outboxEvent.setEventType(eventType);
+        outboxEvent.setPayload(payloadJson);
+        outboxEvent.setActor(actor);
+        outboxEvent.setAggregateVersion(aggregateVersion);
+        outboxEvent.setBusinessVersion(businessVersion);
+        return outboxEvent;
+    }
+
+    private Mono<String> currentActor() {
+        return NtsSecurityUtils.getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(NtsConstants.SYSTEM));
+    }
+}
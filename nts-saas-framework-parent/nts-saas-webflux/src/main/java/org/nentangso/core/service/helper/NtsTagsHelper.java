@@ -0,0 +1,121 @@
+package org.nentangso.core.service.helper;
+
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.config.NtsConstants;
+import org.nentangso.core.domain.NtsTagsEntity;
+import org.nentangso.core.repository.NtsTagsRepository;
+import org.nentangso.core.security.NtsSecurityUtils;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.utils.NtsTextUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+import reactor.core.publisher.Mono;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.time.Instant;
+import java.util.*;
+
+@ConditionalOnProperty(
+    prefix = "nts.helper.tag",
+    name = "enabled",
+    havingValue = "true"
+)
+@Component
+public class NtsTagsHelper {
+    private final NtsTagsRepository tagsRepository;
+
+    public NtsTagsHelper(NtsTagsRepository tagsRepository) {
+        this.tagsRepository = tagsRepository;
+    }
+
+    public Mono<Set<@NotNull String>> findTagsById(@NotNull @Min(1) Long id) {
+        if (id == null || id <= 0) {
+            return Mono.just(Collections.emptySet());
+        }
+        return tagsRepository.findById(id)
+            .map(NtsTagsEntity::getTags)
+            .map(NtsTextUtils::splitTags)
+            .defaultIfEmpty(Collections.emptySet());
+    }
+
+    public Mono<String> findJoinedTagsById(@NotNull @Min(1) Long id) {
+        if (id == null || id <= 0) {
+            return Mono.empty();
+        }
+        return tagsRepository.findById(id).map(NtsTagsEntity::getTags);
+    }
+
+    public Mono<Map<Long, Set<String>>> findAllTagsById(Collection<@NotNull @Min(1) Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return tagsRepository.findAllById(ids)
+            .collectMap(NtsTagsEntity::getId, v -> NtsTextUtils.splitTags(v.getTags()));
+    }
+
+    public Mono<Map<Long, String>> findAllJoinedTagsById(Collection<@NotNull @Min(1) Long> ids) {
+        if (CollectionUtils.isEmpty(ids)) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return tagsRepository.findAllById(ids)
+            .collectMap(NtsTagsEntity::getId, NtsTagsEntity::getTags);
+    }
+
+    @Transactional
+    public Mono<NtsTagsEntity> save(Set<String> tags, Long id) {
+        String joinedTags = NtsTextUtils.joinTags(tags);
+        return save(joinedTags, id);
+    }
+
+    @Transactional
+    public Mono<NtsTagsEntity> save(String joinedTags, Long id) {
+        if (StringUtils.isEmpty(joinedTags)) {
+            if (Objects.nonNull(id)) {
+                return tagsRepository.deleteById(id).then(Mono.empty());
+            }
+            return Mono.empty();
+        }
+        if (Objects.isNull(id)) {
+            return saveTags(joinedTags, new NtsTagsEntity());
+        }
+        return tagsRepository.findById(id)
+            .switchIfEmpty(Mono.error(NtsNotFoundException::new))
+            .flatMap(tagsEntity -> StringUtils.equals(tagsEntity.getTags(), joinedTags)
+                ? Mono.just(tagsEntity)
+                : saveTags(joinedTags, tagsEntity));
+    }
+
+    @Transactional
+    public Mono<NtsTagsEntity> save(String joinedTags, NtsTagsEntity tagsEntity) {
+        if (StringUtils.isEmpty(joinedTags)) {
+            if (Objects.nonNull(tagsEntity) && Objects.nonNull(tagsEntity.getId())) {
+                return tagsRepository.deleteById(tagsEntity.getId()).then(Mono.empty());
+            }
+            return Mono.empty();
+        }
+        if (Objects.isNull(tagsEntity) || Objects.isNull(tagsEntity.getId())) {
+            tagsEntity = new NtsTagsEntity();
+        }
+        if (StringUtils.equals(tagsEntity.getTags(), joinedTags)) {
+            return Mono.just(tagsEntity);
+        }
+        return saveTags(joinedTags, tagsEntity);
+    }
+
+    private Mono<NtsTagsEntity> saveTags(String joinedTags, NtsTagsEntity tagsEntity) {
+        return NtsSecurityUtils.getCurrentUserLogin()
+            .switchIfEmpty(Mono.just(NtsConstants.SYSTEM))
+            .flatMap(login -> {
+                if (tagsEntity.getCreatedBy() == null) {
+                    tagsEntity.setCreatedBy(login);
+                }
+                tagsEntity.setUpdatedBy(login);
+                tagsEntity.setUpdatedAt(Instant.now());
+                tagsEntity.setTags(joinedTags);
+                return tagsRepository.save(tagsEntity);
+            });
+    }
+}
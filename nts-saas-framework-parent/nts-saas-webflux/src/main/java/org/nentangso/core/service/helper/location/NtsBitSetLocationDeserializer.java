@@ -2,74 +2,83 @@ package org.nentangso.core.service.helper.location;
 
 import org.nentangso.core.security.NtsSecurityUtils;
 import org.nentangso.core.service.dto.NtsLocationDTO;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.Min;
-import java.util.Base64;
-import java.util.BitSet;
-import java.util.Collections;
+import java.time.Instant;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class NtsBitSetLocationDeserializer implements NtsLocationDeserializer {
     public static final String DESERIALIZER_NAME = "org.nentangso.core.service.helper.location.NtsBitSetLocationDeserializer";
 
+    private static final String CLAIM_TOKEN_ID = "jti";
+    private static final String CLAIM_EXPIRES_AT = "exp";
+
     private final NtsLocationProvider<? extends NtsLocationDTO> locationProvider;
     private final String bitSetClaim;
+    private final NtsLocationGrantsCache grantsCache;
 
     public NtsBitSetLocationDeserializer(NtsLocationProvider<? extends NtsLocationDTO> locationProvider, String bitSetClaim) {
+        this(locationProvider, bitSetClaim, NtsLocationGrantsCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public NtsBitSetLocationDeserializer(NtsLocationProvider<? extends NtsLocationDTO> locationProvider, String bitSetClaim, int cacheSize) {
         this.locationProvider = locationProvider;
         this.bitSetClaim = bitSetClaim;
+        this.grantsCache = new NtsLocationGrantsCache(cacheSize);
     }
 
     @Override
     public Mono<Set<Long>> getGrantedLocationIds() {
-        return getCurrentUserLocationBitSet()
-            .flatMap(bitSet -> {
-                if (isGrantedAllLocations(bitSet)) {
+        return getGrantedLocations()
+            .flatMap(grants -> {
+                if (grants.isGrantedAll()) {
                     return locationProvider.findAllIds();
                 }
-                if (bitSet.length() <= 1) {
-                    return Mono.just(Collections.emptySet());
-                }
-                return Flux.range(1, bitSet.length() - 1)
-                    .filter(bitSet::get)
-                    .map(Integer::toUnsignedLong)
-                    .collect(Collectors.toSet());
+                return Mono.just(grants.getIds());
             });
     }
 
-    private Mono<BitSet> getCurrentUserLocationBitSet() {
-        return NtsSecurityUtils.getCurrentUserClaim(bitSetClaim)
-            .map(this::parseBitSet)
-            .switchIfEmpty(Mono.just(new BitSet()));
+    /**
+     * Get the grants of current user, decoded once per token.
+     *
+     * @return the grants, {@link NtsLocationGrants#EMPTY} when the claim is missing
+     */
+    @Override
+    public Mono<NtsLocationGrants> getGrantedLocations() {
+        return NtsSecurityUtils.getCurrentUserClaims()
+            .map(this::getGrants)
+            .defaultIfEmpty(NtsLocationGrants.EMPTY);
     }
 
-    private BitSet parseBitSet(Object input) {
-        if (input instanceof String) {
-            byte[] bytes = Base64.getDecoder().decode((String) input);
-            return BitSet.valueOf(bytes);
+    private NtsLocationGrants getGrants(Map<String, Object> claims) {
+        Object input = claims.get(bitSetClaim);
+        if (!(input instanceof String)) {
+            return NtsLocationGrants.EMPTY;
         }
-        return new BitSet();
+        Object tokenId = claims.get(CLAIM_TOKEN_ID);
+        Object expiresAt = claims.get(CLAIM_EXPIRES_AT);
+        return grantsCache.get(
+            tokenId != null ? tokenId.toString() : null,
+            (String) input,
+            expiresAt instanceof Instant ? (Instant) expiresAt : null,
+            NtsLocationGrants::decode
+        );
     }
 
     @Override
     public Mono<Boolean> isGrantedAllLocations() {
-        return getCurrentUserLocationBitSet()
-            .map(this::isGrantedAllLocations);
-    }
-
-    private boolean isGrantedAllLocations(BitSet bitSet) {
-        return bitSet.length() > 0 && bitSet.get(0);
+        return getGrantedLocations()
+            .map(NtsLocationGrants::isGrantedAll);
     }
 
     @Override
     public Mono<Boolean> isGrantedAnyLocations(Iterable<Long> ids) {
-        return getCurrentUserLocationBitSet()
-            .map(bitSet -> StreamSupport.stream(ids.spliterator(), false).anyMatch(id -> isGrantedLocation(bitSet, id)));
+        return getGrantedLocations()
+            .map(grants -> grants.isGrantedAny(ids));
     }
 
     @Override
@@ -80,15 +89,7 @@ public class NtsBitSetLocationDeserializer implements NtsLocationDeserializer {
 
     @Override
     public Mono<Boolean> isGrantedLocation(@Min(1L) Long id) {
-        return getCurrentUserLocationBitSet()
-            .map(bitSet -> isGrantedLocation(bitSet, id));
-    }
-
-    private boolean isGrantedLocation(BitSet bitSet, Long id) {
-        if (id == null || id <= 0) {
-            return false;
-        }
-        return isGrantedAllLocations(bitSet)
-            || (id.intValue() < bitSet.length() && bitSet.get(id.intValue()));
+        return getGrantedLocations()
+            .map(grants -> grants.isGranted(id));
     }
 }
@@ -1,58 +1,583 @@
 package org.nentangso.core.service.helper.location;
 
 import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.LocationProperties.CacheProperties;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
-import org.redisson.api.RBucketReactive;
-import org.redisson.api.RedissonReactiveClient;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import org.redisson.api.*;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.LongCodec;
+import org.redisson.client.protocol.Encoder;
+import org.redisson.codec.CompositeCodec;
 import org.redisson.codec.SerializationCodec;
 import org.redisson.jcache.configuration.RedissonConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 
 import javax.cache.configuration.Configuration;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class NtsDefaultLocationCacheable {
+    private static final Logger log = LoggerFactory.getLogger(NtsDefaultLocationCacheable.class);
+    /**
+     * Bump the snapshot generation and put one location into a populated hash, a hash that has expired is left for the
+     * next load.
+     */
+    private static final String PATCH_HASH_SCRIPT =
+        "redis.call('incr', KEYS[3]) " +
+            "if redis.call('exists', KEYS[2]) == 0 then return 0 end " +
+            "redis.call('hset', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('sadd', KEYS[2], ARGV[1]) " +
+            "return 1";
+
     private final NtsProperties ntsProperties;
     private final RedissonReactiveClient redissonClient;
 
+    /**
+     * The in-process snapshot in front of the redis bucket, replaced as a whole on every load or invalidation.
+     */
+    private final AtomicReference<LocationSnapshot> nearCache = new AtomicReference<>();
+    /**
+     * The load in progress on this node, concurrent misses wait for it instead of calling the upstream again.
+     */
+    private final AtomicReference<CompletableFuture<Map<Long, NtsDefaultLocationDTO>>> inflight = new AtomicReference<>();
+    private final String instanceId = UUID.randomUUID().toString();
+    /**
+     * The owner id of the reload claims of this node, so a node that claims again within its lease keeps the claim.
+     */
+    private final long reloadLockId = ThreadLocalRandom.current().nextLong();
+    private final Codec codec;
+    private final Codec hashCodec;
+
     public NtsDefaultLocationCacheable(NtsProperties ntsProperties, Configuration<Object, Object> jcacheConfiguration) {
         this.ntsProperties = ntsProperties;
         this.redissonClient = ((RedissonConfiguration<?, ?>) jcacheConfiguration).getRedisson().reactive();
+        this.codec = createCodec();
+        this.hashCodec = new CompositeCodec(LongCodec.INSTANCE, codec, codec);
+        subscribeInvalidation();
+    }
+
+    private Codec createCodec() {
+        String codecName = ntsProperties.getHelper().getLocation().getCache().getCodec();
+        try {
+            Class<?> clazz = codecName != null ? Class.forName(codecName) : SerializationCodec.class;
+            return (Codec) clazz.getDeclaredConstructor().newInstance();
+        } catch (Exception e) {
+            throw new RuntimeException(String.format(
+                "Configuration property nts.helper.location.cache.codec class %s can not be loaded.",
+                codecName
+            ), e);
+        }
+    }
+
+    private void subscribeInvalidation() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || !isNearCacheEnabled()) {
+            return;
+        }
+        getInvalidationTopic()
+            .addListener(String.class, (channel, publisherId) -> {
+                if (instanceId.equals(publisherId)) {
+                    return;
+                }
+                log.debug("Invalidate location near cache, publisher={}", publisherId);
+                nearCache.set(null);
+            })
+            .subscribe();
     }
 
+    /**
+     * Get all cached locations.
+     *
+     * @return the cached locations, empty when the cache is not populated
+     */
     public Mono<Map<Long, NtsDefaultLocationDTO>> getCacheLocations() {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return Mono.empty();
         }
-        final String cacheKey = generateCacheKey();
-        RBucketReactive<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        return bucket.get();
+        return Mono.defer(() -> {
+            LocationSnapshot snapshot = nearCache.get();
+            if (snapshot != null && !snapshot.isExpired()) {
+                return Mono.just(snapshot.getLocations());
+            }
+            Mono<Map<Long, NtsDefaultLocationDTO>> items = isHashStorage()
+                ? getHash().readAllMap()
+                : getBucket().get();
+            return items
+                .filter(f -> !f.isEmpty())
+                .map(this::storeNearCache);
+        });
+    }
+
+    /**
+     * Get cached locations by ids, without reading the other locations when the storage is {@link CacheProperties.Storage#HASH}.
+     *
+     * @param ids the location ids
+     * @return the found locations, empty when the cache is not populated
+     */
+    public Mono<Map<Long, NtsDefaultLocationDTO>> getCacheLocations(Collection<Long> ids) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            LocationSnapshot snapshot = nearCache.get();
+            if (snapshot != null && !snapshot.isExpired()) {
+                return Mono.just(subMap(snapshot.getLocations(), ids));
+            }
+            if (!isHashStorage()) {
+                return getCacheLocations()
+                    .map(items -> subMap(items, ids));
+            }
+            Set<Long> keys = ids.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+            Mono<Map<Long, NtsDefaultLocationDTO>> items = keys.isEmpty()
+                ? Mono.just(Collections.emptyMap())
+                : getHash().getAll(keys);
+            return items.flatMap(f -> {
+                if (!f.isEmpty()) {
+                    return Mono.just(f);
+                }
+                return getIdSet().isExists()
+                    .filter(Boolean::booleanValue)
+                    .map(exists -> f);
+            });
+        });
+    }
+
+    /**
+     * Get cached location ids.
+     *
+     * @return the ids, empty when the cache is not populated
+     */
+    public Mono<Set<Long>> getCacheLocationIds() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.defer(() -> {
+            LocationSnapshot snapshot = nearCache.get();
+            if (snapshot != null && !snapshot.isExpired()) {
+                return Mono.just(snapshot.getLocations().keySet());
+            }
+            if (!isHashStorage()) {
+                return getCacheLocations()
+                    .map(Map::keySet);
+            }
+            return getIdSet().readAll()
+                .filter(ids -> !ids.isEmpty())
+                .map(Collections::unmodifiableSet);
+        });
+    }
+
+    /**
+     * Get all cached locations, or load them once on a cache miss.
+     * <p>
+     * Concurrent misses on this node share a single subscription of the loader, which is not cancelled when one of the
+     * callers cancels. When {@code nts.helper.location.cache.lock.enabled} is set, the loading node also holds a redis
+     * lock, so the other nodes wait for it and read the cache instead of calling the upstream too.
+     *
+     * @param loader load the locations from the upstream
+     * @return the cached or loaded locations
+     */
+    public Mono<Map<Long, NtsDefaultLocationDTO>> getOrLoadCacheLocations(Supplier<Mono<Map<Long, NtsDefaultLocationDTO>>> loader) {
+        return getCacheLocations()
+            .switchIfEmpty(Mono.defer(() -> {
+                CompletableFuture<Map<Long, NtsDefaultLocationDTO>> future = new CompletableFuture<>();
+                CompletableFuture<Map<Long, NtsDefaultLocationDTO>> current = inflight.compareAndExchange(null, future);
+                if (current != null) {
+                    return Mono.fromFuture(current.copy());
+                }
+                getCacheLocations()
+                    .switchIfEmpty(Mono.defer(() -> loadWithLock(loader)))
+                    .doFinally(signal -> inflight.compareAndSet(future, null))
+                    .subscribe(future::complete, future::completeExceptionally, () -> future.complete(Collections.emptyMap()));
+                return Mono.fromFuture(future.copy());
+            }));
+    }
+
+    private Mono<Map<Long, NtsDefaultLocationDTO>> loadWithLock(Supplier<Mono<Map<Long, NtsDefaultLocationDTO>>> loader) {
+        CacheProperties.LockProperties lockProperties = ntsProperties.getHelper().getLocation().getCache().getLock();
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || !lockProperties.isEnabled()) {
+            return loadAndStore(loader);
+        }
+        RLockReactive lock = redissonClient.getLock(generateLockKey());
+        // reactive locks are owned by an explicit id instead of the calling thread
+        long lockId = ThreadLocalRandom.current().nextLong();
+        return lock.tryLock(lockProperties.getWaitTime(), lockProperties.getLeaseTime(), TimeUnit.SECONDS, lockId)
+            .flatMap(locked -> {
+                if (!locked) {
+                    log.warn("Could not acquire location load lock in {}s, load without it", lockProperties.getWaitTime());
+                    return loadAndStore(loader);
+                }
+                return getCacheLocations()
+                    .switchIfEmpty(Mono.defer(() -> loadAndStore(loader)))
+                    .flatMap(items -> unlock(lock, lockId).thenReturn(items))
+                    .onErrorResume(e -> unlock(lock, lockId).then(Mono.error(e)));
+            });
+    }
+
+    /**
+     * A location written through while the loader runs may be missing from the loaded snapshot, so the snapshot is
+     * dropped again when the generation changed during the load and the next read loads it from the upstream.
+     */
+    private Mono<Map<Long, NtsDefaultLocationDTO>> loadAndStore(Supplier<Mono<Map<Long, NtsDefaultLocationDTO>>> loader) {
+        return getSnapshotGeneration()
+            .flatMap(generation -> loader.get()
+                .filter(items -> !items.isEmpty())
+                .flatMap(this::setCacheLocations)
+                .flatMap(items -> getSnapshotGeneration()
+                    .flatMap(current -> {
+                        if (current == generation.longValue()) {
+                            return Mono.just(items);
+                        }
+                        log.debug("Locations were written while loading, drop the loaded snapshot");
+                        return clearCacheLocations().thenReturn(items);
+                    })))
+            .defaultIfEmpty(Collections.emptyMap());
+    }
+
+    private Mono<Long> getSnapshotGeneration() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return Mono.just(0L);
+        }
+        return getGeneration().get();
+    }
+
+    /**
+     * Load the locations and replace the cache, whether it is populated or not.
+     *
+     * @param loader load the locations from the upstream
+     * @return the loaded locations, empty map when the loader returned nothing and the cache was kept
+     */
+    public Mono<Map<Long, NtsDefaultLocationDTO>> reloadCacheLocations(Supplier<Mono<Map<Long, NtsDefaultLocationDTO>>> loader) {
+        return loadAndStore(loader);
+    }
+
+    /**
+     * Extend the expiration of the cached locations, so they are still served while they can not be reloaded.
+     *
+     * @return true if the cache is populated
+     */
+    public Mono<Boolean> extendCacheLocations() {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
+            return Mono.just(false);
+        }
+        if (!isHashStorage()) {
+            return getBucket().expire(Duration.ofSeconds(getExpiration()));
+        }
+        return getHash().expire(Duration.ofSeconds(getExpiration()))
+            .flatMap(extended -> getIdSet().expire(Duration.ofSeconds(getExpiration())).thenReturn(extended));
+    }
+
+    /**
+     * Claim the background reload of the current interval, so the nodes do not all reload the shared snapshot.
+     * <p>
+     * The claim is a redis lock taken without waiting and leased for the interval, it is never released and the next
+     * interval is claimed after the lease expires.
+     *
+     * @param interval the refresh interval in seconds
+     * @return true if this node should reload, always true when the cache or the lock is disabled
+     */
+    public Mono<Boolean> tryClaimReload(long interval) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()
+            || !ntsProperties.getHelper().getLocation().getCache().getLock().isEnabled()) {
+            return Mono.just(true);
+        }
+        return redissonClient.getLock(generateReloadLockKey()).tryLock(0, interval, TimeUnit.SECONDS, reloadLockId);
+    }
+
+    private static Mono<Void> unlock(RLockReactive lock, long lockId) {
+        return lock.unlock(lockId)
+            .onErrorResume(e -> {
+                log.warn("Could not release location load lock, it expires by lease time", e);
+                return Mono.empty();
+            });
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> subMap(Map<Long, NtsDefaultLocationDTO> items, Collection<Long> ids) {
+        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            NtsDefaultLocationDTO item = id != null ? items.get(id) : null;
+            if (item != null) {
+                result.put(id, item);
+            }
+        }
+        return result;
     }
 
     private String generateCacheKey() {
         return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_by_id";
     }
 
-    private Long getExpiration() {
+    private String generateHashKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "location_hash";
+    }
+
+    private String generateIdSetKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "location_ids";
+    }
+
+    private String generateGenerationKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_generation";
+    }
+
+    private String generateLockKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_lock";
+    }
+
+    private String generateReloadLockKey() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_reload_lock";
+    }
+
+    private String generateTopicName() {
+        return ntsProperties.getHelper().getLocation().getCache().getKeyPrefix() + "locations_invalidation";
+    }
+
+    private RBucketReactive<Map<Long, NtsDefaultLocationDTO>> getBucket() {
+        return redissonClient.getBucket(generateCacheKey(), codec);
+    }
+
+    private RMapReactive<Long, NtsDefaultLocationDTO> getHash() {
+        return redissonClient.getMap(generateHashKey(), hashCodec);
+    }
+
+    private RSetReactive<Long> getIdSet() {
+        return redissonClient.getSet(generateIdSetKey(), LongCodec.INSTANCE);
+    }
+
+    private RAtomicLongReactive getGeneration() {
+        return redissonClient.getAtomicLong(generateGenerationKey());
+    }
+
+    private RTopicReactive getInvalidationTopic() {
+        return redissonClient.getTopic(generateTopicName());
+    }
+
+    /**
+     * @return the expiration in seconds of the cached locations
+     */
+    public Long getExpiration() {
         return ntsProperties.getHelper().getLocation().getCache().getExpiration();
     }
 
+    private boolean isHashStorage() {
+        return ntsProperties.getHelper().getLocation().getCache().getStorage() == CacheProperties.Storage.HASH;
+    }
+
+    private boolean isNearCacheEnabled() {
+        return ntsProperties.getHelper().getLocation().getCache().getNearCache().isEnabled();
+    }
+
+    private Map<Long, NtsDefaultLocationDTO> storeNearCache(Map<Long, NtsDefaultLocationDTO> items) {
+        Map<Long, NtsDefaultLocationDTO> locations = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+        if (isNearCacheEnabled()) {
+            long expiration = Math.min(
+                getExpiration(),
+                ntsProperties.getHelper().getLocation().getCache().getNearCache().getExpiration()
+            );
+            nearCache.set(new LocationSnapshot(locations, System.nanoTime() + TimeUnit.SECONDS.toNanos(expiration)));
+        }
+        return locations;
+    }
+
+    /**
+     * Get the entity tag of cached locations, see {@link NtsLocationVersion}.
+     * <p>
+     * The tag of the near cache snapshot is computed once and reused until the snapshot is replaced, other locations,
+     * like the ones read from redis when the near cache is disabled, are hashed on every call.
+     *
+     * @param locations the locations emitted by this cacheable
+     * @return the quoted entity tag
+     */
+    public String getCacheVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        LocationSnapshot snapshot = nearCache.get();
+        if (snapshot != null && snapshot.getLocations() == locations) {
+            return snapshot.getVersion();
+        }
+        return NtsLocationVersion.of(locations.values());
+    }
+
+    private Mono<Long> publishInvalidation() {
+        if (!isNearCacheEnabled()) {
+            return Mono.just(0L);
+        }
+        return getInvalidationTopic().publish(instanceId);
+    }
+
     public Mono<Map<Long, NtsDefaultLocationDTO>> setCacheLocations(Map<Long, NtsDefaultLocationDTO> items) {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return Mono.just(items);
         }
-        final String cacheKey = generateCacheKey();
-        RBucketReactive<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        return bucket.set(items, getExpiration(), TimeUnit.SECONDS).thenReturn(items);
+        Mono<?> write = isHashStorage()
+            ? replaceHash(items)
+            : getBucket().set(items, getExpiration(), TimeUnit.SECONDS);
+        return write
+            .then(publishInvalidation())
+            .then(Mono.fromSupplier(() -> storeNearCache(items)));
+    }
+
+    /**
+     * Write a created or updated location through to the cache, without reloading the other locations.
+     * <p>
+     * This node patches its near cache in place, the other nodes drop theirs and read the patched snapshot from redis.
+     * Nothing is written when the cache is not populated, the next load reads the location from the upstream. The
+     * snapshot generation is bumped in both cases, so a load that started before this write does not keep its result.
+     *
+     * @param location the written location
+     * @return true if the cache was patched
+     */
+    public Mono<Boolean> putCacheLocation(NtsDefaultLocationDTO location) {
+        if (!ntsProperties.getHelper().getLocation().getCache().isEnabled() || location == null || location.getId() == null) {
+            return Mono.just(false);
+        }
+        return Mono.defer(() -> isHashStorage() ? patchHash(location) : patchBucket(location))
+            .flatMap(patched -> {
+                if (!patched) {
+                    log.debug("Location cache is not populated, skip patch of location {}", location.getId());
+                    return Mono.just(false);
+                }
+                LocationSnapshot snapshot = nearCache.get();
+                if (snapshot != null && !snapshot.isExpired()) {
+                    Map<Long, NtsDefaultLocationDTO> items = new LinkedHashMap<>(snapshot.getLocations());
+                    items.put(location.getId(), location);
+                    storeNearCache(items);
+                }
+                return publishInvalidation().thenReturn(true);
+            });
+    }
+
+    private Mono<Boolean> patchHash(NtsDefaultLocationDTO location) {
+        return redissonClient.getScript(ByteArrayCodec.INSTANCE)
+            .<Boolean>eval(
+                RScript.Mode.READ_WRITE,
+                PATCH_HASH_SCRIPT,
+                RScript.ReturnType.BOOLEAN,
+                List.of(generateHashKey(), generateIdSetKey(), generateGenerationKey()),
+                location.getId().toString().getBytes(StandardCharsets.UTF_8),
+                encode(hashCodec.getMapValueEncoder(), location)
+            )
+            .map(Boolean.TRUE::equals);
+    }
+
+    /**
+     * The bucket is read, patched and written back under the load lock when it is enabled, so concurrent writers do not
+     * lose updates. The lock is mostly held by a load, which drops its result after this write, so the bucket is
+     * patched without the lock when it can not be acquired.
+     */
+    private Mono<Boolean> patchBucket(NtsDefaultLocationDTO location) {
+        CacheProperties.LockProperties lockProperties = ntsProperties.getHelper().getLocation().getCache().getLock();
+        if (!lockProperties.isEnabled()) {
+            return getGeneration().incrementAndGet()
+                .then(Mono.defer(() -> writeBucketPatch(location)));
+        }
+        RLockReactive lock = redissonClient.getLock(generateLockKey());
+        long lockId = ThreadLocalRandom.current().nextLong();
+        return getGeneration().incrementAndGet()
+            .then(lock.tryLock(lockProperties.getWaitTime(), lockProperties.getLeaseTime(), TimeUnit.SECONDS, lockId))
+            .flatMap(locked -> {
+                if (!locked) {
+                    log.warn("Could not acquire location load lock in {}s, patch the cache without it", lockProperties.getWaitTime());
+                    return writeBucketPatch(location);
+                }
+                return writeBucketPatch(location)
+                    .flatMap(patched -> unlock(lock, lockId).thenReturn(patched))
+                    .onErrorResume(e -> unlock(lock, lockId).then(Mono.error(e)));
+            });
+    }
+
+    private Mono<Boolean> writeBucketPatch(NtsDefaultLocationDTO location) {
+        return getBucket().get()
+            .filter(items -> !items.isEmpty())
+            .flatMap(items -> {
+                Map<Long, NtsDefaultLocationDTO> patched = new LinkedHashMap<>(items);
+                patched.put(location.getId(), location);
+                return getBucket().setIfExists(patched, getExpiration(), TimeUnit.SECONDS);
+            })
+            .defaultIfEmpty(false);
+    }
+
+    private static byte[] encode(Encoder encoder, Object value) {
+        ByteBuf buf = null;
+        try {
+            buf = encoder.encode(value);
+            return ByteBufUtil.getBytes(buf);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Location %s can not be encoded.", value), e);
+        } finally {
+            if (buf != null) {
+                buf.release();
+            }
+        }
+    }
+
+    /**
+     * Replace the hash and the id set in one MULTI/EXEC, readers never see a partially written snapshot.
+     */
+    private Mono<?> replaceHash(Map<Long, NtsDefaultLocationDTO> items) {
+        RBatchReactive batch = redissonClient.createBatch(BatchOptions.defaults()
+            .executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        RMapReactive<Long, NtsDefaultLocationDTO> hash = batch.getMap(generateHashKey(), hashCodec);
+        RSetReactive<Long> idSet = batch.getSet(generateIdSetKey(), LongCodec.INSTANCE);
+        hash.delete();
+        idSet.delete();
+        if (!items.isEmpty()) {
+            hash.putAll(items);
+            idSet.addAll(items.keySet());
+            hash.expire(Duration.ofSeconds(getExpiration()));
+            idSet.expire(Duration.ofSeconds(getExpiration()));
+        }
+        return batch.execute();
     }
 
     public Mono<Boolean> clearCacheLocations() {
         if (!ntsProperties.getHelper().getLocation().getCache().isEnabled()) {
             return Mono.just(true);
         }
-        final String cacheKey = generateCacheKey();
-        RBucketReactive<Map<Long, NtsDefaultLocationDTO>> bucket = redissonClient.getBucket(cacheKey, new SerializationCodec());
-        return bucket.delete();
+        Mono<Boolean> delete = isHashStorage()
+            ? redissonClient.getKeys().delete(generateHashKey(), generateIdSetKey()).map(count -> count > 0)
+            : getBucket().delete();
+        return Mono.fromRunnable(() -> nearCache.set(null))
+            .then(delete)
+            .flatMap(deleted -> publishInvalidation().thenReturn(deleted));
+    }
+
+    private static final class LocationSnapshot {
+        private final Map<Long, NtsDefaultLocationDTO> locations;
+        private final long expiresAt;
+        private volatile String version;
+
+        private LocationSnapshot(Map<Long, NtsDefaultLocationDTO> locations, long expiresAt) {
+            this.locations = locations;
+            this.expiresAt = expiresAt;
+        }
+
+        private Map<Long, NtsDefaultLocationDTO> getLocations() {
+            return locations;
+        }
+
+        private boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+
+        private String getVersion() {
+            String result = version;
+            if (result == null) {
+                result = NtsLocationVersion.of(locations.values());
+                version = result;
+            }
+            return result;
+        }
     }
 }
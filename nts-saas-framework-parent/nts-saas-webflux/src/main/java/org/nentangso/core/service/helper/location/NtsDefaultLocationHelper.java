@@ -6,24 +6,36 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.Min;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class NtsDefaultLocationHelper implements NtsLocationHelper {
     private final NtsLocationProvider<? extends NtsLocationDTO> locationProvider;
     private final NtsLocationDeserializer locationDeserializer;
+    private final String latitudeKey;
+    private final String longitudeKey;
+    private final AtomicReference<NtsLocationIndex<? extends NtsLocationDTO>> index = new AtomicReference<>();
 
     public NtsDefaultLocationHelper(
         NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
         NtsLocationDeserializer locationDeserializer
+    ) {
+        this(locationProvider, locationDeserializer, DEFAULT_LATITUDE_KEY, DEFAULT_LONGITUDE_KEY);
+    }
+
+    public NtsDefaultLocationHelper(
+        NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
+        NtsLocationDeserializer locationDeserializer,
+        String latitudeKey,
+        String longitudeKey
     ) {
         this.locationProvider = locationProvider;
         this.locationDeserializer = locationDeserializer;
+        this.latitudeKey = latitudeKey;
+        this.longitudeKey = longitudeKey;
     }
 
     public Mono<List<? extends NtsLocationDTO>> findAll() {
-        return locationProvider.findAll()
-            .map(Map::values)
-            .map(ArrayList::new)
-            .map(Collections::unmodifiableList);
+        return getIndex().map(NtsLocationIndex::findAll);
     }
 
     public Mono<Set<Long>> findAlIds() {
@@ -34,6 +46,57 @@ public class NtsDefaultLocationHelper implements NtsLocationHelper {
         return locationProvider.findById(id);
     }
 
+    public Mono<? extends Map<Long, ? extends NtsLocationDTO>> findByIds(Collection<Long> ids) {
+        return locationProvider.findByIds(ids);
+    }
+
+    public Mono<List<? extends NtsLocationDTO>> findActive() {
+        return getIndex().map(NtsLocationIndex::findActive);
+    }
+
+    public Mono<List<? extends NtsLocationDTO>> findByCountryCode(String countryCode) {
+        return getIndex().map(it -> it.findByCountryCode(countryCode));
+    }
+
+    public Mono<List<? extends NtsLocationDTO>> findByProvinceCode(String countryCode, String provinceCode) {
+        return getIndex().map(it -> it.findByProvinceCode(countryCode, provinceCode));
+    }
+
+    public Mono<List<? extends NtsLocationDTO>> findByCustomAttribute(String key, String value) {
+        return getIndex().map(it -> it.findByCustomAttribute(key, value));
+    }
+
+    public Mono<List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>>> findNearest(double latitude, double longitude, int limit) {
+        return getGrantedLocations()
+            .zipWith(getIndex(), (grants, it) -> it.getSpatialIndex(latitudeKey, longitudeKey)
+                .findNearest(latitude, longitude, limit, location -> location.isActive() && grants.test(location.getId())));
+    }
+
+    public Mono<List<? extends NtsLocationSpatialIndex.Neighbor<? extends NtsLocationDTO>>> findWithinRadius(double latitude, double longitude, double radius) {
+        return getGrantedLocations()
+            .zipWith(getIndex(), (grants, it) -> it.getSpatialIndex(latitudeKey, longitudeKey)
+                .findWithinRadius(latitude, longitude, radius, location -> location.isActive() && grants.test(location.getId())));
+    }
+
+    /**
+     * Get the indexes of current snapshot, rebuilt only when the {@link NtsLocationVersion} of the snapshot changes.
+     * The version is taken from {@link NtsLocationProvider#getVersion}, so the cached providers do not hash the
+     * snapshot on the event loop for every lookup.
+     */
+    public Mono<NtsLocationIndex<? extends NtsLocationDTO>> getIndex() {
+        return locationProvider.findAll()
+            .map(locations -> {
+                String version = locationProvider.getVersion(locations);
+                NtsLocationIndex<? extends NtsLocationDTO> current = index.get();
+                if (current != null && current.isIndexOf(version)) {
+                    return current;
+                }
+                NtsLocationIndex<? extends NtsLocationDTO> created = NtsLocationIndex.of(locations, version);
+                index.set(created);
+                return created;
+            });
+    }
+
     public Mono<Set<Long>> getGrantedLocationIds() {
         return locationDeserializer.getGrantedLocationIds();
     }
@@ -53,4 +116,16 @@ public class NtsDefaultLocationHelper implements NtsLocationHelper {
     public Mono<Boolean> isGrantedLocation(@Min(1L) Long id) {
         return locationDeserializer.isGrantedLocation(id);
     }
+
+    public Mono<NtsLocationGrants> getGrantedLocations() {
+        return locationDeserializer.getGrantedLocations();
+    }
+
+    public Mono<long[]> filterGrantedLocationIds(long[] ids) {
+        return locationDeserializer.filterGrantedLocationIds(ids);
+    }
+
+    public Mono<long[]> filterGrantedLocationIds(Collection<Long> ids) {
+        return locationDeserializer.filterGrantedLocationIds(ids);
+    }
 }
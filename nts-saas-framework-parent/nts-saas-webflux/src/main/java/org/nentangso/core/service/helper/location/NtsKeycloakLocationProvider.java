@@ -14,6 +14,7 @@ import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefaultLocationDTO> {
@@ -40,12 +41,22 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
     private final NtsKeycloakLocationProperties keycloakLocationProperties;
     private final NtsDefaultLocationCacheable locationCacheable;
     private final NtsKeycloakClient keycloakClient;
+    private final NtsKeycloakLocationSynchronizer synchronizer;
+    private final long fullSyncInterval;
+    private volatile long lastFullSyncAt;
 
     public NtsKeycloakLocationProvider(NtsKeycloakLocationProperties keycloakLocationProperties, NtsDefaultLocationCacheable locationCacheable, NtsKeycloakClient keycloakClient) {
         this.keycloakLocationProperties = keycloakLocationProperties;
         this.keycloakClient = keycloakClient;
         this.locationCacheable = locationCacheable;
         validateKeycloakProperties();
+        this.fullSyncInterval = capFullSyncInterval(keycloakLocationProperties.getFullSyncInterval(), locationCacheable.getExpiration());
+        this.synchronizer = new NtsKeycloakLocationSynchronizer(
+            keycloakClient,
+            keycloakLocationProperties.getInternalClientId(),
+            keycloakLocationProperties.getSyncParallelism(),
+            this::toLocation
+        );
     }
 
     private void validateKeycloakProperties() {
@@ -59,14 +70,67 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
 
     @Override
     public Mono<Map<Long, NtsDefaultLocationDTO>> findAll() {
+        return locationCacheable.getOrLoadCacheLocations(this::loadLocations);
+    }
+
+    @Override
+    public String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return locationCacheable.getCacheVersion(locations);
+    }
+
+    /**
+     * Patch the cached snapshot from the brief role list, or reload all roles when the snapshot is missing or the
+     * full sync interval has elapsed. When keycloak fails, the cached snapshot is kept and its expiration is extended.
+     */
+    @Override
+    public Mono<Map<Long, NtsDefaultLocationDTO>> reload() {
         return locationCacheable.getCacheLocations()
-            .switchIfEmpty(Mono.defer(() -> {
-                String clientId = keycloakLocationProperties.getInternalClientId();
-                return keycloakClient.findClientRoles(clientId, false)
-                    .map(this::toLocations)
-                    .map(items -> items.stream().collect(Collectors.toMap(NtsDefaultLocationDTO::getId, v -> v)))
-                    .flatMap(locationCacheable::setCacheLocations);
-            }));
+            .filter(snapshot -> !snapshot.isEmpty() && !isFullSyncDue())
+            .flatMap(snapshot -> locationCacheable.reloadCacheLocations(() -> synchronizer.sync(snapshot)))
+            .switchIfEmpty(Mono.defer(() -> locationCacheable.reloadCacheLocations(this::loadLocations)))
+            .flatMap(locations -> locations.isEmpty() ? extendCacheLocations().thenReturn(locations) : Mono.just(locations))
+            .onErrorResume(e -> extendCacheLocations().then(Mono.error(e)));
+    }
+
+    private Mono<Boolean> extendCacheLocations() {
+        log.warn("Could not reload keycloak locations, keep the cached ones");
+        return locationCacheable.extendCacheLocations();
+    }
+
+    /**
+     * Attribute changes are only picked up by a full sync, do not serve them longer than a cached snapshot lives.
+     */
+    private static long capFullSyncInterval(long fullSyncInterval, Long cacheExpiration) {
+        if (cacheExpiration != null && cacheExpiration > 0 && fullSyncInterval > cacheExpiration) {
+            log.warn("Keycloak location full sync interval {}s exceeds cache expiration {}s, use the cache expiration",
+                fullSyncInterval, cacheExpiration);
+            return cacheExpiration;
+        }
+        return fullSyncInterval;
+    }
+
+    private boolean isFullSyncDue() {
+        return lastFullSyncAt == 0L
+            || System.nanoTime() - lastFullSyncAt >= TimeUnit.SECONDS.toNanos(fullSyncInterval);
+    }
+
+    /**
+     * @return the delay in seconds between two full reloads, at most the cache expiration
+     */
+    public long getFullSyncInterval() {
+        return fullSyncInterval;
+    }
+
+    public NtsKeycloakLocationSynchronizer getSynchronizer() {
+        return synchronizer;
+    }
+
+    private Mono<Map<Long, NtsDefaultLocationDTO>> loadLocations() {
+        String clientId = keycloakLocationProperties.getInternalClientId();
+        return keycloakClient.findClientRoles(clientId, false)
+            .map(this::toLocations)
+            .map(items -> items.stream().collect(Collectors.toMap(NtsDefaultLocationDTO::getId, v -> v)))
+            .doOnNext(items -> lastFullSyncAt = System.nanoTime());
     }
 
     private List<NtsDefaultLocationDTO> toLocations(Collection<KeycloakClientRole> clientRoles) {
@@ -75,7 +139,7 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
             .collect(Collectors.toList());
     }
 
-    private NtsDefaultLocationDTO toLocation(KeycloakClientRole clientRole) {
+    NtsDefaultLocationDTO toLocation(KeycloakClientRole clientRole) {
         log.trace("toLocationDTO clientRole={}", clientRole);
         Map<String, List<String>> attributes = clientRole.getAttributes();
         return NtsLocationDTO.newDefaultBuilder()
@@ -147,13 +211,19 @@ public class NtsKeycloakLocationProvider implements NtsLocationProvider<NtsDefau
 
     @Override
     public Mono<Set<Long>> findAllIds() {
-        return findAll()
-            .map(Map::keySet);
+        return locationCacheable.getCacheLocationIds()
+            .switchIfEmpty(Mono.defer(() -> findAll().map(Map::keySet)));
     }
 
     @Override
     public Mono<NtsDefaultLocationDTO> findById(final Long id) {
-        return findAll()
+        return findByIds(Collections.singleton(id))
             .flatMap(f -> Mono.justOrEmpty(f.getOrDefault(id, null)));
     }
+
+    @Override
+    public Mono<Map<Long, NtsDefaultLocationDTO>> findByIds(Collection<Long> ids) {
+        return locationCacheable.getCacheLocations(ids)
+            .switchIfEmpty(Mono.defer(() -> NtsLocationProvider.super.findByIds(ids)));
+    }
 }
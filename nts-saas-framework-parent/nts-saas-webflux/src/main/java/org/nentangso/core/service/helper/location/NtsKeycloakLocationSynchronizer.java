@@ -0,0 +1,101 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.client.NtsKeycloakClient;
+import org.nentangso.core.client.vm.KeycloakClientRole;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Patch a location snapshot from the brief client role list, fetching only the roles that are new or renamed.
+ * <p>
+ * Keycloak brief representations carry no attributes, so attribute changes are not visible here; the provider
+ * reloads all roles every {@code nts.helper.location.keycloak.full-sync-interval} to pick them up.
+ */
+public class NtsKeycloakLocationSynchronizer {
+    private static final Logger log = LoggerFactory.getLogger(NtsKeycloakLocationSynchronizer.class);
+
+    private final NtsKeycloakClient keycloakClient;
+    private final String internalClientId;
+    private final int parallelism;
+    private final Function<KeycloakClientRole, NtsDefaultLocationDTO> mapper;
+    private final AtomicLong upstreamCallCount = new AtomicLong();
+
+    public NtsKeycloakLocationSynchronizer(
+        NtsKeycloakClient keycloakClient,
+        String internalClientId,
+        int parallelism,
+        Function<KeycloakClientRole, NtsDefaultLocationDTO> mapper
+    ) {
+        this.keycloakClient = keycloakClient;
+        this.internalClientId = internalClientId;
+        this.parallelism = Math.max(1, parallelism);
+        this.mapper = mapper;
+    }
+
+    /**
+     * Compute the next snapshot.
+     *
+     * @param snapshot the cached locations
+     * @return the next snapshot, an error when the upstream failed
+     */
+    public Mono<Map<Long, NtsDefaultLocationDTO>> sync(Map<Long, NtsDefaultLocationDTO> snapshot) {
+        return Mono.defer(() -> {
+                upstreamCallCount.incrementAndGet();
+                return keycloakClient.findClientRoles(internalClientId, true);
+            })
+            .flatMap(roles -> {
+                List<String> changedNames = roles.stream()
+                    .filter(role -> {
+                        NtsDefaultLocationDTO cached = snapshot.get(Long.parseUnsignedLong(role.getName()));
+                        return cached == null || !Objects.equals(cached.getName(), role.getDescription());
+                    })
+                    .map(KeycloakClientRole::getName)
+                    .collect(Collectors.toList());
+                return fetch(changedNames)
+                    .map(fetched -> {
+                        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+                        for (KeycloakClientRole role : roles) {
+                            Long id = Long.parseUnsignedLong(role.getName());
+                            NtsDefaultLocationDTO location = fetched.get(id);
+                            result.put(id, location != null ? location : snapshot.get(id));
+                        }
+                        if (log.isDebugEnabled()) {
+                            long removed = snapshot.keySet().stream().filter(id -> !result.containsKey(id)).count();
+                            log.debug("Sync keycloak locations of client {}, fetched={}, removed={}", internalClientId, fetched.size(), removed);
+                        }
+                        return result;
+                    });
+            });
+    }
+
+    /**
+     * Fetch the full representations of client roles, at most {@link #parallelism} requests at a time.
+     */
+    private Mono<Map<Long, NtsDefaultLocationDTO>> fetch(List<String> roleNames) {
+        if (roleNames.isEmpty()) {
+            return Mono.just(Collections.emptyMap());
+        }
+        return Flux.fromIterable(roleNames)
+            .flatMap(roleName -> Mono.defer(() -> {
+                upstreamCallCount.incrementAndGet();
+                return keycloakClient.findClientRole(internalClientId, roleName);
+            }), parallelism)
+            .map(mapper)
+            .collectMap(NtsDefaultLocationDTO::getId, v -> v);
+    }
+
+    /**
+     * @return the upstream requests made since startup
+     */
+    public long getUpstreamCallCount() {
+        return upstreamCallCount.get();
+    }
+}
@@ -0,0 +1,187 @@
+package org.nentangso.core.service.helper.location;
+
+import feign.FeignException;
+import org.apache.commons.lang3.StringUtils;
+import org.nentangso.core.client.NtsKeycloakClient;
+import org.nentangso.core.client.vm.KeycloakClientRole;
+import org.nentangso.core.config.NtsKeycloakLocationProperties;
+import org.nentangso.core.service.dto.NtsAddressDTO;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+import java.util.*;
+
+import static org.nentangso.core.service.helper.location.NtsKeycloakLocationProvider.*;
+
+/**
+ * Create and update locations as keycloak client roles, then write them through to the location cache.
+ * <p>
+ * Every node sees the write on its next read, so {@code nts.helper.location.cache.expiration} only bounds the changes
+ * made outside of this writer.
+ */
+public class NtsKeycloakLocationWriter {
+    private static final Logger log = LoggerFactory.getLogger(NtsKeycloakLocationWriter.class);
+
+    private static final List<String> STANDARD_ATTRIBUTE_KEYS = List.of(
+        ATTRIBUTE_ACTIVE,
+        ATTRIBUTE_CREATED_AT,
+        ATTRIBUTE_UPDATED_AT,
+        ATTRIBUTE_DEACTIVATED_AT,
+        ATTRIBUTE_PHONE,
+        ATTRIBUTE_ADDRESS_1,
+        ATTRIBUTE_ADDRESS_2,
+        ATTRIBUTE_COUNTRY,
+        ATTRIBUTE_COUNTRY_CODE,
+        ATTRIBUTE_LOCALIZED_COUNTRY_NAME,
+        ATTRIBUTE_CITY,
+        ATTRIBUTE_PROVINCE,
+        ATTRIBUTE_PROVINCE_CODE,
+        ATTRIBUTE_LOCALIZED_PROVINCE_NAME,
+        ATTRIBUTE_ZIP,
+        ATTRIBUTE_ADDRESS_VERIFIED
+    );
+
+    private final NtsKeycloakLocationProperties keycloakLocationProperties;
+    private final NtsKeycloakLocationProvider locationProvider;
+    private final NtsDefaultLocationCacheable locationCacheable;
+    private final NtsKeycloakClient keycloakClient;
+
+    public NtsKeycloakLocationWriter(
+        NtsKeycloakLocationProperties keycloakLocationProperties,
+        NtsKeycloakLocationProvider locationProvider,
+        NtsDefaultLocationCacheable locationCacheable,
+        NtsKeycloakClient keycloakClient
+    ) {
+        this.keycloakLocationProperties = keycloakLocationProperties;
+        this.locationProvider = locationProvider;
+        this.locationCacheable = locationCacheable;
+        this.keycloakClient = keycloakClient;
+    }
+
+    /**
+     * Create a location, the client role name is the location id.
+     *
+     * @param location the location to create
+     * @return the created location
+     */
+    public Mono<NtsDefaultLocationDTO> create(NtsDefaultLocationDTO location) {
+        return Mono.defer(() -> {
+            validate(location);
+            Instant now = Instant.now();
+            KeycloakClientRole clientRole = toClientRole(location, Collections.emptyMap(), now, now);
+            return keycloakClient.createClientRole(keycloakLocationProperties.getInternalClientId(), clientRole)
+                .then(writeThrough(clientRole));
+        });
+    }
+
+    /**
+     * Update a location, the attributes of the client role that are not location fields are kept.
+     *
+     * @param location the location to update
+     * @return the updated location
+     */
+    public Mono<NtsDefaultLocationDTO> update(NtsDefaultLocationDTO location) {
+        return Mono.defer(() -> {
+            validate(location);
+            String clientId = keycloakLocationProperties.getInternalClientId();
+            String roleName = location.getId().toString();
+            return keycloakClient.findClientRole(clientId, roleName)
+                .onErrorMap(
+                    e -> e instanceof FeignException && ((FeignException) e).status() == HttpStatus.NOT_FOUND.value(),
+                    e -> new NtsNotFoundException(String.format("Location %s not found", location.getId()), e)
+                )
+                .switchIfEmpty(Mono.error(() -> new NtsNotFoundException(String.format("Location %s not found", location.getId()))))
+                .flatMap(current -> {
+                    Map<String, List<String>> attributes = Optional.ofNullable(current.getAttributes())
+                        .orElseGet(Collections::emptyMap);
+                    Instant createdAt = Optional.ofNullable(locationProvider.toLocation(current).getCreatedAt())
+                        .orElseGet(Instant::now);
+                    KeycloakClientRole clientRole = toClientRole(location, attributes, createdAt, Instant.now());
+                    return keycloakClient.updateClientRole(clientId, roleName, clientRole)
+                        .then(writeThrough(clientRole));
+                });
+        });
+    }
+
+    private Mono<NtsDefaultLocationDTO> writeThrough(KeycloakClientRole clientRole) {
+        return Mono.defer(() -> {
+            NtsDefaultLocationDTO result = locationProvider.toLocation(clientRole);
+            return locationCacheable.putCacheLocation(result)
+                .doOnNext(patched -> {
+                    if (!patched) {
+                        log.debug("Location {} was written to keycloak only, it is cached with the next load", result.getId());
+                    }
+                })
+                .thenReturn(result);
+        });
+    }
+
+    private static void validate(NtsDefaultLocationDTO location) {
+        if (location == null || location.getId() == null) {
+            throw new NtsValidationException("id", "must not be null");
+        }
+        if (location.getId() <= 0) {
+            throw new NtsValidationException("id", "must be greater than 0");
+        }
+        if (StringUtils.isBlank(location.getName())) {
+            throw new NtsValidationException("name", "must not be blank");
+        }
+    }
+
+    /**
+     * Map a location to a client role, on top of the given attributes. Custom attributes that are not listed in
+     * {@code nts.helper.location.keycloak.custom-attribute-keys} are not written, they would not be read back.
+     */
+    private KeycloakClientRole toClientRole(NtsDefaultLocationDTO location, Map<String, List<String>> base, Instant createdAt, Instant updatedAt) {
+        Map<String, List<String>> attributes = new LinkedHashMap<>(base);
+        STANDARD_ATTRIBUTE_KEYS.forEach(attributes::remove);
+        keycloakLocationProperties.getCustomAttributeKeys().forEach(attributes::remove);
+        putAttribute(attributes, ATTRIBUTE_ACTIVE, location.isActive());
+        putAttribute(attributes, ATTRIBUTE_ADDRESS_VERIFIED, location.isAddressVerified());
+        putAttribute(attributes, ATTRIBUTE_CREATED_AT, createdAt);
+        putAttribute(attributes, ATTRIBUTE_UPDATED_AT, updatedAt);
+        if (!location.isActive()) {
+            putAttribute(attributes, ATTRIBUTE_DEACTIVATED_AT, Optional.ofNullable(location.getDeactivatedAt()).orElse(updatedAt));
+        }
+        NtsAddressDTO address = location.getAddress();
+        if (address != null) {
+            putAttribute(attributes, ATTRIBUTE_PHONE, address.getPhone());
+            putAttribute(attributes, ATTRIBUTE_ADDRESS_1, address.getAddress1());
+            putAttribute(attributes, ATTRIBUTE_ADDRESS_2, address.getAddress2());
+            putAttribute(attributes, ATTRIBUTE_COUNTRY, address.getCountry());
+            putAttribute(attributes, ATTRIBUTE_COUNTRY_CODE, address.getCountryCode());
+            putAttribute(attributes, ATTRIBUTE_LOCALIZED_COUNTRY_NAME, address.getLocalizedCountryName());
+            putAttribute(attributes, ATTRIBUTE_CITY, address.getCity());
+            putAttribute(attributes, ATTRIBUTE_PROVINCE, address.getProvince());
+            putAttribute(attributes, ATTRIBUTE_PROVINCE_CODE, address.getProvinceCode());
+            putAttribute(attributes, ATTRIBUTE_LOCALIZED_PROVINCE_NAME, address.getLocalizedProvinceName());
+            putAttribute(attributes, ATTRIBUTE_ZIP, address.getZip());
+        }
+        List<? extends NtsAttributeDTO> customAttributes = location.getCustomAttributes();
+        if (customAttributes != null) {
+            customAttributes.stream()
+                .filter(Objects::nonNull)
+                .filter(attribute -> keycloakLocationProperties.getCustomAttributeKeys().contains(attribute.getKey()))
+                .forEach(attribute -> putAttribute(attributes, attribute.getKey(), attribute.getValue()));
+        }
+        KeycloakClientRole clientRole = new KeycloakClientRole();
+        clientRole.setName(location.getId().toString());
+        clientRole.setDescription(location.getName());
+        clientRole.setAttributes(attributes);
+        return clientRole;
+    }
+
+    private static void putAttribute(Map<String, List<String>> attributes, String key, Object value) {
+        if (value == null || StringUtils.isEmpty(value.toString())) {
+            return;
+        }
+        attributes.put(key, List.of(value.toString()));
+    }
+}
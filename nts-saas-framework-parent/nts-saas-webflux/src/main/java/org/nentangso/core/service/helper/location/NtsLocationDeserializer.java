@@ -3,6 +3,7 @@ package org.nentangso.core.service.helper.location;
 import reactor.core.publisher.Mono;
 
 import javax.validation.constraints.Min;
+import java.util.Collection;
 import java.util.Set;
 
 public interface NtsLocationDeserializer {
@@ -15,4 +16,30 @@ public interface NtsLocationDeserializer {
     Mono<Boolean> isGrantedAnyLocations(Long... ids);
 
     Mono<Boolean> isGrantedLocation(@Min(1L) Long id);
+
+    /**
+     * Get the locations granted to current user, fetch it once to check many ids.
+     *
+     * @return the grants
+     */
+    default Mono<NtsLocationGrants> getGrantedLocations() {
+        return isGrantedAllLocations()
+            .flatMap(grantedAll -> {
+                if (Boolean.TRUE.equals(grantedAll)) {
+                    return Mono.just(NtsLocationGrants.ALL);
+                }
+                return getGrantedLocationIds()
+                    .map(ids -> NtsLocationGrants.of(false, ids.stream().mapToLong(Long::longValue).toArray()));
+            });
+    }
+
+    default Mono<long[]> filterGrantedLocationIds(long[] ids) {
+        return getGrantedLocations()
+            .map(grants -> grants.filter(ids));
+    }
+
+    default Mono<long[]> filterGrantedLocationIds(Collection<Long> ids) {
+        return getGrantedLocations()
+            .map(grants -> grants.filter(ids));
+    }
 }
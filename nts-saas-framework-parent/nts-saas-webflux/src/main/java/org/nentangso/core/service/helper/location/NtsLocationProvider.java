@@ -3,8 +3,7 @@ package org.nentangso.core.service.helper.location;
 import org.nentangso.core.service.dto.NtsLocationDTO;
 import reactor.core.publisher.Mono;
 
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
 public interface NtsLocationProvider<T extends NtsLocationDTO> {
     Mono<Map<Long, T>> findAll();
@@ -12,4 +11,40 @@ public interface NtsLocationProvider<T extends NtsLocationDTO> {
     Mono<Set<Long>> findAllIds();
 
     Mono<T> findById(final Long id);
+
+    /**
+     * Reload all locations from the upstream and replace the cached ones, used by {@link NtsLocationRefresher}.
+     *
+     * @return the reloaded locations, empty map when the upstream returned nothing
+     */
+    default Mono<Map<Long, T>> reload() {
+        return findAll();
+    }
+
+    /**
+     * Get the entity tag of locations emitted by {@link #findAll()}, see {@link NtsLocationVersion}.
+     * <p>
+     * Providers backed by {@link NtsDefaultLocationCacheable} return the tag of the cached snapshot, computed once per
+     * snapshot.
+     *
+     * @param locations the locations emitted by {@link #findAll()}
+     * @return the quoted entity tag
+     */
+    default String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return NtsLocationVersion.of(locations.values());
+    }
+
+    default Mono<Map<Long, T>> findByIds(Collection<Long> ids) {
+        return findAll()
+            .map(locations -> {
+                Map<Long, T> result = new LinkedHashMap<>();
+                for (Long id : ids) {
+                    T location = id != null ? locations.get(id) : null;
+                    if (location != null) {
+                        result.put(id, location);
+                    }
+                }
+                return result;
+            });
+    }
 }
@@ -0,0 +1,201 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.config.NtsProperties;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Restrict R2DBC queries to the locations granted to current user, so the filtering happens in the database.
+ * <p>
+ * {@link Criteria} can neither join a table nor inline a value, so the criteria of a
+ * {@link NtsLocationAccessPlan.Strategy#TEMPORARY_TABLE} plan binds its ranges and ids, in IN lists of at most
+ * {@code nts.helper.location.query.max-parameters} ids. Grants beyond the bind limit of the driver need the SQL
+ * condition, which joins them from a temporary table created by {@code nts.helper.location.query.temporary-table-ddl}.
+ */
+public class NtsLocationQueryHelper {
+    private static final String PARAMETER_PREFIX = "nts_location_";
+
+    private final NtsLocationDeserializer locationDeserializer;
+    private final int maxParameters;
+    private final String temporaryTable;
+    private final String temporaryTableDdl;
+
+    public NtsLocationQueryHelper(NtsProperties ntsProperties, NtsLocationDeserializer locationDeserializer) {
+        this.locationDeserializer = locationDeserializer;
+        NtsProperties.HelperProperties.LocationProperties.QueryProperties query = ntsProperties.getHelper().getLocation().getQuery();
+        this.maxParameters = Math.max(1, query.getMaxParameters());
+        this.temporaryTable = query.getTemporaryTable();
+        this.temporaryTableDdl = query.getTemporaryTableDdl();
+    }
+
+    public Mono<NtsLocationAccessPlan> getAccessPlan() {
+        return locationDeserializer.getGrantedLocations()
+            .map(grants -> NtsLocationAccessPlan.of(grants, maxParameters));
+    }
+
+    /**
+     * Create a criteria matching the granted locations of current user.
+     *
+     * @param column the location id column
+     * @return the criteria, {@link Criteria#empty()} when all locations are granted
+     */
+    public Mono<Criteria> grantedLocations(String column) {
+        return getAccessPlan()
+            .map(plan -> toCriteria(plan, column));
+    }
+
+    public Criteria toCriteria(NtsLocationAccessPlan plan, String column) {
+        switch (plan.getStrategy()) {
+            case ALL:
+                return Criteria.empty();
+            case NONE:
+                return Criteria.where(column).isNull().and(column).isNotNull();
+            case IN_LIST:
+                return in(column, plan.getIds());
+            case TEMPORARY_TABLE:
+                return inChunks(column, plan.getRangeStarts(), plan.getRangeEnds(), plan.getIds());
+            default:
+                long[] starts = plan.getRangeStarts();
+                long[] ends = plan.getRangeEnds();
+                Criteria criteria = Criteria.where(column).between(starts[0], ends[0]);
+                for (int i = 1; i < starts.length; i++) {
+                    criteria = criteria.or(column).between(starts[i], ends[i]);
+                }
+                return plan.getIds().length > 0 ? criteria.or(in(column, plan.getIds())) : criteria;
+        }
+    }
+
+    /**
+     * The plan keeps the ids and ranges of the other strategies within {@code maxParameters}, one IN list is enough.
+     */
+    private Criteria in(String column, long[] ids) {
+        return Criteria.where(column).in(Arrays.stream(ids).boxed().collect(Collectors.toList()));
+    }
+
+    /**
+     * Bind a large grant, one IN list per {@code maxParameters} ids, some databases limit the list size.
+     */
+    private Criteria inChunks(String column, long[] starts, long[] ends, long[] ids) {
+        List<Criteria> criteria = new ArrayList<>();
+        for (int i = 0; i < starts.length; i++) {
+            criteria.add(Criteria.where(column).between(starts[i], ends[i]));
+        }
+        for (int from = 0; from < ids.length; from += maxParameters) {
+            criteria.add(in(column, Arrays.copyOfRange(ids, from, Math.min(ids.length, from + maxParameters))));
+        }
+        return criteria.stream().reduce(Criteria::or).orElseThrow();
+    }
+
+    /**
+     * Create a SQL condition matching the granted locations of current user.
+     * <p>
+     * Large grants are written to the temporary table first, the statement must run in the same reactive transaction,
+     * so it reads the rows of this connection only.
+     *
+     * @param column the location id column, not escaped
+     * @param db     the database client of the statement
+     * @return the condition, {@code 1 = 1} when all locations are granted, or an {@link IllegalStateException} if the
+     * grants need the temporary table outside of a transaction
+     */
+    public Mono<SqlCondition> grantedLocationsSql(String column, DatabaseClient db) {
+        return getAccessPlan()
+            .flatMap(plan -> toSqlCondition(plan, column, db));
+    }
+
+    public Mono<SqlCondition> toSqlCondition(NtsLocationAccessPlan plan, String column, DatabaseClient db) {
+        switch (plan.getStrategy()) {
+            case ALL:
+                return Mono.just(new SqlCondition("1 = 1", Collections.emptyMap()));
+            case NONE:
+                return Mono.just(new SqlCondition("1 = 0", Collections.emptyMap()));
+            case TEMPORARY_TABLE:
+                return fillTemporaryTable(plan.getAllIds(), db)
+                    .thenReturn(new SqlCondition(
+                        String.format("%s IN (SELECT location_id FROM %s)", column, temporaryTable),
+                        Collections.emptyMap()
+                    ));
+            default:
+                List<String> conditions = new ArrayList<>();
+                Map<String, Object> bindings = new LinkedHashMap<>();
+                long[] starts = plan.getRangeStarts();
+                long[] ends = plan.getRangeEnds();
+                for (int i = 0; i < starts.length; i++) {
+                    conditions.add(String.format("%s BETWEEN :%sfrom_%d AND :%sto_%d", column, PARAMETER_PREFIX, i, PARAMETER_PREFIX, i));
+                    bindings.put(PARAMETER_PREFIX + "from_" + i, starts[i]);
+                    bindings.put(PARAMETER_PREFIX + "to_" + i, ends[i]);
+                }
+                long[] ids = plan.getIds();
+                if (ids.length > 0) {
+                    conditions.add(String.format("%s IN (:%sids)", column, PARAMETER_PREFIX));
+                    bindings.put(PARAMETER_PREFIX + "ids", Arrays.stream(ids).boxed().collect(Collectors.toList()));
+                }
+                return Mono.just(new SqlCondition("(" + String.join(" OR ", conditions) + ")", bindings));
+        }
+    }
+
+    private Mono<Void> fillTemporaryTable(long[] ids, DatabaseClient db) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.length; from += maxParameters) {
+            chunks.add(Arrays.stream(ids, from, Math.min(ids.length, from + maxParameters)).boxed().collect(Collectors.toList()));
+        }
+        Mono<Void> create = StringUtils.hasText(temporaryTableDdl)
+            ? db.sql(String.format(temporaryTableDdl, temporaryTable)).then()
+            : Mono.empty();
+        return requireTransaction(ids)
+            .then(create)
+            .then(db.sql(String.format("DELETE FROM %s", temporaryTable)).then())
+            .thenMany(Flux.fromIterable(chunks)
+                .concatMap(chunk -> db.sql(String.format("INSERT INTO %s (location_id) VALUES %s",
+                        temporaryTable,
+                        chunk.stream().map(id -> "(" + id + ")").collect(Collectors.joining(","))
+                    ))
+                    .then()))
+            .then();
+    }
+
+    private Mono<Void> requireTransaction(long[] ids) {
+        return TransactionSynchronizationManager.forCurrentTransaction()
+            .filter(TransactionSynchronizationManager::isActualTransactionActive)
+            .onErrorResume(NoTransactionException.class, e -> Mono.empty())
+            .switchIfEmpty(Mono.error(() -> new IllegalStateException(String.format(
+                "%d granted locations exceed nts.helper.location.query.max-parameters=%d, the temporary table %s must be filled and queried in one transaction",
+                ids.length,
+                maxParameters,
+                temporaryTable
+            ))))
+            .then();
+    }
+
+    public static class SqlCondition {
+        private final String sql;
+        private final Map<String, Object> bindings;
+
+        public SqlCondition(String sql, Map<String, Object> bindings) {
+            this.sql = sql;
+            this.bindings = Collections.unmodifiableMap(bindings);
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public Map<String, Object> getBindings() {
+            return bindings;
+        }
+
+        public DatabaseClient.GenericExecuteSpec bindTo(DatabaseClient.GenericExecuteSpec spec) {
+            for (Map.Entry<String, Object> entry : bindings.entrySet()) {
+                spec = spec.bind(entry.getKey(), entry.getValue());
+            }
+            return spec;
+        }
+    }
+}
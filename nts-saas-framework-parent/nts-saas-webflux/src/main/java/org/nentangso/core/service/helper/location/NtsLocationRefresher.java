@@ -0,0 +1,155 @@
+package org.nentangso.core.service.helper.location;
+
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.LocationProperties.RefreshProperties;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reload the locations of the configured provider in background before the cache expires, so requests do not wait for
+ * the upstream. While the upstream is failing, the cached snapshot is kept and its expiration is extended.
+ * <p>
+ * Only the node that claims the interval reloads the shared snapshot, see
+ * {@link NtsDefaultLocationCacheable#tryClaimReload(long)}.
+ */
+public class NtsLocationRefresher {
+    private static final Logger log = LoggerFactory.getLogger(NtsLocationRefresher.class);
+
+    private final NtsProperties ntsProperties;
+    private final NtsLocationProvider<? extends NtsLocationDTO> locationProvider;
+    private final NtsDefaultLocationCacheable locationCacheable;
+
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong consecutiveFailureCount = new AtomicLong();
+    private final AtomicLong skipCount = new AtomicLong();
+    private volatile Instant lastRefreshedAt;
+    private Disposable subscription;
+
+    public NtsLocationRefresher(
+        NtsProperties ntsProperties,
+        NtsLocationProvider<? extends NtsLocationDTO> locationProvider,
+        NtsDefaultLocationCacheable locationCacheable
+    ) {
+        this.ntsProperties = ntsProperties;
+        this.locationProvider = locationProvider;
+        this.locationCacheable = locationCacheable;
+    }
+
+    public synchronized void start() {
+        if (subscription != null) {
+            return;
+        }
+        RefreshProperties refreshProperties = ntsProperties.getHelper().getLocation().getRefresh();
+        if (refreshProperties.getInterval() >= ntsProperties.getHelper().getLocation().getCache().getExpiration()) {
+            log.warn("Location refresh interval {}s is not less than cache expiration {}s, requests may still load locations",
+                refreshProperties.getInterval(), ntsProperties.getHelper().getLocation().getCache().getExpiration());
+        }
+        subscription = Flux.interval(
+                Duration.ofSeconds(refreshProperties.getInitialDelay()),
+                Duration.ofSeconds(refreshProperties.getInterval())
+            )
+            .onBackpressureDrop()
+            .concatMap(tick -> refresh(), 1)
+            .subscribe();
+    }
+
+    public synchronized void stop() {
+        if (subscription == null) {
+            return;
+        }
+        subscription.dispose();
+        subscription = null;
+    }
+
+    /**
+     * Reload the locations now.
+     *
+     * @return true if the locations were reloaded, false if the cached ones are kept
+     */
+    public Mono<Boolean> refresh() {
+        return Mono.defer(() -> locationCacheable.tryClaimReload(ntsProperties.getHelper().getLocation().getRefresh().getInterval()))
+            .flatMap(claimed -> {
+                if (!Boolean.TRUE.equals(claimed)) {
+                    skipCount.incrementAndGet();
+                    log.debug("Locations are refreshed by another node in this interval, skip");
+                    return Mono.just(false);
+                }
+                return reload();
+            })
+            .onErrorResume(e -> {
+                failureCount.incrementAndGet();
+                log.warn("Refresh locations failed {} times in a row, keep serving cached locations",
+                    consecutiveFailureCount.incrementAndGet(), e);
+                return extendCacheLocations().thenReturn(false);
+            });
+    }
+
+    private Mono<Boolean> reload() {
+        return Mono.defer(locationProvider::reload)
+            .filter(locations -> !locations.isEmpty())
+            .switchIfEmpty(Mono.error(() -> new IllegalStateException("Location provider returned no location")))
+            .map(locations -> {
+                lastRefreshedAt = Instant.now();
+                refreshCount.incrementAndGet();
+                consecutiveFailureCount.set(0);
+                log.debug("Refreshed {} locations", locations.size());
+                return true;
+            });
+    }
+
+    private Mono<Boolean> extendCacheLocations() {
+        return locationCacheable.extendCacheLocations()
+            .doOnNext(extended -> {
+                if (!extended) {
+                    log.warn("No cached locations to keep, requests will load locations");
+                }
+            })
+            .onErrorResume(e -> {
+                log.warn("Extend cached locations expiration error", e);
+                return Mono.just(false);
+            });
+    }
+
+    /**
+     * @return the time of the last successful refresh, null if none succeeded yet
+     */
+    public Instant getLastRefreshedAt() {
+        return lastRefreshedAt;
+    }
+
+    /**
+     * @return the time since the last successful refresh, null if none succeeded yet
+     */
+    public Duration getLastRefreshAge() {
+        Instant refreshedAt = lastRefreshedAt;
+        return refreshedAt != null ? Duration.between(refreshedAt, Instant.now()) : null;
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getConsecutiveFailureCount() {
+        return consecutiveFailureCount.get();
+    }
+
+    /**
+     * @return the number of refreshes skipped because another node claimed the interval
+     */
+    public long getSkipCount() {
+        return skipCount.get();
+    }
+}
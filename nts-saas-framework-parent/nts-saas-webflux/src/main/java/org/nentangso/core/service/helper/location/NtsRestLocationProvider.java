@@ -1,13 +1,21 @@
 package org.nentangso.core.service.helper.location;
 
+import feign.FeignException;
 import org.nentangso.core.client.NtsHelperLocationRestClient;
 import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactivefeign.client.ReactiveHttpResponse;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 public class NtsRestLocationProvider implements NtsLocationProvider<NtsDefaultLocationDTO> {
@@ -15,31 +23,152 @@ public class NtsRestLocationProvider implements NtsLocationProvider<NtsDefaultLo
 
     public static final String PROVIDER_NAME = "org.nentangso.core.service.helper.location.NtsRestLocationProvider";
 
+    /**
+     * Restart a paged stream at most this many times when the upstream changes between its pages.
+     */
+    private static final int MAX_STREAM_ATTEMPTS = 3;
+
     private final NtsDefaultLocationCacheable locationCacheable;
     private final NtsHelperLocationRestClient restClient;
+    private final int streamPageSize;
 
     public NtsRestLocationProvider(NtsDefaultLocationCacheable locationCacheable, NtsHelperLocationRestClient restClient) {
+        this(locationCacheable, restClient, 0);
+    }
+
+    /**
+     * @param streamPageSize the page size of the NDJSON stream, 0 to get the locations as one JSON list
+     */
+    public NtsRestLocationProvider(NtsDefaultLocationCacheable locationCacheable, NtsHelperLocationRestClient restClient, int streamPageSize) {
         this.locationCacheable = locationCacheable;
         this.restClient = restClient;
+        this.streamPageSize = Math.max(0, streamPageSize);
     }
 
     @Override
     public Mono<Map<Long, NtsDefaultLocationDTO>> findAll() {
+        return locationCacheable.getOrLoadCacheLocations(this::loadLocations);
+    }
+
+    @Override
+    public String getVersion(Map<Long, ? extends NtsLocationDTO> locations) {
+        return locationCacheable.getCacheVersion(locations);
+    }
+
+    /**
+     * Reload the locations, sending the entity tag of the cached ones so an unchanged upstream only answers
+     * {@code 304 Not Modified}.
+     */
+    @Override
+    public Mono<Map<Long, NtsDefaultLocationDTO>> reload() {
         return locationCacheable.getCacheLocations()
-            .switchIfEmpty(Mono.defer(() -> restClient.findAll()
-                .map(items -> items.stream().collect(Collectors.toMap(NtsDefaultLocationDTO::getId, v -> v)))
-                .flatMap(locationCacheable::setCacheLocations)));
+            .filter(snapshot -> !snapshot.isEmpty())
+            .flatMap(snapshot -> fetchLocations(locationCacheable.getCacheVersion(snapshot))
+                .filter(items -> !items.isEmpty())
+                .flatMap(items -> locationCacheable.reloadCacheLocations(() -> Mono.just(items)))
+                .switchIfEmpty(Mono.defer(() -> {
+                    log.debug("Locations not modified, keep {} cached locations", snapshot.size());
+                    return locationCacheable.extendCacheLocations().thenReturn(snapshot);
+                })))
+            .switchIfEmpty(Mono.defer(() -> locationCacheable.reloadCacheLocations(this::loadLocations)));
+    }
+
+    private Mono<Map<Long, NtsDefaultLocationDTO>> loadLocations() {
+        return fetchLocations(null);
+    }
+
+    /**
+     * Fetch the locations, as one list or page by page from the NDJSON stream.
+     *
+     * @param ifNoneMatch the entity tag of the cached locations, may be null
+     * @return the locations, empty when not modified
+     */
+    private Mono<Map<Long, NtsDefaultLocationDTO>> fetchLocations(String ifNoneMatch) {
+        Mono<Map<Long, NtsDefaultLocationDTO>> result = streamPageSize > 0
+            ? streamLocations(ifNoneMatch, 1)
+            : restClient.findAll(ifNoneMatch).map(NtsRestLocationProvider::toLocations);
+        return result.onErrorResume(e -> isStatus(e, HttpStatus.NOT_MODIFIED), e -> Mono.empty());
+    }
+
+    /**
+     * Stream all pages of one upstream version. Only the first page is conditional on the cached locations, the next
+     * ones send its entity tag as If-Match, and the stream restarts when the upstream changed in between.
+     */
+    private Mono<Map<Long, NtsDefaultLocationDTO>> streamLocations(String ifNoneMatch, int attempt) {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        return streamPage(null, ifNoneMatch, null)
+            .flatMap(response -> readPages(response, getETag(response), locations))
+            .onErrorResume(e -> isStatus(e, HttpStatus.PRECONDITION_FAILED) && attempt < MAX_STREAM_ATTEMPTS, e -> {
+                log.debug("Locations changed while streaming {} of them, restart the stream", locations.size());
+                return streamLocations(ifNoneMatch, attempt + 1);
+            });
+    }
+
+    /**
+     * Read a page and the ones after it, an upstream without entity tag is read without version check.
+     */
+    private Mono<Map<Long, NtsDefaultLocationDTO>> readPages(
+        ReactiveHttpResponse<Flux<NtsDefaultLocationDTO>> response,
+        String etag,
+        Map<Long, NtsDefaultLocationDTO> locations
+    ) {
+        AtomicReference<Long> lastId = new AtomicReference<>();
+        AtomicInteger count = new AtomicInteger();
+        return response.body()
+            .doOnNext(location -> {
+                locations.put(location.getId(), location);
+                lastId.set(location.getId());
+                count.incrementAndGet();
+            })
+            .then(Mono.defer(() -> count.get() < streamPageSize || lastId.get() == null
+                ? Mono.just(locations)
+                : streamPage(lastId.get(), null, etag).flatMap(next -> readPages(next, etag, locations))));
+    }
+
+    private Mono<ReactiveHttpResponse<Flux<NtsDefaultLocationDTO>>> streamPage(Long sinceId, String ifNoneMatch, String ifMatch) {
+        return restClient.streamAll(sinceId, streamPageSize, ifNoneMatch, ifMatch)
+            .flatMap(response -> HttpStatus.valueOf(response.status()).is2xxSuccessful()
+                ? Mono.just(response)
+                : response.releaseBody().then(Mono.error(new ResponseStatusException(HttpStatus.valueOf(response.status())))));
+    }
+
+    private static String getETag(ReactiveHttpResponse<?> response) {
+        return response.headers().entrySet().stream()
+            .filter(header -> HttpHeaders.ETAG.equalsIgnoreCase(header.getKey()))
+            .flatMap(header -> header.getValue().stream())
+            .findFirst()
+            .orElse(null);
+    }
+
+    /**
+     * Status handlers raise a {@link FeignException}, without them the page response is checked here.
+     */
+    private static boolean isStatus(Throwable e, HttpStatus status) {
+        if (e instanceof FeignException) {
+            return ((FeignException) e).status() == status.value();
+        }
+        return e instanceof ResponseStatusException && ((ResponseStatusException) e).getStatus() == status;
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> toLocations(List<NtsDefaultLocationDTO> items) {
+        return items.stream().collect(Collectors.toMap(NtsDefaultLocationDTO::getId, v -> v));
     }
 
     @Override
     public Mono<Set<Long>> findAllIds() {
-        return findAll()
-            .map(Map::keySet);
+        return locationCacheable.getCacheLocationIds()
+            .switchIfEmpty(Mono.defer(() -> findAll().map(Map::keySet)));
     }
 
     @Override
     public Mono<NtsDefaultLocationDTO> findById(final Long id) {
-        return findAll()
+        return findByIds(Collections.singleton(id))
             .flatMap(f -> Mono.justOrEmpty(f.getOrDefault(id, null)));
     }
+
+    @Override
+    public Mono<Map<Long, NtsDefaultLocationDTO>> findByIds(Collection<Long> ids) {
+        return locationCacheable.getCacheLocations(ids)
+            .switchIfEmpty(Mono.defer(() -> NtsLocationProvider.super.findByIds(ids)));
+    }
 }
@@ -0,0 +1,41 @@
+package org.nentangso.core.service.helper.option;
+
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reactive view of a {@link NtsOptionWatch}.
+ */
+public final class NtsOptionWatchFlux {
+    private NtsOptionWatchFlux() {
+    }
+
+    /**
+     * Emit a copy of the current instance, then of each instance replacing it. A slow subscriber only receives the
+     * latest one, an instance with the same raw values as the previous one is skipped.
+     *
+     * @param watch the watched options
+     * @return the never completing flux of instances
+     */
+    public static <T> Flux<T> from(NtsOptionWatch<T> watch) {
+        NtsOptionBinder<T> binder = NtsOptionBinder.of(watch.getType());
+        return Flux.<T>create(sink -> {
+                NtsOptionWatch.Registration registration = watch.addListener(sink::next);
+                sink.onDispose(registration::close);
+                sink.next(watch.get());
+            })
+            .onBackpressureLatest()
+            .distinctUntilChanged(value -> rawValues(binder, value));
+    }
+
+    private static <T> List<String> rawValues(NtsOptionBinder<T> binder, T value) {
+        List<String> rawValues = new ArrayList<>();
+        binder.write(value, (optionKey, rawValue) -> {
+            rawValues.add(optionKey);
+            rawValues.add(rawValue);
+        });
+        return rawValues;
+    }
+}
@@ -0,0 +1,10 @@
+package org.nentangso.core.service.mapper;
+
+import org.mapstruct.Mapper;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.nentangso.core.service.dto.NtsMetafieldDTO;
+
+@Mapper(componentModel = "spring", uses = {})
+public interface NtsMetafieldMapper {
+    NtsMetafieldDTO toDto(NtsMetafieldEntity metafieldEntity);
+}
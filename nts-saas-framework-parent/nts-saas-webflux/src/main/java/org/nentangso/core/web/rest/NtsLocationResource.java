@@ -2,14 +2,18 @@ package org.nentangso.core.web.rest;
 
 import org.nentangso.core.service.dto.NtsLocationDTO;
 import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
 import org.nentangso.core.service.helper.NtsLocationHelper;
+import org.nentangso.core.service.helper.location.NtsLocationVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.util.Collections;
@@ -32,16 +36,61 @@ public class NtsLocationResource {
     }
 
     @GetMapping("/locations")
-    public Mono<List<? extends NtsLocationDTO>> findAll() {
+    public Mono<ResponseEntity<List<? extends NtsLocationDTO>>> findAll(
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
         log.debug("Request to get locations");
-        return locationHelper.findAll()
-            .switchIfEmpty(Mono.just(Collections.emptyList()));
+        return locationHelper.getIndex()
+            .map(index -> this.<List<? extends NtsLocationDTO>>toResponse(index.getVersion(), ifNoneMatch, index.findAll()))
+            .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.ok(Collections.emptyList())));
+    }
+
+    /**
+     * Stream the locations ordered by id, one JSON document per line, without building the whole list.
+     * <p>
+     * Page with {@code sinceId} set to the id of the last received location. The entity tag is the one of the whole
+     * snapshot, send it as {@code If-Match} with the next pages to get {@code 412 Precondition Failed} once it changed.
+     */
+    @GetMapping(path = "/locations", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<NtsLocationDTO>>> streamAll(
+        @RequestParam(value = "countryCode", required = false) String countryCode,
+        @RequestParam(value = "provinceCode", required = false) String provinceCode,
+        @RequestParam(value = "active", required = false) Boolean active,
+        @RequestParam(value = "sinceId", required = false) Long sinceId,
+        @RequestParam(value = "limit", required = false) Integer limit,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+        log.debug("Request to stream locations, countryCode={}, provinceCode={}, active={}, sinceId={}, limit={}", countryCode, provinceCode, active, sinceId, limit);
+        if (limit != null && limit < 1) {
+            return Mono.error(new NtsValidationException("limit", "must be greater than 0"));
+        }
+        return locationHelper.getIndex()
+            .map(index -> {
+                if (ifMatch != null && !NtsLocationVersion.matches(ifMatch, index.getVersion())) {
+                    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).eTag(index.getVersion()).<Flux<NtsLocationDTO>>build();
+                }
+                Flux<NtsLocationDTO> locations = Flux.fromStream(() -> index.stream(countryCode, provinceCode, active, sinceId));
+                return toResponse(index.getVersion(), ifNoneMatch, limit != null ? locations.take(limit) : locations);
+            })
+            .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.ok(Flux.empty())));
     }
 
     @GetMapping("/locations/{id}")
-    public Mono<? extends NtsLocationDTO> findOne(@PathVariable Long id) {
+    public Mono<ResponseEntity<NtsLocationDTO>> findOne(
+        @PathVariable Long id,
+        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
         log.debug("Request to find location by id={}", id);
         return locationHelper.findById(id)
+            .map(location -> this.<NtsLocationDTO>toResponse(NtsLocationVersion.of(location), ifNoneMatch, location))
             .switchIfEmpty(Mono.error(NtsNotFoundException::new));
     }
+
+    private <T> ResponseEntity<T> toResponse(String etag, String ifNoneMatch, T body) {
+        if (NtsLocationVersion.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(body);
+    }
 }
@@ -0,0 +1,291 @@
+package org.nentangso.core.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.annotation.OptionProperties;
+import org.nentangso.core.service.dto.NtsMetafieldDTO;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import org.nentangso.core.service.helper.*;
+import org.nentangso.core.service.helper.metafield.NtsMetafieldOwnerQuery;
+import org.nentangso.core.service.helper.option.NtsOptionWatch;
+import org.nentangso.core.service.mapper.NtsMetafieldMapperImpl;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.support.R2dbcRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Tests of the R2DBC helpers and their soft delete repositories against an embedded H2 database.
+ */
+class NtsHelperRepositoriesTest {
+    private static final String[] SCHEMA = {
+        "create table nts_options (id bigint auto_increment primary key, option_key varchar(50) not null, option_value varchar(255), deleted boolean default false not null, created_by varchar(50) not null, created_at timestamp with time zone, updated_by varchar(50), updated_at timestamp with time zone)",
+        "create table nts_tags (id bigint auto_increment primary key, tags clob not null, deleted boolean default false not null, created_by varchar(50) not null, created_at timestamp with time zone, updated_by varchar(50), updated_at timestamp with time zone)",
+        "create table nts_notes (id bigint auto_increment primary key, note varchar(5000) not null, deleted boolean default false not null, created_by varchar(50) not null, created_at timestamp with time zone, updated_by varchar(50), updated_at timestamp with time zone)",
+        "create table nts_metafields (id bigint auto_increment primary key, owner_resource varchar(20) not null, owner_id bigint not null, namespace varchar(20), nts_key varchar(30), nts_value clob, nts_value_text varchar(255), nts_value_number decimal(38, 10), nts_value_timestamp timestamp with time zone, nts_value_boolean boolean, nts_type varchar(50) not null, description varchar(255), deleted boolean default false not null, created_by varchar(50) not null, created_at timestamp with time zone, updated_by varchar(50), updated_at timestamp with time zone)",
+        "create index idx_nts_metafields_owner on nts_metafields (owner_resource, owner_id, deleted)",
+        "create index idx_nts_metafields_value_text on nts_metafields (owner_resource, namespace, nts_key, nts_value_text, owner_id)",
+        "create index idx_nts_metafields_value_number on nts_metafields (owner_resource, namespace, nts_key, nts_value_number, owner_id)",
+        "create table nts_outbox_events (id bigint auto_increment primary key, aggregate_type varchar(255) not null, aggregate_id varchar(36) not null, event_type varchar(255) not null, payload clob not null, aggregate_version int not null, business_version int not null, actor varchar(255) not null, created_at timestamp with time zone not null)",
+    };
+
+    private DatabaseClient db;
+    private R2dbcEntityTemplate entityTemplate;
+    private R2dbcRepositoryFactory repositoryFactory;
+
+    @BeforeEach
+    public void init() {
+        ConnectionFactory connectionFactory = H2ConnectionFactory.inMemory("nts_" + UUID.randomUUID().toString().replace("-", ""));
+        db = DatabaseClient.create(connectionFactory);
+        for (String sql : SCHEMA) {
+            db.sql(sql).then().block();
+        }
+        entityTemplate = new R2dbcEntityTemplate(connectionFactory);
+        repositoryFactory = new R2dbcRepositoryFactory(entityTemplate);
+    }
+
+    @Test
+    void optionHelperWritesDiffAndRefreshesWatches() {
+        NtsOptionRepository optionRepository = repositoryFactory.getRepository(
+            NtsOptionRepository.class,
+            RepositoryFragments.just(new NtsOptionRepositoryInternalImpl(db))
+        );
+        NtsOptionHelper optionHelper = new NtsOptionHelper(optionRepository);
+        SampleOptions options = new SampleOptions();
+        options.storeName = "Main";
+        options.tags = List.of("a", "b", "c");
+
+        optionHelper.write(options).block();
+        NtsOptionWatch<SampleOptions> watch = optionHelper.watch(SampleOptions.class).block();
+        assertThat(watch).isNotNull();
+        assertThat(watch.get().tags).containsExactly("a", "b", "c");
+
+        options.tags = List.of("a", "c", "d");
+        optionHelper.write(options).block();
+
+        assertThat(optionHelper.read(SampleOptions.class).block().tags).containsExactlyInAnyOrder("a", "c", "d");
+        assertThat(watch.get().tags).containsExactlyInAnyOrder("a", "c", "d");
+        assertThat(countRows("nts_options", true)).isEqualTo(1L);
+        assertThat(countRows("nts_options", false)).isEqualTo(5L);
+
+        optionHelper.writeLong("sample.max_items", 25L).block();
+        assertThat(optionHelper.readLong("sample.max_items").block()).isEqualTo(25L);
+        assertThat(db.sql("select count(*) from nts_options where created_at is null")
+            .map(row -> row.get(0, Long.class))
+            .one()
+            .block()).isZero();
+        assertThat(optionHelper.readRawString("sample.missing").blockOptional()).isEmpty();
+    }
+
+    @Test
+    void tagsAndNoteHelpersSoftDelete() {
+        NtsTagsHelper tagsHelper = new NtsTagsHelper(repositoryFactory.getRepository(NtsTagsRepository.class));
+        NtsNoteHelper noteHelper = new NtsNoteHelper(repositoryFactory.getRepository(NtsNoteRepository.class));
+
+        Long tagsId = tagsHelper.save(Set.of("red", "blue"), (Long) null).block().getId();
+        Long noteId = noteHelper.save("first note", (Long) null).block().getId();
+
+        assertThat(tagsHelper.findTagsById(tagsId).block()).containsExactlyInAnyOrder("red", "blue");
+        assertThat(noteHelper.findAllNoteById(List.of(noteId)).block()).containsEntry(noteId, "first note");
+
+        assertThat(tagsHelper.save("", tagsId).blockOptional()).isEmpty();
+        assertThat(noteHelper.save((String) null, noteId).blockOptional()).isEmpty();
+
+        assertThat(tagsHelper.findJoinedTagsById(tagsId).blockOptional()).isEmpty();
+        assertThat(noteHelper.findNoteById(noteId).blockOptional()).isEmpty();
+        assertThat(countRows("nts_tags", true)).isEqualTo(1L);
+        assertThatThrownBy(() -> tagsHelper.save("green", tagsId).block()).isInstanceOf(NtsNotFoundException.class);
+    }
+
+    @Test
+    void metafieldHelperScopesToOwner() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper();
+        NtsMetafieldDTO metafield = metafieldHelper.save(NtsMetafieldDTO.newBuilder()
+            .ownerResource("product")
+            .ownerId(1L)
+            .namespace("global")
+            .key("color")
+            .value("red")
+            .type("single_line_text_field")
+            .build()).block();
+
+        assertThat(metafield).isNotNull();
+        assertThat(metafieldHelper.findAllByOwner("product", 1L).collectList().block()).hasSize(1);
+        assertThat(metafieldHelper.count("product", 1L).block()).isEqualTo(1L);
+        assertThat(metafieldHelper.findOne("product", 2L, metafield.getId()).blockOptional()).isEmpty();
+        assertThat(metafieldHelper.findOne("Product", 1L, metafield.getId()).blockOptional()).isPresent();
+
+        NtsMetafieldDTO changed = NtsMetafieldDTO.newBuilder(metafield).value("blue").build();
+        assertThatThrownBy(() -> metafieldHelper.update("product", 2L, changed).block()).isInstanceOf(NtsNotFoundException.class);
+        assertThat(metafieldHelper.update("PRODUCT", 1L, changed).block().getValue()).isEqualTo("blue");
+        assertThat(metafieldHelper.findOne("product", 1L, metafield.getId()).block().getValue()).isEqualTo("blue");
+        assertThatThrownBy(() -> metafieldHelper.delete("product", 2L, metafield.getId()).block()).isInstanceOf(NtsNotFoundException.class);
+
+        metafieldHelper.delete("Product", 1L, metafield.getId()).block();
+
+        assertThat(metafieldHelper.count("product", 1L).block()).isZero();
+        assertThatThrownBy(() -> metafieldHelper.delete("product", 1L, metafield.getId()).block()).isInstanceOf(NtsNotFoundException.class);
+    }
+
+    @Test
+    void metafieldHelperFetchesManyOwners() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper();
+        for (long ownerId = 1; ownerId <= 3; ownerId++) {
+            for (String key : List.of("color", "size")) {
+                metafieldHelper.save(NtsMetafieldDTO.newBuilder()
+                    .ownerResource("product")
+                    .ownerId(ownerId)
+                    .namespace("global")
+                    .key(key)
+                    .value(key + ownerId)
+                    .type("single_line_text_field")
+                    .build()).block();
+            }
+        }
+        List<Long> ownerIds = LongStream.rangeClosed(1, 1200).boxed().collect(Collectors.toList());
+
+        Map<Long, List<NtsMetafieldDTO>> metafields = metafieldHelper.findAllByOwners("product", ownerIds).block();
+        assertThat(metafields).hasSize(1200);
+        assertThat(metafields.get(2L)).extracting(NtsMetafieldDTO::getValue).containsExactlyInAnyOrder("color2", "size2");
+        assertThat(metafields.get(1200L)).isEmpty();
+
+        Map<Long, List<NtsMetafieldDTO>> colors = metafieldHelper.findAllByOwners("product", List.of(3L, 1L), "global", "color").block();
+        assertThat(colors.keySet()).containsExactly(3L, 1L);
+        assertThat(colors.get(3L)).extracting(NtsMetafieldDTO::getValue).containsExactly("color3");
+
+        assertThat(metafieldHelper.countByOwners("product", ownerIds).block())
+            .hasSize(1200)
+            .containsEntry(1L, 2L)
+            .containsEntry(1200L, 0L);
+        assertThat(metafieldHelper.countByOwners("product", List.of(1L, 4L), null, "size").block())
+            .containsExactly(Map.entry(1L, 1L), Map.entry(4L, 0L));
+        assertThat(metafieldHelper.countByOwners("variant", List.of(1L)).block()).containsExactly(Map.entry(1L, 0L));
+    }
+
+    @Test
+    void metafieldHelperFindsOwnersByValue() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper();
+        for (long ownerId = 1; ownerId <= 30; ownerId++) {
+            metafieldHelper.save(NtsMetafieldDTO.newBuilder()
+                .ownerResource("product")
+                .ownerId(ownerId)
+                .namespace("custom")
+                .key("color")
+                .value(ownerId % 3 == 0 ? "red_" + ownerId : "blue")
+                .type("single_line_text_field")
+                .build()).block();
+            metafieldHelper.save(NtsMetafieldDTO.newBuilder()
+                .ownerResource("product")
+                .ownerId(ownerId)
+                .namespace("custom")
+                .key("weight")
+                .value(String.valueOf(ownerId * 1.5))
+                .type("number_decimal")
+                .build()).block();
+        }
+        NtsMetafieldOwnerQuery.Builder reds = NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color")
+            .valuePrefix("red_")
+            .limit(4);
+
+        List<Long> firstPage = metafieldHelper.findOwnerIds(reds.build()).collectList().block();
+        assertThat(firstPage).containsExactly(3L, 6L, 9L, 12L);
+        List<Long> nextPage = metafieldHelper.findOwnerIds(reds.afterOwnerId(12L).build()).collectList().block();
+        assertThat(nextPage).containsExactly(15L, 18L, 21L, 24L);
+        assertThat(metafieldHelper.findOwnerIds(reds.valuePrefix("red%").afterOwnerId(null).build()).collectList().block()).isEmpty();
+
+        assertThat(metafieldHelper.findOwnerIds(NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("color")
+            .value("red_30")
+            .build()).collectList().block()).containsExactly(30L);
+        assertThat(metafieldHelper.findOwnerIds(NtsMetafieldOwnerQuery.newBuilder()
+            .ownerResource("product")
+            .namespace("custom")
+            .key("weight")
+            .minValue(new BigDecimal("6"))
+            .maxValue(new BigDecimal("9"))
+            .build()).collectList().block()).containsExactly(4L, 5L, 6L);
+    }
+
+    @Test
+    void metafieldHelperParsesValuesByType() {
+        NtsMetafieldHelper metafieldHelper = newMetafieldHelper();
+        NtsMetafieldDTO.Builder builder = NtsMetafieldDTO.newBuilder()
+            .ownerResource("product")
+            .ownerId(1L)
+            .namespace("custom");
+
+        NtsMetafieldDTO releasedAt = metafieldHelper.save(builder.key("released_at").value("2022-02-02T12:30:00+07:00").type("date_time").build()).block();
+        NtsMetafieldDTO featured = metafieldHelper.save(builder.key("featured").value("true").type("boolean").build()).block();
+        NtsMetafieldDTO sizes = metafieldHelper.save(builder.key("sizes").value("[38, 39, 40]").type("list.number_integer").build()).block();
+
+        assertThat(releasedAt.getValueTimestamp()).isEqualTo(Instant.parse("2022-02-02T05:30:00Z"));
+        assertThat(featured.getValueBoolean()).isTrue();
+        assertThat(sizes.getValueJson().size()).isEqualTo(3);
+        assertThat(metafieldHelper.findOne("product", 1L, releasedAt.getId()).block().getValueTimestamp()).isEqualTo(releasedAt.getValueTimestamp());
+
+        assertThatThrownBy(() -> metafieldHelper.save(builder.key("weight").value("heavy").type("number_decimal").build()).block())
+            .isInstanceOf(NtsValidationException.class);
+        assertThatThrownBy(() -> metafieldHelper.save(builder.key("sizes").value("[38, \"L\"]").type("list.number_integer").build()).block())
+            .isInstanceOf(NtsValidationException.class);
+        assertThatThrownBy(() -> metafieldHelper.save(builder.key("details").value("{").type("json").build()).block())
+            .isInstanceOf(NtsValidationException.class);
+    }
+
+    @Test
+    void outboxEventHelperBatchesInserts() {
+        NtsOutboxEventRepository outboxEventRepository = repositoryFactory.getRepository(
+            NtsOutboxEventRepository.class,
+            RepositoryFragments.just(new NtsOutboxEventRepositoryInternalImpl(db))
+        );
+        NtsOutboxEventHelper outboxEventHelper = new NtsOutboxEventHelper(outboxEventRepository, new ObjectMapper());
+        List<Map<String, Integer>> payloads = IntStream.range(0, 250)
+            .mapToObj(i -> Map.of("index", i))
+            .collect(Collectors.toList());
+
+        outboxEventHelper.batchQueue("product", "product_created", payloads).block();
+        outboxEventHelper.queue("product", "product_updated", "{}").block();
+
+        assertThat(outboxEventRepository.count().block()).isEqualTo(251L);
+    }
+
+    private NtsMetafieldHelper newMetafieldHelper() {
+        NtsMetafieldRepository metafieldRepository = repositoryFactory.getRepository(
+            NtsMetafieldRepository.class,
+            RepositoryFragments.just(new NtsMetafieldRepositoryInternalImpl(db, entityTemplate, entityTemplate.getConverter()))
+        );
+        return new NtsMetafieldHelper(metafieldRepository, new NtsMetafieldMapperImpl(), new ObjectMapper());
+    }
+
+    private long countRows(String table, boolean deleted) {
+        return db.sql("select count(*) from " + table + " where deleted = " + deleted)
+            .map(row -> row.get(0, Long.class))
+            .one()
+            .block();
+    }
+
+    @OptionProperties(prefix = "sample")
+    static class SampleOptions {
+        private String storeName;
+        private int maxItems = 10;
+        private List<String> tags = new ArrayList<>();
+    }
+}
@@ -0,0 +1,477 @@
+package org.nentangso.core.service.helper.location;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.config.NtsProperties.HelperProperties.LocationProperties.CacheProperties;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.redisson.api.*;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.redisson.codec.SerializationCodec;
+import org.redisson.jcache.configuration.RedissonConfiguration;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsDefaultLocationCacheable}, against a stub reactive redisson client shared by the nodes.
+ */
+class NtsDefaultLocationCacheableTest {
+    private final NtsProperties ntsProperties = new NtsProperties();
+    private final StubRedisson redis = new StubRedisson();
+
+    @Test
+    void testNearCacheServesReadsUntilAnotherNodeWrites() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        other.setCacheLocations(locations(1L, 2L)).block();
+
+        assertThat(node.getCacheLocations().block()).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations().block()).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations(List.of(2L, 9L)).block()).containsOnlyKeys(2L);
+        assertThat(node.getCacheLocationIds().block()).containsExactly(1L, 2L);
+        assertThat(redis.reads).hasValue(1);
+
+        other.setCacheLocations(locations(1L, 2L, 3L)).block();
+
+        assertThat(node.getCacheLocations().block()).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(2);
+        assertThat(other.getCacheLocations().block()).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(2);
+    }
+
+    @Test
+    void testCacheVersionIsComputedOncePerSnapshot() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L, 2L)).block();
+        Map<Long, NtsDefaultLocationDTO> snapshot = node.getCacheLocations().block();
+
+        String version = node.getCacheVersion(snapshot);
+
+        assertThat(version).isEqualTo(NtsLocationVersion.of(locations(1L, 2L).values()));
+        assertThat(node.getCacheVersion(node.getCacheLocations().block())).isSameAs(version);
+
+        node.putCacheLocation(location(2L, "Renamed 2")).block();
+
+        assertThat(node.getCacheLocations().block()).isNotSameAs(snapshot);
+        assertThat(node.getCacheVersion(node.getCacheLocations().block())).isNotEqualTo(version);
+        assertThat(node.getCacheVersion(locations(1L, 2L))).isEqualTo(version);
+    }
+
+    @Test
+    void testNearCacheDisabledReadsRedisEveryTime() {
+        getCacheProperties().getNearCache().setEnabled(false);
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L, 2L)).block();
+
+        node.getCacheLocations().block();
+        node.getCacheLocations().block();
+
+        assertThat(redis.reads).hasValue(2);
+        assertThat(redis.listeners).isEmpty();
+        verify(redis.client, never()).getTopic(anyString());
+    }
+
+    @Test
+    void testClearCacheLocationsInvalidatesOtherNodes() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L)).block();
+        assertThat(other.getCacheLocations().block()).containsOnlyKeys(1L);
+
+        assertThat(node.clearCacheLocations().block()).isTrue();
+
+        assertThat(redis.bucket.get()).isNull();
+        assertThat(other.getCacheLocations().block()).isNull();
+    }
+
+    @Test
+    void testHashStorageReadsByIdsAndIdSet() {
+        getCacheProperties().setStorage(CacheProperties.Storage.HASH);
+        getCacheProperties().getNearCache().setEnabled(false);
+        NtsDefaultLocationCacheable node = newCacheable();
+        assertThat(node.getCacheLocations(List.of(1L)).block()).isNull();
+        assertThat(node.getCacheLocationIds().block()).isNull();
+
+        node.setCacheLocations(locations(1L, 2L, 3L)).block();
+
+        assertThat(redis.hash).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(redis.ids).containsExactly(1L, 2L, 3L);
+        assertThat(node.getCacheLocations(Arrays.asList(2L, 9L, null)).block()).containsOnlyKeys(2L);
+        assertThat(node.getCacheLocations(List.of(9L)).block()).isEmpty();
+        assertThat(node.getCacheLocationIds().block()).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(redis.reads).hasValue(0);
+
+        node.setCacheLocations(locations(4L)).block();
+
+        assertThat(redis.ids).containsExactly(4L);
+        assertThat(node.getCacheLocations().block()).containsOnlyKeys(4L);
+        assertThat(node.extendCacheLocations().block()).isTrue();
+        assertThat(node.clearCacheLocations().block()).isTrue();
+        assertThat(node.getCacheLocations(List.of(4L)).block()).isNull();
+        assertThat(node.extendCacheLocations().block()).isFalse();
+    }
+
+    @Test
+    void testGetOrLoadCoalescesConcurrentMisses() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<Map<Long, NtsDefaultLocationDTO>> upstream = Sinks.one();
+        List<CompletableFuture<Map<Long, NtsDefaultLocationDTO>>> results = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            results.add(node.getOrLoadCacheLocations(() -> {
+                loads.incrementAndGet();
+                return upstream.asMono();
+            }).toFuture());
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(results).noneMatch(CompletableFuture::isDone);
+
+        upstream.tryEmitValue(locations(1L, 2L));
+
+        for (CompletableFuture<Map<Long, NtsDefaultLocationDTO>> result : results) {
+            assertThat(result.join()).containsOnlyKeys(1L, 2L);
+        }
+        assertThat(loads).hasValue(1);
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+    }
+
+    @Test
+    void testGetOrLoadFailureIsNotCached() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThatThrownBy(() -> node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return Mono.error(new IllegalStateException("upstream is down"));
+        }).block()).isInstanceOf(IllegalStateException.class).hasMessage("upstream is down");
+        assertThat(node.getOrLoadCacheLocations(() -> Mono.just(Collections.emptyMap())).block()).isEmpty();
+        assertThat(redis.bucket.get()).isNull();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return Mono.just(locations(1L));
+        }).block();
+
+        assertThat(loaded).containsOnlyKeys(1L);
+        assertThat(node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return Mono.just(locations(2L));
+        }).block()).containsOnlyKeys(1L);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void testGetOrLoadUnderLockReadsCacheLoadedMeanwhile() {
+        getCacheProperties().getLock().setEnabled(true);
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        doAnswer(invocation -> other.setCacheLocations(locations(1L)).thenReturn(true))
+            .when(redis.lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class), anyLong());
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            return Mono.just(locations(2L));
+        }).block();
+
+        assertThat(loaded).containsOnlyKeys(1L);
+        assertThat(loads).hasValue(0);
+        verify(redis.lock).unlock(anyLong());
+    }
+
+    @Test
+    void testTryClaimReload() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        assertThat(node.tryClaimReload(60L).block()).isTrue();
+        verify(redis.client, never()).getLock(anyString());
+
+        getCacheProperties().getLock().setEnabled(true);
+        redis.reloadLockAvailable = false;
+        assertThat(node.tryClaimReload(60L).block()).isFalse();
+        redis.reloadLockAvailable = true;
+        assertThat(node.tryClaimReload(60L).block()).isTrue();
+    }
+
+    @Test
+    void testPutCacheLocationWritesThroughBucketAndInvalidatesOtherNodes() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L)).block();
+        assertThat(other.getCacheLocations().block()).containsOnlyKeys(1L, 2L);
+
+        assertThat(node.putCacheLocation(location(2L, "Renamed 2")).block()).isTrue();
+
+        assertThat(redis.bucket.get().get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(node.getCacheLocations().block().get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(other.getCacheLocations().block().get(2L).getName()).isEqualTo("Renamed 2");
+        verify(redis.client, never()).getLock(anyString());
+    }
+
+    @Test
+    void testPutCacheLocationWritesThroughHash() {
+        getCacheProperties().setStorage(CacheProperties.Storage.HASH);
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L)).block();
+
+        assertThat(node.putCacheLocation(location(3L, "Location 3")).block()).isTrue();
+
+        assertThat(redis.ids).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(other.getCacheLocations(List.of(3L)).block()).containsOnlyKeys(3L);
+        assertThat(node.getCacheLocationIds().block()).containsExactlyInAnyOrder(1L, 2L, 3L);
+    }
+
+    @Test
+    void testPutCacheLocationSkipsEmptyCache() {
+        NtsDefaultLocationCacheable node = newCacheable();
+
+        assertThat(node.putCacheLocation(location(1L, "Location 1")).block()).isFalse();
+
+        assertThat(redis.bucket.get()).isNull();
+        assertThat(redis.generation.get()).isEqualTo(1L);
+    }
+
+    @Test
+    void testReloadDropsSnapshotWrittenDuringLoad() {
+        NtsDefaultLocationCacheable node = newCacheable();
+        NtsDefaultLocationCacheable other = newCacheable();
+        node.setCacheLocations(locations(1L, 2L)).block();
+        AtomicInteger loads = new AtomicInteger();
+
+        Map<Long, NtsDefaultLocationDTO> reloaded = node.reloadCacheLocations(() -> {
+            loads.incrementAndGet();
+            Map<Long, NtsDefaultLocationDTO> fetched = locations(1L, 2L);
+            return other.putCacheLocation(location(2L, "Renamed 2")).thenReturn(fetched);
+        }).block();
+
+        assertThat(reloaded).containsOnlyKeys(1L, 2L);
+        assertThat(node.getCacheLocations().block()).isNull();
+        assertThat(other.getCacheLocations().block()).isNull();
+
+        Map<Long, NtsDefaultLocationDTO> loaded = node.getOrLoadCacheLocations(() -> {
+            loads.incrementAndGet();
+            Map<Long, NtsDefaultLocationDTO> fetched = locations(1L, 2L);
+            fetched.put(2L, location(2L, "Renamed 2"));
+            return Mono.just(fetched);
+        }).block();
+
+        assertThat(loads).hasValue(2);
+        assertThat(loaded.get(2L).getName()).isEqualTo("Renamed 2");
+        assertThat(other.getCacheLocations().block().get(2L).getName()).isEqualTo("Renamed 2");
+    }
+
+    @Test
+    void testPatchBucketUnderLock() {
+        getCacheProperties().getLock().setEnabled(true);
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L)).block();
+
+        assertThat(node.putCacheLocation(location(2L, "Location 2")).block()).isTrue();
+
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+        verify(redis.lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class), anyLong());
+        verify(redis.lock).unlock(anyLong());
+    }
+
+    @Test
+    void testPatchBucketWithoutLockOnTimeout() {
+        getCacheProperties().getLock().setEnabled(true);
+        redis.lockAvailable = false;
+        NtsDefaultLocationCacheable node = newCacheable();
+        node.setCacheLocations(locations(1L)).block();
+
+        assertThat(node.putCacheLocation(location(2L, "Location 2")).block()).isTrue();
+
+        assertThat(redis.bucket.get()).containsOnlyKeys(1L, 2L);
+        verify(redis.lock, never()).unlock(anyLong());
+    }
+
+    private CacheProperties getCacheProperties() {
+        return ntsProperties.getHelper().getLocation().getCache();
+    }
+
+    @SuppressWarnings("unchecked")
+    private NtsDefaultLocationCacheable newCacheable() {
+        RedissonClient client = mock(RedissonClient.class);
+        when(client.reactive()).thenReturn(redis.client);
+        RedissonConfiguration<Object, Object> configuration = mock(RedissonConfiguration.class);
+        when(configuration.getRedisson()).thenReturn(client);
+        return new NtsDefaultLocationCacheable(ntsProperties, configuration);
+    }
+
+    private static Map<Long, NtsDefaultLocationDTO> locations(Long... ids) {
+        Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+        for (Long id : ids) {
+            result.put(id, location(id, "Location " + id));
+        }
+        return result;
+    }
+
+    private static NtsDefaultLocationDTO location(Long id, String name) {
+        return NtsLocationDTO.newDefaultBuilder()
+            .id(id)
+            .name(name)
+            .build();
+    }
+
+    /**
+     * The reactive redis objects used by the cacheable, backed by in-memory state shared by every node. Like redis
+     * commands, nothing is executed before the returned publishers are subscribed, and batched commands run on execute.
+     */
+    @SuppressWarnings("unchecked")
+    static class StubRedisson {
+        final RedissonReactiveClient client = mock(RedissonReactiveClient.class);
+        final AtomicReference<Map<Long, NtsDefaultLocationDTO>> bucket = new AtomicReference<>();
+        final Map<Long, NtsDefaultLocationDTO> hash = new LinkedHashMap<>();
+        final Set<Long> ids = new LinkedHashSet<>();
+        final AtomicLong generation = new AtomicLong();
+        final AtomicInteger reads = new AtomicInteger();
+        final List<MessageListener<Object>> listeners = new CopyOnWriteArrayList<>();
+        final RLockReactive lock = mock(RLockReactive.class);
+        final RLockReactive reloadLock = mock(RLockReactive.class);
+        volatile boolean lockAvailable = true;
+        volatile boolean reloadLockAvailable = true;
+
+        StubRedisson() {
+            RBucketReactive<Map<Long, NtsDefaultLocationDTO>> redisBucket = mock(RBucketReactive.class);
+            doAnswer(invocation -> Mono.fromSupplier(() -> {
+                reads.incrementAndGet();
+                return bucket.get();
+            })).when(redisBucket).get();
+            doAnswer(invocation -> Mono.fromRunnable(() -> bucket.set(invocation.getArgument(0))))
+                .when(redisBucket).set(any(), anyLong(), any(TimeUnit.class));
+            doAnswer(invocation -> Mono.fromSupplier(() -> bucket.get() != null && bucket.getAndSet(invocation.getArgument(0)) != null))
+                .when(redisBucket).setIfExists(any(), anyLong(), any(TimeUnit.class));
+            doAnswer(invocation -> Mono.fromSupplier(() -> bucket.getAndSet(null) != null)).when(redisBucket).delete();
+            doAnswer(invocation -> Mono.fromSupplier(() -> bucket.get() != null))
+                .when(redisBucket).expire(any(Duration.class));
+            doReturn(redisBucket).when(client).getBucket(anyString(), any(Codec.class));
+
+            RMapReactive<Long, NtsDefaultLocationDTO> redisHash = mock(RMapReactive.class);
+            doAnswer(invocation -> Mono.fromSupplier(() -> {
+                reads.incrementAndGet();
+                return new LinkedHashMap<>(hash);
+            })).when(redisHash).readAllMap();
+            doAnswer(invocation -> Mono.fromSupplier(() -> {
+                Map<Long, NtsDefaultLocationDTO> result = new LinkedHashMap<>();
+                for (Long id : (Set<Long>) invocation.getArgument(0)) {
+                    if (hash.containsKey(id)) {
+                        result.put(id, hash.get(id));
+                    }
+                }
+                return result;
+            })).when(redisHash).getAll(anySet());
+            doAnswer(invocation -> Mono.fromSupplier(() -> !hash.isEmpty()))
+                .when(redisHash).expire(any(Duration.class));
+            doReturn(redisHash).when(client).getMap(anyString(), any(Codec.class));
+
+            RSetReactive<Long> redisIds = mock(RSetReactive.class);
+            doAnswer(invocation -> Mono.fromSupplier(() -> new LinkedHashSet<>(ids))).when(redisIds).readAll();
+            doAnswer(invocation -> Mono.fromSupplier(() -> !ids.isEmpty())).when(redisIds).isExists();
+            doAnswer(invocation -> Mono.fromSupplier(() -> !ids.isEmpty()))
+                .when(redisIds).expire(any(Duration.class));
+            doReturn(redisIds).when(client).getSet(anyString(), any(Codec.class));
+
+            doAnswer(invocation -> newBatch()).when(client).createBatch(any(BatchOptions.class));
+
+            RKeysReactive keys = mock(RKeysReactive.class);
+            doAnswer(invocation -> Mono.fromSupplier(() -> {
+                long deleted = (hash.isEmpty() ? 0 : 1) + (ids.isEmpty() ? 0 : 1);
+                hash.clear();
+                ids.clear();
+                return deleted;
+            })).when(keys).delete(anyString(), anyString());
+            doReturn(keys).when(client).getKeys();
+
+            RScriptReactive script = mock(RScriptReactive.class);
+            SerializationCodec codec = new SerializationCodec();
+            doAnswer(invocation -> Mono.fromCallable(() -> {
+                generation.incrementAndGet();
+                if (ids.isEmpty()) {
+                    return false;
+                }
+                byte[] value = invocation.getArgument(5);
+                NtsDefaultLocationDTO location = (NtsDefaultLocationDTO) codec.getValueDecoder().decode(Unpooled.wrappedBuffer(value), null);
+                hash.put(location.getId(), location);
+                ids.add(location.getId());
+                return true;
+            })).when(script).eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any(), any());
+            doReturn(script).when(client).getScript(any(Codec.class));
+
+            RAtomicLongReactive redisGeneration = mock(RAtomicLongReactive.class);
+            doAnswer(invocation -> Mono.fromSupplier(generation::get)).when(redisGeneration).get();
+            doAnswer(invocation -> Mono.fromSupplier(generation::incrementAndGet)).when(redisGeneration).incrementAndGet();
+            doReturn(redisGeneration).when(client).getAtomicLong(anyString());
+
+            RTopicReactive topic = mock(RTopicReactive.class);
+            doAnswer(invocation -> {
+                MessageListener<Object> listener = invocation.getArgument(1);
+                return Mono.fromSupplier(() -> {
+                    listeners.add(listener);
+                    return listeners.size();
+                });
+            }).when(topic).addListener(eq(String.class), any(MessageListener.class));
+            doAnswer(invocation -> Mono.fromSupplier(() -> {
+                listeners.forEach(listener -> listener.onMessage("locations_invalidation", invocation.getArgument(0)));
+                return (long) listeners.size();
+            })).when(topic).publish(any());
+            doReturn(topic).when(client).getTopic(anyString());
+
+            doAnswer(invocation -> Mono.fromSupplier(() -> lockAvailable))
+                .when(lock).tryLock(anyLong(), anyLong(), any(TimeUnit.class), anyLong());
+            doAnswer(invocation -> Mono.empty()).when(lock).unlock(anyLong());
+            doAnswer(invocation -> Mono.fromSupplier(() -> reloadLockAvailable))
+                .when(reloadLock).tryLock(anyLong(), anyLong(), any(TimeUnit.class), anyLong());
+            doReturn(lock).when(client).getLock(endsWith("locations_lock"));
+            doReturn(reloadLock).when(client).getLock(endsWith("locations_reload_lock"));
+        }
+
+        private RBatchReactive newBatch() {
+            List<Runnable> commands = new ArrayList<>();
+            RBatchReactive batch = mock(RBatchReactive.class);
+            RMapReactive<Long, NtsDefaultLocationDTO> batchHash = mock(RMapReactive.class);
+            doAnswer(invocation -> {
+                commands.add(hash::clear);
+                return Mono.empty();
+            }).when(batchHash).delete();
+            doAnswer(invocation -> {
+                Map<Long, NtsDefaultLocationDTO> items = invocation.getArgument(0);
+                commands.add(() -> hash.putAll(items));
+                return Mono.empty();
+            }).when(batchHash).putAll(anyMap());
+            doAnswer(invocation -> Mono.empty()).when(batchHash).expire(any(Duration.class));
+            RSetReactive<Long> batchIds = mock(RSetReactive.class);
+            doAnswer(invocation -> {
+                commands.add(ids::clear);
+                return Mono.empty();
+            }).when(batchIds).delete();
+            doAnswer(invocation -> {
+                Collection<Long> items = invocation.getArgument(0);
+                commands.add(() -> ids.addAll(items));
+                return Mono.empty();
+            }).when(batchIds).addAll(anyCollection());
+            doAnswer(invocation -> Mono.empty()).when(batchIds).expire(any(Duration.class));
+            doReturn(batchHash).when(batch).getMap(anyString(), any(Codec.class));
+            doReturn(batchIds).when(batch).getSet(anyString(), any(Codec.class));
+            doAnswer(invocation -> Mono.fromRunnable(() -> commands.forEach(Runnable::run))).when(batch).execute();
+            return batch;
+        }
+    }
+}
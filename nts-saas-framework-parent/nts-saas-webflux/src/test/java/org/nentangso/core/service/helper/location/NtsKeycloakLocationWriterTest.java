@@ -0,0 +1,189 @@
+package org.nentangso.core.service.helper.location;
+
+import feign.FeignException;
+import feign.Request;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.client.NtsKeycloakClient;
+import org.nentangso.core.client.vm.KeycloakClientRole;
+import org.nentangso.core.config.NtsKeycloakLocationProperties;
+import org.nentangso.core.service.dto.NtsAttributeDTO;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.nentangso.core.service.errors.NtsNotFoundException;
+import org.nentangso.core.service.errors.NtsValidationException;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the {@link NtsKeycloakLocationWriter}, against a stub keycloak client.
+ */
+class NtsKeycloakLocationWriterTest {
+    private static final String CLIENT_ID = "internal-client-id";
+    private static final String CUSTOM_KEY = "warehouseCode";
+
+    private final StubKeycloakClient keycloak = new StubKeycloakClient();
+    private final NtsDefaultLocationCacheable locationCacheable = mock(NtsDefaultLocationCacheable.class);
+    private NtsKeycloakLocationWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        NtsKeycloakLocationProperties properties = new NtsKeycloakLocationProperties();
+        properties.setAdminBaseUrl("http://keycloak");
+        properties.setInternalClientId(CLIENT_ID);
+        properties.getCustomAttributeKeys().add(CUSTOM_KEY);
+        when(locationCacheable.putCacheLocation(any())).thenReturn(Mono.just(true));
+        NtsKeycloakLocationProvider provider = new NtsKeycloakLocationProvider(properties, locationCacheable, keycloak);
+        writer = new NtsKeycloakLocationWriter(properties, provider, locationCacheable, keycloak);
+    }
+
+    @Test
+    void testCreateWritesRoleAndCache() {
+        NtsDefaultLocationDTO created = writer.create(NtsLocationDTO.newDefaultBuilder()
+            .id(7L)
+            .name("Main store")
+            .city("Hanoi")
+            .active(true)
+            .customAttributes(List.of(
+                NtsAttributeDTO.newBuilder().key(CUSTOM_KEY).value("WH-7").build(),
+                NtsAttributeDTO.newBuilder().key("unknown").value("dropped").build()
+            ))
+            .build()).block();
+
+        KeycloakClientRole role = keycloak.roles.get("7");
+        assertThat(role.getDescription()).isEqualTo("Main store");
+        assertThat(role.getAttributes())
+            .containsEntry(NtsKeycloakLocationProvider.ATTRIBUTE_ACTIVE, List.of("true"))
+            .containsEntry(NtsKeycloakLocationProvider.ATTRIBUTE_CITY, List.of("Hanoi"))
+            .containsEntry(CUSTOM_KEY, List.of("WH-7"))
+            .containsKeys(NtsKeycloakLocationProvider.ATTRIBUTE_CREATED_AT, NtsKeycloakLocationProvider.ATTRIBUTE_UPDATED_AT)
+            .doesNotContainKey("unknown");
+        assertThat(created.getId()).isEqualTo(7L);
+        assertThat(created.getAddress().getCity()).isEqualTo("Hanoi");
+        assertThat(created.getCustomAttributes()).extracting(NtsAttributeDTO::getValue).containsExactly("WH-7");
+        verify(locationCacheable).putCacheLocation(argThat(location -> location.getId() == 7L && "Main store".equals(location.getName())));
+    }
+
+    @Test
+    void testUpdateKeepsForeignAttributesAndCreatedAt() {
+        Instant createdAt = Instant.parse("2022-01-01T00:00:00Z");
+        Map<String, List<String>> attributes = new LinkedHashMap<>();
+        attributes.put(NtsKeycloakLocationProvider.ATTRIBUTE_ACTIVE, List.of("true"));
+        attributes.put(NtsKeycloakLocationProvider.ATTRIBUTE_CREATED_AT, List.of(createdAt.toString()));
+        attributes.put(NtsKeycloakLocationProvider.ATTRIBUTE_PHONE, List.of("0900000000"));
+        attributes.put(CUSTOM_KEY, List.of("WH-7"));
+        attributes.put("managedElsewhere", List.of("kept"));
+        keycloak.put(7L, "Main store", attributes);
+
+        NtsDefaultLocationDTO updated = writer.update(NtsLocationDTO.newDefaultBuilder()
+            .id(7L)
+            .name("Renamed store")
+            .active(false)
+            .build()).block();
+
+        KeycloakClientRole role = keycloak.roles.get("7");
+        assertThat(role.getDescription()).isEqualTo("Renamed store");
+        assertThat(role.getAttributes())
+            .containsEntry("managedElsewhere", List.of("kept"))
+            .containsEntry(NtsKeycloakLocationProvider.ATTRIBUTE_CREATED_AT, List.of(createdAt.toString()))
+            .containsEntry(NtsKeycloakLocationProvider.ATTRIBUTE_ACTIVE, List.of("false"))
+            .containsKey(NtsKeycloakLocationProvider.ATTRIBUTE_DEACTIVATED_AT)
+            .doesNotContainKeys(NtsKeycloakLocationProvider.ATTRIBUTE_PHONE, CUSTOM_KEY);
+        assertThat(updated.getName()).isEqualTo("Renamed store");
+        assertThat(updated.getCreatedAt()).isEqualTo(createdAt);
+        assertThat(updated.isActive()).isFalse();
+        verify(locationCacheable).putCacheLocation(argThat(location -> "Renamed store".equals(location.getName())));
+    }
+
+    @Test
+    void testUncachedWriteStillReturnsLocation() {
+        when(locationCacheable.putCacheLocation(any())).thenReturn(Mono.just(false));
+
+        NtsDefaultLocationDTO created = writer.create(NtsLocationDTO.newDefaultBuilder().id(8L).name("Outlet").build()).block();
+
+        assertThat(created.getName()).isEqualTo("Outlet");
+        assertThat(keycloak.roles).containsKey("8");
+    }
+
+    @Test
+    void testFailedWritesDoNotTouchCache() {
+        assertThatThrownBy(() -> writer.update(NtsLocationDTO.newDefaultBuilder().id(9L).name("Missing").build()).block())
+            .isInstanceOf(NtsNotFoundException.class);
+        keycloak.notFoundAsError = true;
+        assertThatThrownBy(() -> writer.update(NtsLocationDTO.newDefaultBuilder().id(9L).name("Missing").build()).block())
+            .isInstanceOf(NtsNotFoundException.class)
+            .hasCauseInstanceOf(FeignException.NotFound.class);
+        assertThatThrownBy(() -> writer.create(NtsLocationDTO.newDefaultBuilder().id(10L).name(" ").build()).block())
+            .isInstanceOf(NtsValidationException.class);
+        keycloak.writeError = new IllegalStateException("Conflict");
+        assertThatThrownBy(() -> writer.create(NtsLocationDTO.newDefaultBuilder().id(11L).name("Conflict").build()).block())
+            .isSameAs(keycloak.writeError);
+
+        verify(locationCacheable, never()).putCacheLocation(any());
+        assertThat(keycloak.roles).isEmpty();
+    }
+
+    private static class StubKeycloakClient implements NtsKeycloakClient {
+        private final Map<String, KeycloakClientRole> roles = new LinkedHashMap<>();
+        private boolean notFoundAsError;
+        private RuntimeException writeError;
+
+        void put(Long id, String description, Map<String, List<String>> attributes) {
+            KeycloakClientRole role = new KeycloakClientRole();
+            role.setId(UUID.randomUUID().toString());
+            role.setName(id.toString());
+            role.setDescription(description);
+            role.setAttributes(attributes);
+            roles.put(role.getName(), role);
+        }
+
+        @Override
+        public Mono<List<KeycloakClientRole>> findClientRoles(String internalClientId, Boolean briefRepresentation) {
+            return Mono.fromSupplier(() -> new ArrayList<>(roles.values()));
+        }
+
+        @Override
+        public Mono<KeycloakClientRole> findClientRole(String internalClientId, String roleName) {
+            return Mono.defer(() -> {
+                KeycloakClientRole role = roles.get(roleName);
+                if (role == null && notFoundAsError) {
+                    Request request = Request.create(Request.HttpMethod.GET, "http://keycloak", Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+                    return Mono.error(new FeignException.NotFound("Role " + roleName + " not found", request, null, null));
+                }
+                return Mono.justOrEmpty(role);
+            });
+        }
+
+        @Override
+        public Mono<Void> createClientRole(String internalClientId, KeycloakClientRole keycloakClientRole) {
+            return Mono.defer(() -> {
+                if (writeError != null) {
+                    return Mono.error(writeError);
+                }
+                keycloakClientRole.setId(UUID.randomUUID().toString());
+                roles.put(keycloakClientRole.getName(), keycloakClientRole);
+                return Mono.empty();
+            });
+        }
+
+        @Override
+        public Mono<Void> updateClientRole(String internalClientId, String roleName, KeycloakClientRole keycloakClientRole) {
+            return Mono.defer(() -> {
+                if (writeError != null) {
+                    return Mono.error(writeError);
+                }
+                roles.put(roleName, keycloakClientRole);
+                return Mono.empty();
+            });
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.nentangso.core.service.helper.location;
+
+import io.r2dbc.h2.CloseableConnectionFactory;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.h2.H2ConnectionOption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.config.NtsProperties;
+import org.nentangso.core.domain.NtsMetafieldEntity;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.relational.core.query.Criteria;
+import org.springframework.data.relational.core.query.Query;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test class for the {@link NtsLocationQueryHelper}, against an embedded H2 database.
+ */
+class NtsLocationQueryHelperTest {
+    private static final int MAX_PARAMETERS = 20;
+
+    private final NtsProperties ntsProperties = new NtsProperties();
+    private final NtsLocationDeserializer locationDeserializer = mock(NtsLocationDeserializer.class);
+    private CloseableConnectionFactory connectionFactory;
+    private DatabaseClient db;
+    private R2dbcEntityTemplate entityTemplate;
+    private TransactionalOperator transactionalOperator;
+    private NtsLocationQueryHelper queryHelper;
+
+    @BeforeEach
+    void setUp() {
+        // count queries leave an idle H2 session behind, closing it on exit would block the JVM shutdown
+        connectionFactory = H2ConnectionFactory.inMemory(
+            "nts_" + UUID.randomUUID().toString().replace("-", ""),
+            "sa",
+            "",
+            Map.of(H2ConnectionOption.DB_CLOSE_ON_EXIT, "FALSE")
+        );
+        db = DatabaseClient.create(connectionFactory);
+        db.sql("create table nts_metafields (id bigint auto_increment primary key, owner_resource varchar(20) not null, owner_id bigint not null, namespace varchar(20), nts_key varchar(30), nts_value clob, nts_value_text varchar(255), nts_value_number decimal(38, 10), nts_value_timestamp timestamp with time zone, nts_value_boolean boolean, nts_type varchar(50) not null, description varchar(255), deleted boolean default false not null, created_by varchar(50) not null, created_at timestamp with time zone, updated_by varchar(50), updated_at timestamp with time zone)")
+            .then()
+            .block();
+        db.sql("insert into nts_metafields (owner_resource, owner_id, nts_type, created_by) select 'product', x, 'number_integer', 'test' from system_range(1, 300)")
+            .then()
+            .block();
+        entityTemplate = new R2dbcEntityTemplate(connectionFactory);
+        transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        ntsProperties.getHelper().getLocation().getQuery().setMaxParameters(MAX_PARAMETERS);
+        queryHelper = new NtsLocationQueryHelper(ntsProperties, locationDeserializer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.close();
+    }
+
+    @Test
+    void testCriteriaBindsTemporaryTablePlan() {
+        grant(LongStream.concat(LongStream.rangeClosed(1, 30), LongStream.rangeClosed(11, 60).map(i -> i * 3)).toArray());
+
+        assertThat(queryHelper.getAccessPlan().block().getStrategy()).isEqualTo(NtsLocationAccessPlan.Strategy.TEMPORARY_TABLE);
+        Long count = queryHelper.grantedLocations("ownerId")
+            .flatMap(criteria -> entityTemplate.count(Query.query(criteria), NtsMetafieldEntity.class))
+            .block();
+
+        assertThat(count).isEqualTo(80L);
+    }
+
+    @Test
+    void testCriteriaBindsRangesAndIds() {
+        grant(LongStream.concat(LongStream.rangeClosed(10, 100), LongStream.of(2, 200, 250)).toArray());
+
+        Criteria criteria = queryHelper.grantedLocations("ownerId").block();
+
+        assertThat(queryHelper.getAccessPlan().block().getStrategy()).isEqualTo(NtsLocationAccessPlan.Strategy.RANGES);
+        assertThat(entityTemplate.count(Query.query(criteria), NtsMetafieldEntity.class).block()).isEqualTo(94L);
+    }
+
+    @Test
+    void testSqlConditionJoinsTemporaryTable() {
+        grant(LongStream.rangeClosed(1, 50).map(i -> i * 3).toArray());
+
+        Long count = queryHelper.grantedLocationsSql("owner_id", db)
+            .flatMap(condition -> {
+                assertThat(condition.getSql()).isEqualTo("owner_id IN (SELECT location_id FROM nts_tmp_granted_locations)");
+                assertThat(condition.getBindings()).isEmpty();
+                return db.sql("select count(*) from nts_metafields where " + condition.getSql())
+                    .map(row -> row.get(0, Long.class))
+                    .one();
+            })
+            .as(transactionalOperator::transactional)
+            .block();
+
+        assertThat(count).isEqualTo(50L);
+    }
+
+    @Test
+    void testSqlConditionRequiresTransactionForTemporaryTable() {
+        grant(LongStream.rangeClosed(1, 50).map(i -> i * 3).toArray());
+
+        assertThatThrownBy(() -> queryHelper.grantedLocationsSql("owner_id", db).block())
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("50 granted locations")
+            .hasMessageContaining("one transaction");
+    }
+
+    private void grant(long... ids) {
+        when(locationDeserializer.getGrantedLocations()).thenReturn(Mono.just(NtsLocationGrants.of(false, ids)));
+    }
+}
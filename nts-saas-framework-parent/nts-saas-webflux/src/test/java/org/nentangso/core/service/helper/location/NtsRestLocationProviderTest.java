@@ -0,0 +1,186 @@
+package org.nentangso.core.service.helper.location;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.client.NtsHelperLocationRestClient;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import reactivefeign.client.ReactiveHttpRequest;
+import reactivefeign.client.ReactiveHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test class for the paged NDJSON stream of the {@link NtsRestLocationProvider}, against a stub upstream.
+ */
+class NtsRestLocationProviderTest {
+    private static final int PAGE_SIZE = 2;
+
+    private final StubRestClient upstream = new StubRestClient();
+    private final NtsDefaultLocationCacheable locationCacheable = mock(NtsDefaultLocationCacheable.class);
+    private final NtsRestLocationProvider provider = new NtsRestLocationProvider(locationCacheable, upstream, PAGE_SIZE);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        for (long id = 1; id <= 5; id++) {
+            upstream.put(id, "Location " + id);
+        }
+        when(locationCacheable.getCacheLocations()).thenReturn(Mono.empty());
+        when(locationCacheable.reloadCacheLocations(any()))
+            .thenAnswer(invocation -> ((Supplier<Mono<Map<Long, NtsDefaultLocationDTO>>>) invocation.getArgument(0)).get());
+        when(locationCacheable.getCacheVersion(any()))
+            .thenAnswer(invocation -> NtsLocationVersion.of(((Map<Long, NtsDefaultLocationDTO>) invocation.getArgument(0)).values()));
+        when(locationCacheable.extendCacheLocations()).thenReturn(Mono.just(true));
+    }
+
+    @Test
+    void testStreamReadsAllPagesOfOneVersion() {
+        String version = upstream.getVersion();
+
+        Map<Long, NtsDefaultLocationDTO> locations = provider.reload().block();
+
+        assertThat(locations).containsOnlyKeys(1L, 2L, 3L, 4L, 5L);
+        assertThat(upstream.requests).hasSize(3);
+        assertThat(upstream.requests.get(0).ifMatch).isNull();
+        assertThat(upstream.requests.subList(1, 3)).allSatisfy(request -> assertThat(request.ifMatch).isEqualTo(version));
+        assertThat(upstream.requests).extracting(request -> request.sinceId).containsExactly(null, 2L, 4L);
+    }
+
+    @Test
+    void testStreamRestartsWhenUpstreamChangesBetweenPages() {
+        upstream.afterFirstPage = () -> upstream.put(1L, "Renamed 1");
+
+        Map<Long, NtsDefaultLocationDTO> locations = provider.reload().block();
+
+        assertThat(locations).hasSize(5);
+        assertThat(locations.get(1L).getName()).isEqualTo("Renamed 1");
+        assertThat(upstream.requests).extracting(request -> request.status)
+            .containsExactly(200, 412, 200, 200, 200);
+    }
+
+    @Test
+    void testStreamNotModifiedKeepsCachedSnapshot() {
+        Map<Long, NtsDefaultLocationDTO> snapshot = upstream.snapshot();
+        when(locationCacheable.getCacheLocations()).thenReturn(Mono.just(snapshot));
+
+        Map<Long, NtsDefaultLocationDTO> locations = provider.reload().block();
+
+        assertThat(locations).isSameAs(snapshot);
+        assertThat(upstream.requests).extracting(request -> request.status).containsExactly(304);
+        verify(locationCacheable).extendCacheLocations();
+    }
+
+    private static class StubRestClient implements NtsHelperLocationRestClient {
+        private final Map<Long, NtsDefaultLocationDTO> locations = new TreeMap<>();
+        private final List<StubRequest> requests = new ArrayList<>();
+        private Runnable afterFirstPage;
+
+        void put(Long id, String name) {
+            locations.put(id, NtsLocationDTO.newDefaultBuilder().id(id).name(name).build());
+        }
+
+        Map<Long, NtsDefaultLocationDTO> snapshot() {
+            return new LinkedHashMap<>(locations);
+        }
+
+        String getVersion() {
+            return NtsLocationVersion.of(locations.values());
+        }
+
+        @Override
+        public Mono<List<NtsDefaultLocationDTO>> findAll(String ifNoneMatch) {
+            return Mono.error(new UnsupportedOperationException());
+        }
+
+        @Override
+        public Mono<ReactiveHttpResponse<Flux<NtsDefaultLocationDTO>>> streamAll(Long sinceId, Integer limit, String ifNoneMatch, String ifMatch) {
+            return Mono.fromSupplier(() -> {
+                String version = getVersion();
+                StubRequest request = new StubRequest(sinceId, ifMatch);
+                requests.add(request);
+                if (ifMatch != null && !NtsLocationVersion.matches(ifMatch, version)) {
+                    request.status = HttpStatus.PRECONDITION_FAILED.value();
+                    return new StubResponse(request.status, version, Collections.emptyList());
+                }
+                if (NtsLocationVersion.matches(ifNoneMatch, version)) {
+                    request.status = HttpStatus.NOT_MODIFIED.value();
+                    return new StubResponse(request.status, version, Collections.emptyList());
+                }
+                request.status = HttpStatus.OK.value();
+                List<NtsDefaultLocationDTO> page = locations.values().stream()
+                    .filter(location -> sinceId == null || location.getId() > sinceId)
+                    .limit(limit)
+                    .collect(Collectors.toList());
+                if (sinceId == null && afterFirstPage != null) {
+                    afterFirstPage.run();
+                    afterFirstPage = null;
+                }
+                return new StubResponse(request.status, version, page);
+            });
+        }
+    }
+
+    private static class StubRequest {
+        private final Long sinceId;
+        private final String ifMatch;
+        private int status;
+
+        StubRequest(Long sinceId, String ifMatch) {
+            this.sinceId = sinceId;
+            this.ifMatch = ifMatch;
+        }
+    }
+
+    private static class StubResponse implements ReactiveHttpResponse<Flux<NtsDefaultLocationDTO>> {
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final List<NtsDefaultLocationDTO> body;
+
+        StubResponse(int status, String etag, List<NtsDefaultLocationDTO> body) {
+            this.status = status;
+            this.headers = Map.of(HttpHeaders.ETAG, List.of(etag));
+            this.body = body;
+        }
+
+        @Override
+        public ReactiveHttpRequest request() {
+            return null;
+        }
+
+        @Override
+        public int status() {
+            return status;
+        }
+
+        @Override
+        public Map<String, List<String>> headers() {
+            return headers;
+        }
+
+        @Override
+        public Flux<NtsDefaultLocationDTO> body() {
+            return Flux.fromIterable(body);
+        }
+
+        @Override
+        public Mono<Void> releaseBody() {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<byte[]> bodyData() {
+            return Mono.empty();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.nentangso.core.web.rest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.nentangso.core.service.dto.NtsDefaultLocationDTO;
+import org.nentangso.core.service.dto.NtsLocationDTO;
+import org.nentangso.core.service.helper.NtsLocationHelper;
+import org.nentangso.core.service.helper.location.NtsLocationIndex;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Test class for the NDJSON stream of the {@link NtsLocationResource}.
+ */
+class NtsLocationResourceTest {
+    private final NtsLocationHelper locationHelper = mock(NtsLocationHelper.class);
+    private final WebTestClient client = WebTestClient.bindToController(new NtsLocationResource(locationHelper)).build();
+    private NtsLocationIndex<NtsDefaultLocationDTO> index;
+
+    @BeforeEach
+    void setUp() {
+        Map<Long, NtsDefaultLocationDTO> locations = new LinkedHashMap<>();
+        for (long id = 1; id <= 5; id++) {
+            locations.put(id, NtsLocationDTO.newDefaultBuilder().id(id).name("Location " + id).active(true).build());
+        }
+        index = NtsLocationIndex.of(locations);
+        doReturn(Mono.just(index)).when(locationHelper).getIndex();
+    }
+
+    @Test
+    void testStreamPagesById() {
+        List<NtsDefaultLocationDTO> firstPage = client.get()
+            .uri("/api/locations?limit=2")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectHeader().valueEquals(HttpHeaders.ETAG, index.getVersion())
+            .returnResult(NtsDefaultLocationDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+        List<NtsDefaultLocationDTO> secondPage = client.get()
+            .uri("/api/locations?sinceId=2&limit=2")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .header(HttpHeaders.IF_MATCH, index.getVersion())
+            .exchange()
+            .expectStatus().isOk()
+            .returnResult(NtsDefaultLocationDTO.class)
+            .getResponseBody()
+            .collectList()
+            .block();
+
+        assertThat(firstPage).extracting(NtsDefaultLocationDTO::getId).containsExactly(1L, 2L);
+        assertThat(secondPage).extracting(NtsDefaultLocationDTO::getId).containsExactly(3L, 4L);
+    }
+
+    @Test
+    void testStreamRejectsStaleIfMatch() {
+        client.get()
+            .uri("/api/locations?sinceId=2&limit=2")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .header(HttpHeaders.IF_MATCH, "\"stale\"")
+            .exchange()
+            .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED)
+            .expectHeader().valueEquals(HttpHeaders.ETAG, index.getVersion())
+            .expectBody().isEmpty();
+    }
+
+    @Test
+    void testStreamNotModified() {
+        client.get()
+            .uri("/api/locations?limit=2")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .header(HttpHeaders.IF_NONE_MATCH, index.getVersion())
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectBody().isEmpty();
+    }
+}